@@ -18,6 +18,7 @@ package net.openhft.chronicle.engine.api;
 
 import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.engine.api.pubsub.Replication;
+import net.openhft.chronicle.engine.map.replication.MerkleTree;
 import net.openhft.chronicle.wire.Marshallable;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
@@ -103,6 +104,14 @@ public interface EngineReplication extends Replication {
 
         void forEach(@NotNull Consumer<ReplicationEntry> consumer);
 
+        /**
+         * Like {@link #forEach(Consumer)}, but the entry, its key and its value are only valid for
+         * the duration of the callback, so an implementation can avoid copying them.
+         */
+        default void forEachInPlace(@NotNull Consumer<ReplicationEntry> consumer) {
+            forEach(consumer);
+        }
+
         boolean hasNext();
 
         /**
@@ -115,6 +124,18 @@ public interface EngineReplication extends Replication {
          */
         void dirtyEntries(long fromTimeStamp) throws InterruptedException;
 
+        /**
+         * Dirties all entries in the leaves of the hash tree which differ from the remote node's.
+         * By default this dirties every entry.
+         *
+         * @param tree   the hash tree of this store
+         * @param leaves the leaves of the tree whose entries should be sent again
+         */
+        default void dirtyEntries(@NotNull MerkleTree tree, @NotNull long[] leaves)
+                throws InterruptedException {
+            dirtyEntries(0);
+        }
+
         /**
          * the {@code modificationNotifier} is called when ever there is a change applied to the
          * modification iterator
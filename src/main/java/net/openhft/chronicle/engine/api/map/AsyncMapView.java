@@ -0,0 +1,54 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.api.map;
+
+import net.openhft.chronicle.core.util.SerializableBiFunction;
+import net.openhft.chronicle.core.util.SerializableUpdaterWithArg;
+import net.openhft.chronicle.engine.api.tree.Assetted;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A view of a map which returns the result of each operation as a future rather than waiting for
+ * it, so many requests can be in flight from a few threads.
+ *
+ * Obtain it with <code>acquireView(requestContext(uri).view("asyncMap")...)</code>. For a remote
+ * map the futures are completed by the thread reading the connection, so callbacks on them
+ * shouldn't block.
+ */
+public interface AsyncMapView<K, V> extends Assetted<MapView<K, V>> {
+    @NotNull
+    CompletableFuture<V> get(K key);
+
+    @NotNull
+    CompletableFuture<V> getAndPut(K key, V value);
+
+    @NotNull
+    CompletableFuture<V> putIfAbsent(K key, V value);
+
+    @NotNull
+    CompletableFuture<V> replace(K key, V value);
+
+    @NotNull
+    <A, R> CompletableFuture<R> applyTo(@NotNull SerializableBiFunction<MapView<K, V>, A, R> function, A arg);
+
+    @NotNull
+    <UA, RA, R> CompletableFuture<R> syncUpdate(@NotNull SerializableUpdaterWithArg<MapView<K, V>, UA> updateFunction, UA ua,
+                                                @NotNull SerializableBiFunction<MapView<K, V>, RA, R> returnFunction, RA ra);
+}
@@ -26,6 +26,7 @@ import net.openhft.lang.model.constraints.Nullable;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +75,34 @@ public interface KeyValueStore<K, V> extends Assetted<KeyValueStore<K, V>>, Clos
     @Nullable
     V getUsing(K key, Object value);
 
+    /**
+     * @param keys to look up.
+     * @return the value of each key in the same order, or null where a key is not present.
+     */
+    @NotNull
+    default List<V> getAll(@NotNull Collection<K> keys) {
+        List<V> values = new ArrayList<>(keys.size());
+        for (K key : keys)
+            values.add(get(key));
+        return values;
+    }
+
+    /**
+     * put every entry, a store with segments may group the entries by segment.
+     */
+    default void putAll(@NotNull Map<? extends K, ? extends V> entries) {
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * remove every key.
+     */
+    default void removeAll(@NotNull Collection<K> keys) {
+        for (K key : keys)
+            remove(key);
+    }
+
     default boolean containsKey(K key) {
         return get(key) != null;
     }
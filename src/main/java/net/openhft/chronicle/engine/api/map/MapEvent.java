@@ -44,6 +44,15 @@ public interface MapEvent<K, V> extends Map.Entry<K, V>, ChangeEvent {
         assetName, key, oldValue, value
     }
 
+    /**
+     * @return an event which can be kept after the subscriber has returned, this event unless it
+     * is reused for the next change.
+     */
+    @NotNull
+    default MapEvent<K, V> copy() {
+        return this;
+    }
+
     default V setValue(V value) {
         throw new UnsupportedOperationException();
     }
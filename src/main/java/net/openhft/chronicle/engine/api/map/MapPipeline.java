@@ -0,0 +1,190 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.api.map;
+
+import net.openhft.chronicle.core.util.ObjectUtils;
+import net.openhft.chronicle.core.util.SerializableBiFunction;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.map.remote.MapBatch;
+import net.openhft.chronicle.engine.map.remote.MapBatch.Op;
+import net.openhft.chronicle.engine.map.remote.MapFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Queues operations on one or more maps and sends them all before waiting for any reply, so a
+ * remote client pays one round trip for the whole pipeline rather than one per operation.
+ *
+ * If atomic, the operations on each map are sent as a single request, which the server applies
+ * in order without running any other request of the connection, or any other atomic pipeline, to
+ * that map in between. It isn't isolated from single operations sent to the map by other
+ * connections, which can still be applied between the operations of the batch. Otherwise each
+ * operation is its own request.
+ */
+public class MapPipeline {
+    private final boolean atomic;
+    private final List<MapView> maps = new ArrayList<>();
+    private final List<Op> ops = new ArrayList<>();
+    private final List<Object> keys = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+
+    public MapPipeline() {
+        this(false);
+    }
+
+    public MapPipeline(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    @NotNull
+    private static AsyncMapView asyncView(@NotNull MapView map) {
+        final Asset asset = map.asset();
+        return asset.acquireView(AsyncMapView.class, RequestContext.requestContext(asset.fullName())
+                .viewType(AsyncMapView.class)
+                .type(map.keyType())
+                .type2(map.valueType()));
+    }
+
+    @NotNull
+    private <K, V> MapPipeline add(@NotNull MapView<K, V> map, @NotNull Op op, @NotNull K key, @Nullable V value) {
+        maps.add(map);
+        ops.add(op);
+        keys.add(key);
+        values.add(value);
+        return this;
+    }
+
+    @NotNull
+    public <K, V> MapPipeline get(@NotNull MapView<K, V> map, @NotNull K key) {
+        return add(map, Op.GET, key, null);
+    }
+
+    @NotNull
+    public <K, V> MapPipeline put(@NotNull MapView<K, V> map, @NotNull K key, @NotNull V value) {
+        return add(map, Op.PUT, key, value);
+    }
+
+    @NotNull
+    public <K, V> MapPipeline remove(@NotNull MapView<K, V> map, @NotNull K key) {
+        return add(map, Op.REMOVE, key, null);
+    }
+
+    @NotNull
+    public <K, V> MapPipeline getAndPut(@NotNull MapView<K, V> map, @NotNull K key, @NotNull V value) {
+        return add(map, Op.GET_AND_PUT, key, value);
+    }
+
+    @NotNull
+    public <K, V> MapPipeline getAndRemove(@NotNull MapView<K, V> map, @NotNull K key) {
+        return add(map, Op.GET_AND_REMOVE, key, null);
+    }
+
+    @NotNull
+    public <K, V> MapPipeline putIfAbsent(@NotNull MapView<K, V> map, @NotNull K key, @NotNull V value) {
+        return add(map, Op.PUT_IF_ABSENT, key, value);
+    }
+
+    @NotNull
+    public <K, V> MapPipeline containsKey(@NotNull MapView<K, V> map, @NotNull K key) {
+        return add(map, Op.CONTAINS_KEY, key, null);
+    }
+
+    /**
+     * @return the number of operations queued.
+     */
+    public int size() {
+        return ops.size();
+    }
+
+    /**
+     * Sends the queued operations, waits for them all and clears the pipeline.
+     *
+     * @return the result of each operation in the order they were added, null for a put or
+     * remove, a Boolean for containsKey and otherwise a value of the map's value type.
+     */
+    @NotNull
+    public List<Object> execute(long timeout, @NotNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        // the positions of the operations on each map, a MapView's equals compares its entries.
+        final Map<MapView, List<Integer>> positionsByMap = new IdentityHashMap<>();
+        final List<MapView> distinctMaps = new ArrayList<>();
+        for (int i = 0; i < maps.size(); i++) {
+            final MapView map = maps.get(i);
+            List<Integer> mapPositions = positionsByMap.get(map);
+            if (mapPositions == null) {
+                positionsByMap.put(map, mapPositions = new ArrayList<>());
+                distinctMaps.add(map);
+            }
+            mapPositions.add(i);
+        }
+
+        final List<CompletableFuture<MapBatch>> futures = new ArrayList<>();
+        final List<List<Integer>> positions = new ArrayList<>();
+        for (MapView map : distinctMaps) {
+            final AsyncMapView asyncMap = asyncView(map);
+            final List<Integer> mapPositions = positionsByMap.get(map);
+            if (atomic) {
+                final MapBatch batch = new MapBatch();
+                for (int i : mapPositions)
+                    batch.add(ops.get(i), keys.get(i), values.get(i));
+                futures.add(asyncMap.applyTo((SerializableBiFunction) MapFunction.BATCH, batch));
+                positions.add(mapPositions);
+            } else {
+                for (int i : mapPositions) {
+                    final MapBatch batch = new MapBatch().add(ops.get(i), keys.get(i), values.get(i));
+                    futures.add(asyncMap.applyTo((SerializableBiFunction) MapFunction.BATCH, batch));
+                    positions.add(Collections.singletonList(i));
+                }
+            }
+        }
+
+        final Object[] results = new Object[ops.size()];
+        final long end = System.nanoTime() + unit.toNanos(timeout);
+        for (int f = 0; f < futures.size(); f++) {
+            final MapBatch applied = futures.get(f).get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+            final List<Integer> batchPositions = positions.get(f);
+            for (int i = 0; i < batchPositions.size(); i++) {
+                final int position = batchPositions.get(i);
+                results[position] = resultOf(maps.get(position), ops.get(position), applied.results().get(i));
+            }
+        }
+
+        maps.clear();
+        ops.clear();
+        keys.clear();
+        values.clear();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return the result as read from the wire, converted to the type the operation returns.
+     */
+    @Nullable
+    private static Object resultOf(@NotNull MapView map, @NotNull Op op, @Nullable Object result) {
+        if (result == null)
+            return null;
+        return ObjectUtils.convertTo(op == Op.CONTAINS_KEY ? Boolean.class : map.valueType(), result);
+    }
+}
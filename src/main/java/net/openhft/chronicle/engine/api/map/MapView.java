@@ -30,6 +30,9 @@ import net.openhft.chronicle.engine.query.Filter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
@@ -65,6 +68,30 @@ public interface MapView<K, V> extends ConcurrentMap<K, V>,
      */
     V getUsing(K key, Object using);
 
+    /**
+     * Obtain the values of many keys, remotely in one round trip.
+     *
+     * @param keys to lookup.
+     * @return the value of each key in the same order, or null where a key is not present.
+     */
+    @NotNull
+    default List<V> getAll(@NotNull Collection<K> keys) {
+        List<V> values = new ArrayList<>(keys.size());
+        for (K key : keys)
+            values.add(get(key));
+        return values;
+    }
+
+    /**
+     * Remove many keys, remotely in one message.
+     *
+     * @param keys to remove.
+     */
+    default void removeAll(@NotNull Collection<K> keys) {
+        for (K key : keys)
+            remove(key);
+    }
+
     /**
      * Add a TopicSubscriber to this Map.
      *
@@ -0,0 +1,39 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.api.map;
+
+import net.openhft.chronicle.wire.ValueOut;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes values to the wire by copying the bytes they are stored as, rather than reading them
+ * into objects and serialising those again. Registered as a view of an asset whose values are
+ * stored as bytes.
+ */
+public interface RawValueWriter<K> {
+    /**
+     * @return true if values can be copied as they are to this wire.
+     */
+    boolean canWriteTo(@NotNull WireOut wireOut);
+
+    /**
+     * Writes the value for this key, or null if there isn't one.
+     */
+    void writeValue(@NotNull K key, @NotNull ValueOut valueOut);
+}
@@ -0,0 +1,30 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.api.pubsub;
+
+/**
+ * Subscriber to a remote asset which is told when its subscription has been made again after
+ * the connection was lost, as any events sent while disconnected were missed.
+ */
+public interface ReconnectAwareSubscriber<E> extends Subscriber<E> {
+
+    /**
+     * Called when the subscription is sent again on a new connection, before any events from it.
+     */
+    void onReconnect();
+}
@@ -2,6 +2,7 @@ package net.openhft.chronicle.engine.api.pubsub;
 
 import net.openhft.chronicle.engine.api.EngineReplication.ModificationIterator;
 import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
+import net.openhft.chronicle.engine.map.replication.MerkleTree;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -19,4 +20,13 @@ public interface Replication {
     ModificationIterator acquireModificationIterator(byte id);
 
     long lastModificationTime(byte id);
+
+    /**
+     * @return the hash tree over the key-hash ranges of this store, or null if it doesn't keep
+     * one, in which case a remote node bootstraps from its last modification time.
+     */
+    @Nullable
+    default MerkleTree merkleTree() {
+        return null;
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.api.pubsub;
+
+/**
+ * Subscriber which is also told the sequence number of each live event, so it can later resume
+ * from the last event it saw.
+ */
+public interface SequencedSubscriber<E> extends Subscriber<E> {
+
+    /**
+     * Called when there is a live event.
+     *
+     * @param e        event
+     * @param sequence of the event for this asset.
+     * @throws InvalidSubscriberException to throw when this subscriber is no longer valid.
+     */
+    void onMessage(E e, long sequence) throws InvalidSubscriberException;
+
+    /**
+     * Called once the bootstrap has been delivered, the events up to this sequence are included
+     * in it and the live events received during the bootstrap have no sequence. Also called
+     * after the events missed have been replayed, with the sequence of the last one.
+     *
+     * @param sequence of the last event included in the bootstrap or replayed.
+     * @throws InvalidSubscriberException to throw when this subscriber is no longer valid.
+     */
+    void onSequence(long sequence) throws InvalidSubscriberException;
+}
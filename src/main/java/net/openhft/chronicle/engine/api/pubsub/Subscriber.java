@@ -18,6 +18,7 @@ package net.openhft.chronicle.engine.api.pubsub;
 
 import net.openhft.chronicle.core.Jvm;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -35,6 +36,19 @@ public interface Subscriber<E> extends ISubscriber, Consumer<E> {
      */
     void onMessage(E e) throws InvalidSubscriberException;
 
+    /**
+     * Called when there is a batch of events, in order. Subscribers which can handle a batch
+     * more efficiently than each event on its own should override this. The list isn't reused
+     * by the caller so it can be kept.
+     *
+     * @param events in the order they happened.
+     * @throws InvalidSubscriberException to throw when this subscriber is no longer valid.
+     */
+    default void onMessages(List<E> events) throws InvalidSubscriberException {
+        for (E e : events)
+            onMessage(e);
+    }
+
     @Override
     default void accept(E e) {
         try {
@@ -19,15 +19,18 @@ package net.openhft.chronicle.engine.api.tree;
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.engine.api.collection.ValuesCollection;
+import net.openhft.chronicle.engine.api.map.AsyncMapView;
 import net.openhft.chronicle.engine.api.map.MapEvent;
 import net.openhft.chronicle.engine.api.map.MapView;
 import net.openhft.chronicle.engine.api.pubsub.*;
 import net.openhft.chronicle.engine.api.session.Heartbeat;
 import net.openhft.chronicle.engine.api.set.EntrySetView;
 import net.openhft.chronicle.engine.api.set.KeySetView;
+import net.openhft.chronicle.engine.cfg.Compression;
 import net.openhft.chronicle.engine.map.ObjectKVSSubscription;
 import net.openhft.chronicle.engine.map.RawKVSSubscription;
 import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.engine.query.KeyPredicate;
 import net.openhft.chronicle.engine.tree.TopologicalEvent;
 import net.openhft.chronicle.engine.tree.TopologySubscription;
 import net.openhft.chronicle.wire.*;
@@ -45,6 +48,7 @@ import static net.openhft.chronicle.core.pool.ClassAliasPool.CLASS_ALIASES;
 public class RequestContext implements Cloneable {
     static {
         addAlias(MapView.class, "Map");
+        addAlias(AsyncMapView.class, "AsyncMap");
         addAlias(MapEvent.class, "MapEvent");
         addAlias(TopologicalEvent.class, "TopologicalEvent");
         addAlias(EntrySetView.class, "EntrySet");
@@ -59,6 +63,7 @@ public class RequestContext implements Cloneable {
         addAlias(Heartbeat.class, "Heartbeat");
         addAlias(Filter.class, "Filter");
         addAlias(net.openhft.chronicle.engine.query.Operation.class, "Operation");
+        addAlias(KeyPredicate.class, "KeyPredicate");
     }
 
     private String pathName;
@@ -71,7 +76,16 @@ public class RequestContext implements Cloneable {
             removeReturnsNull = null,
             nullOldValueOnUpdateEvent = null,
             endSubscriptionAfterBootstrap = null,
-            bootstrap = null;
+            bootstrap = null,
+            asyncDispatch = null,
+            conflate = null,
+            resumable = null,
+            reuseEvents = null,
+            oldValues = null,
+            deltas = null;
+    private int nearCache = 0;
+    @Nullable
+    private Compression compression = null;
     private double averageValueSize;
     private long entries;
     private Boolean recurse;
@@ -178,6 +192,15 @@ public class RequestContext implements Cloneable {
         parser.register(() -> "messageType", v -> v.typeLiteral(x -> this.type2 = x));
         parser.register(() -> "elementType", v -> v.typeLiteral(x -> this.type = x));
         parser.register(() -> "endSubscriptionAfterBootstrap", v -> v.bool(b -> this.endSubscriptionAfterBootstrap = b));
+        parser.register(() -> "asyncDispatch", v -> v.bool(b -> this.asyncDispatch = b));
+        parser.register(() -> "conflate", v -> v.bool(b -> this.conflate = b));
+        parser.register(() -> "resumable", v -> v.bool(b -> this.resumable = b));
+        parser.register(() -> "reuseEvents", v -> v.bool(b -> this.reuseEvents = b));
+        parser.register(() -> "oldValues", v -> v.bool(b -> this.oldValues = b));
+        parser.register(() -> "deltas", v -> v.bool(b -> this.deltas = b));
+        parser.register(() -> "nearCache", v -> v.int32(i -> this.nearCache = i));
+        parser.register(() -> "compression",
+                v -> v.text((Consumer<String>) x -> this.compression = Compression.forName(x)));
         parser.register(WireParser.DEFAULT, ValueIn.DISCARD);
         return parser;
     }
@@ -387,6 +410,133 @@ public class RequestContext implements Cloneable {
         return endSubscriptionAfterBootstrap;
     }
 
+    /**
+     * @return true if subscribers to this map are notified from the asset's EventLoop rather than
+     * the thread which changed the map.
+     */
+    @Nullable
+    public Boolean asyncDispatch() {
+        return asyncDispatch;
+    }
+
+    @NotNull
+    public RequestContext asyncDispatch(boolean asyncDispatch) {
+        checkSealed();
+        this.asyncDispatch = asyncDispatch;
+        return this;
+    }
+
+    /**
+     * @return true if a MapEvent subscriber which falls behind should only be sent the latest
+     * event for each key.
+     */
+    @Nullable
+    public Boolean conflate() {
+        return conflate;
+    }
+
+    @NotNull
+    public RequestContext conflate(Boolean conflate) {
+        checkSealed();
+        this.conflate = conflate;
+        return this;
+    }
+
+    /**
+     * @return true if a remote MapEvent subscriber which reconnects should only be sent the
+     * events it missed, when the server still has them.
+     */
+    @Nullable
+    public Boolean resumable() {
+        return resumable;
+    }
+
+    @NotNull
+    public RequestContext resumable(Boolean resumable) {
+        checkSealed();
+        this.resumable = resumable;
+        return this;
+    }
+
+    /**
+     * @return true if the MapEvents passed to synchronous subscribers are reused for the next
+     * change, a subscriber which keeps an event must keep a copy() of it.
+     */
+    @Nullable
+    public Boolean reuseEvents() {
+        return reuseEvents;
+    }
+
+    @NotNull
+    public RequestContext reuseEvents(Boolean reuseEvents) {
+        checkSealed();
+        this.reuseEvents = reuseEvents;
+        return this;
+    }
+
+    /**
+     * @return false if the subscriber doesn't need the old value of an updated or removed entry,
+     * so the map doesn't have to fetch it on each write.
+     */
+    @Nullable
+    public Boolean oldValues() {
+        return oldValues;
+    }
+
+    @NotNull
+    public RequestContext oldValues(Boolean oldValues) {
+        checkSealed();
+        this.oldValues = oldValues;
+        return this;
+    }
+
+    /**
+     * @return true if a remote MapEvent subscriber is only sent the fields which changed in an
+     * updated Marshallable value, and patches its copy of the previous value.
+     */
+    @Nullable
+    public Boolean deltas() {
+        return deltas;
+    }
+
+    @NotNull
+    public RequestContext deltas(Boolean deltas) {
+        checkSealed();
+        this.deltas = deltas;
+        return this;
+    }
+
+    /**
+     * @return the number of entries a client keeps in its near cache of this map, 0 for no near
+     * cache.
+     */
+    public int nearCache() {
+        return nearCache;
+    }
+
+    @NotNull
+    public RequestContext nearCache(int nearCache) {
+        checkSealed();
+        this.nearCache = nearCache;
+        return this;
+    }
+
+    /**
+     * @return the codec a remote subscriber accepts large events compressed with, or null if they
+     * must be sent uncompressed.
+     */
+    @Nullable
+    public Compression compression() {
+        return compression;
+    }
+
+    @NotNull
+    public RequestContext compression(Compression compression) {
+        checkSealed();
+        this.compression = compression;
+        return this;
+    }
+
 
     void checkSealed() {
         if (sealed) throw new IllegalStateException();
@@ -410,6 +560,14 @@ public class RequestContext implements Cloneable {
                 ", entries=" + entries +
                 ", recurse=" + recurse +
                 ", endSubscriptionAfterBootstrap=" + endSubscriptionAfterBootstrap +
+                ", asyncDispatch=" + asyncDispatch +
+                ", conflate=" + conflate +
+                ", resumable=" + resumable +
+                ", reuseEvents=" + reuseEvents +
+                ", oldValues=" + oldValues +
+                ", deltas=" + deltas +
+                ", nearCache=" + nearCache +
+                ", compression=" + compression +
                 '}';
     }
 
@@ -471,6 +629,38 @@ public class RequestContext implements Cloneable {
             sb.append(sep).append("bootstrap=").append(bootstrap);
             sep = "&";
         }
+        if (asyncDispatch() != null) {
+            sb.append(sep).append("asyncDispatch=").append(asyncDispatch);
+            sep = "&";
+        }
+        if (conflate() != null) {
+            sb.append(sep).append("conflate=").append(conflate);
+            sep = "&";
+        }
+        if (resumable() != null) {
+            sb.append(sep).append("resumable=").append(resumable);
+            sep = "&";
+        }
+        if (reuseEvents() != null) {
+            sb.append(sep).append("reuseEvents=").append(reuseEvents);
+            sep = "&";
+        }
+        if (oldValues() != null) {
+            sb.append(sep).append("oldValues=").append(oldValues);
+            sep = "&";
+        }
+        if (deltas() != null) {
+            sb.append(sep).append("deltas=").append(deltas);
+            sep = "&";
+        }
+        if (nearCache > 0) {
+            sb.append(sep).append("nearCache=").append(nearCache);
+            sep = "&";
+        }
+        if (compression != null) {
+            sb.append(sep).append("compression=").append(compression);
+            sep = "&";
+        }
         return sb.toString();
     }
 
@@ -17,42 +17,74 @@
 package net.openhft.chronicle.engine.api.tree;
 
 import net.openhft.chronicle.core.Maths;
-import net.openhft.chronicle.core.util.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
+ * Parses each csp into a sealed RequestContext once, keeping the most recently used, so it can be
+ * shared by all the connections of a server. The entries are split into segments, each locked
+ * on its own, so connections looking up different csps rarely contend.
+ *
  * Created by peter on 05/07/15.
  */
 public class RequestContextInterner {
+    private static final int SEGMENTS = 16;
     @NotNull
-    private final StringToRequestContext[] interner;
-    private final int mask;
+    private final Segment[] segments = new Segment[SEGMENTS];
 
+    /**
+     * @param capacity the number of request contexts to keep, the least recently used are
+     *                 parsed again when next looked up.
+     */
     public RequestContextInterner(int capacity) {
-        int n = Maths.nextPower2(capacity, 128);
-        interner = new StringToRequestContext[n];
-        mask = n - 1;
+        final int perSegment = Math.max(8, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(perSegment);
     }
 
     public RequestContext intern(@NotNull CharSequence cs) {
-        int h = Maths.hash(cs) & mask;
-        StringToRequestContext s = interner[h];
-        if (s != null && StringUtils.isEqual(s.name, cs))
-            return s.requestContext;
-        String s2 = cs.toString();
-        RequestContext rc = RequestContext.requestContext(cs);
+        final Segment segment = segments[Maths.hash(cs) & (SEGMENTS - 1)];
+        final String name = cs.toString();
+        synchronized (segment) {
+            final RequestContext rc = segment.get(name);
+            if (rc != null)
+                return rc;
+        }
+        // parse outside the lock, another thread may parse the same csp, either can be kept.
+        final RequestContext rc = RequestContext.requestContext(name);
         rc.seal();
-        interner[h] = new StringToRequestContext(s2, rc);
-        return rc;
+        synchronized (segment) {
+            final RequestContext existing = segment.putIfAbsent(name, rc);
+            return existing == null ? rc : existing;
+        }
     }
 
-    static class StringToRequestContext {
-        final String name;
-        final RequestContext requestContext;
+    /**
+     * @return the number of request contexts kept.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    static class Segment extends LinkedHashMap<String, RequestContext> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(capacity * 4 / 3 + 1, 0.75f, true);
+            this.capacity = capacity;
+        }
 
-        StringToRequestContext(String name, RequestContext requestContext) {
-            this.name = name;
-            this.requestContext = requestContext;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RequestContext> eldest) {
+            return size() > capacity;
         }
     }
 }
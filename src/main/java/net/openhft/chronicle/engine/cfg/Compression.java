@@ -0,0 +1,156 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.cfg;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import net.openhft.chronicle.wire.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A codec for compressing large data documents between a client and server. A compressed document
+ * starts with a {@code compressed} event naming the codec, followed by the compressed bytes of the
+ * original document, in the same wire type.
+ */
+public enum Compression {
+    DEFLATE {
+        @Override
+        public void compress(@NotNull Bytes<?> from, @NotNull Bytes<?> to) {
+            final Buffers b = BUFFERS.get();
+            final int length = b.read(from);
+            final Deflater deflater = b.deflater;
+            deflater.reset();
+            deflater.setInput(b.input, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                final int n = deflater.deflate(b.output);
+                to.write(b.output, 0, n);
+            }
+        }
+
+        @Override
+        public void decompress(@NotNull Bytes<?> from, @NotNull Bytes<?> to) {
+            final Buffers b = BUFFERS.get();
+            final int length = b.read(from);
+            final Inflater inflater = b.inflater;
+            inflater.reset();
+            inflater.setInput(b.input, 0, length);
+            try {
+                while (!inflater.finished()) {
+                    final int n = inflater.inflate(b.output);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        throw new IORuntimeException("Truncated compressed document");
+                    to.write(b.output, 0, n);
+                }
+            } catch (DataFormatException e) {
+                throw new IORuntimeException(e);
+            }
+        }
+    };
+
+    public static final WireKey COMPRESSED = () -> "compressed";
+    private static final WireKey DATA = () -> "data";
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * @return the codec with this name, or null if it isn't supported.
+     */
+    @Nullable
+    public static Compression forName(@Nullable CharSequence name) {
+        if (name != null)
+            for (Compression compression : values())
+                if (compression.name().contentEquals(name))
+                    return compression;
+        return null;
+    }
+
+    /**
+     * Reads the rest of a compressed document, after its {@code compressed} event name.
+     *
+     * @param codec the value of the compressed event.
+     * @return a wire to read the original document from, valid until the next document is
+     * uncompressed on this thread.
+     */
+    @NotNull
+    public static WireIn uncompress(@NotNull WireIn in, @NotNull ValueIn codec) {
+        final Compression compression = forName(codec.text());
+        if (compression == null)
+            throw new IORuntimeException("Unsupported compression");
+        final Buffers b = BUFFERS.get();
+        b.packed.clear();
+        in.read(DATA).bytes(b.packed);
+        b.plain.clear();
+        compression.decompress(b.packed, b.plain);
+        return in instanceof TextWire ? new TextWire(b.plain) : new BinaryWire(b.plain);
+    }
+
+    public abstract void compress(@NotNull Bytes<?> from, @NotNull Bytes<?> to);
+
+    public abstract void decompress(@NotNull Bytes<?> from, @NotNull Bytes<?> to);
+
+    /**
+     * Writes the content of a data document, and replaces it with a compressed event if it is at
+     * least threshold bytes and compression makes it smaller.
+     */
+    public void write(@NotNull WireOut wire, int threshold, @NotNull WriteMarshallable content) {
+        final Bytes<?> bytes = wire.bytes();
+        final long start = bytes.writePosition();
+        content.writeMarshallable(wire);
+        final long length = bytes.writePosition() - start;
+        if (length < threshold)
+            return;
+
+        final Buffers b = BUFFERS.get();
+        b.plain.clear();
+        b.plain.write(bytes, start, length);
+        b.packed.clear();
+        compress(b.plain, b.packed);
+        if (b.packed.readRemaining() >= length)
+            return;
+
+        bytes.writePosition(start);
+        wire.write(COMPRESSED).text(name());
+        wire.write(DATA).bytes(b.packed);
+    }
+
+    static class Buffers {
+        final Deflater deflater = new Deflater();
+        final Inflater inflater = new Inflater();
+        final Bytes<ByteBuffer> plain = Bytes.elasticByteBuffer();
+        final Bytes<ByteBuffer> packed = Bytes.elasticByteBuffer();
+        final byte[] output = new byte[8 << 10];
+        byte[] input = new byte[8 << 10];
+
+        /**
+         * @return the number of bytes read into input.
+         */
+        int read(@NotNull Bytes<?> from) {
+            final int length = (int) from.readRemaining();
+            if (input.length < length)
+                input = new byte[Math.max(length, input.length * 2)];
+            from.read(input, 0, length);
+            return length;
+        }
+    }
+}
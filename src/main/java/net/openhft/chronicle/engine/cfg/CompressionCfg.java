@@ -0,0 +1,79 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.cfg;
+
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import net.openhft.chronicle.wire.WriteMarshallable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The codec a server compresses data documents with, for the clients which accept it, and the
+ * size below which documents are sent uncompressed.
+ */
+public class CompressionCfg implements Marshallable {
+    private Compression codec = Compression.DEFLATE;
+    private int threshold = 4 << 10;
+
+    public CompressionCfg() {
+    }
+
+    public CompressionCfg(@NotNull Compression codec, int threshold) {
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    @NotNull
+    public Compression codec() {
+        return codec;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * Writes the content of a data document, compressed if it is large enough.
+     */
+    public void write(@NotNull WireOut wire, @NotNull WriteMarshallable content) {
+        codec.write(wire, threshold, content);
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+        wire.read(() -> "codec").asEnum(Compression.class, c -> codec = c);
+        if (wire.hasMore())
+            wire.read(() -> "threshold").int32(i -> threshold = i);
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wire) {
+        wire.write(() -> "codec").asEnum(codec);
+        wire.write(() -> "threshold").int32(threshold);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "CompressionCfg{" +
+                "codec=" + codec +
+                ", threshold=" + threshold +
+                '}';
+    }
+}
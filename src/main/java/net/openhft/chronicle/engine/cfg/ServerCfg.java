@@ -24,6 +24,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Created by peter on 26/08/15.
@@ -35,11 +37,20 @@ public class ServerCfg implements Installable, Marshallable {
     private boolean dumpWhenInDebug;
     private ServerEndpoint serverEndpoint;
     private int heartbeatIntervalTicks, heartbeatIntervalTimeout;
+    // the throttle of the subscriptions to each asset, by path, Throttler.maxEventsPreSecond if none.
+    private final Map<String, ThrottleCfg> throttles = new LinkedHashMap<>();
+    // compresses large events for the clients which accept its codec, null for no compression.
+    private CompressionCfg compression;
+    // the threads map requests are run on, sharded by asset, 0 to run them on the network threads
+    // and -1 for the ServerEndpoint.workers property.
+    private int workers = -1;
 
     @Override
     public ServerCfg install(String path, AssetTree assetTree) throws IOException {
         LOGGER.info(path + ": Starting listener on port " + port);
-        serverEndpoint = new ServerEndpoint("*:" + port, assetTree, wireType, heartbeatIntervalTicks, heartbeatIntervalTimeout);
+        serverEndpoint = new ServerEndpoint("*:" + port, assetTree, wireType, heartbeatIntervalTicks, heartbeatIntervalTimeout,
+                throttles.isEmpty() ? ServerEndpoint.defaultThrottles() : throttles, compression,
+                workers < 0 ? ServerEndpoint.WORKERS : workers);
         if (dumpWhenInDebug)
             YamlLogging.setAll(true);
         return this;
@@ -52,6 +63,27 @@ public class ServerCfg implements Installable, Marshallable {
         wire.read(() -> "dumpWhenInDebug").bool(b -> dumpWhenInDebug = b);
         wire.read(() -> "heartbeatIntervalTicks").int32(i -> heartbeatIntervalTicks = i);
         wire.read(() -> "heartbeatIntervalTimeout").int32(i -> heartbeatIntervalTimeout = i);
+        final StringBuilder name = new StringBuilder();
+        while (wire.hasMore()) {
+            final ValueIn valueIn = wire.readEventName(name);
+            if ("throttles".contentEquals(name)) {
+                valueIn.marshallable(m -> {
+                    StringBuilder path = Wires.acquireStringBuilder();
+                    while (m.hasMore()) {
+                        ThrottleCfg throttle = new ThrottleCfg();
+                        m.readEventName(path).marshallable(throttle);
+                        throttles.put(path.toString(), throttle);
+                    }
+                });
+            } else if ("workers".contentEquals(name)) {
+                workers = valueIn.int32();
+            } else if ("compression".contentEquals(name)) {
+                compression = new CompressionCfg();
+                valueIn.marshallable(compression);
+            } else {
+                ValueIn.DISCARD.accept(valueIn);
+            }
+        }
     }
 
     @Override
@@ -61,6 +93,15 @@ public class ServerCfg implements Installable, Marshallable {
         wire.write(() -> "dumpWhenInDebug").bool(dumpWhenInDebug);
         wire.write(() -> "heartbeatIntervalTicks").int32(heartbeatIntervalTicks);
         wire.write(() -> "heartbeatIntervalTimeout").int32(heartbeatIntervalTimeout);
+        if (!throttles.isEmpty())
+            wire.write(() -> "throttles").marshallable(m -> {
+                for (Map.Entry<String, ThrottleCfg> entry : throttles.entrySet())
+                    m.writeEventName(entry::getKey).marshallable(entry.getValue());
+            });
+        if (compression != null)
+            wire.write(() -> "compression").marshallable(compression);
+        if (workers >= 0)
+            wire.write(() -> "workers").int32(workers);
     }
 
     @Override
@@ -72,6 +113,9 @@ public class ServerCfg implements Installable, Marshallable {
                 ", serverEndpoint=" + serverEndpoint +
                 ", heartbeatIntervalTicks=" + heartbeatIntervalTicks +
                 ", heartbeatIntervalTimeout=" + heartbeatIntervalTimeout +
+                ", throttles=" + throttles +
+                ", compression=" + compression +
+                ", workers=" + workers +
                 '}';
     }
 }
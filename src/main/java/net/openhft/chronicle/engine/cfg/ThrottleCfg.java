@@ -0,0 +1,73 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.cfg;
+
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The rate at which events are sent to each remote subscription of an asset, and the number of
+ * events which can be sent at once after a quiet period.
+ */
+public class ThrottleCfg implements Marshallable {
+    private int eventsPerSecond;
+    private int burst;
+
+    public ThrottleCfg() {
+    }
+
+    public ThrottleCfg(int eventsPerSecond, int burst) {
+        this.eventsPerSecond = eventsPerSecond;
+        this.burst = burst;
+    }
+
+    public int eventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    /**
+     * @return the size of the bucket, defaults to one second of events.
+     */
+    public int burst() {
+        return burst > 0 ? burst : eventsPerSecond;
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+        wire.read(() -> "eventsPerSecond").int32(i -> eventsPerSecond = i);
+        if (wire.hasMore())
+            wire.read(() -> "burst").int32(i -> burst = i);
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wire) {
+        wire.write(() -> "eventsPerSecond").int32(eventsPerSecond);
+        wire.write(() -> "burst").int32(burst);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "ThrottleCfg{" +
+                "eventsPerSecond=" + eventsPerSecond +
+                ", burst=" + burst +
+                '}';
+    }
+}
@@ -16,13 +16,17 @@
 
 package net.openhft.chronicle.engine.collection;
 
+import net.openhft.chronicle.core.io.Closeable;
 import net.openhft.chronicle.network.connection.AbstractStatelessClient;
 import net.openhft.chronicle.network.connection.TcpChannelHub;
 import net.openhft.chronicle.wire.ValueIn;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -33,6 +37,8 @@ import static net.openhft.chronicle.network.connection.CoreFields.reply;
 public class ClientWiredStatelessChronicleCollection<U, E extends Collection<U>> extends
         AbstractStatelessClient<EventId> implements Collection<U> {
 
+    private static final int PAGE_SIZE = Integer.getInteger("ClientWiredStatelessChronicleCollection.pageSize", 1000);
+
     @NotNull
     private final Function<ValueIn, U> consumer;
     @NotNull
@@ -62,34 +68,13 @@ public class ClientWiredStatelessChronicleCollection<U, E extends Collection<U>>
         return proxyReturnBooleanWithArgs(contains, o);
     }
 
-    @Override
-    @NotNull
-    public Iterator<U> iterator() {
-        // todo improve numberOfSegments
-        final int numberOfSegments = proxyReturnUint16(EventId.numberOfSegments);
-
-        // todo iterate the segments for the moment we just assume one segment
-        return segmentSet(1).iterator();
-    }
-
     /**
-     * gets the iterator for a given segment
-     *
-     * @param segment the maps segment number
-     * @return and iterator for the {@code segment}
+     * @return an iterator which reads the collection from the server a page at a time.
      */
+    @Override
     @NotNull
-    private E segmentSet(int segment) {
-        final E e = factory.get();
-
-        return proxyReturnWireConsumerInOut(iterator, reply, valueOut -> valueOut.uint16(segment),
-                read -> {
-                    read.sequence(s -> {
-                        while (read.hasNextSequenceItem())
-                            e.add(consumer.apply(read));
-                    });
-                    return e;
-                });
+    public PagedIterator iterator() {
+        return new PagedIterator();
     }
 
     @Override
@@ -101,17 +86,7 @@ public class ClientWiredStatelessChronicleCollection<U, E extends Collection<U>>
     @NotNull
     private E asCollection() {
         final E e = factory.get();
-        final int numberOfSegments = proxyReturnUint16(EventId.numberOfSegments);
-
-        for (long j = 0; j < numberOfSegments; j++) {
-            final long i = j;
-            proxyReturnWireConsumerInOut(iterator, reply, valueOut -> valueOut.uint16(i),
-                    read -> read.sequence(r -> {
-                        while (r.hasNextSequenceItem()) {
-                            e.add(consumer.apply(r));
-                        }
-                    }));
-        }
+        iterator().forEachRemaining(e::add);
         return e;
     }
 
@@ -155,4 +130,63 @@ public class ClientWiredStatelessChronicleCollection<U, E extends Collection<U>>
     public void clear() {
         proxyReturnVoid(clear);
     }
-}
\ No newline at end of file
+
+    /**
+     * Iterates over a server side cursor, the cursor is freed when the last page is read, on
+     * close() or when the connection ends.
+     */
+    public class PagedIterator implements Iterator<U>, Closeable {
+        private final List<U> page = new ArrayList<>();
+        private int index = 0;
+        // 0 before the first page is read and after the last one.
+        private long cursor = 0;
+        private boolean done = false;
+
+        @Override
+        public boolean hasNext() {
+            while (index >= page.size()) {
+                if (done)
+                    return false;
+                readPage();
+            }
+            return true;
+        }
+
+        @Override
+        public U next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return page.get(index++);
+        }
+
+        private void readPage() {
+            page.clear();
+            index = 0;
+            final long cursor0 = cursor;
+            cursor = proxyReturnWireConsumerInOut(nextPage, reply,
+                    valueOut -> valueOut.marshallable(m -> {
+                        m.write(Params.cursor).int64(cursor0);
+                        m.write(Params.pageSize).int32(PAGE_SIZE);
+                    }),
+                    read -> read.applyToMarshallable(m -> {
+                        m.read(Params.page).sequence(s -> {
+                            while (s.hasNextSequenceItem())
+                                page.add(consumer.apply(s));
+                        });
+                        return m.read(Params.cursor).int64();
+                    }));
+            done = cursor == 0;
+        }
+
+        @Override
+        public void close() {
+            if (cursor != 0) {
+                final long cursor0 = cursor;
+                sendEventAsync(closeCursor, valueOut -> valueOut.int64(cursor0), true);
+                cursor = 0;
+            }
+            done = true;
+            page.clear();
+        }
+    }
+}
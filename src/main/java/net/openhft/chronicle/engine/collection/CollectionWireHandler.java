@@ -22,6 +22,7 @@ package net.openhft.chronicle.engine.collection;
 
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.engine.server.internal.WireKeyLookup;
 import net.openhft.chronicle.network.connection.CoreFields;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
@@ -31,6 +32,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.StreamCorruptedException;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -44,6 +49,9 @@ public class CollectionWireHandler<U, C extends Collection<U>> {
 
     private static final int SIZE_OF_SIZE = 4;
     private static final Logger LOG = LoggerFactory.getLogger(CollectionWireHandler.class);
+    private static final WireKeyLookup<EventId> EVENT_IDS = new WireKeyLookup<>(EventId.class);
+    // a paged iteration not read from for this long is dropped.
+    private static final long CURSOR_TIMEOUT_MS = Long.getLong("CollectionWireHandler.cursorTimeoutMs", 60_000);
     private Function<ValueIn, U> fromWire;
     private BiConsumer<ValueOut, U> toWire;
 
@@ -54,6 +62,10 @@ public class CollectionWireHandler<U, C extends Collection<U>> {
     private C underlyingCollection;
     private long tid;
     private Supplier<C> factory;
+    // the iterators of the paged iterations still open on this connection, by cursor id.
+    private final Map<Long, Cursor<U>> cursors = new ConcurrentHashMap<>();
+    private final AtomicLong nextCursor = new AtomicLong(1);
+    private long lastExpiry = System.currentTimeMillis();
 
     private final ReadMarshallable dataConsumer = new ReadMarshallable() {
         @Override
@@ -69,86 +81,87 @@ public class CollectionWireHandler<U, C extends Collection<U>> {
                 outWire.writeDocument(true, w -> w.writeEventName(CoreFields.tid).int64
                         (CollectionWireHandler.this.tid));
 
+                final EventId eventId = EVENT_IDS.lookup(eventName);
+                expireIdleCursors();
                 outWire.writeDocument(false, out -> {
-
-                    // note :  remove on the key-set returns a boolean and on the map returns the
-                    // old value
-                    if (EventId.remove.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(underlyingCollection.remove(fromWire.apply(valueIn)));
-                        return;
-                    }
-
-                    // note :  remove on the key-set returns a boolean and on the map returns the
-                    // old value
-                    if (EventId.iterator.contentEquals(eventName)) {
-                        final ValueOut valueOut = out.writeEventName(CoreFields.reply);
-                        valueOut.sequence(v -> underlyingCollection.forEach(e -> toWire.accept(v, e)));
-                        return;
-                    }
-
-                    if (EventId.numberOfSegments.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).int32(1);
-                        return;
-                    }
-
-                    if (EventId.isEmpty.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(underlyingCollection.isEmpty());
-                        return;
-                    }
-
-                    if (EventId.size.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).int32(underlyingCollection.size());
-                        return;
-                    }
-
-                    if (EventId.clear.contentEquals(eventName)) {
-                        underlyingCollection.clear();
-                        return;
-                    }
-
-                    if (EventId.contains.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.contains(fromWire.apply(valueIn)));
-                        return;
-                    }
-
-                    if (EventId.add.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.add(fromWire.apply(valueIn)));
-                        return;
-                    }
-
-                    if (EventId.remove.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.remove(fromWire.apply(valueIn)));
-                        return;
-                    }
-
-                    if (EventId.containsAll.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.remove(collectionFromWire()));
-                        return;
+                    if (eventId == null)
+                        throw new IllegalStateException("unsupported event=" + eventName);
+
+                    switch (eventId) {
+                        // note :  remove on the key-set returns a boolean and on the map returns the
+                        // old value
+                        case remove:
+                            outWire.write(CoreFields.reply).bool(underlyingCollection.remove(fromWire.apply(valueIn)));
+                            return;
+
+                        case iterator: {
+                            final ValueOut valueOut = out.writeEventName(CoreFields.reply);
+                            valueOut.sequence(v -> underlyingCollection.forEach(e -> toWire.accept(v, e)));
+                            return;
+                        }
+
+                        case nextPage:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = nextPage.params();
+                                final long cursor = wire.read(params[0]).int64();
+                                final int pageSize = wire.read(params[1]).int32();
+                                writePage(out.writeEventName(CoreFields.reply), cursor, pageSize);
+                            });
+                            return;
+
+                        case closeCursor:
+                            cursors.remove(valueIn.int64());
+                            return;
+
+                        case numberOfSegments:
+                            outWire.write(CoreFields.reply).int32(1);
+                            return;
+
+                        case isEmpty:
+                            outWire.write(CoreFields.reply).bool(underlyingCollection.isEmpty());
+                            return;
+
+                        case size:
+                            outWire.write(CoreFields.reply).int32(underlyingCollection.size());
+                            return;
+
+                        case clear:
+                            underlyingCollection.clear();
+                            return;
+
+                        case contains:
+                            outWire.write(CoreFields.reply).bool(
+                                    underlyingCollection.contains(fromWire.apply(valueIn)));
+                            return;
+
+                        case add:
+                            outWire.write(CoreFields.reply).bool(
+                                    underlyingCollection.add(fromWire.apply(valueIn)));
+                            return;
+
+                        case containsAll:
+                            outWire.write(CoreFields.reply).bool(
+                                    underlyingCollection.remove(collectionFromWire()));
+                            return;
+
+                        case addAll:
+                            outWire.write(CoreFields.reply).bool(
+                                    underlyingCollection.addAll(collectionFromWire()));
+                            return;
+
+                        case removeAll:
+                            outWire.write(CoreFields.reply).bool(
+                                    underlyingCollection.removeAll(collectionFromWire()));
+                            return;
+
+                        case retainAll:
+                            outWire.write(CoreFields.reply).bool(
+                                    underlyingCollection.retainAll(collectionFromWire()));
+                            return;
+
+                        default:
+                            throw new IllegalStateException("unsupported event=" + eventName);
                     }
-
-                    if (EventId.addAll.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.addAll(collectionFromWire()));
-                        return;
-                    }
-
-                    if (EventId.removeAll.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.removeAll(collectionFromWire()));
-                        return;
-                    }
-
-                    if (EventId.retainAll.contentEquals(eventName)) {
-                        outWire.write(CoreFields.reply).bool(
-                                underlyingCollection.retainAll(collectionFromWire()));
-                        return;
-                    }
-
-                    throw new IllegalStateException("unsupported event=" + eventName);
                 });
             } catch (Exception e) {
                 LOG.error("", e);
@@ -166,6 +179,57 @@ public class CollectionWireHandler<U, C extends Collection<U>> {
         }
     };
 
+    /**
+     * Writes up to pageSize elements and the cursor to read the next page with, or 0 if there are
+     * no more. A cursor of 0 starts a new iteration.
+     */
+    private void writePage(@NotNull ValueOut valueOut, long cursor, int pageSize) {
+        final Cursor<U> open = cursor == 0 ? null : cursors.get(cursor);
+        if (cursor != 0 && open == null)
+            throw new IllegalStateException("unknown or expired cursor=" + cursor);
+        final Iterator<U> it = open == null ? underlyingCollection.iterator() : open.iterator;
+        valueOut.marshallable(m -> {
+            m.write(Params.page).sequence(v -> {
+                for (int i = 0; i < pageSize && it.hasNext(); i++)
+                    toWire.accept(v, it.next());
+            });
+            long next = 0;
+            if (it.hasNext()) {
+                if (open == null) {
+                    next = nextCursor.getAndIncrement();
+                    cursors.put(next, new Cursor<>(it));
+                } else {
+                    next = cursor;
+                    open.lastUsed = System.currentTimeMillis();
+                }
+            } else if (cursor != 0) {
+                cursors.remove(cursor);
+            }
+            m.write(Params.cursor).int64(next);
+        });
+    }
+
+    /**
+     * Frees the cursors of the iterations which haven't been read from for the timeout, checked
+     * at most once a second.
+     */
+    private void expireIdleCursors() {
+        if (cursors.isEmpty())
+            return;
+        final long now = System.currentTimeMillis();
+        if (now - lastExpiry < 1000)
+            return;
+        lastExpiry = now;
+        cursors.values().removeIf(c -> now - c.lastUsed > CURSOR_TIMEOUT_MS);
+    }
+
+    /**
+     * Frees the cursors of iterations the client didn't finish.
+     */
+    public void onEndOfConnection() {
+        cursors.clear();
+    }
+
     private C collectionFromWire() {
         C c = factory.get();
         @SuppressWarnings("ConstantConditions")
@@ -200,9 +264,24 @@ public class CollectionWireHandler<U, C extends Collection<U>> {
         }
     }
 
+    /**
+     * An iteration left open for the client's next page.
+     */
+    static class Cursor<U> {
+        final Iterator<U> iterator;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        Cursor(@NotNull Iterator<U> iterator) {
+            this.iterator = iterator;
+        }
+    }
+
     enum Params implements WireKey {
         key,
         segment,
+        cursor,
+        pageSize,
+        page
     }
 
     enum EventId implements ParameterizeWireKey {
@@ -218,7 +297,9 @@ public class CollectionWireHandler<U, C extends Collection<U>> {
         numberOfSegments,
         contains(CollectionWireHandler.Params.key),
         identifier,
-        iterator(CollectionWireHandler.Params.segment);
+        iterator(CollectionWireHandler.Params.segment),
+        nextPage(CollectionWireHandler.Params.cursor, CollectionWireHandler.Params.pageSize),
+        closeCursor(CollectionWireHandler.Params.cursor);
 
         private final WireKey[] params;
 
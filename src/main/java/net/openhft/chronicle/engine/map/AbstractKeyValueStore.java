@@ -26,7 +26,9 @@ import net.openhft.chronicle.engine.api.tree.RequestContext;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -124,6 +126,12 @@ public class AbstractKeyValueStore<K, V> implements KeyValueStore<K, V> {
         return kvStore.remove(key);
     }
 
+    @NotNull
+    @Override
+    public List<V> getAll(@NotNull Collection<K> keys) {
+        return kvStore.getAll(keys);
+    }
+
     @Nullable
     @Override
     public V get(K key) {
@@ -196,6 +204,6 @@ public class AbstractKeyValueStore<K, V> implements KeyValueStore<K, V> {
 
     @Override
     public void accept(final ReplicationEntry replicationEntry) {
-        throw new UnsupportedOperationException("todo");
+        kvStore.accept(replicationEntry);
     }
 }
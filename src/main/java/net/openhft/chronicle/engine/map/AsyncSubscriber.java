@@ -0,0 +1,214 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.pubsub.TopicSubscriber;
+import net.openhft.chronicle.threads.HandlerPriority;
+import net.openhft.chronicle.threads.api.EventHandler;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands events to a bounded, lock-free ring buffer which is drained by an {@link EventLoop}, so
+ * the thread publishing an event never runs the underlying subscriber itself.
+ *
+ * Many threads may publish at once, but only one thread drains the buffer at a time so the
+ * underlying subscriber sees the events in the order they were published. When the buffer is
+ * full the publisher helps drain it, a subscriber which can't keep up slows the writers down
+ * rather than losing events.
+ */
+class AsyncSubscriber<E> implements Subscriber<E>, EventHandler {
+    static final int DEFAULT_CAPACITY = Integer.getInteger("AsyncSubscriber.capacity", 1024);
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSubscriber.class);
+
+    @NotNull
+    private final Subscriber<E> subscriber;
+    private final AtomicReferenceArray<E> ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean invalid = false;
+    private volatile boolean endOfSubscription = false;
+
+    AsyncSubscriber(@NotNull EventLoop eventLoop, @NotNull Subscriber<E> subscriber) {
+        this(eventLoop, DEFAULT_CAPACITY, subscriber);
+    }
+
+    AsyncSubscriber(@NotNull EventLoop eventLoop, int capacity, @NotNull Subscriber<E> subscriber) {
+        this.subscriber = subscriber;
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        eventLoop.addHandler(this);
+    }
+
+    /**
+     * Wraps a TopicSubscriber so it is notified on the event loop.
+     */
+    @NotNull
+    static <T, M> TopicSubscriber<T, M> async(@NotNull EventLoop eventLoop,
+                                              @NotNull TopicSubscriber<T, M> topicSubscriber) {
+        AsyncSubscriber<Map.Entry<T, M>> async = new AsyncSubscriber<>(eventLoop,
+                new Subscriber<Map.Entry<T, M>>() {
+                    @Override
+                    public void onMessage(@NotNull Map.Entry<T, M> e) throws InvalidSubscriberException {
+                        topicSubscriber.onMessage(e.getKey(), e.getValue());
+                    }
+
+                    @Override
+                    public void onEndOfSubscription() {
+                        topicSubscriber.onEndOfSubscription();
+                    }
+                });
+
+        return new TopicSubscriber<T, M>() {
+            @Override
+            public void onMessage(T topic, M message) throws InvalidSubscriberException {
+                async.onMessage(new SimpleImmutableEntry<>(topic, message));
+            }
+
+            @Override
+            public void onEndOfSubscription() {
+                async.onEndOfSubscription();
+            }
+        };
+    }
+
+    @Override
+    public void onMessage(@NotNull E e) throws InvalidSubscriberException {
+        if (invalid)
+            throw new InvalidSubscriberException();
+
+        // a reused event is only valid until this returns.
+        if (e instanceof MapEvent)
+            e = (E) ((MapEvent) e).copy();
+        while (!offer(e)) {
+            // the buffer is full so help drain it rather than wait for the event loop.
+            if (drain() == 0)
+                Thread.yield();
+        }
+    }
+
+    @Override
+    public void onEndOfSubscription() {
+        // delivered by the event loop once the pending events have been drained.
+        endOfSubscription = true;
+    }
+
+    private boolean offer(@NotNull E e) {
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() >= ring.length())
+                return false;
+        } while (!tail.compareAndSet(t, t + 1));
+
+        ring.lazySet((int) t & mask, e);
+        return true;
+    }
+
+    /**
+     * @return the number of events removed from the buffer, 0 if empty or another thread is
+     * draining it.
+     */
+    private int drain() {
+        if (!draining.compareAndSet(false, true))
+            return 0;
+        int count = 0;
+        try {
+            long h = head.get();
+            for (int i = 0; i < ring.length(); i++, h++) {
+                int index = (int) h & mask;
+                E e = ring.get(index);
+                // either empty or the publisher has claimed the slot but not written it yet.
+                if (e == null)
+                    break;
+                ring.lazySet(index, null);
+                head.lazySet(h + 1);
+                count++;
+                deliver(e);
+            }
+        } finally {
+            draining.set(false);
+        }
+        return count;
+    }
+
+    private void deliver(@NotNull E e) {
+        if (invalid)
+            return;
+        try {
+            subscriber.onMessage(e);
+        } catch (InvalidSubscriberException ise) {
+            invalid = true;
+        } catch (RuntimeException re) {
+            LOG.error("", re);
+        }
+    }
+
+    public int pendingEvents() {
+        return (int) (tail.get() - head.get());
+    }
+
+    @NotNull
+    @Override
+    public HandlerPriority priority() {
+        return HandlerPriority.MEDIUM;
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException {
+        // the subscriber has been dropped, so no more events will be published to it.
+        if (invalid)
+            throw new InvalidEventHandlerException();
+        if (drain() > 0)
+            return true;
+
+        if (endOfSubscription && pendingEvents() == 0) {
+            try {
+                subscriber.onEndOfSubscription();
+            } catch (Exception e) {
+                LOG.error("", e);
+            }
+            throw new InvalidEventHandlerException();
+        }
+        return false;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "AsyncSubscriber{" +
+                "subscriber=" + subscriber +
+                ", pendingEvents=" + pendingEvents() +
+                '}';
+    }
+}
@@ -133,6 +133,32 @@ public class CMap2EngineReplicator implements EngineReplication,
                 }
             }
 
+            @Override
+            public void forEachInPlace(@NotNull Consumer<ReplicationEntry> consumer) {
+                final PointerBytesStore key = keyLocal.get();
+                final PointerBytesStore value = valueLocal.get();
+                final VanillaReplicatedEntry entry = new VanillaReplicatedEntry(key, null, 0,
+                        (byte) 0, false, 0, remoteIdentifier);
+
+                while (hasNext()) {
+                    instance.nextEntry((k, v, timestamp, identifier, isDeleted, bootStrapTimeStamp) -> {
+                        key.set(k.address() + k.position(), k.remaining());
+                        if (v == null) {
+                            entry.value(null);
+                        } else {
+                            value.set(v.address() + v.position(), v.remaining());
+                            entry.value(value);
+                        }
+                        entry.timestamp(timestamp);
+                        entry.identifier(identifier);
+                        entry.isDeleted(isDeleted);
+                        entry.bootStrapTimeStamp(bootStrapTimeStamp);
+                        consumer.accept(entry);
+                        return true;
+                    });
+                }
+            }
+
             public boolean hasNext() {
                 return instance.hasNext();
             }
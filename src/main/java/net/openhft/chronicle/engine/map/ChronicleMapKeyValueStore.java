@@ -17,7 +17,6 @@
 package net.openhft.chronicle.engine.map;
 
 import net.openhft.chronicle.bytes.IORuntimeException;
-import net.openhft.chronicle.core.Jvm;
 import net.openhft.chronicle.core.io.Closeable;
 import net.openhft.chronicle.engine.api.EngineReplication;
 import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
@@ -28,9 +27,6 @@ import net.openhft.chronicle.engine.api.pubsub.SubscriptionConsumer;
 import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.AssetNotFoundException;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
-import net.openhft.chronicle.engine.fs.Cluster;
-import net.openhft.chronicle.engine.fs.Clusters;
-import net.openhft.chronicle.engine.fs.HostDetails;
 import net.openhft.chronicle.engine.tree.HostIdentifier;
 import net.openhft.chronicle.hash.replication.EngineReplicationLangBytesConsumer;
 import net.openhft.chronicle.map.*;
@@ -145,48 +141,9 @@ public class ChronicleMapKeyValueStore<K, MV, V> implements AuthenticatedKeyValu
             }
         }
 
-        if (hostIdentifier != null) {
-            Clusters clusters = asset.findView(Clusters.class);
-
-            if (clusters == null) {
-                LOG.warn("no clusters found.");
-                return;
-            }
-
-            final Cluster cluster = clusters.get(context.cluster());
-
-            if (cluster == null) {
-                LOG.warn("no cluster found name=" + context.cluster());
-                return;
-            }
-
-            byte localIdentifier = hostIdentifier.hostId();
-
-            if (LOG.isDebugEnabled())
-                LOG.debug("hostDetails : localIdentifier=" + localIdentifier + ",cluster=" + cluster.hostDetails());
-
-            for (HostDetails hostDetails : cluster.hostDetails()) {
-
-                // its the identifier with the larger values that will establish the connection
-                int remoteIdentifier = hostDetails.hostId;
-
-                if (remoteIdentifier <= localIdentifier) {
-
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("skipping : attempting to connect to localIdentifier=" + localIdentifier + ",remoteIdentifier=" + remoteIdentifier);
-
-                    continue;
-                }
-
-                if (LOG.isDebugEnabled())
-                    LOG.debug("attempting to connect to localIdentifier=" + localIdentifier + ",remoteIdentifier=" + remoteIdentifier);
-
-                final TcpChannelHub tcpChannelHub = hostDetails.acquireTcpChannelHub(asset, eventLoop, context.wireType());
-                ReplicationHub replicationHub = new ReplicationHub(context, tcpChannelHub, eventLoop, isClosed);
-                replicationHub.bootstrap(engineReplicator1, localIdentifier, (byte) remoteIdentifier);
-            }
-
-        }
+        if (hostIdentifier != null)
+            ReplicationHub.replicateWithCluster(context, asset, eventLoop, isClosed,
+                    engineReplicator1, hostIdentifier.hostId());
     }
 
     @NotNull
@@ -236,22 +193,19 @@ public class ChronicleMapKeyValueStore<K, MV, V> implements AuthenticatedKeyValu
         return chronicleMap.size();
     }
 
+    /**
+     * ChronicleMap 2.x has no public API to iterate one of its segments, so this store reports a
+     * single segment and a subscriber's bootstrap walks the whole map on one thread.
+     */
     @Override
     public void keysFor(int segment, @NotNull SubscriptionConsumer<K> kConsumer) throws InvalidSubscriberException {
-        //Ignore the segments and return keysFor the whole map
         notifyEachEvent(chronicleMap.keySet(), kConsumer);
     }
 
     @Override
     public void entriesFor(int segment, @NotNull SubscriptionConsumer<MapEvent<K, V>> kvConsumer) throws InvalidSubscriberException {
-        //Ignore the segments and return entriesFor the whole map
-        chronicleMap.entrySet().stream().map(e -> InsertedEvent.of(assetFullName, e.getKey(), e.getValue())).forEach(e -> {
-            try {
-                kvConsumer.accept(e);
-            } catch (InvalidSubscriberException t) {
-                throw Jvm.rethrow(t);
-            }
-        });
+        for (Map.Entry<K, V> e : chronicleMap.entrySet())
+            kvConsumer.accept(InsertedEvent.of(assetFullName, e.getKey(), e.getValue()));
     }
 
     @NotNull
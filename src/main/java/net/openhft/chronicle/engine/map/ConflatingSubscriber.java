@@ -0,0 +1,191 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.threads.HandlerPriority;
+import net.openhft.chronicle.threads.api.EventHandler;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps only the latest event per key while the subscriber is behind.
+ *
+ * Events for a key which is already pending are merged with the pending event, so the
+ * subscriber sees a single Inserted, Updated or Removed event describing the change since it
+ * last saw that key. The memory used is bounded by the number of keys, not the update rate.
+ * Unlike the Throttler, superseded events are dropped.
+ *
+ * Subclasses decide when the subscriber has caught up by calling {@link #deliverPending} after
+ * {@link #onPending()} has been called.
+ */
+public abstract class ConflatingSubscriber<K, V> implements Subscriber<MapEvent<K, V>> {
+    private static final Logger LOG = LoggerFactory.getLogger(ConflatingSubscriber.class);
+
+    // the pending event of each key, in the order the keys became pending, guarded by itself.
+    private final Map<K, MapEvent<K, V>> pending = new LinkedHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean invalid = false;
+
+    /**
+     * Conflate the events for a subscriber which is notified on an EventLoop.
+     */
+    @NotNull
+    public static <K, V> ConflatingSubscriber<K, V> onEventLoop(@NotNull EventLoop eventLoop,
+                                                                @NotNull Subscriber<MapEvent<K, V>> subscriber) {
+        return new ConflatingSubscriber<K, V>() {
+            @Override
+            protected void onPending() {
+                runOnce(eventLoop, () -> deliverPending(subscriber));
+            }
+
+            @Override
+            public void onEndOfSubscription() {
+                runOnce(eventLoop, () -> {
+                    deliverPending(subscriber);
+                    subscriber.onEndOfSubscription();
+                });
+            }
+
+            @NotNull
+            @Override
+            public String toString() {
+                return "ConflatingSubscriber{" +
+                        "subscriber=" + subscriber +
+                        ", pendingEvents=" + pendingEvents() +
+                        '}';
+            }
+        };
+    }
+
+    static void runOnce(@NotNull EventLoop eventLoop, @NotNull Runnable runnable) {
+        eventLoop.addHandler(new EventHandler() {
+            @Override
+            public boolean action() throws InvalidEventHandlerException {
+                try {
+                    runnable.run();
+                } catch (Exception e) {
+                    LOG.error("", e);
+                }
+                throw new InvalidEventHandlerException();
+            }
+
+            @NotNull
+            @Override
+            public HandlerPriority priority() {
+                return HandlerPriority.MEDIUM;
+            }
+        });
+    }
+
+    /**
+     * Merge two events for the same key, the earlier one not yet delivered.
+     *
+     * @return the event describing both changes, or null if they cancel each other out.
+     */
+    @Nullable
+    static <K, V> MapEvent<K, V> merge(@NotNull MapEvent<K, V> earlier, @NotNull MapEvent<K, V> later) {
+        boolean existedBefore = !(earlier instanceof InsertedEvent);
+        boolean existsAfter = !(later instanceof RemovedEvent);
+        String assetName = later.assetName();
+        K key = later.getKey();
+        if (existedBefore) {
+            V oldValue = earlier.oldValue();
+            return existsAfter
+                    ? UpdatedEvent.of(assetName, key, oldValue, later.getValue())
+                    : RemovedEvent.of(assetName, key, oldValue);
+        }
+        return existsAfter
+                ? InsertedEvent.of(assetName, key, later.getValue())
+                : null;
+    }
+
+    /**
+     * Called when there is an event pending and none were before. The implementation should
+     * arrange for {@link #deliverPending} to be called when the subscriber is ready.
+     */
+    protected abstract void onPending();
+
+    @Override
+    public void onMessage(@NotNull MapEvent<K, V> event) throws InvalidSubscriberException {
+        if (invalid)
+            throw new InvalidSubscriberException();
+
+        event = event.copy();
+        K key = event.getKey();
+        synchronized (pending) {
+            MapEvent<K, V> earlier = pending.get(key);
+            MapEvent<K, V> merged = earlier == null ? event : merge(earlier, event);
+            // replacing the event of a pending key keeps its place in the order.
+            if (merged == null)
+                pending.remove(key);
+            else
+                pending.put(key, merged);
+        }
+
+        if (scheduled.compareAndSet(false, true))
+            onPending();
+    }
+
+    /**
+     * Pass every pending event to the subscriber as one batch.
+     *
+     * @param subscriber to notify, usually the subscriber being conflated for.
+     */
+    public void deliverPending(@NotNull Subscriber<MapEvent<K, V>> subscriber) {
+        final List<MapEvent<K, V>> events = drainPending();
+        if (events.isEmpty() || invalid)
+            return;
+        try {
+            subscriber.onMessages(events);
+        } catch (InvalidSubscriberException e) {
+            invalid = true;
+        }
+    }
+
+    /**
+     * @return the pending events, in the order their keys first became pending.
+     */
+    @NotNull
+    public List<MapEvent<K, V>> drainPending() {
+        // clear first so an event added while draining schedules another call.
+        scheduled.set(false);
+        synchronized (pending) {
+            final List<MapEvent<K, V>> events = new ArrayList<>(pending.values());
+            pending.clear();
+            return events;
+        }
+    }
+
+    public int pendingEvents() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+}
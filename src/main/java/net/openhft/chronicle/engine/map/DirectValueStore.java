@@ -0,0 +1,389 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.BytesUtil;
+import net.openhft.chronicle.core.values.IntValue;
+import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
+import net.openhft.chronicle.engine.api.map.KeyValueStore;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.SubscriptionConsumer;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.map.VanillaEngineReplication.ReplicationData;
+import net.openhft.lang.io.DirectBytes;
+import net.openhft.lang.io.DirectStore;
+import net.openhft.lang.model.Byteable;
+import net.openhft.lang.model.Copyable;
+import net.openhft.lang.model.DataValueClasses;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * A KeyValueStore of data value records, e.g. the ReplicationData of a segment, kept off heap in
+ * fixed size slots. Only the index from key to slot is kept on the heap. <p> Every operation is
+ * synchronized, so a store should be used per segment. Values are copied in and out of the slots,
+ * so a value returned may be reused, and a value passed in is never retained.
+ */
+public class DirectValueStore<K, V extends Copyable<V>> implements KeyValueStore<K, V> {
+    private static final int SLOTS_PER_CHUNK = 1024;
+    // the contents of the BytesStore key being looked up.
+    private static final ThreadLocal<Bytes<ByteBuffer>> KEY_BYTES =
+            ThreadLocal.withInitial(Bytes::elasticByteBuffer);
+
+    private final Class<V> valueType;
+    // the key in the index must have value equality, it is only kept once retained.
+    private final Function<K, Object> indexKey;
+    private final UnaryOperator<Object> retainIndexKey;
+    private final Function<Object, K> keyFor;
+    // the key of a replicated entry, and how it updates the value of that key, if accepted.
+    @Nullable
+    private final Function<ReplicationEntry, K> entryKey;
+    @Nullable
+    private final BiConsumer<ReplicationEntry, V> fromEntry;
+    // a reference to the slot being read or written
+    private final V record;
+    private final int recordSize;
+    private final V previous;
+    private final List<DirectStore> stores = new ArrayList<>();
+    private final List<DirectBytes> chunks = new ArrayList<>();
+    private final Map<Object, Integer> slots = new HashMap<>();
+    private final List<Object> keysBySlot = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    public DirectValueStore(@NotNull Class<V> valueType,
+                            @NotNull Function<K, Object> indexKey,
+                            @NotNull Function<Object, K> keyFor) {
+        this(valueType, indexKey, index -> index, keyFor, null, null);
+    }
+
+    /**
+     * @param retainIndexKey copies an index key before it is added to the index
+     * @param entryKey       the key of a replicated entry, or null if entries are not accepted
+     * @param fromEntry      updates the value of that key from a replicated entry
+     */
+    public DirectValueStore(@NotNull Class<V> valueType,
+                            @NotNull Function<K, Object> indexKey,
+                            @NotNull UnaryOperator<Object> retainIndexKey,
+                            @NotNull Function<Object, K> keyFor,
+                            @Nullable Function<ReplicationEntry, K> entryKey,
+                            @Nullable BiConsumer<ReplicationEntry, V> fromEntry) {
+        this.valueType = valueType;
+        this.indexKey = indexKey;
+        this.retainIndexKey = retainIndexKey;
+        this.keyFor = keyFor;
+        this.entryKey = entryKey;
+        this.fromEntry = fromEntry;
+        this.record = DataValueClasses.newDirectReference(valueType);
+        this.recordSize = ((Byteable) record).maxSize();
+        this.previous = DataValueClasses.newInstance(valueType);
+    }
+
+    /**
+     * @return a store keyed by the contents of a BytesStore.
+     */
+    @NotNull
+    public static <V extends Copyable<V>> DirectValueStore<BytesStore, V> withBytesStoreKeys(
+            @NotNull Class<V> valueType) {
+        return new DirectValueStore<>(valueType,
+                DirectValueStore::lookupKey,
+                DirectValueStore::copyOf,
+                key -> BytesStore.wrap(((ByteBuffer) key).array()),
+                null, null);
+    }
+
+    /**
+     * @return a store of the ReplicationData of each key, which accepts replicated entries by
+     * recording their timestamp, identifier and whether they are deleted.
+     */
+    @NotNull
+    public static DirectValueStore<BytesStore, ReplicationData> forReplicationData() {
+        return new DirectValueStore<>(ReplicationData.class,
+                DirectValueStore::lookupKey,
+                DirectValueStore::copyOf,
+                key -> BytesStore.wrap(((ByteBuffer) key).array()),
+                ReplicationEntry::key,
+                (entry, data) -> {
+                    data.setTimestamp(entry.timestamp());
+                    data.setIdentifier(entry.identifier());
+                    data.setDeleted(entry.isDeleted());
+                });
+    }
+
+    /**
+     * @return a store keyed by the value of an IntValue.
+     */
+    @NotNull
+    public static <V extends Copyable<V>> DirectValueStore<IntValue, V> withIntValueKeys(
+            @NotNull Class<V> valueType) {
+        return new DirectValueStore<>(valueType,
+                IntValue::getValue,
+                key -> {
+                    IntValue value = DataValueClasses.newInstance(IntValue.class);
+                    value.setValue((Integer) key);
+                    return value;
+                });
+    }
+
+    /**
+     * @return a buffer over the contents of the key, only valid until the next lookup on this
+     * thread.
+     */
+    @NotNull
+    static ByteBuffer lookupKey(@NotNull BytesStore key) {
+        final Bytes<ByteBuffer> bytes = KEY_BYTES.get();
+        bytes.clear();
+        bytes.write(key, key.readPosition(), key.readRemaining());
+        final ByteBuffer buffer = bytes.underlyingObject();
+        buffer.limit((int) bytes.readRemaining());
+        buffer.position(0);
+        return buffer;
+    }
+
+    @NotNull
+    static ByteBuffer copyOf(@NotNull Object lookupKey) {
+        final ByteBuffer key = ((ByteBuffer) lookupKey).duplicate();
+        final ByteBuffer copy = ByteBuffer.allocate(key.remaining());
+        copy.put(key);
+        copy.flip();
+        return copy;
+    }
+
+    @NotNull
+    static byte[] toByteArray(@NotNull BytesStore bytes) {
+        final long start = bytes.readPosition();
+        final byte[] array = new byte[(int) (bytes.readLimit() - start)];
+        for (int i = 0; i < array.length; i++)
+            array[i] = bytes.readByte(start + i);
+        return array;
+    }
+
+    private void point(int slot) {
+        ((Byteable) record).bytes(chunks.get(slot / SLOTS_PER_CHUNK),
+                (long) (slot % SLOTS_PER_CHUNK) * recordSize);
+    }
+
+    private int acquireSlot(K key) {
+        final Integer slot = slots.get(indexKey.apply(key));
+        if (slot != null)
+            return slot;
+        final Object index = retainIndexKey.apply(indexKey.apply(key));
+        int newSlot;
+        if (freeSlots.isEmpty()) {
+            newSlot = keysBySlot.size();
+            keysBySlot.add(index);
+            if (newSlot / SLOTS_PER_CHUNK == chunks.size()) {
+                final DirectStore store = new DirectStore(null, (long) SLOTS_PER_CHUNK * recordSize, true);
+                stores.add(store);
+                chunks.add(store.bytes());
+            }
+        } else {
+            newSlot = freeSlots.pop();
+            keysBySlot.set(newSlot, index);
+        }
+        slots.put(index, newSlot);
+        return newSlot;
+    }
+
+    @Nullable
+    private Integer slot(K key) {
+        return slots.get(indexKey.apply(key));
+    }
+
+    @NotNull
+    private V read(int slot, @Nullable Object using) {
+        point(slot);
+        final V value = valueType.isInstance(using)
+                ? valueType.cast(using)
+                : DataValueClasses.newInstance(valueType);
+        value.copyFrom(record);
+        return value;
+    }
+
+    private void write(int slot, @NotNull V value) {
+        point(slot);
+        record.copyFrom(value);
+    }
+
+    @Override
+    public synchronized boolean put(K key, @NotNull V value) {
+        final boolean replaced = slot(key) != null;
+        write(acquireSlot(key), value);
+        return replaced;
+    }
+
+    @Nullable
+    @Override
+    public synchronized V getAndPut(K key, @NotNull V value) {
+        final Integer slot = slot(key);
+        final V old = slot == null ? null : read(slot, null);
+        write(acquireSlot(key), value);
+        return old;
+    }
+
+    @Nullable
+    @Override
+    public synchronized V putIfAbsent(K key, @NotNull V value) {
+        final Integer slot = slot(key);
+        if (slot != null)
+            return read(slot, null);
+        write(acquireSlot(key), value);
+        return null;
+    }
+
+    @Override
+    public synchronized boolean replaceIfEqual(K key, V oldValue, @NotNull V newValue) {
+        final Integer slot = slot(key);
+        if (slot == null || !BytesUtil.equals(read(slot, previous), oldValue))
+            return false;
+        write(slot, newValue);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(K key) {
+        final Integer slot = slots.remove(indexKey.apply(key));
+        if (slot == null)
+            return false;
+        keysBySlot.set(slot, null);
+        freeSlots.push(slot);
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public synchronized V getAndRemove(K key) {
+        final Integer slot = slot(key);
+        if (slot == null)
+            return null;
+        final V old = read(slot, null);
+        remove(key);
+        return old;
+    }
+
+    @Nullable
+    @Override
+    public synchronized V getUsing(K key, Object value) {
+        final Integer slot = slot(key);
+        return slot == null ? null : read(slot, value);
+    }
+
+    @Override
+    public synchronized long longSize() {
+        return slots.size();
+    }
+
+    @NotNull
+    private synchronized List<K> keys() {
+        final List<K> keys = new ArrayList<>(slots.size());
+        for (Object index : slots.keySet())
+            keys.add(keyFor.apply(index));
+        return keys;
+    }
+
+    @Override
+    public void keysFor(int segment, @NotNull SubscriptionConsumer<K> kConsumer) throws InvalidSubscriberException {
+        for (K key : keys())
+            kConsumer.accept(key);
+    }
+
+    @Override
+    public void entriesFor(int segment, @NotNull SubscriptionConsumer<MapEvent<K, V>> kvConsumer) throws InvalidSubscriberException {
+        for (K key : keys()) {
+            final V value = getUsing(key, null);
+            if (value != null)
+                kvConsumer.accept(InsertedEvent.of("", key, value));
+        }
+    }
+
+    /**
+     * @return the keys at the time of the call, so the values can be changed while iterating.
+     */
+    @NotNull
+    @Override
+    public Iterator<K> keySetIterator() {
+        return keys().iterator();
+    }
+
+    @Override
+    public synchronized void clear() {
+        slots.clear();
+        freeSlots.clear();
+        for (int slot = 0; slot < keysBySlot.size(); slot++) {
+            keysBySlot.set(slot, null);
+            freeSlots.push(slot);
+        }
+    }
+
+    @Override
+    public synchronized boolean containsValue(V value) {
+        for (Integer slot : slots.values())
+            if (BytesUtil.equals(read(slot, previous), value))
+                return true;
+        return false;
+    }
+
+    @Nullable
+    @Override
+    public Asset asset() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public KeyValueStore<K, V> underlying() {
+        return null;
+    }
+
+    @Override
+    public synchronized void close() {
+        slots.clear();
+        keysBySlot.clear();
+        freeSlots.clear();
+        chunks.clear();
+        for (DirectStore store : stores)
+            store.free();
+        stores.clear();
+    }
+
+    /**
+     * Updates the value of the entry's key from the replicated entry, keeping the rest of a value
+     * already there.
+     *
+     * @throws UnsupportedOperationException if this store was not created to accept entries.
+     */
+    @Override
+    public synchronized void accept(@NotNull final ReplicationEntry replicationEntry) {
+        if (entryKey == null || fromEntry == null)
+            throw new UnsupportedOperationException("a store of " + valueType.getSimpleName()
+                    + " doesn't accept replicated entries");
+        final K key = entryKey.apply(replicationEntry);
+        final Integer slot = slot(key);
+        final V value = slot == null ? DataValueClasses.newInstance(valueType) : read(slot, previous);
+        fromEntry.accept(replicationEntry, value);
+        write(acquireSlot(key), value);
+    }
+}
@@ -19,12 +19,45 @@ package net.openhft.chronicle.engine.map;
 import net.openhft.chronicle.engine.api.map.MapEvent;
 import net.openhft.chronicle.engine.api.pubsub.ISubscriber;
 import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.BooleanSupplier;
 
 /**
  * Created by peter.lawrey on 03/06/2015.
  */
 @FunctionalInterface
 public interface EventConsumer<K, V> extends ISubscriber {
+    /**
+     * @return an EventConsumer which only needs the old values when <code>needsPrevious</code> does.
+     */
+    @NotNull
+    static <K, V> EventConsumer<K, V> of(@NotNull EventConsumer<K, V> consumer,
+                                         @NotNull BooleanSupplier needsPrevious) {
+        return new EventConsumer<K, V>() {
+            @Override
+            public void notifyEvent(MapEvent<K, V> changeEvent) throws InvalidSubscriberException {
+                consumer.notifyEvent(changeEvent);
+            }
+
+            @Override
+            public boolean needsPrevious() {
+                return needsPrevious.getAsBoolean();
+            }
+
+            @Override
+            public void onEndOfSubscription() {
+                consumer.onEndOfSubscription();
+            }
+        };
+    }
+
     void notifyEvent(MapEvent<K, V> changeEvent) throws InvalidSubscriberException;
 
+    /**
+     * @return whether the old value of an updated or removed entry is needed.
+     */
+    default boolean needsPrevious() {
+        return true;
+    }
 }
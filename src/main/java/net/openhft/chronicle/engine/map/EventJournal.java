@@ -0,0 +1,91 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.SequencedSubscriber;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The latest events of an asset, each with a sequence number, so a subscriber which reconnects
+ * can be sent the events it missed rather than the whole map.
+ *
+ * The high bits of every sequence number are a random id of the journal, so a sequence from a
+ * journal released when idle, or from before a restart, is not mistaken for one of this journal
+ * and the subscriber is bootstrapped instead.
+ */
+class EventJournal<K, V> {
+    static final int CAPACITY = Integer.highestOneBit(
+            Math.max(2, Integer.getInteger("EventJournal.capacity", 1 << 16)));
+    // the bits of a sequence which count the events, the rest identify the journal.
+    static final int SEQUENCE_BITS = 40;
+    private static final int JOURNAL_ID_BITS = 63 - SEQUENCE_BITS;
+
+    private final MapEvent<K, V>[] events = new MapEvent[CAPACITY];
+    private final long firstSequence;
+    private long lastSequence;
+    // when the last sequenced subscriber went, or 0. Only accessed while holding the lock on this.
+    long idleSince;
+
+    EventJournal() {
+        this((long) ThreadLocalRandom.current().nextInt(1, 1 << JOURNAL_ID_BITS) << SEQUENCE_BITS);
+    }
+
+    static long journalId(long sequence) {
+        return sequence >>> SEQUENCE_BITS;
+    }
+
+    EventJournal(long lastSequence) {
+        this.firstSequence = lastSequence + 1;
+        this.lastSequence = lastSequence;
+    }
+
+    public synchronized long append(@NotNull MapEvent<K, V> event) {
+        long sequence = ++lastSequence;
+        events[(int) (sequence & (CAPACITY - 1))] = event.copy();
+        return sequence;
+    }
+
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return true if every event after this sequence is still in this journal.
+     */
+    public synchronized boolean canReplay(long after) {
+        return journalId(after) == journalId(firstSequence)
+                && after >= firstSequence - 1 && after <= lastSequence && lastSequence - after <= CAPACITY;
+    }
+
+    /**
+     * Pass the events after this sequence to the subscriber.
+     *
+     * @return false if some of those events are no longer, or were never, in this journal.
+     */
+    public synchronized boolean replay(long after, @NotNull SequencedSubscriber<MapEvent<K, V>> subscriber)
+            throws InvalidSubscriberException {
+        if (!canReplay(after))
+            return false;
+        for (long sequence = after + 1; sequence <= lastSequence; sequence++)
+            subscriber.onMessage(events[(int) (sequence & (CAPACITY - 1))], sequence);
+        return true;
+    }
+}
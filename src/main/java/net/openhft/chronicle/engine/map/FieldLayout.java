@@ -0,0 +1,109 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.util.ObjectUtils;
+import net.openhft.chronicle.wire.BinaryWire;
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.Wire;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Finds and applies the fields which changed between two Marshallable values of one class, as
+ * the class writes them in writeMarshallable, so fields the class doesn't marshal are neither
+ * compared nor sent.
+ */
+public final class FieldLayout {
+    private static final ClassValue<FieldLayout> LAYOUTS = new ClassValue<FieldLayout>() {
+        @NotNull
+        @Override
+        protected FieldLayout computeValue(@NotNull Class<?> type) {
+            return new FieldLayout(type);
+        }
+    };
+
+    @NotNull
+    private final Class<?> type;
+
+    private FieldLayout(@NotNull Class<?> type) {
+        this.type = type;
+    }
+
+    @NotNull
+    public static FieldLayout of(@NotNull Class<?> type) {
+        return LAYOUTS.get(type);
+    }
+
+    /**
+     * @return the fields written by to which are different in from, by name, in the order
+     * they are written.
+     */
+    @NotNull
+    public Map<String, Object> diff(@NotNull Marshallable from, @NotNull Marshallable to) {
+        final Map<String, Object> fromFields = fieldsOf(from);
+        final Map<String, Object> changed = fieldsOf(to);
+        changed.entrySet().removeIf(e -> fromFields.containsKey(e.getKey())
+                && Objects.deepEquals(fromFields.get(e.getKey()), e.getValue()));
+        return changed;
+    }
+
+    /**
+     * @return a new value read from the fields of from with the changed fields replaced, from
+     * isn't modified and shares nothing with the result.
+     */
+    @NotNull
+    public <T extends Marshallable> T patch(@NotNull T from, @NotNull Map<String, Object> changed) {
+        final Map<String, Object> fields = fieldsOf(from);
+        fields.putAll(changed);
+
+        final Wire wire = new BinaryWire(Bytes.elasticByteBuffer());
+        for (Map.Entry<String, Object> entry : fields.entrySet())
+            wire.write(entry::getKey).object(entry.getValue());
+
+        final T copy = (T) ObjectUtils.newInstance(type);
+        copy.readMarshallable(wire);
+        return copy;
+    }
+
+    // the fields as written by writeMarshallable, in order.
+    @NotNull
+    private static Map<String, Object> fieldsOf(@NotNull Marshallable value) {
+        final Wire wire = new BinaryWire(Bytes.elasticByteBuffer());
+        value.writeMarshallable(wire);
+
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        final StringBuilder name = new StringBuilder();
+        while (wire.hasMore()) {
+            final Object field = wire.readEventName(name).object(Object.class);
+            fields.put(name.toString(), field);
+        }
+        return fields;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "FieldLayout{" +
+                "type=" + type.getName() +
+                '}';
+    }
+}
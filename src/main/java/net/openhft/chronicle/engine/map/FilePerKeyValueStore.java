@@ -22,6 +22,7 @@ import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.bytes.IORuntimeException;
 import net.openhft.chronicle.core.Jvm;
 import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.engine.api.EngineReplication;
 import net.openhft.chronicle.engine.api.map.KeyValueStore;
 import net.openhft.chronicle.engine.api.map.MapEvent;
 import net.openhft.chronicle.engine.api.map.StringBytesStoreKeyValueStore;
@@ -405,7 +406,8 @@ public class FilePerKeyValueStore implements StringBytesStoreKeyValueStore, Clos
 
     @Override
     public void accept(final ReplicationEntry replicationEntry) {
-        throw new UnsupportedOperationException("todo");
+        // the EngineReplication keeps the timestamp and identifier of the entry applied.
+        asset.acquireView(EngineReplication.class).applyReplication(replicationEntry);
     }
 
     private class FPMWatcher implements Runnable {
@@ -19,6 +19,7 @@ package net.openhft.chronicle.engine.map;
 import net.openhft.chronicle.engine.api.map.KeyValueStore;
 import net.openhft.chronicle.engine.api.map.MapEvent;
 import net.openhft.chronicle.engine.api.pubsub.ISubscriber;
+import net.openhft.chronicle.engine.api.pubsub.SequencedSubscriber;
 import net.openhft.chronicle.engine.api.pubsub.Subscriber;
 import net.openhft.chronicle.engine.api.pubsub.Subscription;
 import net.openhft.chronicle.engine.api.pubsub.TopicSubscriber;
@@ -47,6 +48,19 @@ public interface KVSSubscription<K, V> extends Subscription<MapEvent<K, V>>, ISu
         registerKeySubscriber(rc, subscriber, Filter.empty());
     }
 
+    /**
+     * Add a subscriber which is told the sequence of each live event. If the events after
+     * resumeFrom are still known, only those are sent, otherwise it is bootstrapped as usual.
+     *
+     * @param resumeFrom the sequence of the last event the subscriber saw, or 0 if none.
+     */
+    default void registerSequencedSubscriber(@NotNull RequestContext rc,
+                                             @NotNull SequencedSubscriber<MapEvent<K, V>> subscriber,
+                                             @NotNull Filter<MapEvent<K, V>> filter,
+                                             long resumeFrom) {
+        registerSubscriber(rc, subscriber, filter);
+    }
+
     void registerTopicSubscriber(@NotNull RequestContext rc,
                                  @NotNull TopicSubscriber<K, V> subscriber);
 
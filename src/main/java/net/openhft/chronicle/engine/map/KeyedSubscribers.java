@@ -0,0 +1,171 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.pubsub.ISubscriber;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.SubscriptionConsumer;
+import net.openhft.chronicle.engine.query.KeyPredicate;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Subscribers which only want the events for one key, or for the keys starting with a prefix,
+ * indexed by that key so an event is only offered to the subscribers which can match it.
+ *
+ * Keys are looked up in a hash map and prefixes in a trie of the characters of the key, so the
+ * cost of finding the subscribers is the length of the key, not the number of subscribers.
+ * Adding and removing subscribers is synchronized, notifying them is not.
+ */
+class KeyedSubscribers<S extends ISubscriber> {
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedSubscribers.class);
+
+    private final Map<Object, Set<S>> byKey = new ConcurrentHashMap<>();
+    final PrefixNode<S> prefixes = new PrefixNode<>();
+    private final Map<S, KeyPredicate> predicates = new ConcurrentHashMap<>();
+
+    public boolean isEmpty() {
+        return predicates.isEmpty();
+    }
+
+    public int size() {
+        return predicates.size();
+    }
+
+    public boolean contains(S subscriber) {
+        return predicates.containsKey(subscriber);
+    }
+
+    public synchronized void add(@NotNull KeyPredicate predicate, @NotNull S subscriber) {
+        predicates.put(subscriber, predicate);
+        switch (predicate.type()) {
+            case EQUALS:
+                byKey.computeIfAbsent(predicate.key(), k -> new CopyOnWriteArraySet<>())
+                        .add(subscriber);
+                break;
+            case PREFIX:
+                prefixes.acquire((String) predicate.key(), 0).subscribers.add(subscriber);
+                break;
+        }
+    }
+
+    public synchronized boolean remove(@NotNull S subscriber) {
+        KeyPredicate predicate = predicates.remove(subscriber);
+        if (predicate == null)
+            return false;
+        switch (predicate.type()) {
+            case EQUALS:
+                Set<S> subs = byKey.get(predicate.key());
+                if (subs != null) {
+                    subs.remove(subscriber);
+                    if (subs.isEmpty())
+                        byKey.remove(predicate.key());
+                }
+                break;
+            case PREFIX:
+                prefixes.remove((String) predicate.key(), 0, subscriber);
+                break;
+        }
+        return true;
+    }
+
+    @NotNull
+    public synchronized List<S> removeAll() {
+        List<S> all = new ArrayList<>(predicates.keySet());
+        all.forEach(this::remove);
+        return all;
+    }
+
+    /**
+     * Notify the subscribers which match this key, removing those which are no longer valid.
+     */
+    public void notifyEachSubscriber(Object key, @NotNull SubscriptionConsumer<S> doNotify) {
+        Set<S> subs = byKey.get(key);
+        if (subs != null)
+            notifyEach(subs, doNotify);
+
+        if (key instanceof CharSequence) {
+            CharSequence cs = (CharSequence) key;
+            PrefixNode<S> node = prefixes;
+            for (int i = 0; node != null; i++) {
+                if (!node.subscribers.isEmpty())
+                    notifyEach(node.subscribers, doNotify);
+                if (i >= cs.length())
+                    break;
+                node = node.children.get(cs.charAt(i));
+            }
+        }
+    }
+
+    private void notifyEach(@NotNull Set<S> subs, @NotNull SubscriptionConsumer<S> doNotify) {
+        for (S s : subs) {
+            try {
+                doNotify.accept(s);
+            } catch (InvalidSubscriberException ise) {
+                if (remove(s)) {
+                    try {
+                        s.onEndOfSubscription();
+                    } catch (Exception e) {
+                        LOG.error("", e);
+                    }
+                }
+            }
+        }
+    }
+
+    static class PrefixNode<S> {
+        final Map<Character, PrefixNode<S>> children = new ConcurrentHashMap<>();
+        final Set<S> subscribers = new CopyOnWriteArraySet<>();
+
+        @NotNull
+        PrefixNode<S> acquire(@NotNull String prefix, int index) {
+            if (index == prefix.length())
+                return this;
+            return children.computeIfAbsent(prefix.charAt(index), c -> new PrefixNode<>())
+                    .acquire(prefix, index + 1);
+        }
+
+        /**
+         * Removes the subscriber from the node for this prefix, pruning the nodes left empty.
+         *
+         * @return true if this node has no subscribers and no children left.
+         */
+        boolean remove(@NotNull String prefix, int index, S subscriber) {
+            if (index == prefix.length()) {
+                subscribers.remove(subscriber);
+            } else {
+                Character c = prefix.charAt(index);
+                PrefixNode<S> child = children.get(c);
+                if (child != null && child.remove(prefix, index + 1, subscriber))
+                    children.remove(c);
+            }
+            return isEmpty();
+        }
+
+        boolean isEmpty() {
+            return subscribers.isEmpty() && children.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.BytesUtil;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapEventListener;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A MapEvent reused for each change to a map on a thread, so a change doesn't create an event.
+ *
+ * The event, and any BytesStore key or value, is only valid during the call to the subscriber.
+ * A subscriber which keeps the event, or passes it to another thread, must keep a
+ * {@link #copy()} instead. It is equal to an immutable event of the same type with the same
+ * fields.
+ */
+public class MutableMapEvent<K, V> implements MapEvent<K, V> {
+    private EventType type;
+    private String assetName;
+    @Nullable
+    private K key;
+    @Nullable
+    private V oldValue;
+    @Nullable
+    private V value;
+    private boolean inUse = false;
+
+    /**
+     * @return the event for this thread, or a new one if it is already being notified, i.e. a
+     * subscriber changed the map.
+     */
+    @NotNull
+    public static <K, V> MutableMapEvent<K, V> acquire(@NotNull ThreadLocal<MutableMapEvent<K, V>> events) {
+        MutableMapEvent<K, V> event = events.get();
+        if (event.inUse)
+            return new MutableMapEvent<>();
+        event.inUse = true;
+        return event;
+    }
+
+    @NotNull
+    public static <K, V> ThreadLocal<MutableMapEvent<K, V>> newThreadLocal() {
+        return ThreadLocal.withInitial(MutableMapEvent::new);
+    }
+
+    @Nullable
+    private static <T> T copyOf(@Nullable T t) {
+        return t instanceof BytesStore ? (T) ((BytesStore) t).copy() : t;
+    }
+
+    @NotNull
+    public MutableMapEvent<K, V> inserted(String assetName, K key, V value) {
+        return set(EventType.INSERTED, assetName, key, null, value);
+    }
+
+    @NotNull
+    public MutableMapEvent<K, V> updated(String assetName, K key, V oldValue, V value) {
+        return set(EventType.UPDATED, assetName, key, oldValue, value);
+    }
+
+    @NotNull
+    public MutableMapEvent<K, V> removed(String assetName, K key, V oldValue) {
+        return set(EventType.REMOVED, assetName, key, oldValue, null);
+    }
+
+    /**
+     * Set this to another event with its key and value translated.
+     *
+     * @return this, or null if the type of the event isn't known.
+     */
+    @Nullable
+    public <K1, V1> MutableMapEvent<K, V> translated(@NotNull MapEvent<K1, V1> event,
+                                                     @NotNull Function<K1, K> keyFunction,
+                                                     @NotNull Function<V1, V> valueFunction) {
+        final EventType eventType = EventType.of(event);
+        if (eventType == null)
+            return null;
+        final V1 oldValue = eventType == EventType.INSERTED ? null : event.oldValue();
+        final V1 value = eventType == EventType.REMOVED ? null : event.getValue();
+        return set(eventType, event.assetName(), keyFunction.apply(event.getKey()),
+                oldValue == null ? null : valueFunction.apply(oldValue),
+                value == null ? null : valueFunction.apply(value));
+    }
+
+    @NotNull
+    private MutableMapEvent<K, V> set(EventType type, String assetName, K key, V oldValue, V value) {
+        this.type = type;
+        this.assetName = assetName;
+        this.key = key;
+        this.oldValue = oldValue;
+        this.value = value;
+        return this;
+    }
+
+    /**
+     * Called once every subscriber has been notified.
+     */
+    public void release() {
+        inUse = false;
+        key = null;
+        oldValue = null;
+        value = null;
+    }
+
+    @NotNull
+    @Override
+    public MapEvent<K, V> copy() {
+        return type.of(assetName, copyOf(key), copyOf(oldValue), copyOf(value));
+    }
+
+    @Override
+    public String assetName() {
+        return assetName;
+    }
+
+    @Nullable
+    @Override
+    public K getKey() {
+        return key;
+    }
+
+    @Nullable
+    @Override
+    public V oldValue() {
+        return oldValue;
+    }
+
+    @Nullable
+    @Override
+    public V getValue() {
+        return value;
+    }
+
+    @Override
+    public void apply(@NotNull MapEventListener<K, V> listener) {
+        switch (type) {
+            case INSERTED:
+                listener.insert(assetName, key, value);
+                break;
+            case UPDATED:
+                listener.update(assetName, key, oldValue, value);
+                break;
+            case REMOVED:
+                listener.remove(assetName, key, oldValue);
+                break;
+        }
+    }
+
+    @NotNull
+    @Override
+    public <K2, V2> MapEvent<K2, V2> translate(@NotNull Function<K, K2> keyFunction, @NotNull Function<V, V2> valueFunction) {
+        return copy().translate(keyFunction, valueFunction);
+    }
+
+    @NotNull
+    @Override
+    public <K2, V2> MapEvent<K2, V2> translate(@NotNull BiFunction<K, K2, K2> keyFunction, @NotNull BiFunction<V, V2, V2> valueFunction) {
+        return copy().translate(keyFunction, valueFunction);
+    }
+
+    /**
+     * Only equal to another MutableMapEvent, as the immutable events are only equal to their own
+     * class. Compare {@link #copy()} to an immutable event instead.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MutableMapEvent))
+            return false;
+        final MutableMapEvent<?, ?> event = (MutableMapEvent<?, ?>) obj;
+        return type == event.type
+                && Objects.equals(assetName, event.assetName)
+                && BytesUtil.equals(key, event.key)
+                && (type == EventType.INSERTED || BytesUtil.equals(oldValue, event.oldValue))
+                && (type == EventType.REMOVED || BytesUtil.equals(value, event.value));
+    }
+
+    /**
+     * @return the same hash code as the immutable event of this type.
+     */
+    @Override
+    public int hashCode() {
+        switch (type) {
+            case INSERTED:
+                return Objects.hash("inserted", key, value);
+            case UPDATED:
+                return Objects.hash("updated", key, value);
+            default:
+                return Objects.hash("removed", key, oldValue);
+        }
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "MutableMapEvent{" +
+                "type=" + type +
+                ", assetName='" + assetName + '\'' +
+                ", key=" + key +
+                ", oldValue=" + oldValue +
+                ", value=" + value +
+                '}';
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+        wire.read(() -> "type").text(s -> type = EventType.valueOf(s));
+        wire.read(MapEventFields.assetName).text(s -> assetName = s);
+        key = (K) wire.read(MapEventFields.key).object(Object.class);
+        oldValue = (V) wire.read(MapEventFields.oldValue).object(Object.class);
+        value = (V) wire.read(MapEventFields.value).object(Object.class);
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wire) {
+        // the type of event is written as the class written is still this one.
+        wire.write(() -> "type").text(type.name());
+        wire.write(MapEventFields.assetName).text(assetName);
+        wire.write(MapEventFields.key).object(key);
+        wire.write(MapEventFields.oldValue).object(oldValue);
+        wire.write(MapEventFields.value).object(value);
+    }
+
+    enum EventType {
+        INSERTED, UPDATED, REMOVED;
+
+        @Nullable
+        static EventType of(@NotNull MapEvent event) {
+            if (event instanceof MutableMapEvent)
+                return ((MutableMapEvent) event).type;
+            if (event instanceof InsertedEvent)
+                return INSERTED;
+            if (event instanceof UpdatedEvent)
+                return UPDATED;
+            if (event instanceof RemovedEvent)
+                return REMOVED;
+            return null;
+        }
+
+        @NotNull
+        <K, V> MapEvent<K, V> of(String assetName, K key, V oldValue, V value) {
+            switch (this) {
+                case INSERTED:
+                    return InsertedEvent.of(assetName, key, value);
+                case UPDATED:
+                    return UpdatedEvent.of(assetName, key, oldValue, value);
+                default:
+                    return RemovedEvent.of(assetName, key, oldValue);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.map.KeyValueStore;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.ReconnectAwareSubscriber;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.map.remote.RemoteKeyValueStore;
+import net.openhft.chronicle.engine.query.Filter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the entries most recently read from a remote map, so repeated reads of the same keys don't
+ * go to the server. The cache is kept coherent by a subscription to the map on the same
+ * connection, an update to a cached key replaces its value and a removal drops it. The events
+ * sent while disconnected are lost, so the cache is cleared when the subscription reconnects.
+ *
+ * Enable it per map with <code>?nearCache=10000</code>, the number of entries to keep.
+ *
+ * @see RemoteKeyValueStore
+ */
+public class NearCacheKeyValueStore<K, V> extends AbstractKeyValueStore<K, V> {
+    private final Map<K, V> cache;
+    private final Subscriber<MapEvent<K, V>> invalidator = new ReconnectAwareSubscriber<MapEvent<K, V>>() {
+        @Override
+        public void onMessage(MapEvent<K, V> event) {
+            onEvent(event);
+        }
+
+        @Override
+        public void onReconnect() {
+            clearCache();
+        }
+    };
+    @Nullable
+    private final Subscription<MapEvent<K, V>> subscription;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    // incremented on each event, a read is only cached if no event arrived while it was in flight.
+    private long eventCount = 0;
+
+    public NearCacheKeyValueStore(@NotNull RequestContext rc, @NotNull Asset asset,
+                                  @NotNull KeyValueStore<K, V> kvStore) {
+        super(rc, asset, kvStore);
+        final int capacity = rc.nearCache();
+        assert capacity > 0;
+        this.cache = new LinkedHashMap<K, V>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.subscription = asset.subscription(true);
+        if (subscription != null)
+            subscription.registerSubscriber(rc.clone().type(MapEvent.class).type2(null)
+                    .bootstrap(false).oldValues(false), invalidator, Filter.empty());
+    }
+
+    private void onEvent(@NotNull MapEvent<K, V> event) {
+        synchronized (cache) {
+            eventCount++;
+            final K key = event.getKey();
+            if (!cache.containsKey(key))
+                return;
+            final V value = event.getValue();
+            if (value == null)
+                cache.remove(key);
+            else
+                cache.put(key, value);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    @Nullable
+    @Override
+    public V getUsing(K key, Object value) {
+        final long count;
+        synchronized (cache) {
+            final V v = cache.get(key);
+            if (v != null) {
+                hits.incrementAndGet();
+                return v;
+            }
+            count = eventCount;
+        }
+        misses.incrementAndGet();
+        final V v = kvStore.getUsing(key, value);
+        // a value read into a caller's object can be overwritten by the caller, so isn't kept.
+        if (v != null && value == null) {
+            synchronized (cache) {
+                if (count == eventCount)
+                    cache.put(key, v);
+            }
+        }
+        return v;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        synchronized (cache) {
+            if (cache.containsKey(key)) {
+                hits.incrementAndGet();
+                return true;
+            }
+        }
+        return kvStore.containsKey(key);
+    }
+
+    /**
+     * Writes go to the server and drop the cached value, the new value is cached on its next read.
+     */
+    private void invalidate(K key) {
+        synchronized (cache) {
+            eventCount++;
+            cache.remove(key);
+        }
+    }
+
+    @Override
+    public boolean put(K key, V value) {
+        invalidate(key);
+        return kvStore.put(key, value);
+    }
+
+    @Nullable
+    @Override
+    public V getAndPut(K key, V value) {
+        invalidate(key);
+        return kvStore.getAndPut(key, value);
+    }
+
+    @Override
+    public boolean remove(K key) {
+        invalidate(key);
+        return kvStore.remove(key);
+    }
+
+    @Nullable
+    @Override
+    public V getAndRemove(K key) {
+        invalidate(key);
+        return kvStore.getAndRemove(key);
+    }
+
+    @Nullable
+    @Override
+    public V replace(K key, V value) {
+        invalidate(key);
+        return kvStore.replace(key, value);
+    }
+
+    @Override
+    public boolean replaceIfEqual(K key, V oldValue, V newValue) {
+        invalidate(key);
+        return kvStore.replaceIfEqual(key, oldValue, newValue);
+    }
+
+    @Override
+    public boolean removeIfEqual(K key, V value) {
+        invalidate(key);
+        return kvStore.removeIfEqual(key, value);
+    }
+
+    @Nullable
+    @Override
+    public V putIfAbsent(K key, V value) {
+        invalidate(key);
+        return kvStore.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> map) {
+        for (K key : map.keySet())
+            invalidate(key);
+        kvStore.putAll(map);
+    }
+
+    @Override
+    public void removeAll(@NotNull Collection<K> keys) {
+        for (K key : keys)
+            invalidate(key);
+        kvStore.removeAll(keys);
+    }
+
+    private void clearCache() {
+        synchronized (cache) {
+            eventCount++;
+            cache.clear();
+        }
+    }
+
+    @Override
+    public void clear() {
+        clearCache();
+        kvStore.clear();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of cached entries updated or removed by a change on the server.
+     */
+    public long invalidations() {
+        return invalidations.get();
+    }
+
+    public int cachedSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (subscription != null)
+            subscription.unregisterSubscriber(invalidator);
+        kvStore.close();
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "NearCacheKeyValueStore{" +
+                "cached=" + cachedSize() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", invalidations=" + invalidations +
+                '}';
+    }
+}
@@ -121,6 +121,11 @@ public class ObjectObjectKeyValueStore<K, V> implements KeyValueStore<K, V> {
         return kvStore.longSize();
     }
 
+    @Override
+    public int segments() {
+        return kvStore.segments();
+    }
+
     @Override
     public void keysFor(int segment, @NotNull SubscriptionConsumer<K> kConsumer) throws InvalidSubscriberException {
         kvStore.keysFor(segment, k -> kConsumer.accept(bytesToKey.apply(k, null)));
@@ -170,6 +175,6 @@ public class ObjectObjectKeyValueStore<K, V> implements KeyValueStore<K, V> {
 
     @Override
     public void accept(final ReplicationEntry replicationEntry) {
-        throw new UnsupportedOperationException("todo");
+        kvStore.accept(replicationEntry);
     }
 }
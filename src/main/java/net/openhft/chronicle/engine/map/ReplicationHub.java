@@ -19,8 +19,16 @@ package net.openhft.chronicle.engine.map;
 import net.openhft.chronicle.bytes.IORuntimeException;
 import net.openhft.chronicle.engine.api.EngineReplication;
 import net.openhft.chronicle.engine.api.EngineReplication.ModificationIterator;
+import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.cfg.Compression;
+import net.openhft.chronicle.engine.fs.Cluster;
+import net.openhft.chronicle.engine.fs.Clusters;
+import net.openhft.chronicle.engine.fs.HostDetails;
 import net.openhft.chronicle.engine.map.replication.Bootstrap;
+import net.openhft.chronicle.engine.map.replication.MerkleLevel;
+import net.openhft.chronicle.engine.map.replication.MerkleTree;
+import net.openhft.chronicle.engine.map.replication.ReplicationBatch;
 import net.openhft.chronicle.engine.server.internal.MapWireHandler;
 import net.openhft.chronicle.engine.server.internal.ReplicationHandler.EventId;
 import net.openhft.chronicle.network.connection.AbstractAsyncSubscription;
@@ -31,14 +39,18 @@ import net.openhft.chronicle.threads.HandlerPriority;
 import net.openhft.chronicle.threads.api.EventHandler;
 import net.openhft.chronicle.threads.api.EventLoop;
 import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import net.openhft.chronicle.wire.ValueIn;
 import net.openhft.chronicle.wire.ValueOut;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
+import net.openhft.chronicle.wire.Wires;
 import net.openhft.chronicle.wire.WriteMarshallable;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
@@ -51,6 +63,12 @@ class ReplicationHub extends AbstractStatelessClient {
     private static final Logger LOG = LoggerFactory.getLogger(ChronicleMapKeyValueStore.class);
     private final EventLoop eventLoop;
     private final AtomicBoolean isClosed;
+    // whether the remote host has said it reads replicationEvents batches, reset on each connection.
+    private volatile boolean remoteBatched = false;
+    // whether the handler pushing our changes to the remote host is running.
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    // how many levels of the hash trees to descend in each round trip
+    private static final int LEVELS_PER_ROUND = Integer.getInteger("ReplicationHub.merkleLevelsPerRound", 4);
 
     public ReplicationHub(@NotNull RequestContext context, @NotNull final TcpChannelHub hub, EventLoop eventLoop, AtomicBoolean isClosed) {
         super(hub, (long) 0, toUri(context));
@@ -72,6 +90,55 @@ class ReplicationHub extends AbstractStatelessClient {
         return uri.toString();
     }
 
+    /**
+     * connects to each host in the cluster of the asset which has a larger identifier than this
+     * host, and replicates with it. The hosts with smaller identifiers connect to this one.
+     */
+    static void replicateWithCluster(@NotNull RequestContext context,
+                                     @NotNull Asset asset,
+                                     @NotNull EventLoop eventLoop,
+                                     @NotNull AtomicBoolean isClosed,
+                                     @NotNull EngineReplication replication,
+                                     byte localIdentifier) {
+        Clusters clusters = asset.findView(Clusters.class);
+
+        if (clusters == null) {
+            LOG.warn("no clusters found.");
+            return;
+        }
+
+        final Cluster cluster = clusters.get(context.cluster());
+
+        if (cluster == null) {
+            LOG.warn("no cluster found name=" + context.cluster());
+            return;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("hostDetails : localIdentifier=" + localIdentifier + ",cluster=" + cluster.hostDetails());
+
+        for (HostDetails hostDetails : cluster.hostDetails()) {
+
+            // its the identifier with the larger values that will establish the connection
+            int remoteIdentifier = hostDetails.hostId;
+
+            if (remoteIdentifier <= localIdentifier) {
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("skipping : attempting to connect to localIdentifier=" + localIdentifier + ",remoteIdentifier=" + remoteIdentifier);
+
+                continue;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("attempting to connect to localIdentifier=" + localIdentifier + ",remoteIdentifier=" + remoteIdentifier);
+
+            final TcpChannelHub tcpChannelHub = hostDetails.acquireTcpChannelHub(asset, eventLoop, context.wireType());
+            ReplicationHub replicationHub = new ReplicationHub(context, tcpChannelHub, eventLoop, isClosed);
+            replicationHub.bootstrap(replication, localIdentifier, (byte) remoteIdentifier);
+        }
+    }
+
     public void bootstrap(@NotNull EngineReplication replication,
                           byte localIdentifier,
                           byte remoteIdentifier) {
@@ -118,15 +185,36 @@ class ReplicationHub extends AbstractStatelessClient {
     private void onConnected(final byte localIdentifier, byte remoteIdentifier, @NotNull EngineReplication replication) {
         final ModificationIterator mi = replication.acquireModificationIterator(remoteIdentifier);
         assert mi != null;
+        final MerkleTree tree = replication.merkleTree();
+        remoteBatched = false;
+
+        // subscribes to updates - receives the replication events
+        subscribe(replication, localIdentifier, remoteIdentifier, tree != null);
+
+        // publishes changes - pushes the replication events, the exchange below only dirties entries
+        publish(mi, localIdentifier);
+
+        if (tree == null)
+            bootstrap(replication, mi, localIdentifier, remoteIdentifier);
+        else
+            antiEntropy(replication, tree, mi, localIdentifier, remoteIdentifier, tree.roots(),
+                    new ArrayList<>());
+    }
+
+    /**
+     * exchanges the last modification times with the remote host, then each host re-sends the
+     * entries modified since then.
+     */
+    private void bootstrap(@NotNull EngineReplication replication,
+                           @NotNull ModificationIterator mi,
+                           byte localIdentifier,
+                           byte remoteIdentifier) {
         final long lastModificationTime = replication.lastModificationTime(remoteIdentifier);
 
         final Bootstrap bootstrap = new Bootstrap();
         bootstrap.lastUpdatedTime(lastModificationTime);
         bootstrap.identifier(localIdentifier);
 
-        // subscribes to updates - receives the replication events
-        subscribe(replication, localIdentifier, remoteIdentifier);
-
         // a non block call to get the identifier from the remote host
         hub.subscribe(new AbstractAsyncSubscription(hub, csp, localIdentifier, "replication " +
                 "onConnected") {
@@ -141,9 +229,8 @@ class ReplicationHub extends AbstractStatelessClient {
                 inWire.readDocument(null, d -> {
                     Bootstrap b = d.read(EventId.bootstrap).typedMarshallable();
 
-                    // publishes changes - pushes the replication events
                     try {
-                        publish(mi, b, localIdentifier);
+                        mi.dirtyEntries(b.lastUpdatedTime());
                     } catch (Exception e) {
                         LOG.error("", e);
                     }
@@ -151,55 +238,133 @@ class ReplicationHub extends AbstractStatelessClient {
             }
 
         });
+    }
+
+    /**
+     * compares the hash trees of the two hosts, descending a few levels a round into the nodes
+     * which differ, then each host re-sends only the entries in the leaves which differ.
+     *
+     * @param nodes  the nodes to compare in this round
+     * @param leaves collects the leaves which differ
+     */
+    private void antiEntropy(@NotNull EngineReplication replication,
+                             @NotNull MerkleTree tree,
+                             @NotNull ModificationIterator mi,
+                             byte localIdentifier,
+                             byte remoteIdentifier,
+                             @NotNull long[] nodes,
+                             @NotNull List<Long> leaves) {
+        final MerkleLevel request = new MerkleLevel(localIdentifier, tree, nodes);
 
+        hub.subscribe(new AbstractAsyncSubscription(hub, csp, localIdentifier, "replication " +
+                "anti-entropy") {
+
+            @Override
+            public void onSubscribe(@NotNull WireOut wireOut) {
+                wireOut.writeEventName(merkleLevel).typedMarshallable(request);
+            }
+
+            @Override
+            public void onConsumer(@NotNull WireIn inWire) {
+                inWire.readDocument(null, d -> {
+                    final MerkleLevel reply = d.read(merkleLevel).typedMarshallable();
+                    if (reply == null || !tree.isCompatible(reply)) {
+                        // the remote host can't compare trees with us, so it re-sends everything
+                        bootstrap(replication, mi, localIdentifier, remoteIdentifier);
+                        return;
+                    }
+
+                    final List<Long> next = new ArrayList<>();
+                    tree.diff(reply, LEVELS_PER_ROUND, next::add, leaves::add);
+                    if (!next.isEmpty()) {
+                        antiEntropy(replication, tree, mi, localIdentifier, remoteIdentifier,
+                                toArray(next), leaves);
+                        return;
+                    }
+
+                    try {
+                        if (leaves.isEmpty())
+                            return;
+                        final MerkleLevel differ = new MerkleLevel(localIdentifier, tree, toArray(leaves));
+                        mi.dirtyEntries(tree, differ.nodes());
+                        hub.lock(() -> sendEventAsyncWithoutLock(merkleDirty,
+                                (Consumer<ValueOut>) v -> v.typedMarshallable(differ)));
+                    } catch (Exception e) {
+                        LOG.error("", e);
+                    }
+                });
+            }
+
+        });
+    }
+
+    @NotNull
+    private static long[] toArray(@NotNull List<Long> longs) {
+        return longs.stream().mapToLong(Long::longValue).toArray();
     }
 
     /**
      * publishes changes - this method pushes the replication events
      *  @param mi               the modification iterator that notifies us of changes
-     * @param remote           details about the remote connection
      * @param localIdentifier  the identifier of this host or client
      */
     private void publish(@NotNull final ModificationIterator mi,
-                         @NotNull final Bootstrap remote,
-                         byte localIdentifier) throws InterruptedException {
+                         byte localIdentifier) {
 
         final TcpChannelHub hub = this.hub;
         mi.setModificationNotifier(eventLoop::unpause);
+        if (!publishing.compareAndSet(false, true))
+            return;
 
         eventLoop.addHandler(new EventHandler() {
+            private final ReplicationBatch batch = new ReplicationBatch();
+
             @Override
             public boolean action() throws InvalidEventHandlerException {
 
                 try {
-                    if (isClosed.get())
+                    if (isClosed.get()) {
+                        publishing.set(false);
                         throw new InvalidEventHandlerException();
+                    }
 
-                    // publishes the replication events
-                    hub.lock(() -> mi.forEach(e -> {
-
-                        if (e.identifier() != localIdentifier)
+                    hub.lock(() -> {
+                        if (!remoteBatched) {
+                            // one event to a document, until the remote host says it reads batches.
+                            mi.forEach(e -> {
+                                if (e.identifier() == localIdentifier)
+                                    sendEventAsyncWithoutLock(replicationEvent,
+                                            (Consumer<ValueOut>) v -> v.typedMarshallable(e));
+                            });
                             return;
-
-                        sendEventAsyncWithoutLock(replicationEvent,
-                                (Consumer<ValueOut>) v -> v.typedMarshallable(e));
-                    }));
+                        }
+                        // publishes the replication events, many to a document
+                        mi.forEachInPlace(e -> {
+                            if (e.identifier() == localIdentifier && batch.add(e))
+                                flush();
+                        });
+                        if (batch.isDue(System.nanoTime()))
+                            flush();
+                    });
 
                     return true;
                 } catch (IORuntimeException e) {
                     LOG.error(e.getMessage());
+                    publishing.set(false);
                     throw new InvalidEventHandlerException();
                 }
             }
 
+            private void flush() {
+                sendEventAsyncWithoutLock(replicationEvents, (Consumer<ValueOut>) batch::writeTo);
+            }
+
             @NotNull
             @Override
             public HandlerPriority priority() {
                 return HandlerPriority.MEDIUM;
             }
         });
-
-        mi.dirtyEntries(remote.lastUpdatedTime());
     }
 
     /**
@@ -207,8 +372,11 @@ class ReplicationHub extends AbstractStatelessClient {
      *
      * @param replication     the event will be applied to the EngineReplication
      * @param localIdentifier our local identifier
+     * @param antiEntropy     true if the remote host should wait for the hash trees to be
+     *                        compared, rather than re-send every entry
      */
-    private void subscribe(@NotNull final EngineReplication replication, final byte localIdentifier, final byte remoteIdentifier) {
+    private void subscribe(@NotNull final EngineReplication replication, final byte localIdentifier,
+                           final byte remoteIdentifier, final boolean antiEntropy) {
 
         // the only has to be a temporary subscription because the onConnected() will be called upon a reconnect
         hub.subscribe(new AbstractAsyncTemporarySubscription(hub, csp, localIdentifier,
@@ -216,6 +384,11 @@ class ReplicationHub extends AbstractStatelessClient {
             @Override
             public void onSubscribe(@NotNull final WireOut wireOut) {
                 wireOut.writeEventName(replicationSubscribe).int8(localIdentifier).writeComment("remoteIdentifier=" + remoteIdentifier);
+                // this client can read any codec, the server only compresses if it is configured to.
+                wireOut.writeEventName(() -> "compression").text(Compression.DEFLATE.name());
+                wireOut.writeEventName(() -> "batched").bool(true);
+                if (antiEntropy)
+                    wireOut.writeEventName(() -> "merkle").bool(true);
             }
 
             @Override
@@ -223,8 +396,21 @@ class ReplicationHub extends AbstractStatelessClient {
 
                 // receives the replication events and applies them
                 //noinspection ConstantConditions
-                d.readDocument(null, w -> replication.applyReplication(
-                        w.read(replicationEvent).typedMarshallable()));
+                d.readDocument(null, w -> {
+                    final StringBuilder eventName = Wires.acquireStringBuilder();
+                    ValueIn valueIn = w.readEventName(eventName);
+                    // the reply of a server which reads batches, sent before any events.
+                    if ("batched".contentEquals(eventName)) {
+                        remoteBatched = valueIn.bool();
+                        return;
+                    }
+                    if (Compression.COMPRESSED.contentEquals(eventName))
+                        valueIn = Compression.uncompress(w, valueIn).readEventName(eventName);
+                    if (replicationEvents.contentEquals(eventName))
+                        ReplicationBatch.readFrom(valueIn, replication::applyReplication);
+                    else
+                        replication.applyReplication(valueIn.typedMarshallable());
+                });
             }
 
         });
@@ -0,0 +1,181 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapEvent.MapEventFields;
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An update sent to a remote subscriber as only the fields of the value which changed. The
+ * subscriber patches its copy of the previous value for the key to get the new value.
+ *
+ * Both ends remember at most <code>UpdatedFieldsEvent.maxKeys</code> keys, the least recently
+ * changed first forgotten, after which the key's next update is sent as its full value. As
+ * both see the same events in the same order, the client still has every key the server
+ * remembers.
+ */
+public class UpdatedFieldsEvent implements Marshallable {
+    private static final Logger LOG = LoggerFactory.getLogger(UpdatedFieldsEvent.class);
+    private static final int MAX_KEYS = Integer.getInteger("UpdatedFieldsEvent.maxKeys", 100_000);
+
+    private String assetName;
+    @Nullable
+    private Object key;
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+
+    private UpdatedFieldsEvent() {
+    }
+
+    UpdatedFieldsEvent(String assetName, @NotNull Object key, @NotNull Map<String, Object> fields) {
+        this.assetName = assetName;
+        this.key = key;
+        this.fields.putAll(fields);
+    }
+
+    public String assetName() {
+        return assetName;
+    }
+
+    @Nullable
+    public Object key() {
+        return key;
+    }
+
+    /**
+     * @return the new value of each field which changed, by name.
+     */
+    @NotNull
+    public Map<String, Object> fields() {
+        return fields;
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+        wire.read(MapEventFields.assetName).text(s -> assetName = s);
+        key = wire.read(MapEventFields.key).object(Object.class);
+        fields.clear();
+        wire.read(() -> "fields").marshallable(m -> {
+            final StringBuilder name = new StringBuilder();
+            while (m.hasMore()) {
+                final Object value = m.readEventName(name).object(Object.class);
+                fields.put(name.toString(), value);
+            }
+        });
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wire) {
+        wire.write(MapEventFields.assetName).text(assetName);
+        wire.write(MapEventFields.key).object(key);
+        wire.write(() -> "fields").marshallable(m -> {
+            for (Map.Entry<String, Object> entry : fields.entrySet())
+                m.writeEventName(entry::getKey).object(entry.getValue());
+        });
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "UpdatedFieldsEvent{" +
+                "assetName='" + assetName + '\'' +
+                ", key=" + key +
+                ", fields=" + fields +
+                '}';
+    }
+
+    @NotNull
+    private static <K, V> Map<K, V> lruMap() {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_KEYS;
+            }
+        };
+    }
+
+    /**
+     * Replaces the UpdatedEvents of Marshallable values sent to one subscriber with the fields
+     * which changed, once the subscriber has been sent the key's value. The events must be
+     * encoded in the order they are sent, by one thread.
+     */
+    public static class Encoder {
+        // the keys the subscriber has a value for, in the order they were last sent.
+        private final Map<Object, Boolean> sentKeys = lruMap();
+
+        @Nullable
+        public Object encode(@Nullable Object event) {
+            if (!(event instanceof MapEvent))
+                return event;
+            final MapEvent<?, ?> e = (MapEvent<?, ?>) event;
+            final Object key = e.getKey();
+            if (e instanceof RemovedEvent) {
+                sentKeys.remove(key);
+                return e;
+            }
+            if (sentKeys.put(key, Boolean.TRUE) == null || !(e instanceof UpdatedEvent))
+                return e;
+
+            final Object oldValue = e.oldValue();
+            final Object value = e.getValue();
+            if (!(oldValue instanceof Marshallable) || value == null || oldValue.getClass() != value.getClass())
+                return e;
+            return new UpdatedFieldsEvent(e.assetName(), key, FieldLayout.of(value.getClass())
+                    .diff((Marshallable) oldValue, (Marshallable) value));
+        }
+    }
+
+    /**
+     * Turns the UpdatedFieldsEvents received by a subscriber back into UpdatedEvents, by keeping
+     * a copy of the latest value of each key. The events must be decoded in the order they are
+     * received, by one thread.
+     */
+    public static class Decoder {
+        // the latest value of each key, in the order they were last received.
+        private final Map<Object, Object> values = lruMap();
+
+        @Nullable
+        public Object decode(@Nullable Object event) {
+            if (event instanceof UpdatedFieldsEvent) {
+                final UpdatedFieldsEvent delta = (UpdatedFieldsEvent) event;
+                final Object oldValue = values.get(delta.key);
+                if (!(oldValue instanceof Marshallable)) {
+                    LOG.warn("No value to apply " + delta + " to");
+                    return null;
+                }
+                final Object value = FieldLayout.of(oldValue.getClass()).patch((Marshallable) oldValue, delta.fields);
+                values.put(delta.key, value);
+                return UpdatedEvent.of(delta.assetName, delta.key, oldValue, value);
+            }
+            if (event instanceof RemovedEvent)
+                values.remove(((MapEvent) event).getKey());
+            else if (event instanceof MapEvent)
+                values.put(((MapEvent) event).getKey(), ((MapEvent) event).getValue());
+            return event;
+        }
+    }
+}
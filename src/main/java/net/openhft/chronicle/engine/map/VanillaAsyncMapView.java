@@ -0,0 +1,105 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.core.util.SerializableBiFunction;
+import net.openhft.chronicle.core.util.SerializableUpdaterWithArg;
+import net.openhft.chronicle.engine.api.map.AsyncMapView;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * An AsyncMapView of a local map, each operation is performed by the caller and returns a
+ * completed future.
+ */
+public class VanillaAsyncMapView<K, V> implements AsyncMapView<K, V> {
+    @NotNull
+    private final Asset asset;
+    @NotNull
+    private final MapView<K, V> underlying;
+
+    public VanillaAsyncMapView(RequestContext rc, @NotNull Asset asset, @NotNull MapView<K, V> underlying) {
+        this.asset = asset;
+        this.underlying = underlying;
+    }
+
+    @NotNull
+    private static <R> CompletableFuture<R> call(@NotNull Supplier<R> supplier) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            future.complete(supplier.get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> get(K key) {
+        return call(() -> underlying.get(key));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> getAndPut(K key, V value) {
+        return call(() -> underlying.getAndPut(key, value));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> putIfAbsent(K key, V value) {
+        return call(() -> underlying.putIfAbsent(key, value));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> replace(K key, V value) {
+        return call(() -> underlying.replace(key, value));
+    }
+
+    @NotNull
+    @Override
+    public <A, R> CompletableFuture<R> applyTo(@NotNull SerializableBiFunction<MapView<K, V>, A, R> function, A arg) {
+        return call(() -> underlying.applyTo(function, arg));
+    }
+
+    @NotNull
+    @Override
+    public <UA, RA, R> CompletableFuture<R> syncUpdate(@NotNull SerializableUpdaterWithArg<MapView<K, V>, UA> updateFunction, UA ua,
+                                                       @NotNull SerializableBiFunction<MapView<K, V>, RA, R> returnFunction, RA ra) {
+        return call(() -> underlying.syncUpdate(updateFunction, ua, returnFunction, ra));
+    }
+
+    @NotNull
+    @Override
+    public Asset asset() {
+        return asset;
+    }
+
+    @NotNull
+    @Override
+    public MapView<K, V> underlying() {
+        return underlying;
+    }
+}
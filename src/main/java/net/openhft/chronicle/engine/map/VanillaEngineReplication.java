@@ -18,12 +18,21 @@
 
 package net.openhft.chronicle.engine.map;
 
+import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.core.values.IntValue;
 import net.openhft.chronicle.engine.api.EngineReplication;
 import net.openhft.chronicle.engine.api.map.KeyValueStore;
 import net.openhft.chronicle.engine.api.map.MapEventListener;
+import net.openhft.chronicle.engine.api.map.StringBytesStoreKeyValueStore;
 import net.openhft.chronicle.engine.api.map.SubscriptionKeyValueStore;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.api.tree.AssetNotFoundException;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.map.replication.MerkleTree;
+import net.openhft.chronicle.engine.tree.HostIdentifier;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.wire.BinaryWire;
 import net.openhft.chronicle.wire.Marshallable;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
@@ -38,12 +47,19 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static net.openhft.chronicle.engine.map.VanillaEngineReplication.ReplicationData.*;
 
 public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyValueStore<K, MV>>
@@ -53,7 +69,6 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
     public static final int MAX_MODIFICATION_ITERATORS = 127 + RESERVED_MOD_ITER;
     // a long word serve 64 bits
     public static final int DIRTY_WORD_COUNT = (MAX_MODIFICATION_ITERATORS + 63) / 64;
-
     private static int idToInt(byte identifier) {
         // if we consider > 127 ids, we should treat ids positively
         return identifier & 0xFF;
@@ -190,6 +205,29 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
         ReplicationData usingData = null;
         final ReplicationData newData = DataValueClasses.newInstance(ReplicationData.class);
         final ReplicationData zeroData = DataValueClasses.newInstance(ReplicationData.class);
+
+        // the hash of the key whose remote entry this thread is applying, if applyingKey is set.
+        boolean applyingKey = false;
+        long applyingKeyHash;
+
+        // the binary wire of the keys and values of objects, only valid until the next call.
+        final Bytes<ByteBuffer> keyBytes = Bytes.elasticByteBuffer();
+        final Bytes<ByteBuffer> valueBytes = Bytes.elasticByteBuffer();
+        final Bytes<ByteBuffer> readBytes = Bytes.elasticByteBuffer();
+    }
+
+    /**
+     * The timestamp and identifier of a remote entry applied to a store which notifies its change
+     * events on another thread.
+     */
+    static final class Applied {
+        final long timestamp;
+        final byte identifier;
+
+        Applied(long timestamp, byte identifier) {
+            this.timestamp = timestamp;
+            this.identifier = identifier;
+        }
     }
 
     private static void initZeroStateForAllPossibleRemoteIdentifiers(
@@ -216,6 +254,8 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
     private final ChangeApplier<Store> changeApplier;
     private final GetValue<Store> getValue;
     private final SegmentForKey<Store> segmentForKey;
+    @NotNull
+    private final MerkleTree merkleTree;
     private final AtomicReferenceArray<VanillaModificationIterator>
             modificationIterators = new AtomicReferenceArray<>(127 + RESERVED_MOD_ITER);
     private final DirectBitSet modificationIteratorsRequiringSettingBootstrapTimestamp =
@@ -223,6 +263,26 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
     private final DirectBitSet modIterSet = createModIterBitSet();
     @NotNull
     private final MapEventListener<K, MV> eventListener;
+    // whether the store notifies its change events on another thread, e.g. a file watcher.
+    private final boolean asyncEvents;
+    // key hash -> the remote entry applied to a store with async events, so the change event it
+    // causes is not replicated back as a local change.
+    private final ConcurrentHashMap<Long, Applied> applied = new ConcurrentHashMap<>();
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+
+    /**
+     * Keeps the replication data of each segment and the state of each remote host off heap in
+     * DirectValueStores.
+     */
+    public VanillaEngineReplication(
+            byte identifier,
+            @NotNull Store store, ChangeApplier<Store> changeApplier, GetValue<Store> getValue,
+            SegmentForKey<Store> segmentForKey,
+            @NotNull Function<K, BytesStore> keyToBytesStore) {
+        this(segment -> DirectValueStore.forReplicationData(),
+                DirectValueStore.withIntValueKeys(RemoteNodeReplicationState.class),
+                identifier, store, changeApplier, getValue, segmentForKey, keyToBytesStore, false);
+    }
 
     public VanillaEngineReplication(
             @NotNull IntFunction<KeyValueStore<BytesStore, ReplicationData>>
@@ -233,6 +293,20 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
             @NotNull Store store, ChangeApplier<Store> changeApplier, GetValue<Store> getValue,
             SegmentForKey<Store> segmentForKey,
             @NotNull Function<K, BytesStore> keyToBytesStore) {
+        this(obtainKeyReplicationDataBySegment, modIterState, identifier, store, changeApplier,
+                getValue, segmentForKey, keyToBytesStore, false);
+    }
+
+    VanillaEngineReplication(
+            @NotNull IntFunction<KeyValueStore<BytesStore, ReplicationData>>
+                    obtainKeyReplicationDataBySegment,
+            @NotNull KeyValueStore<IntValue, RemoteNodeReplicationState>
+                    modIterState,
+            byte identifier,
+            @NotNull Store store, ChangeApplier<Store> changeApplier, GetValue<Store> getValue,
+            SegmentForKey<Store> segmentForKey,
+            @NotNull Function<K, BytesStore> keyToBytesStore,
+            boolean asyncEvents) {
 
         int segments = store.segments();
         this.keyReplicationData = new KeyValueStore[segments];
@@ -248,33 +322,204 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
         this.changeApplier = changeApplier;
         this.getValue = getValue;
         this.segmentForKey = segmentForKey;
+        this.asyncEvents = asyncEvents;
+        this.merkleTree = buildMerkleTree();
 
         eventListener = new MapEventListener<K, MV>() {
 
             @Override
             public void insert(String assetName, K key, MV value) {
-                onPut(keyToBytesStore.apply(key), System.currentTimeMillis());
+                BytesStore bytesKey = keyToBytesStore.apply(key);
+                if (!isApplying(bytesKey))
+                    onPut(bytesKey, System.currentTimeMillis());
             }
 
             @Override
             public void remove(String assetName, K key, MV value) {
-                onRemove(keyToBytesStore.apply(key), System.currentTimeMillis());
+                BytesStore bytesKey = keyToBytesStore.apply(key);
+                if (!isApplying(bytesKey))
+                    onRemove(bytesKey, System.currentTimeMillis());
             }
 
             @Override
             public void update(String assetName, K key, MV oldValue, MV newValue) {
-                onPut(keyToBytesStore.apply(key), System.currentTimeMillis());
+                BytesStore bytesKey = keyToBytesStore.apply(key);
+                if (!isApplying(bytesKey))
+                    onPut(bytesKey, System.currentTimeMillis());
             }
         };
 
         store.subscription(true).registerDownstream(e -> e.apply(eventListener));
     }
 
+    /**
+     * Replicates the store of an asset with the other hosts of its cluster. A FilePerKeyValueStore
+     * is replicated by file name and contents, any other ObjectKeyValueStore, e.g. over a
+     * VanillaKeyValueStore, by its keys and values in binary wire.
+     *
+     * @throws AssetNotFoundException if there is no host identifier or no store to replicate.
+     */
+    @NotNull
+    public static EngineReplication forAsset(@NotNull RequestContext context, @NotNull Asset asset)
+            throws AssetNotFoundException {
+        HostIdentifier hostIdentifier = asset.findView(HostIdentifier.class);
+        if (hostIdentifier == null)
+            throw new AssetNotFoundException("HostIdentifier for " + asset.fullName());
+        byte identifier = hostIdentifier.hostId();
+
+        VanillaEngineReplication replication;
+        StringBytesStoreKeyValueStore bytesStore = asset.getView(StringBytesStoreKeyValueStore.class);
+        ObjectKeyValueStore objectStore = asset.getView(ObjectKeyValueStore.class);
+        if (bytesStore instanceof FilePerKeyValueStore)
+            replication = forFilePerKey(identifier, (FilePerKeyValueStore) bytesStore);
+        else if (objectStore != null)
+            replication = forObjects(identifier, objectStore, context.keyType(), context.valueType());
+        else
+            throw new AssetNotFoundException("store to replicate for " + asset.fullName());
+
+        EventLoop eventLoop = asset.findOrCreateView(EventLoop.class);
+        assert eventLoop != null;
+        eventLoop.start();
+        ReplicationHub.replicateWithCluster(context, asset, eventLoop, replication.isClosed,
+                replication, identifier);
+        return replication;
+    }
+
+    @NotNull
+    static VanillaEngineReplication<String, BytesStore, BytesStore, FilePerKeyValueStore> forFilePerKey(
+            byte identifier, @NotNull FilePerKeyValueStore store) {
+        // the file watcher notifies the changes of the store on its own thread.
+        return new VanillaEngineReplication<>(segment -> DirectValueStore.forReplicationData(),
+                DirectValueStore.withIntValueKeys(RemoteNodeReplicationState.class),
+                identifier, store,
+                (s, entry) -> {
+                    String key = new String(DirectValueStore.toByteArray(entry.key()), UTF_8);
+                    if (entry.isDeleted() || entry.value() == null)
+                        s.remove(key);
+                    else
+                        s.put(key, entry.value());
+                },
+                (s, key) -> s.get(new String(DirectValueStore.toByteArray(key), UTF_8)),
+                VanillaEngineReplication::segmentForBytes,
+                key -> BytesStore.wrap(key.getBytes(UTF_8)),
+                true);
+    }
+
+    @NotNull
+    static <K, V> VanillaEngineReplication<K, V, V, ObjectKeyValueStore<K, V>> forObjects(
+            byte identifier, @NotNull ObjectKeyValueStore<K, V> store,
+            @NotNull Class<K> keyType, @NotNull Class<V> valueType) {
+        return new VanillaEngineReplication<>(identifier, store,
+                (s, entry) -> {
+                    K key = fromBytesStore(entry.key(), keyType);
+                    V value = entry.isDeleted() || entry.value() == null
+                            ? null
+                            : fromBytesStore(entry.value(), valueType);
+                    if (value == null)
+                        s.remove(key);
+                    else
+                        s.put(key, value);
+                },
+                (s, key) -> toBytesStore(s.get(fromBytesStore(key, keyType)),
+                        threadLocalInstances.get().valueBytes),
+                VanillaEngineReplication::segmentForBytes,
+                // the key is only looked up, or copied by the DirectValueStore, so can be reused.
+                key -> toBytesStore(key, threadLocalInstances.get().keyBytes));
+    }
+
+    /**
+     * the segment of the replication data is chosen from the key's bytes, as the hashCode() of the
+     * key objects may not be consistent once they are copied.
+     */
+    private static int segmentForBytes(@NotNull KeyValueStore<?, ?> store, @NotNull BytesStore key) {
+        return (int) ((MerkleTree.hashKey(key) & Long.MAX_VALUE) % store.segments());
+    }
+
+    /**
+     * @return {@code bytes} holding the object in binary wire.
+     */
+    @NotNull
+    static BytesStore toBytesStore(@Nullable Object o, @NotNull Bytes<ByteBuffer> bytes) {
+        bytes.clear();
+        new BinaryWire(bytes).getValueOut().object(o);
+        return bytes;
+    }
+
+    @Nullable
+    static <T> T fromBytesStore(@NotNull BytesStore bytesStore, @NotNull Class<T> type) {
+        Bytes<ByteBuffer> bytes = threadLocalInstances.get().readBytes;
+        bytes.clear();
+        bytes.write(bytesStore, bytesStore.readPosition(), bytesStore.readRemaining());
+        return new BinaryWire(bytes).getValueIn().object(type);
+    }
+
+    /**
+     * @return true if the change of this key was caused by applying a remote entry, rather than
+     * made locally.
+     */
+    private boolean isApplying(@NotNull BytesStore key) {
+        Instances i = threadLocalInstances.get();
+        long keyHash = MerkleTree.hashKey(key);
+        if (i.applyingKey && i.applyingKeyHash == keyHash)
+            return true;
+        if (!asyncEvents)
+            return false;
+        Applied entry = applied.remove(keyHash);
+        if (entry == null)
+            return false;
+        // unless a newer entry has been recorded since, this is the change the entry made.
+        ReplicationData data = keyReplicationData[segmentForKey.segmentForKey(store, key)]
+                .getUsing(key, i.usingData);
+        if (data == null)
+            return true;
+        i.usingData = data;
+        return data.getTimestamp() < entry.timestamp || (data.getTimestamp() == entry.timestamp
+                && data.getIdentifier() == entry.identifier);
+    }
+
+    /**
+     * @return true if applying the entry changes the value in the store, so it causes an event.
+     */
+    private boolean changesValue(@NotNull ReplicationEntry entry) {
+        BytesStore value = getValue.getValue(store, entry.key());
+        if (entry.isDeleted() || entry.value() == null)
+            return value != null;
+        return value == null || !value.contentEquals(entry.value());
+    }
+
     @Override
     public byte identifier() {
         return identifier;
     }
 
+    @NotNull
+    @Override
+    public MerkleTree merkleTree() {
+        return merkleTree;
+    }
+
+    private static long hashEntry(long keyHash, @NotNull ReplicationData data) {
+        return MerkleTree.hashEntry(keyHash, data.getTimestamp(), data.getIdentifier(),
+                data.getDeleted());
+    }
+
+    @NotNull
+    private MerkleTree buildMerkleTree() {
+        final MerkleTree tree = new MerkleTree(keyReplicationData.length);
+        final Instances i = threadLocalInstances.get();
+        for (int s = 0; s < keyReplicationData.length; s++) {
+            final int segment = s;
+            final KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                    this.keyReplicationData[segment];
+            keyReplicationData.keySetIterator().forEachRemaining(key -> {
+                i.usingData = keyReplicationData.getUsing(key, i.usingData);
+                final long keyHash = MerkleTree.hashKey(key);
+                tree.update(segment, keyHash, 0, hashEntry(keyHash, i.usingData));
+            });
+        }
+        return tree;
+    }
+
     ////////////////
     // Method for working with modIterState
 
@@ -374,36 +619,53 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
                 remoteEntry.identifier() <= localReplicationData.getIdentifier());
     }
 
+    /**
+     * Applies the entry if it is newer than the key's replication data. The data is checked and
+     * the change applied under the lock of the key's segment, which local changes also take, so
+     * a local change can't be made between them.
+     */
     @Override
     public void applyReplication(@NotNull ReplicationEntry replicatedEntry) {
         Instances i = threadLocalInstances.get();
         BytesStore key = replicatedEntry.key();
-        while (true) {
-            KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
-                    this.keyReplicationData[segmentForKey.segmentForKey(store, key)];
+        long keyHash = MerkleTree.hashKey(key);
+        int segment = segmentForKey.segmentForKey(store, key);
+        KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                this.keyReplicationData[segment];
+        synchronized (keyReplicationData) {
             ReplicationData data = keyReplicationData.getUsing(key, i.usingData);
-            if (data != null)
+            if (data != null) {
                 i.usingData = data;
-            boolean shouldApplyRemoteModification = data == null ||
-                    shouldApplyRemoteModification(replicatedEntry, data);
-            if (shouldApplyRemoteModification) {
-                i.newData.copyFrom(data != null ? data : i.zeroData);
+                if (!shouldApplyRemoteModification(replicatedEntry, data))
+                    return;
+            }
+            long oldHash = data == null ? 0 : hashEntry(keyHash, data);
+            i.newData.copyFrom(data != null ? data : i.zeroData);
+            if (asyncEvents && changesValue(replicatedEntry))
+                applied.put(keyHash, new Applied(replicatedEntry.timestamp(), replicatedEntry.identifier()));
+            i.applyingKey = true;
+            i.applyingKeyHash = keyHash;
+            try {
                 changeApplier.applyChange(store, replicatedEntry);
-                i.newData.setDeleted(replicatedEntry.isDeleted());
-                i.newData.setIdentifier(replicatedEntry.identifier());
-                i.newData.setTimestamp(replicatedEntry.timestamp());
-                if (data == null) {
-                    if (keyReplicationData.putIfAbsent(key, i.newData) == null)
-                        return;
-                } else {
-                    dropChange(i.newData);
-                    if (keyReplicationData.replaceIfEqual(key, data, i.newData))
-                        return;
-                }
+            } finally {
+                i.applyingKey = false;
             }
+            i.newData.setDeleted(replicatedEntry.isDeleted());
+            i.newData.setIdentifier(replicatedEntry.identifier());
+            i.newData.setTimestamp(replicatedEntry.timestamp());
+            dropChange(i.newData);
+            keyReplicationData.put(key, i.newData);
+            merkleTree.update(segment, keyHash, oldHash, hashEntry(keyHash, i.newData));
+            forEachModificationIterator(modIter -> modIter.markClean(segment, key));
         }
     }
 
+    private void forEachModificationIterator(@NotNull Consumer<VanillaModificationIterator> action) {
+        for (long next = modIterSet.nextSetBit(0L); next >= 0L;
+             next = modIterSet.nextSetBit(next + 1L))
+            action.accept(modificationIterators.get((int) next));
+    }
+
     @Override
     public ModificationIterator acquireModificationIterator(byte id) {
         int remoteIdentifier = idToInt(id);
@@ -427,6 +689,8 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
 
             modificationIterators.set(remoteIdentifier, newModificationIterator);
             modIterSet.set(remoteIdentifier);
+            // after it is set, so the keys changed meanwhile are added by the changes.
+            newModificationIterator.indexChangedKeys();
             return newModificationIterator;
         }
     }
@@ -441,12 +705,15 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
 
     private void onChange(BytesStore key, boolean deleted, long changeTimestamp) {
         Instances i = threadLocalInstances.get();
-        while (true) {
-            KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
-                    this.keyReplicationData[segmentForKey.segmentForKey(store, key)];
+        long keyHash = MerkleTree.hashKey(key);
+        int segment = segmentForKey.segmentForKey(store, key);
+        KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                this.keyReplicationData[segment];
+        synchronized (keyReplicationData) {
             ReplicationData data = keyReplicationData.getUsing(key, i.usingData);
             if (data != null)
                 i.usingData = data;
+            long oldHash = data == null ? 0 : hashEntry(keyHash, data);
             i.newData.copyFrom(data != null ? data : i.zeroData);
             i.newData.setDeleted(deleted);
             long entryTimestamp = i.newData.getTimestamp();
@@ -455,60 +722,103 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
             i.newData.setTimestamp(changeTimestamp);
             i.newData.setIdentifier(identifier);
             raiseChange(i.newData);
-
-            boolean successfulUpdate = data == null ?
-                    (keyReplicationData.putIfAbsent(key, i.newData) == null) :
-                    (keyReplicationData.replaceIfEqual(key, data, i.newData));
-            if (successfulUpdate) {
-                for (long next = modIterSet.nextSetBit(0L); next > 0L;
-                     next = modIterSet.nextSetBit(next + 1L)) {
-                    VanillaModificationIterator modIter =
-                            modificationIterators.get((int) next);
-                    modIter.modNotify();
-                    if (modificationIteratorsRequiringSettingBootstrapTimestamp.clearIfSet(next)) {
-                        if (!setNextBootstrapTimestamp((int) next, changeTimestamp))
-                            throw new AssertionError();
-                    }
+            keyReplicationData.put(key, i.newData);
+            merkleTree.update(segment, keyHash, oldHash, hashEntry(keyHash, i.newData));
+
+            final long timestamp = changeTimestamp;
+            forEachModificationIterator(modIter -> {
+                modIter.markDirty(segment, key);
+                modIter.modNotify();
+                if (modificationIteratorsRequiringSettingBootstrapTimestamp.clearIfSet(modIter.identifier)) {
+                    if (!setNextBootstrapTimestamp(modIter.identifier, timestamp))
+                        throw new AssertionError();
                 }
-                return;
-            }
+            });
         }
     }
 
     class VanillaModificationIterator implements ModificationIterator, ReplicationEntry {
 
         private final int identifier;
+        // the keys of each segment changed since they were last sent to the remote host, so
+        // only those are looked at, guarded by the segment's replication data.
+        private final Set<ByteBuffer>[] dirtyKeys;
 
         VanillaModificationIterator(int identifier) {
             this.identifier = identifier;
+            this.dirtyKeys = new Set[keyReplicationData.length];
+            for (int segment = 0; segment < dirtyKeys.length; segment++)
+                dirtyKeys[segment] = new LinkedHashSet<>();
         }
 
         long forEachEntryCount;
 
+        /**
+         * Adds the keys already changed for the remote host, once when the iterator is created.
+         */
+        void indexChangedKeys() {
+            Instances i = threadLocalInstances.get();
+            for (int s = 0; s < keyReplicationData.length; s++) {
+                final int segment = s;
+                final KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                        VanillaEngineReplication.this.keyReplicationData[segment];
+                synchronized (keyReplicationData) {
+                    keyReplicationData.keySetIterator().forEachRemaining(key -> {
+                        i.usingData = keyReplicationData.getUsing(key, i.usingData);
+                        if (isChanged(i.usingData, identifier))
+                            markDirty(segment, key);
+                    });
+                }
+            }
+        }
+
+        /**
+         * Called holding the lock of the segment.
+         */
+        void markDirty(int segment, @NotNull BytesStore key) {
+            final ByteBuffer lookup = DirectValueStore.lookupKey(key);
+            if (!dirtyKeys[segment].contains(lookup))
+                dirtyKeys[segment].add(DirectValueStore.copyOf(lookup));
+        }
+
+        /**
+         * Called holding the lock of the segment.
+         */
+        void markClean(int segment, @NotNull BytesStore key) {
+            dirtyKeys[segment].remove(DirectValueStore.lookupKey(key));
+        }
+
         @Override
         public void forEach(@NotNull Consumer<ReplicationEntry> consumer) {
             forEachEntryCount = 0;
             Instances i = threadLocalInstances.get();
-            for (KeyValueStore<BytesStore, ReplicationData> keyReplicationData :
-                    VanillaEngineReplication.this.keyReplicationData) {
-                keyReplicationData.keySetIterator().forEachRemaining(key -> {
-                    i.usingData = keyReplicationData.getUsing(key, i.usingData);
-                    if (isChanged(i.usingData, identifier)) {
+            for (int segment = 0; segment < dirtyKeys.length; segment++) {
+                final KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                        VanillaEngineReplication.this.keyReplicationData[segment];
+                synchronized (keyReplicationData) {
+                    for (Iterator<ByteBuffer> it = dirtyKeys[segment].iterator(); it.hasNext(); ) {
+                        final BytesStore key = BytesStore.wrap(it.next().array());
+                        final ReplicationData data = keyReplicationData.getUsing(key, i.usingData);
+                        if (data == null || !isChanged(data, identifier)) {
+                            it.remove();
+                            continue;
+                        }
+                        i.usingData = data;
                         this.key = key;
-                        this.replicationData = i.usingData;
+                        this.replicationData = data;
                         try {
                             consumer.accept(this);
-                            i.newData.copyFrom(i.usingData);
+                            i.newData.copyFrom(data);
                             clearChange(i.newData, identifier);
-                            if (!keyReplicationData.replaceIfEqual(key, i.usingData, i.newData))
-                                throw new AssertionError();
+                            keyReplicationData.put(key, i.newData);
+                            it.remove();
                             forEachEntryCount++;
                         } finally {
                             this.key = null;
                             this.replicationData = null;
                         }
                     }
-                });
+                }
             }
             if (forEachEntryCount == 0) {
                 modificationIteratorsRequiringSettingBootstrapTimestamp.set(identifier);
@@ -518,14 +828,9 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
 
         @Override
         public boolean hasNext() {
-            Instances i = threadLocalInstances.get();
-            for (KeyValueStore<BytesStore, ReplicationData> keyReplicationData :
-                    VanillaEngineReplication.this.keyReplicationData) {
-                for (Iterator<BytesStore> keyIt = keyReplicationData.keySetIterator();
-                     keyIt.hasNext(); ) {
-                    BytesStore key = keyIt.next();
-                    i.usingData = keyReplicationData.getUsing(key, i.usingData);
-                    if (isChanged(i.usingData, identifier))
+            for (int segment = 0; segment < dirtyKeys.length; segment++) {
+                synchronized (keyReplicationData[segment]) {
+                    if (!dirtyKeys[segment].isEmpty())
                         return true;
                 }
             }
@@ -535,18 +840,60 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
         @Override
         public void dirtyEntries(long fromTimeStamp) throws InterruptedException {
             Instances i = threadLocalInstances.get();
-            for (KeyValueStore<BytesStore, ReplicationData> keyReplicationData :
-                    VanillaEngineReplication.this.keyReplicationData) {
-                keyReplicationData.keySetIterator().forEachRemaining(key -> {
-                    i.usingData = keyReplicationData.getUsing(key, i.usingData);
-                    if (i.usingData.getTimestamp() >= fromTimeStamp) {
-                        i.newData.copyFrom(i.usingData);
-                        setChange(i.newData, identifier);
-                        if (!keyReplicationData.replaceIfEqual(key, i.usingData, i.newData))
-                            throw new AssertionError();
-                    }
-                });
+            for (int s = 0; s < keyReplicationData.length; s++) {
+                final int segment = s;
+                final KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                        VanillaEngineReplication.this.keyReplicationData[segment];
+                synchronized (keyReplicationData) {
+                    keyReplicationData.keySetIterator().forEachRemaining(key -> {
+                        i.usingData = keyReplicationData.getUsing(key, i.usingData);
+                        if (i.usingData.getTimestamp() >= fromTimeStamp)
+                            setChanged(segment, key, i);
+                    });
+                }
+            }
+        }
+
+        @Override
+        public void dirtyEntries(@NotNull MerkleTree tree, @NotNull long[] leaves) {
+            final long[] sorted = leaves.clone();
+            Arrays.sort(sorted);
+            Instances i = threadLocalInstances.get();
+            int lastSegment = -1;
+            for (long leaf : sorted) {
+                final int segment = MerkleTree.segmentOf(leaf);
+                if (segment == lastSegment)
+                    continue;
+                lastSegment = segment;
+                KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                        VanillaEngineReplication.this.keyReplicationData[segment];
+                synchronized (keyReplicationData) {
+                    keyReplicationData.keySetIterator().forEachRemaining(key -> {
+                        if (Arrays.binarySearch(sorted, tree.leafOf(segment, MerkleTree.hashKey(key))) < 0)
+                            return;
+                        setChanged(segment, key, i);
+                    });
+                }
+            }
+            modNotify();
+        }
+
+        /**
+         * Marks the key as changed for the remote host, called holding the lock of the segment.
+         */
+        private void setChanged(int segment, @NotNull BytesStore key, @NotNull Instances i) {
+            final KeyValueStore<BytesStore, ReplicationData> keyReplicationData =
+                    VanillaEngineReplication.this.keyReplicationData[segment];
+            ReplicationData data = keyReplicationData.getUsing(key, i.usingData);
+            if (data == null)
+                return;
+            i.usingData = data;
+            if (!isChanged(data, identifier)) {
+                i.newData.copyFrom(data);
+                setChange(i.newData, identifier);
+                keyReplicationData.put(key, i.newData);
             }
+            markDirty(segment, key);
         }
 
         ModificationNotifier modificationNotifier;
@@ -612,6 +959,7 @@ public class VanillaEngineReplication<K, V, MV, Store extends SubscriptionKeyVal
 
     @Override
     public void close() throws IOException {
+        isClosed.set(true);
         try {
             Throwable throwable = null;
             for (KeyValueStore<BytesStore, ReplicationData> keyReplicationData :
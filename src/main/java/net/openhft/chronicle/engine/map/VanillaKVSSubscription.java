@@ -25,15 +25,22 @@ import net.openhft.chronicle.engine.api.tree.RequestContext;
 import net.openhft.chronicle.engine.pubsub.SimpleSubscription;
 import net.openhft.chronicle.engine.pubsub.VanillaSimpleSubscription;
 import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.engine.query.KeyPredicate;
+import net.openhft.chronicle.engine.query.KeyPredicate.KeyPredicateType;
+import net.openhft.chronicle.threads.api.EventLoop;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 import static java.lang.Boolean.TRUE;
 import static net.openhft.chronicle.engine.api.pubsub.SubscriptionConsumer.notifyEachSubscriber;
@@ -46,22 +53,43 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
         RawKVSSubscription<K, V> {
 
     private static final Logger LOG = LoggerFactory.getLogger(VanillaKVSSubscription.class);
+    // smaller stores are bootstrapped on the registering thread.
+    private static final long PARALLEL_BOOTSTRAP_SIZE = Long.getLong("VanillaKVSSubscription.parallelBootstrapSize", 100_000);
+    // how long the journal is kept for subscribers to resume after the last one has gone.
+    private static final long JOURNAL_RETENTION_MS = Long.getLong("VanillaKVSSubscription.journalRetentionMs", 60_000);
     private final Set<TopicSubscriber<K, V>> topicSubscribers = new CopyOnWriteArraySet<>();
     private final Set<Subscriber<MapEvent<K, V>>> subscribers = new CopyOnWriteArraySet<>();
     private final Set<Subscriber<K>> keySubscribers = new CopyOnWriteArraySet<>();
     private final Set<EventConsumer<K, V>> downstream = new CopyOnWriteArraySet<>();
+    // subscribers filtering on a key or key prefix.
+    private final KeyedSubscribers<Subscriber<MapEvent<K, V>>> keyedSubscribers = new KeyedSubscribers<>();
+    private final KeyedSubscribers<Subscriber<K>> keyedKeySubscribers = new KeyedSubscribers<>();
+    private final Set<SequencedEntrySubscriber<K, V>> sequencedSubscribers = new CopyOnWriteArraySet<>();
+    // the entry subscribers which didn't register with oldValues=false.
+    private final Set<Subscriber<MapEvent<K, V>>> oldValueSubscribers = new CopyOnWriteArraySet<>();
 
     @Nullable
     private final Asset asset;
-    final Map<Subscriber, Subscriber> subscriptionDelegate = new IdentityHashMap<>();
+    // only set when subscribers are notified asynchronously.
+    @Nullable
+    private final EventLoop eventLoop;
+    final Map<Object, Object> subscriptionDelegate = new IdentityHashMap<>();
     private KeyValueStore<K, V> kvStore;
+    // created by the first sequenced subscriber, and kept for a while after the last has gone.
+    @Nullable
+    private volatile EventJournal<K, V> journal;
 
     public VanillaKVSSubscription(@NotNull RequestContext requestContext, @NotNull Asset asset) {
-        this(requestContext.viewType(), asset);
+        this(requestContext.viewType(), asset, TRUE.equals(requestContext.asyncDispatch()));
     }
 
     public VanillaKVSSubscription(@Nullable Class viewType, @Nullable Asset asset) {
+        this(viewType, asset, false);
+    }
+
+    private VanillaKVSSubscription(@Nullable Class viewType, @Nullable Asset asset, boolean asyncDispatch) {
         this.asset = asset;
+        this.eventLoop = asyncDispatch && asset != null ? asset.findOrCreateView(EventLoop.class) : null;
         if (viewType != null && asset != null)
             asset.addView(viewType, this);
     }
@@ -70,8 +98,12 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
     public void close() {
         notifyEndOfSubscription(topicSubscribers);
         notifyEndOfSubscription(subscribers);
+        notifyEndOfSubscription(sequencedSubscribers);
         notifyEndOfSubscription(keySubscribers);
         notifyEndOfSubscription(downstream);
+        keyedSubscribers.removeAll().forEach(this::notifyEndOfSubscription);
+        oldValueSubscribers.clear();
+        keyedKeySubscribers.removeAll().forEach(this::notifyEndOfSubscription);
     }
 
     @Override
@@ -110,12 +142,12 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
 
     @Override
     public int keySubscriberCount() {
-        return keySubscribers.size();
+        return keySubscribers.size() + keyedKeySubscribers.size();
     }
 
     @Override
     public int entrySubscriberCount() {
-        return subscribers.size();
+        return subscribers.size() + keyedSubscribers.size() + sequencedSubscribers.size();
     }
 
     @Override
@@ -127,6 +159,8 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
     public boolean hasSubscribers() {
         return !topicSubscribers.isEmpty() || !subscribers.isEmpty()
                 || !keySubscribers.isEmpty() || !downstream.isEmpty()
+                || !keyedSubscribers.isEmpty() || !keyedKeySubscribers.isEmpty()
+                || !sequencedSubscribers.isEmpty() || journal != null
                 || asset.hasChildren();
     }
 
@@ -138,21 +172,52 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
     private void notifyEvent1(@NotNull MapEvent<K, V> changeEvent) {
         K key = changeEvent.getKey();
 
+        final EventJournal<K, V> journal = this.journal;
+        if (journal != null) {
+            // so the sequences are passed to each subscriber in order.
+            synchronized (journal) {
+                if (!releaseIfIdle(journal)) {
+                    final long sequence = journal.append(changeEvent);
+                    if (!sequencedSubscribers.isEmpty())
+                        notifyEachSubscriber(sequencedSubscribers, s -> s.onMessage(changeEvent, sequence));
+                }
+            }
+        }
         if (!topicSubscribers.isEmpty()) {
             V value = changeEvent.getValue();
             notifyEachSubscriber(topicSubscribers, ts -> ts.onMessage(key, value));
         }
         if (!subscribers.isEmpty()) {
-            notifyEachSubscriber(subscribers, s -> s.onMessage(changeEvent));
+            notifyEachSubscriber(subscribers, s -> notifyMapSubscriber(s, changeEvent));
+        }
+        if (!keyedSubscribers.isEmpty()) {
+            keyedSubscribers.notifyEachSubscriber(key, s -> notifyMapSubscriber(s, changeEvent));
         }
         if (!keySubscribers.isEmpty()) {
             notifyEachSubscriber(keySubscribers, s -> s.onMessage(key));
         }
+        if (!keyedKeySubscribers.isEmpty()) {
+            keyedKeySubscribers.notifyEachSubscriber(key, s -> s.onMessage(key));
+        }
         if (!downstream.isEmpty()) {
             notifyEachSubscriber(downstream, d -> d.notifyEvent(changeEvent));
         }
     }
 
+    /**
+     * Notify a subscriber, no longer keeping the previous value for it if it is dropped as
+     * invalid.
+     */
+    private void notifyMapSubscriber(@NotNull Subscriber<MapEvent<K, V>> subscriber,
+                                     @NotNull MapEvent<K, V> changeEvent) throws InvalidSubscriberException {
+        try {
+            subscriber.onMessage(changeEvent);
+        } catch (InvalidSubscriberException e) {
+            oldValueSubscribers.remove(subscriber);
+            throw e;
+        }
+    }
+
     private void notifyEventToChild(@NotNull MapEvent<K, V> changeEvent) {
         K key = changeEvent.getKey();
         if (asset.hasChildren() && key instanceof CharSequence) {
@@ -168,10 +233,40 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
         }
     }
 
+    /**
+     * Release the journal once there have been no sequenced subscribers for the retention
+     * period, called while holding the lock on the journal.
+     *
+     * @return true if the journal was released.
+     */
+    private boolean releaseIfIdle(@NotNull EventJournal<K, V> journal) {
+        if (!sequencedSubscribers.isEmpty()) {
+            journal.idleSince = 0;
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if (journal.idleSince == 0)
+            journal.idleSince = now;
+        if (now - journal.idleSince < JOURNAL_RETENTION_MS)
+            return false;
+        synchronized (this) {
+            if (this.journal == journal)
+                this.journal = null;
+        }
+        return true;
+    }
+
     @Override
     public boolean needsPrevious() {
-        // todo optimise this to reduce false positives.
-        return !subscribers.isEmpty() || !downstream.isEmpty();
+        if (journal != null)
+            return true;
+        if (!oldValueSubscribers.isEmpty())
+            return true;
+        for (EventConsumer<K, V> d : downstream) {
+            if (d.needsPrevious())
+                return true;
+        }
+        return false;
     }
 
     @Override
@@ -189,40 +284,138 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
     @NotNull
     private <T> Subscriber<T> subscriber(@NotNull Subscriber<T> subscriber,
                                          @NotNull Filter<T> filter) {
-        final Subscriber<T> sub;
-        if (filter.isEmpty())
-            sub = subscriber;
-        else {
-            sub = new Filter.FilteredSubscriber<T>(filter, subscriber);
+        Subscriber<T> sub = subscriber;
+        if (!filter.isEmpty())
+            sub = new Filter.FilteredSubscriber<T>(filter, sub);
+        if (eventLoop != null)
+            sub = new AsyncSubscriber<>(eventLoop, sub);
+        if (sub != subscriber)
             subscriptionDelegate.put(subscriber, sub);
-        }
         return sub;
     }
 
+    @NotNull
+    private Subscriber<MapEvent<K, V>> conflatingSubscriber(@NotNull Subscriber<MapEvent<K, V>> subscriber,
+                                                            @NotNull Filter<MapEvent<K, V>> filter) {
+        // conflate before filtering as the filter can map the events to another type.
+        final Subscriber<MapEvent<K, V>> sub = filter.isEmpty()
+                ? subscriber
+                : new Filter.FilteredSubscriber<>(filter, subscriber);
+        final EventLoop el = eventLoop != null ? eventLoop : asset.findOrCreateView(EventLoop.class);
+        final ConflatingSubscriber<K, V> conflating = ConflatingSubscriber.onEventLoop(el, sub);
+        subscriptionDelegate.put(subscriber, conflating);
+        return conflating;
+    }
+
     private void registerSubscriber0(@NotNull RequestContext rc,
                                      @NotNull Subscriber<MapEvent<K, V>> subscriber,
                                      @NotNull Filter<MapEvent<K, V>> filter) {
 
-        final Subscriber<MapEvent<K, V>> sub = subscriber(subscriber, filter);
+        final Subscriber<MapEvent<K, V>> sub = TRUE.equals(rc.conflate())
+                ? conflatingSubscriber(subscriber, filter)
+                : subscriber(subscriber, filter);
+
+        if (rc.oldValues() != Boolean.FALSE)
+            oldValueSubscribers.add(sub);
+        final KeyPredicate keyPredicate = filter.keyPredicate();
+        if (keyPredicate == null)
+            this.subscribers.add(sub);
+        else
+            keyedSubscribers.add(keyPredicate, sub);
 
-        this.subscribers.add(sub);
         Boolean bootstrap = rc.bootstrap();
         if (bootstrap != Boolean.FALSE && kvStore != null) {
             try {
-                for (int i = 0; i < kvStore.segments(); i++)
-                    kvStore.entriesFor(i, sub::onMessage);
+                if (keyPredicate != null && keyPredicate.type() == KeyPredicateType.EQUALS) {
+                    K key = (K) keyPredicate.key();
+                    V value = kvStore.get(key);
+                    if (value != null)
+                        sub.onMessage(InsertedEvent.of(asset.fullName(), key, value));
+                } else {
+                    bootstrap(segment -> {
+                        final Batcher<MapEvent<K, V>> batcher = new Batcher<>(sub);
+                        kvStore.entriesFor(segment, batcher);
+                        batcher.flush();
+                    });
+                }
 
                 if (TRUE.equals(rc.endSubscriptionAfterBootstrap())) {
 
                     sub.onEndOfSubscription();
                     LOG.info("onEndOfSubscription");
-                    this.subscribers.remove(sub);
+                    removeSubscriber(sub);
                 }
 
             } catch (InvalidSubscriberException e) {
-                this.subscribers.remove(sub);
+                removeSubscriber(sub);
+            }
+        }
+    }
+
+    @Override
+    public void registerSequencedSubscriber(@NotNull RequestContext rc,
+                                            @NotNull SequencedSubscriber<MapEvent<K, V>> subscriber,
+                                            @NotNull Filter<MapEvent<K, V>> filter,
+                                            long resumeFrom) {
+        final SequencedEntrySubscriber<K, V> sub = new SequencedEntrySubscriber<>(subscriber, filter);
+        subscriptionDelegate.put(subscriber, sub);
+
+        try {
+            EventJournal<K, V> journal;
+            for (; ; ) {
+                journal = acquireJournal();
+                synchronized (journal) {
+                    // the journal was released before the subscriber could be added.
+                    if (this.journal != journal)
+                        continue;
+                    if (resumeFrom > 0 && journal.canReplay(resumeFrom)) {
+                        // the events replayed are sent with their sequence, like live ones.
+                        sub.endBootstrap();
+                        journal.replay(resumeFrom, sub);
+                        sub.onSequence(journal.lastSequence());
+                        sequencedSubscribers.add(sub);
+                        return;
+                    }
+                    sequencedSubscribers.add(sub);
+                    break;
+                }
+            }
+
+            if (rc.bootstrap() != Boolean.FALSE && kvStore != null) {
+                bootstrap(segment -> {
+                    final Batcher<MapEvent<K, V>> batcher = new Batcher<>(sub);
+                    kvStore.entriesFor(segment, batcher);
+                    batcher.flush();
+                });
+                if (TRUE.equals(rc.endSubscriptionAfterBootstrap())) {
+                    sub.onEndOfSubscription();
+                    sequencedSubscribers.remove(sub);
+                    return;
+                }
+            }
+
+            // only once the bootstrap has been sent, so a subscriber which disconnects while
+            // bootstrapping doesn't resume from a sequence without the rest of the bootstrap.
+            synchronized (journal) {
+                sub.endBootstrap();
+                sub.onSequence(journal.lastSequence());
+            }
+        } catch (InvalidSubscriberException e) {
+            sequencedSubscribers.remove(sub);
+        }
+    }
+
+    @NotNull
+    private EventJournal<K, V> acquireJournal() {
+        EventJournal<K, V> journal = this.journal;
+        if (journal == null) {
+            synchronized (this) {
+                journal = this.journal;
+                if (journal == null)
+                    this.journal = journal = new EventJournal<>();
             }
         }
+        return journal;
     }
 
     @Override
@@ -231,17 +424,31 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
                                       @NotNull Filter<K> filter) {
         final Boolean bootstrap = rc.bootstrap();
         final Subscriber<K> sub = subscriber(subscriber, filter);
-        keySubscribers.add(sub);
+        final KeyPredicate keyPredicate = filter.keyPredicate();
+        if (keyPredicate == null)
+            keySubscribers.add(sub);
+        else
+            keyedKeySubscribers.add(keyPredicate, sub);
+
         if (bootstrap != Boolean.FALSE && kvStore != null) {
             try {
-                for (int i = 0; i < kvStore.segments(); i++)
-                    kvStore.keysFor(i, sub::onMessage);
+                if (keyPredicate != null && keyPredicate.type() == KeyPredicateType.EQUALS) {
+                    K key = (K) keyPredicate.key();
+                    if (kvStore.containsKey(key))
+                        sub.onMessage(key);
+                } else {
+                    bootstrap(segment -> {
+                        final Batcher<K> batcher = new Batcher<>(sub);
+                        kvStore.keysFor(segment, batcher);
+                        batcher.flush();
+                    });
+                }
                 if (TRUE.equals(rc.endSubscriptionAfterBootstrap())) {
                     sub.onEndOfSubscription();
-                    keySubscribers.remove(sub);
+                    removeKeySubscriber(sub);
                 }
             } catch (InvalidSubscriberException e) {
-                keySubscribers.remove(sub);
+                removeKeySubscriber(sub);
             }
         }
     }
@@ -249,20 +456,58 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
     @Override
     public void registerTopicSubscriber(@NotNull RequestContext rc, @NotNull TopicSubscriber subscriber) {
         Boolean bootstrap = rc.bootstrap();
-        topicSubscribers.add((TopicSubscriber<K, V>) subscriber);
+        final TopicSubscriber<K, V> sub;
+        if (eventLoop == null) {
+            sub = subscriber;
+        } else {
+            sub = AsyncSubscriber.async(eventLoop, (TopicSubscriber<K, V>) subscriber);
+            subscriptionDelegate.put(subscriber, sub);
+        }
+        topicSubscribers.add(sub);
         if (bootstrap != Boolean.FALSE && kvStore != null) {
             try {
-                for (int i = 0; i < kvStore.segments(); i++)
-                    kvStore.entriesFor(i, e -> subscriber.onMessage(e.getKey(), e.getValue()));
+                bootstrap(segment -> kvStore.entriesFor(segment, e -> {
+                    synchronized (sub) {
+                        sub.onMessage(e.getKey(), e.getValue());
+                    }
+                }));
             } catch (InvalidSubscriberException dontAdd) {
-                topicSubscribers.remove(subscriber);
+                topicSubscribers.remove(sub);
             }
         }
 
     }
 
+    /**
+     * Replay every segment of the store. Large stores with more than one segment are replayed
+     * on the fork-join pool, one task per segment, so the consumer must serialize its calls to
+     * the subscriber, e.g. with a {@link Batcher}.
+     */
+    private void bootstrap(@NotNull SubscriptionConsumer<Integer> segmentConsumer) throws InvalidSubscriberException {
+        final int segments = kvStore.segments();
+        if (segments <= 1 || kvStore.longSize() < PARALLEL_BOOTSTRAP_SIZE) {
+            for (int i = 0; i < segments; i++)
+                segmentConsumer.accept(i);
+            return;
+        }
+
+        final AtomicBoolean invalid = new AtomicBoolean();
+        IntStream.range(0, segments).parallel().forEach(i -> {
+            if (invalid.get())
+                return;
+            try {
+                segmentConsumer.accept(i);
+            } catch (InvalidSubscriberException e) {
+                invalid.set(true);
+            }
+        });
+        if (invalid.get())
+            throw new InvalidSubscriberException();
+    }
+
     @Override
     public void registerDownstream(@NotNull EventConsumer<K, V> subscription) {
+        // downstream is always notified on the writer's thread, it has its own subscribers.
         downstream.add(subscription);
 
     }
@@ -274,19 +519,135 @@ public class VanillaKVSSubscription<K, MV, V> implements ObjectKVSSubscription<K
 
     @Override
     public void unregisterSubscriber(@NotNull Subscriber subscriber) {
-        final Subscriber delegate = subscriptionDelegate.get(subscriber);
+        final Subscriber delegate = (Subscriber) subscriptionDelegate.remove(subscriber);
         final Subscriber s = delegate != null ? delegate : subscriber;
-        subscribers.remove(s);
-        keySubscribers.remove(s);
+        removeSubscriber(s);
+        removeKeySubscriber(s);
         s.onEndOfSubscription();
     }
 
+    private void removeSubscriber(@NotNull Subscriber<MapEvent<K, V>> sub) {
+        oldValueSubscribers.remove(sub);
+        if (!subscribers.remove(sub) && !sequencedSubscribers.remove(sub))
+            keyedSubscribers.remove(sub);
+        endAsync(sub);
+    }
+
+    private void removeKeySubscriber(@NotNull Subscriber<K> sub) {
+        if (!keySubscribers.remove(sub))
+            keyedKeySubscribers.remove(sub);
+        endAsync(sub);
+    }
+
+    /**
+     * an asynchronous subscriber removes its handler from the event loop once it has delivered
+     * its pending events.
+     */
+    private static void endAsync(@NotNull Subscriber<?> sub) {
+        if (sub instanceof AsyncSubscriber)
+            sub.onEndOfSubscription();
+    }
+
     @Override
     public void unregisterTopicSubscriber(@NotNull TopicSubscriber subscriber) {
-        topicSubscribers.remove(subscriber);
+        final TopicSubscriber delegate = (TopicSubscriber) subscriptionDelegate.remove(subscriber);
+        final TopicSubscriber ts = delegate != null ? delegate : subscriber;
+        topicSubscribers.remove(ts);
 
-        subscriber.onEndOfSubscription();
+        ts.onEndOfSubscription();
     }
 
+    /**
+     * Applies the filter to the events for a sequenced subscriber, remembering the sequence of
+     * the live event being filtered. The live events received while bootstrapping are passed on
+     * without their sequence.
+     */
+    static class SequencedEntrySubscriber<K, V> implements SequencedSubscriber<MapEvent<K, V>> {
+        private final SequencedSubscriber<MapEvent<K, V>> subscriber;
+        private final Subscriber<MapEvent<K, V>> bootstrap;
+        private final Subscriber<MapEvent<K, V>> live;
+        // only accessed while holding the lock on the journal.
+        private long sequence;
+        private boolean bootstrapping = true;
+
+        SequencedEntrySubscriber(@NotNull SequencedSubscriber<MapEvent<K, V>> subscriber,
+                                 @NotNull Filter<MapEvent<K, V>> filter) {
+            this.subscriber = subscriber;
+            final Subscriber<MapEvent<K, V>> sequenced = e -> subscriber.onMessage(e, sequence);
+            this.bootstrap = filter.isEmpty() ? subscriber : new Filter.FilteredSubscriber<>(filter, subscriber);
+            this.live = filter.isEmpty() ? sequenced : new Filter.FilteredSubscriber<>(filter, sequenced);
+        }
 
+        @Override
+        public void onMessage(MapEvent<K, V> e, long sequence) throws InvalidSubscriberException {
+            if (bootstrapping) {
+                synchronized (this) {
+                    bootstrap.onMessage(e);
+                }
+                return;
+            }
+            this.sequence = sequence;
+            live.onMessage(e);
+        }
+
+        /**
+         * Called while holding the lock on the journal, the live events after this are sent
+         * with their sequence.
+         */
+        void endBootstrap() {
+            bootstrapping = false;
+        }
+
+        @Override
+        public void onSequence(long sequence) throws InvalidSubscriberException {
+            subscriber.onSequence(sequence);
+        }
+
+        @Override
+        public void onMessage(MapEvent<K, V> e) throws InvalidSubscriberException {
+            bootstrap.onMessage(e);
+        }
+
+        @Override
+        public void onMessages(List<MapEvent<K, V>> events) throws InvalidSubscriberException {
+            bootstrap.onMessages(events);
+        }
+
+        @Override
+        public void onEndOfSubscription() {
+            subscriber.onEndOfSubscription();
+        }
+    }
+
+    /**
+     * Passes the bootstrap to a subscriber in batches, holding the lock on the subscriber so
+     * batches from different segments aren't delivered at the same time.
+     */
+    static class Batcher<E> implements SubscriptionConsumer<E> {
+        static final int BATCH_SIZE = Integer.getInteger("VanillaKVSSubscription.batchSize", 256);
+
+        private final Subscriber<E> subscriber;
+        private List<E> batch = new ArrayList<>();
+
+        Batcher(@NotNull Subscriber<E> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void accept(E e) throws InvalidSubscriberException {
+            batch.add(e);
+            if (batch.size() >= BATCH_SIZE)
+                flush();
+        }
+
+        void flush() throws InvalidSubscriberException {
+            if (batch.isEmpty())
+                return;
+            final List<E> events = batch;
+            batch = new ArrayList<>();
+            synchronized (subscriber) {
+                subscriber.onMessages(events);
+            }
+        }
+    }
 }
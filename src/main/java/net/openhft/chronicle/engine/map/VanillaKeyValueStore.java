@@ -16,6 +16,7 @@
 
 package net.openhft.chronicle.engine.map;
 
+import net.openhft.chronicle.engine.api.EngineReplication;
 import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
 import net.openhft.chronicle.engine.api.map.KeyValueStore;
 import net.openhft.chronicle.engine.api.map.MapEvent;
@@ -26,16 +27,25 @@ import net.openhft.chronicle.engine.api.tree.RequestContext;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 
 /**
  * Created by peter on 22/05/15.
+ *
+ * The entries are split across segments by the hash of the key so a segment can be iterated on
+ * its own, e.g. to bootstrap a subscriber from several threads.
  */
 public class VanillaKeyValueStore<K, V> implements AuthenticatedKeyValueStore<K, V> {
-    private final ConcurrentMap<K, V> map = new ConcurrentHashMap<>();
+    static final int SEGMENTS = Integer.highestOneBit(
+            Math.max(1, Integer.getInteger("VanillaKeyValueStore.segments", 16)));
+
+    private final ConcurrentMap<K, V>[] maps;
     private final Asset asset;
     //private final RawKVSSubscription<K, Object, V> subscriptions;
 
@@ -43,6 +53,9 @@ public class VanillaKeyValueStore<K, V> implements AuthenticatedKeyValueStore<K,
 
         //this(asset);
         this.asset = asset;
+        this.maps = new ConcurrentMap[SEGMENTS];
+        for (int i = 0; i < maps.length; i++)
+            maps[i] = new ConcurrentHashMap<>();
         //this.subscriptions = asset.acquireView(RawKVSSubscription.class, context);
         //subscriptions.setKvStore(this);
     }
@@ -53,14 +66,19 @@ public class VanillaKeyValueStore<K, V> implements AuthenticatedKeyValueStore<K,
 
     }
 
+    @NotNull
+    private ConcurrentMap<K, V> map(K key) {
+        return maps[segmentFor(key)];
+    }
+
     @Override
     public boolean put(K key, V value) {
-        return map.put(key, value) != null;
+        return map(key).put(key, value) != null;
     }
 
     @Override
     public V getAndPut(K key, V value) {
-        V oldValue = map.put(key, value);
+        V oldValue = map(key).put(key, value);
 //        subscriptions.notifyEvent(oldValue == null
 //                ? InsertedEvent.of(asset.fullName(), key, value)
 //                : UpdatedEvent.of(asset.fullName(), key, oldValue, value));
@@ -69,12 +87,29 @@ public class VanillaKeyValueStore<K, V> implements AuthenticatedKeyValueStore<K,
 
     @Override
     public boolean remove(K key) {
-        return map.remove(key) != null;
+        return map(key).remove(key) != null;
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> entries) {
+        // group the entries by segment so each segment is only visited once.
+        final Map<K, V>[] bySegment = new Map[maps.length];
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            final int segment = segmentFor(entry.getKey());
+            Map<K, V> segmentEntries = bySegment[segment];
+            if (segmentEntries == null)
+                bySegment[segment] = segmentEntries = new HashMap<>();
+            segmentEntries.put(entry.getKey(), entry.getValue());
+        }
+        for (int i = 0; i < bySegment.length; i++) {
+            if (bySegment[i] != null)
+                maps[i].putAll(bySegment[i]);
+        }
     }
 
     @Override
     public V getAndRemove(K key) {
-        V oldValue = map.remove(key);
+        V oldValue = map(key).remove(key);
 //        if (oldValue != null)
 //            subscriptions.notifyEvent(RemovedEvent.of(asset.fullName(), key, oldValue));
         return oldValue;
@@ -82,49 +117,65 @@ public class VanillaKeyValueStore<K, V> implements AuthenticatedKeyValueStore<K,
 
     @Override
     public V getUsing(K key, Object value) {
-        return map.get(key);
+        return map(key).get(key);
     }
 
     @Override
     public long longSize() {
-        return map.size();
+        long size = 0;
+        for (ConcurrentMap<K, V> map : maps)
+            size += map.size();
+        return size;
+    }
+
+    @Override
+    public int segments() {
+        return maps.length;
+    }
+
+    @Override
+    public int segmentFor(K key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (maps.length - 1);
     }
 
     @Override
     public void keysFor(int segment, @NotNull SubscriptionConsumer<K> kConsumer) throws InvalidSubscriberException {
-        SubscriptionConsumer.notifyEachEvent(map.keySet(), kConsumer);
+        for (K key : maps[segment].keySet())
+            kConsumer.accept(key);
     }
 
     @Override
     public void entriesFor(int segment, @NotNull SubscriptionConsumer<MapEvent<K, V>> kvConsumer) throws InvalidSubscriberException {
-        SubscriptionConsumer.notifyEachEvent(map.entrySet(), e -> kvConsumer.accept(InsertedEvent.of(asset.fullName(), e.getKey(), e.getValue())));
+        String assetName = asset.fullName();
+        for (Map.Entry<K, V> e : maps[segment].entrySet())
+            kvConsumer.accept(InsertedEvent.of(assetName, e.getKey(), e.getValue()));
     }
 
     @NotNull
     @Override
     public Iterator<Map.Entry<K, V>> entrySetIterator() {
-        return map.entrySet().iterator();
+        return new SegmentsIterator<>(maps, m -> m.entrySet().iterator());
     }
 
     @NotNull
     @Override
     public Iterator<K> keySetIterator() {
-        return map.keySet().iterator();
+        return new SegmentsIterator<>(maps, m -> m.keySet().iterator());
     }
 
     @Override
     public void clear() {
-        try {
-            for (int i = 0, segs = segments(); i < segs; i++)
-                keysFor(i, map::remove);
-        } catch (InvalidSubscriberException e) {
-            throw new AssertionError(e);
-        }
+        for (ConcurrentMap<K, V> map : maps)
+            map.clear();
     }
 
     @Override
     public boolean containsValue(final V value) {
-        return map.containsValue(value);
+        for (ConcurrentMap<K, V> map : maps)
+            if (map.containsValue(value))
+                return true;
+        return false;
     }
 
     @Override
@@ -153,6 +204,47 @@ public class VanillaKeyValueStore<K, V> implements AuthenticatedKeyValueStore<K,
 
     @Override
     public void accept(final ReplicationEntry replicationEntry) {
-        throw new UnsupportedOperationException("todo");
+        // the EngineReplication keeps the timestamp and identifier of the entry applied.
+        asset.acquireView(EngineReplication.class).applyReplication(replicationEntry);
+    }
+
+    static class SegmentsIterator<K, V, T> implements Iterator<T> {
+        private final ConcurrentMap<K, V>[] maps;
+        private final Function<ConcurrentMap<K, V>, Iterator<T>> iteratorFor;
+        private int segment = 0;
+        private Iterator<T> iterator;
+        // hasNext() can move on to the next segment before remove() is called.
+        private Iterator<T> lastIterator;
+
+        SegmentsIterator(ConcurrentMap<K, V>[] maps, Function<ConcurrentMap<K, V>, Iterator<T>> iteratorFor) {
+            this.maps = maps;
+            this.iteratorFor = iteratorFor;
+            this.iterator = iteratorFor.apply(maps[0]);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!iterator.hasNext()) {
+                if (++segment >= maps.length)
+                    return false;
+                iterator = iteratorFor.apply(maps[segment]);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastIterator = iterator;
+            return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (lastIterator == null)
+                throw new IllegalStateException();
+            lastIterator.remove();
+        }
     }
 }
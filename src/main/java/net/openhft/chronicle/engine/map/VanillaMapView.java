@@ -228,8 +228,23 @@ public class VanillaMapView<K, V> implements MapView<K, V> {
     @Override
     public void putAll(@net.openhft.chronicle.core.annotation.NotNull Map<? extends K, ? extends V> m) {
         for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+            checkKey(entry.getKey());
+            checkValue(entry.getValue());
         }
+        kvStore.putAll(m);
+    }
+
+    @NotNull
+    @Override
+    public List<V> getAll(@NotNull Collection<K> keys) {
+        keys.forEach(this::checkKey);
+        return kvStore.getAll(keys);
+    }
+
+    @Override
+    public void removeAll(@NotNull Collection<K> keys) {
+        keys.forEach(this::checkKey);
+        kvStore.removeAll(keys);
     }
 
     @Override
@@ -26,8 +26,12 @@ import net.openhft.chronicle.engine.api.pubsub.SubscriptionConsumer;
 import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.AssetNotFoundException;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.wire.BinaryWire;
 import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.ValueOut;
 import net.openhft.chronicle.wire.Wire;
+import net.openhft.chronicle.wire.WireOut;
+import net.openhft.chronicle.wire.WireType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -40,6 +44,7 @@ import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import static java.lang.Boolean.TRUE;
 import static net.openhft.chronicle.engine.map.Buffers.BUFFERS;
 
 /**
@@ -68,13 +73,14 @@ public class VanillaStringMarshallableKeyValueStore<V extends Marshallable> impl
     public VanillaStringMarshallableKeyValueStore(@NotNull RequestContext context, @NotNull Asset asset,
                                                   @NotNull SubscriptionKeyValueStore<String, BytesStore> kvStore) throws AssetNotFoundException {
         this(asset.acquireView(ObjectKVSSubscription.class, context), asset, context.valueType(),
-                kvStore, context.wireType());
+                kvStore, context.wireType(), TRUE.equals(context.reuseEvents()));
     }
 
     VanillaStringMarshallableKeyValueStore(@NotNull ObjectKVSSubscription<String, V>
                                                    subscriptions, @NotNull Asset asset, @NotNull Class valueType,
                                            @NotNull SubscriptionKeyValueStore<String, BytesStore> kvStore,
-                                           @NotNull Function<Bytes, Wire> wireType) {
+                                           @NotNull Function<Bytes, Wire> wireType,
+                                           boolean reuseEvents) {
         this.asset = asset;
         this.valueType = valueType;
         valueToBytes = toBytes(valueType, wireType);
@@ -82,11 +88,42 @@ public class VanillaStringMarshallableKeyValueStore<V extends Marshallable> impl
         this.kvStore = kvStore;
         ValueReader<BytesStore, V> valueReader = bs -> bytesToValue.apply(bs, null);
         asset.registerView(ValueReader.class, valueReader);
+        asset.registerView(RawValueWriter.class, new RawValueWriter<String>() {
+            @Override
+            public boolean canWriteTo(@NotNull WireOut wireOut) {
+                // a nested marshallable in a binary wire is the same bytes as a binary document.
+                return wireType == WireType.BINARY && wireOut instanceof BinaryWire;
+            }
+
+            @Override
+            public void writeValue(@NotNull String key, @NotNull ValueOut valueOut) {
+                BytesStore retBytes = kvStore.getUsing(key, BUFFERS.get().valueBuffer);
+                if (retBytes == null)
+                    valueOut.object(null);
+                else
+                    valueOut.marshallable(w -> w.bytes().write(retBytes));
+            }
+        });
         RawKVSSubscription<String, BytesStore> rawSubscription =
                 (RawKVSSubscription<String, BytesStore>) kvStore.subscription(true);
         this.subscriptions = subscriptions;
-        rawSubscription.registerDownstream(mpe ->
-                subscriptions.notifyEvent(mpe.translate(s -> s, b -> bytesToValue.apply(b, null))));
+        if (reuseEvents) {
+            ThreadLocal<MutableMapEvent<String, V>> events = MutableMapEvent.newThreadLocal();
+            rawSubscription.registerDownstream(EventConsumer.of(mpe -> {
+                MutableMapEvent<String, V> event = MutableMapEvent.acquire(events);
+                try {
+                    MapEvent<String, V> translated = event.translated(mpe, s -> s, b -> bytesToValue.apply(b, null));
+                    subscriptions.notifyEvent(translated != null ? translated
+                            : mpe.translate(s -> s, b -> bytesToValue.apply(b, null)));
+                } finally {
+                    event.release();
+                }
+            }, subscriptions::needsPrevious));
+        } else {
+            rawSubscription.registerDownstream(EventConsumer.of(mpe ->
+                    subscriptions.notifyEvent(mpe.translate(s -> s, b -> bytesToValue.apply(b, null))),
+                    subscriptions::needsPrevious));
+        }
     }
 
     static <T> BiFunction<T, Bytes, Bytes> toBytes(@NotNull Class type, @NotNull Function<Bytes, Wire> wireType) {
@@ -171,6 +208,16 @@ public class VanillaStringMarshallableKeyValueStore<V extends Marshallable> impl
         return kvStore.longSize();
     }
 
+    @Override
+    public int segments() {
+        return kvStore.segments();
+    }
+
+    @Override
+    public int segmentFor(String key) {
+        return kvStore.segmentFor(key);
+    }
+
     @Override
     public void keysFor(int segment, SubscriptionConsumer<String> kConsumer) throws InvalidSubscriberException {
         kvStore.keysFor(segment, kConsumer);
@@ -248,6 +295,6 @@ public class VanillaStringMarshallableKeyValueStore<V extends Marshallable> impl
 
     @Override
     public void accept(final ReplicationEntry replicationEntry) {
-        throw new UnsupportedOperationException("todo");
+        kvStore.accept(replicationEntry);
     }
 }
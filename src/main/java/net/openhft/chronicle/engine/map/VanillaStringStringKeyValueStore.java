@@ -25,6 +25,8 @@ import net.openhft.chronicle.engine.api.pubsub.SubscriptionConsumer;
 import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.AssetNotFoundException;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.wire.ValueOut;
+import net.openhft.chronicle.wire.WireOut;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -35,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+import static java.lang.Boolean.TRUE;
 import static net.openhft.chronicle.engine.map.Buffers.BUFFERS;
 
 /**
@@ -49,21 +52,54 @@ public class VanillaStringStringKeyValueStore implements StringStringKeyValueSto
 
     public VanillaStringStringKeyValueStore(RequestContext context, @NotNull Asset asset,
                                             @NotNull SubscriptionKeyValueStore<String, BytesStore> kvStore) throws AssetNotFoundException {
-        this(asset.acquireView(ObjectKVSSubscription.class, context), asset, kvStore);
+        this(asset.acquireView(ObjectKVSSubscription.class, context), asset, kvStore,
+                TRUE.equals(context.reuseEvents()));
     }
 
     VanillaStringStringKeyValueStore(@NotNull ObjectKVSSubscription<String, String> subscriptions,
                                      @NotNull Asset asset,
-                                     @NotNull SubscriptionKeyValueStore<String, BytesStore> kvStore) throws AssetNotFoundException {
+                                     @NotNull SubscriptionKeyValueStore<String, BytesStore> kvStore,
+                                     boolean reuseEvents) throws AssetNotFoundException {
         this.asset = asset;
         this.kvStore = kvStore;
         asset.registerView(ValueReader.class, StringValueReader.BYTES_STORE_TO_STRING);
+        asset.registerView(RawValueWriter.class, new RawValueWriter<String>() {
+            @Override
+            public boolean canWriteTo(@NotNull WireOut wireOut) {
+                return true;
+            }
+
+            @Override
+            public void writeValue(@NotNull String key, @NotNull ValueOut valueOut) {
+                // the value is stored as 8-bit text so is written as text without a String.
+                BytesStore retBytes = kvStore.getUsing(key, BUFFERS.get().valueBuffer);
+                if (retBytes == null)
+                    valueOut.object(null);
+                else
+                    valueOut.text(retBytes);
+            }
+        });
         RawKVSSubscription<String, BytesStore> rawSubscription =
                 (RawKVSSubscription<String, BytesStore>) kvStore.subscription(true);
         this.subscriptions = subscriptions;
         subscriptions.setKvStore(this);
-        rawSubscription.registerDownstream(mpe ->
-                subscriptions.notifyEvent(mpe.translate(s -> s, BytesStoreToString.BYTES_STORE_TO_STRING)));
+        if (reuseEvents) {
+            ThreadLocal<MutableMapEvent<String, String>> events = MutableMapEvent.newThreadLocal();
+            rawSubscription.registerDownstream(EventConsumer.of(mpe -> {
+                MutableMapEvent<String, String> event = MutableMapEvent.acquire(events);
+                try {
+                    MapEvent<String, String> translated = event.translated(mpe, s -> s, BytesStoreToString.BYTES_STORE_TO_STRING);
+                    subscriptions.notifyEvent(translated != null ? translated
+                            : mpe.translate(s -> s, BytesStoreToString.BYTES_STORE_TO_STRING));
+                } finally {
+                    event.release();
+                }
+            }, subscriptions::needsPrevious));
+        } else {
+            rawSubscription.registerDownstream(EventConsumer.of(mpe ->
+                    subscriptions.notifyEvent(mpe.translate(s -> s, BytesStoreToString.BYTES_STORE_TO_STRING)),
+                    subscriptions::needsPrevious));
+        }
     }
 
     @NotNull
@@ -134,6 +170,16 @@ public class VanillaStringStringKeyValueStore implements StringStringKeyValueSto
         return kvStore.longSize();
     }
 
+    @Override
+    public int segments() {
+        return kvStore.segments();
+    }
+
+    @Override
+    public int segmentFor(String key) {
+        return kvStore.segmentFor(key);
+    }
+
     @Override
     public void keysFor(int segment, SubscriptionConsumer<String> kConsumer) throws InvalidSubscriberException {
         kvStore.keysFor(segment, kConsumer);
@@ -184,7 +230,7 @@ public class VanillaStringStringKeyValueStore implements StringStringKeyValueSto
 
     @Override
     public void accept(final ReplicationEntry replicationEntry) {
-        throw new UnsupportedOperationException("todo");
+        kvStore.accept(replicationEntry);
     }
 
     enum BytesStoreToString implements Function<BytesStore, String> {
@@ -22,6 +22,11 @@ import net.openhft.chronicle.engine.api.tree.RequestContext;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collection;
+import java.util.Map;
+
+import static java.lang.Boolean.TRUE;
+
 /**
  * Created by peter on 22/05/15.
  */
@@ -30,6 +35,9 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
 
     @NotNull
     private final ObjectKVSSubscription<K, V> subscriptions;
+    // only set when the events are reused.
+    @Nullable
+    private final ThreadLocal<MutableMapEvent<K, V>> events;
 
     public VanillaSubscriptionKeyValueStore(@NotNull RequestContext context,
                                             @NotNull Asset asset,
@@ -37,6 +45,7 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
         super(context, asset, item);
         this.subscriptions = asset.acquireView(ObjectKVSSubscription.class, context);
         subscriptions.setKvStore(this);
+        this.events = TRUE.equals(context.reuseEvents()) ? MutableMapEvent.newThreadLocal() : null;
     }
 
     @NotNull
@@ -49,7 +58,7 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
     public V replace(K key, V value) {
         V oldValue = kvStore.replace(key, value);
         if (oldValue != null) {
-            subscriptions.notifyEvent(UpdatedEvent.of(asset.fullName(), key, oldValue, value));
+            notifyUpdated(key, oldValue, value);
         }
         return oldValue;
     }
@@ -60,9 +69,10 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
             return getAndPut(key, value) != null;
         }
         boolean replaced = kvStore.put(key, value);
-        subscriptions.notifyEvent(replaced ?
-                UpdatedEvent.of(asset.fullName(), key, null, value) :
-                InsertedEvent.of(asset.fullName(), key, value));
+        if (replaced)
+            notifyUpdated(key, null, value);
+        else
+            notifyInserted(key, value);
         return replaced;
 
     }
@@ -73,16 +83,33 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
             return getAndRemove(key) != null;
         }
         if (kvStore.remove(key)) {
-            subscriptions.notifyEvent(RemovedEvent.of(asset.fullName(), key, null));
+            notifyRemoved(key, null);
             return true;
         }
         return false;
     }
 
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> entries) {
+        // each entry is only notified one at a time.
+        if (subscriptions.hasSubscribers())
+            super.putAll(entries);
+        else
+            kvStore.putAll(entries);
+    }
+
+    @Override
+    public void removeAll(@NotNull Collection<K> keys) {
+        if (subscriptions.hasSubscribers())
+            super.removeAll(keys);
+        else
+            kvStore.removeAll(keys);
+    }
+
     @Override
     public boolean replaceIfEqual(K key, V oldValue, V newValue) {
         if (kvStore.replaceIfEqual(key, oldValue, newValue)) {
-            subscriptions.notifyEvent(UpdatedEvent.of(asset.fullName(), key, oldValue, newValue));
+            notifyUpdated(key, oldValue, newValue);
             return true;
         }
         return false;
@@ -91,7 +118,7 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
     @Override
     public boolean removeIfEqual(K key, V value) {
         if (kvStore.removeIfEqual(key, value)) {
-            subscriptions.notifyEvent(RemovedEvent.of(asset.fullName(), key, value));
+            notifyRemoved(key, value);
             return true;
         }
         return false;
@@ -102,7 +129,7 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
     public V putIfAbsent(K key, V value) {
         V ret = kvStore.putIfAbsent(key, value);
         if (ret == null)
-            subscriptions.notifyEvent(InsertedEvent.of(asset.fullName(), key, value));
+            notifyInserted(key, value);
         return ret;
     }
 
@@ -111,9 +138,10 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
     public V getAndPut(K key, V value) {
         V oldValue = kvStore.getAndPut(key, value);
 
-        subscriptions.notifyEvent(oldValue == null
-                ? InsertedEvent.of(asset.fullName(), key, value)
-                : UpdatedEvent.of(asset.fullName(), key, oldValue, value));
+        if (oldValue == null)
+            notifyInserted(key, value);
+        else
+            notifyUpdated(key, oldValue, value);
         return oldValue;
     }
 
@@ -122,7 +150,46 @@ public class VanillaSubscriptionKeyValueStore<K, MV, V> extends AbstractKeyValue
     public V getAndRemove(K key) {
         V oldValue = kvStore.getAndRemove(key);
         if (oldValue != null)
-            subscriptions.notifyEvent(RemovedEvent.of(asset.fullName(), key, oldValue));
+            notifyRemoved(key, oldValue);
         return oldValue;
     }
+
+    private void notifyInserted(K key, V value) {
+        if (events == null) {
+            subscriptions.notifyEvent(InsertedEvent.of(asset.fullName(), key, value));
+            return;
+        }
+        final MutableMapEvent<K, V> event = MutableMapEvent.acquire(events);
+        try {
+            subscriptions.notifyEvent(event.inserted(asset.fullName(), key, value));
+        } finally {
+            event.release();
+        }
+    }
+
+    private void notifyUpdated(K key, V oldValue, V value) {
+        if (events == null) {
+            subscriptions.notifyEvent(UpdatedEvent.of(asset.fullName(), key, oldValue, value));
+            return;
+        }
+        final MutableMapEvent<K, V> event = MutableMapEvent.acquire(events);
+        try {
+            subscriptions.notifyEvent(event.updated(asset.fullName(), key, oldValue, value));
+        } finally {
+            event.release();
+        }
+    }
+
+    private void notifyRemoved(K key, V oldValue) {
+        if (events == null) {
+            subscriptions.notifyEvent(RemovedEvent.of(asset.fullName(), key, oldValue));
+            return;
+        }
+        final MutableMapEvent<K, V> event = MutableMapEvent.acquire(events);
+        try {
+            subscriptions.notifyEvent(event.removed(asset.fullName(), key, oldValue));
+        } finally {
+            event.release();
+        }
+    }
 }
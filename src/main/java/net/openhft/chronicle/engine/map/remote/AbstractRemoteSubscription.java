@@ -2,9 +2,12 @@ package net.openhft.chronicle.engine.map.remote;
 
 import net.openhft.chronicle.engine.api.map.MapEvent;
 import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.ReconnectAwareSubscriber;
 import net.openhft.chronicle.engine.api.pubsub.Subscriber;
 import net.openhft.chronicle.engine.api.pubsub.Subscription;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.cfg.Compression;
+import net.openhft.chronicle.engine.map.UpdatedFieldsEvent;
 import net.openhft.chronicle.engine.query.Filter;
 import net.openhft.chronicle.engine.server.internal.MapWireHandler;
 import net.openhft.chronicle.engine.server.internal.PublisherHandler;
@@ -22,9 +25,13 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static java.lang.Boolean.TRUE;
 import static net.openhft.chronicle.core.pool.ClassAliasPool.CLASS_ALIASES;
 import static net.openhft.chronicle.engine.server.internal.SubscriptionHandler.SubscriptionEventID.*;
 
@@ -63,51 +70,111 @@ abstract class AbstractRemoteSubscription<E> extends AbstractStatelessClient imp
 
         final Boolean bootstrap = rc.bootstrap();
         final Boolean endSubscriptionAfterBootstrap = rc.endSubscriptionAfterBootstrap();
+        final Boolean conflate = rc.conflate();
+        final Boolean resumable = rc.resumable();
+        final Boolean oldValues = rc.oldValues();
         String csp = this.csp;
         if (bootstrap != null)
             csp = csp + "&bootstrap=" + bootstrap;
         if (endSubscriptionAfterBootstrap != null)
             csp = csp + "&endSubscriptionAfterBootstrap=" + endSubscriptionAfterBootstrap;
-
+        if (conflate != null)
+            csp = csp + "&conflate=" + conflate;
+        if (resumable != null)
+            csp = csp + "&resumable=" + resumable;
+        if (oldValues != null)
+            csp = csp + "&oldValues=" + oldValues;
+        // only MapEvents can be sent as the fields which changed.
+        final UpdatedFieldsEvent.Decoder decoder = TRUE.equals(rc.deltas()) && rc.elementType() == MapEvent.class
+                ? new UpdatedFieldsEvent.Decoder()
+                : null;
+        if (decoder != null)
+            csp = csp + "&deltas=true";
+        // this client can read any codec, the server only compresses if it is configured to.
+        csp = csp + "&compression=" + Compression.DEFLATE;
 
         hub.subscribe(new AbstractAsyncSubscription(hub, csp, this.getClass().getSimpleName()) {
+            // the sequence of the last event received, sent when subscribing again after a reconnect.
+            volatile long lastSequence = 0;
+            // false until the first subscription has been sent.
+            boolean subscribed = false;
+
             {
                 subscribersToTid.put(subscriber, tid());
             }
 
             @Override
             public void onSubscribe(@NotNull final WireOut wireOut) {
+                if (subscribed && subscriber instanceof ReconnectAwareSubscriber)
+                    ((ReconnectAwareSubscriber) subscriber).onReconnect();
+                subscribed = true;
                 wireOut.writeEventName(registerSubscriber).
                         typeLiteral(CLASS_ALIASES.nameFor(rc.elementType()));
                 if (!filter.isEmpty())
                     wireOut.writeEventName(() -> "filter").object(filter);
+                if (lastSequence > 0)
+                    wireOut.writeEventName(() -> "resumeFrom").int64(lastSequence);
             }
 
             @Override
             public void onConsumer(@NotNull final WireIn inWire) {
-                inWire.readDocument(null, d -> {
+                inWire.readDocument(null, document -> {
                     final StringBuilder eventName = Wires.acquireStringBuilder();
-                    final ValueIn valueIn = d.readEventName(eventName);
+                    WireIn d = document;
+                    ValueIn valueIn = d.readEventName(eventName);
+
+                    if (Compression.COMPRESSED.contentEquals(eventName)) {
+                        d = Compression.uncompress(d, valueIn);
+                        valueIn = d.readEventName(eventName);
+                    }
+
+                    if ("sequence".contentEquals(eventName)) {
+                        lastSequence = valueIn.int64();
+                        valueIn = d.readEventName(eventName);
+                    }
 
                     if (PublisherHandler.EventId.onEndOfSubscription.contentEquals(eventName)) {
                         subscriber.onEndOfSubscription();
                         subscribersToTid.remove(this);
                         hub.unsubscribe(tid());
                     } else if (CoreFields.reply.contentEquals(eventName)) {
-                        final Class aClass = rc.elementType();
-
-                        final Object object = (MapEvent.class.isAssignableFrom(aClass) ||
-                                (TopologicalEvent.class.isAssignableFrom(aClass))) ?
-                                valueIn.typedMarshallable()
-                                : valueIn.object(rc.elementType());
-
-                        AbstractRemoteSubscription.this.onEvent(object, subscriber);
+                        AbstractRemoteSubscription.this.onEvent(readEvent(valueIn, rc, decoder), subscriber);
+
+                    } else if ("replies".contentEquals(eventName)) {
+                        final List<Object> events = new ArrayList<>();
+                        valueIn.sequence(s -> {
+                            while (s.hasNextSequenceItem())
+                                events.add(readEvent(s, rc, decoder));
+                        });
+                        AbstractRemoteSubscription.this.onEvents(events, subscriber);
                     }
                 });
             }
         });
     }
 
+    @Nullable
+    private static Object readEvent(@NotNull ValueIn valueIn, @NotNull RequestContext rc,
+                                    @Nullable UpdatedFieldsEvent.Decoder decoder) {
+        final Class aClass = rc.elementType();
+        final Object event = (MapEvent.class.isAssignableFrom(aClass) ||
+                (TopologicalEvent.class.isAssignableFrom(aClass))) ?
+                valueIn.typedMarshallable()
+                : valueIn.object(aClass);
+        return decoder == null ? event : decoder.decode(event);
+    }
+
+    private void onEvents(@NotNull List<Object> messages, @NotNull Subscriber subscriber) {
+        messages.removeIf(Objects::isNull);
+        if (messages.isEmpty())
+            return;
+        try {
+            subscriber.onMessages(messages);
+        } catch (InvalidSubscriberException noLongerValid) {
+            unregisterSubscriber(subscriber);
+        }
+    }
+
     private void onEvent(@Nullable Object message, @NotNull Subscriber subscriber) {
         try {
             if (message == null) {
@@ -0,0 +1,171 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.remote;
+
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.openhft.chronicle.core.util.ObjectUtils.convertTo;
+
+/**
+ * A list of operations on one map, applied in order by a single request, and the result of each
+ * operation once they have been applied.
+ */
+public class MapBatch implements Marshallable {
+    private final List<Op> ops = new ArrayList<>();
+    private final List<Object> keys = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final List<Object> results = new ArrayList<>();
+
+    public MapBatch add(@NotNull Op op, @NotNull Object key, @Nullable Object value) {
+        ops.add(op);
+        keys.add(key);
+        values.add(value);
+        return this;
+    }
+
+    public int size() {
+        return ops.size();
+    }
+
+    /**
+     * @return the result of each operation, in order, once applied.
+     */
+    @NotNull
+    public List<Object> results() {
+        return results;
+    }
+
+    /**
+     * Applies the operations in order.
+     *
+     * @return a batch holding only the results.
+     */
+    @NotNull
+    MapBatch applyTo(@NotNull MapView map) {
+        final MapBatch applied = new MapBatch();
+        for (int i = 0; i < ops.size(); i++) {
+            final Object key = convertTo(map.keyType(), keys.get(i));
+            final Object value = values.get(i) == null ? null : convertTo(map.valueType(), values.get(i));
+            applied.results.add(ops.get(i).apply(map, key, value));
+        }
+        return applied;
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+        ops.clear();
+        keys.clear();
+        values.clear();
+        results.clear();
+        wire.read(() -> "ops").sequence(s -> {
+            while (s.hasNextSequenceItem())
+                s.marshallable(m -> {
+                    ops.add(m.read(() -> "op").asEnum(Op.class));
+                    keys.add(m.read(() -> "key").object(Object.class));
+                    values.add(m.read(() -> "value").object(Object.class));
+                });
+        });
+        wire.read(() -> "results").sequence(s -> {
+            while (s.hasNextSequenceItem())
+                results.add(s.object(Object.class));
+        });
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wire) {
+        wire.write(() -> "ops").sequence(s -> {
+            for (int i = 0; i < ops.size(); i++) {
+                final int n = i;
+                s.marshallable(m -> m.write(() -> "op").asEnum(ops.get(n))
+                        .write(() -> "key").object(keys.get(n))
+                        .write(() -> "value").object(values.get(n)));
+            }
+        });
+        wire.write(() -> "results").sequence(s -> results.forEach(s::object));
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "MapBatch{" +
+                "ops=" + ops +
+                ", keys=" + keys +
+                ", results=" + results +
+                '}';
+    }
+
+    public enum Op {
+        GET {
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                return map.get(key);
+            }
+        },
+        PUT {
+            @Nullable
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                map.put(key, value);
+                return null;
+            }
+        },
+        REMOVE {
+            @Nullable
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                map.remove(key);
+                return null;
+            }
+        },
+        GET_AND_PUT {
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                return map.getAndPut(key, value);
+            }
+        },
+        GET_AND_REMOVE {
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                return map.getAndRemove(key);
+            }
+        },
+        PUT_IF_ABSENT {
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                return map.putIfAbsent(key, value);
+            }
+        },
+        CONTAINS_KEY {
+            @Override
+            Object apply(@NotNull MapView map, Object key, Object value) {
+                return map.containsKey(key);
+            }
+        };
+
+        @Nullable
+        abstract Object apply(@NotNull MapView map, Object key, Object value);
+    }
+}
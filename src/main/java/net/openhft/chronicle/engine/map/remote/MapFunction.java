@@ -111,5 +111,14 @@ public enum MapFunction implements SerializableBiFunction<MapView, Object, Objec
         public Object apply(@NotNull MapView map, Object o) {
             return map.equals(o);
         }
+    },
+    BATCH {
+        // batches on the same map don't interleave, other operations on the map still can.
+        @Override
+        public Object apply(@NotNull MapView map, Object o) {
+            synchronized (map) {
+                return ((MapBatch) o).applyTo(map);
+            }
+        }
     }
 }
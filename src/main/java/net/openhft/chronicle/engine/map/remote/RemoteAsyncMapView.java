@@ -0,0 +1,249 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.remote;
+
+import net.openhft.chronicle.bytes.IORuntimeException;
+import net.openhft.chronicle.core.util.SerializableBiFunction;
+import net.openhft.chronicle.core.util.SerializableUpdaterWithArg;
+import net.openhft.chronicle.engine.api.map.AsyncMapView;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.server.internal.MapWireHandler.EventId;
+import net.openhft.chronicle.network.connection.AbstractAsyncSubscription;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.threads.HandlerPriority;
+import net.openhft.chronicle.threads.api.EventHandler;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import net.openhft.chronicle.wire.ValueIn;
+import net.openhft.chronicle.wire.ValueOut;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireKey;
+import net.openhft.chronicle.wire.WireOut;
+import net.openhft.chronicle.wire.Wires;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.openhft.chronicle.engine.server.internal.MapWireHandler.EventId.*;
+import static net.openhft.chronicle.network.connection.CoreFields.reply;
+
+/**
+ * An AsyncMapView of a remote map. Each request is sent with its own tid and the TcpChannelHub
+ * passes the reply for that tid to the request, so no thread waits for it.
+ *
+ * If the connection is lost, or the hub is closed, before the reply the future completes
+ * exceptionally. A request isn't sent again on reconnect, as requests such as getAndPut would be
+ * applied twice if the first had reached the server. As the connection can be lost and
+ * re-established between two checks, a request without a reply after RemoteAsyncMapView.timeoutMs
+ * fails with a TimeoutException.
+ */
+public class RemoteAsyncMapView<K, V> implements AsyncMapView<K, V> {
+    private static final long TIMEOUT_NS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("RemoteAsyncMapView.timeoutMs", 20_000));
+
+    @NotNull
+    private final Asset asset;
+    @NotNull
+    private final MapView<K, V> underlying;
+    @NotNull
+    private final TcpChannelHub hub;
+    @NotNull
+    private final String csp;
+    private final Class<V> vClass;
+    // the requests waiting for a reply, by tid.
+    private final Map<Long, Request> pending = new ConcurrentHashMap<>();
+    // true while the event loop is checking the connection of the pending requests.
+    private final AtomicBoolean monitoring = new AtomicBoolean();
+
+    public RemoteAsyncMapView(@NotNull RequestContext rc, @NotNull Asset asset, @NotNull MapView<K, V> underlying) {
+        this.asset = asset;
+        this.underlying = underlying;
+        this.hub = asset.findView(TcpChannelHub.class);
+        this.csp = rc.clone().viewType(MapView.class).toUri();
+        this.vClass = rc.valueType();
+    }
+
+    private static void writeParameters(@NotNull ValueOut out, @NotNull EventId eventId, @NotNull Object... args) {
+        if (args.length == 1) {
+            out.object(args[0]);
+            return;
+        }
+        final WireKey[] params = eventId.params();
+        out.marshallable(m -> {
+            for (int i = 0; i < args.length; i++)
+                m.write(params[i]).object(args[i]);
+        });
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null)
+            throw new NullPointerException();
+    }
+
+    @NotNull
+    private <R> CompletableFuture<R> request(@NotNull EventId eventId, @NotNull Class rClass, @NotNull Object... args) {
+        if (hub.outBytesLock().isHeldByCurrentThread())
+            throw new IllegalStateException("Cannot view map while debugging");
+
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final AbstractAsyncSubscription subscription = new AbstractAsyncSubscription(hub, csp, "RemoteAsyncMapView " + eventId) {
+            @Override
+            public void onSubscribe(@NotNull final WireOut wireOut) {
+                writeParameters(wireOut.writeEventName(eventId), eventId, args);
+            }
+
+            @Override
+            public void onConsumer(@NotNull final WireIn inWire) {
+                hub.unsubscribe(tid());
+                if (pending.remove(tid()) == null)
+                    return;
+                try {
+                    inWire.readDocument(null, d -> {
+                        final StringBuilder sb = Wires.acquireStringBuilder();
+                        final ValueIn valueIn = d.readEventName(sb);
+                        if (reply.contentEquals(sb))
+                            future.complete((R) valueIn.object(rClass));
+                        else if ("exception".contentEquals(sb))
+                            future.completeExceptionally(valueIn.throwable(false));
+                        else
+                            future.completeExceptionally(new IllegalStateException("unexpected event=" + sb));
+                    });
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        pending.put(subscription.tid(), new Request(future, System.nanoTime() + TIMEOUT_NS));
+        hub.subscribe(subscription);
+        hub.preventSubscribeUponReconnect(subscription.tid());
+        if (monitoring.compareAndSet(false, true))
+            asset.root().findOrCreateView(EventLoop.class).addHandler(new ConnectionMonitor());
+        return future;
+    }
+
+    static final class Request {
+        final CompletableFuture<?> future;
+        final long deadline;
+
+        Request(@NotNull CompletableFuture<?> future, long deadline) {
+            this.future = future;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Fails the pending requests once the connection is lost or their reply is overdue, and stops
+     * when there are none.
+     */
+    class ConnectionMonitor implements EventHandler {
+        @Override
+        public boolean action() throws InvalidEventHandlerException {
+            if (pending.isEmpty()) {
+                monitoring.set(false);
+                // a request added since keeps this handler.
+                if (pending.isEmpty() || !monitoring.compareAndSet(false, true))
+                    throw new InvalidEventHandlerException();
+            }
+            final boolean open = hub.isOpen();
+            final long now = System.nanoTime();
+            boolean failed = false;
+            for (Map.Entry<Long, Request> entry : pending.entrySet()) {
+                final Request request = entry.getValue();
+                if (open && request.deadline - now > 0)
+                    continue;
+                if (pending.remove(entry.getKey(), request)) {
+                    hub.unsubscribe(entry.getKey());
+                    request.future.completeExceptionally(open
+                            ? new TimeoutException("No reply from " + csp)
+                            : new IORuntimeException("Connection lost before the reply to " + csp));
+                    failed = true;
+                }
+            }
+            return failed;
+        }
+
+        @NotNull
+        @Override
+        public HandlerPriority priority() {
+            return HandlerPriority.MEDIUM;
+        }
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> get(K key) {
+        checkNotNull(key);
+        return request(get, vClass, key);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> getAndPut(K key, V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        return request(getAndPut, vClass, key, value);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> putIfAbsent(K key, V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        return request(putIfAbsent, vClass, key, value);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<V> replace(K key, V value) {
+        checkNotNull(key);
+        checkNotNull(value);
+        return request(replace, vClass, key, value);
+    }
+
+    @NotNull
+    @Override
+    public <A, R> CompletableFuture<R> applyTo(@NotNull SerializableBiFunction<MapView<K, V>, A, R> function, A arg) {
+        return request(applyTo2, Object.class, function, arg);
+    }
+
+    @NotNull
+    @Override
+    public <UA, RA, R> CompletableFuture<R> syncUpdate(@NotNull SerializableUpdaterWithArg<MapView<K, V>, UA> updateFunction, UA ua,
+                                                       @NotNull SerializableBiFunction<MapView<K, V>, RA, R> returnFunction, RA ra) {
+        return request(update4, Object.class, updateFunction, ua, returnFunction, ra);
+    }
+
+    @NotNull
+    @Override
+    public Asset asset() {
+        return asset;
+    }
+
+    @NotNull
+    @Override
+    public MapView<K, V> underlying() {
+        return underlying;
+    }
+}
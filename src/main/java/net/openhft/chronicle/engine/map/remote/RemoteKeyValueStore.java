@@ -286,6 +286,40 @@ public class
         return false;
     }
 
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> entries) {
+        entries.forEach((k, v) -> {
+            checkKey(k);
+            checkValue(v);
+        });
+        sendEventAsync(putAll, valueOut -> valueOut.sequence(v -> entries.forEach((key, value) -> {
+            v.object(key);
+            v.object(value);
+        })), true);
+    }
+
+    @Override
+    public void removeAll(@NotNull Collection<K> keys) {
+        keys.forEach(this::checkKey);
+        sendEventAsync(removeAll, valueOut -> valueOut.sequence(v -> keys.forEach(v::object)), true);
+    }
+
+    @NotNull
+    @Override
+    public List<V> getAll(@NotNull Collection<K> keys) {
+        keys.forEach(this::checkKey);
+        return proxyReturnWireConsumerInOut(getAll, CoreFields.reply,
+                valueOut -> valueOut.sequence(v -> keys.forEach(v::object)),
+                read -> {
+                    final List<V> values = new ArrayList<>(keys.size());
+                    read.sequence(v -> {
+                        while (v.hasNextSequenceItem())
+                            values.add(v.object(vClass));
+                    });
+                    return values;
+                });
+    }
+
     @Nullable
     @Override
     public V getAndPut(final Object key, final Object value) {
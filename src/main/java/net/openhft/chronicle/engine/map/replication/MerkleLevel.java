@@ -0,0 +1,134 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.replication;
+
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.ValueIn;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nodes of a {@link MerkleTree} exchanged between two replicating peers. A request lists the
+ * nodes, and the reply adds their hashes. A reply with no hashes means the peer doesn't keep a
+ * tree of this shape.
+ */
+public class MerkleLevel implements Marshallable {
+
+    private static final long[] NO_LONGS = {};
+
+    private byte identifier;
+    private int depth;
+    private int segments;
+    private long[] nodes = NO_LONGS;
+    private long[] hashes = NO_LONGS;
+
+    public MerkleLevel() {
+    }
+
+    /**
+     * @param identifier the identifier of the peer sending these nodes
+     * @param tree       the tree of the peer sending these nodes
+     * @param nodes      the nodes to compare
+     */
+    public MerkleLevel(byte identifier, @NotNull MerkleTree tree, @NotNull long[] nodes) {
+        this.identifier = identifier;
+        this.depth = tree.depth();
+        this.segments = tree.segments();
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return a reply with the hashes of these nodes in this tree, or with no hashes if the tree
+     * is missing or has a different shape.
+     */
+    @NotNull
+    public MerkleLevel reply(byte identifier, @Nullable MerkleTree tree) {
+        final MerkleLevel reply = new MerkleLevel();
+        reply.identifier = identifier;
+        reply.nodes = nodes;
+        if (tree == null || tree.depth() != depth || tree.segments() != segments)
+            return reply;
+        reply.depth = depth;
+        reply.segments = segments;
+        reply.hashes = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            reply.hashes[i] = tree.hash(nodes[i]);
+        return reply;
+    }
+
+    public byte identifier() {
+        return identifier;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int segments() {
+        return segments;
+    }
+
+    @NotNull
+    public long[] nodes() {
+        return nodes;
+    }
+
+    @NotNull
+    public long[] hashes() {
+        return hashes;
+    }
+
+    @NotNull
+    private static long[] readLongs(@NotNull ValueIn valueIn) {
+        final List<Long> longs = new ArrayList<>();
+        valueIn.sequence(v -> {
+            while (v.hasNextSequenceItem())
+                longs.add(v.int64());
+        });
+        return longs.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+        identifier = wire.read(() -> "id").int8();
+        depth = wire.read(() -> "depth").int32();
+        segments = wire.read(() -> "segments").int32();
+        nodes = readLongs(wire.read(() -> "nodes"));
+        hashes = readLongs(wire.read(() -> "hashes"));
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wire) {
+        wire.write(() -> "id").int8(identifier);
+        wire.write(() -> "depth").int32(depth);
+        wire.write(() -> "segments").int32(segments);
+        wire.write(() -> "nodes").sequence(v -> {
+            for (long node : nodes)
+                v.int64(node);
+        });
+        wire.write(() -> "hashes").sequence(v -> {
+            for (long hash : hashes)
+                v.int64(hash);
+        });
+    }
+}
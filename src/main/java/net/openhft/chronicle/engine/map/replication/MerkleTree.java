@@ -0,0 +1,180 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.replication;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.LongConsumer;
+
+/**
+ * An incrementally updated hash tree over the key-hash ranges of each segment of a replicated
+ * store. Each leaf holds the XOR of the hashes of the entries whose key hash falls in its range,
+ * and each node the XOR of its children, so a change updates one path in O(depth). <p> Two peers
+ * with the same tree shape compare the hashes of matching nodes, descend only into the nodes which
+ * differ, and re-send only the entries in the leaves which differ. <p> A node is identified by its
+ * segment in the high 32 bits and its index in the segment's tree in the low 32 bits. Index 1 is
+ * the root, and the children of index n are 2n and 2n + 1.
+ */
+public class MerkleTree {
+
+    public static final int DEPTH = Integer.getInteger("MerkleTree.depth", 10);
+
+    private final int depth;
+    private final long[][] nodes;
+
+    public MerkleTree(int segments) {
+        this(segments, DEPTH);
+    }
+
+    public MerkleTree(int segments, int depth) {
+        if (depth < 0 || depth > 24)
+            throw new IllegalArgumentException("depth=" + depth);
+        this.depth = depth;
+        this.nodes = new long[segments][2 << depth];
+    }
+
+    /**
+     * @return a hash of the bytes of the key, which is the same on every peer.
+     */
+    public static long hashKey(@NotNull BytesStore key) {
+        final long start = key.readPosition();
+        final long limit = key.readLimit();
+        long h = 0;
+        long pos = start;
+        for (; pos + 8 <= limit; pos += 8)
+            h = mix(h ^ key.readLong(pos));
+        for (; pos < limit; pos++)
+            h = mix(h ^ key.readByte(pos));
+        return mix(h ^ (limit - start));
+    }
+
+    /**
+     * @return a hash of the state of an entry which is the same on two peers once the entry has
+     * been replicated between them.
+     */
+    public static long hashEntry(long keyHash, long timestamp, byte identifier, boolean isDeleted) {
+        long h = mix(keyHash ^ timestamp);
+        h = mix(h ^ identifier);
+        return isDeleted ? mix(~h) : h;
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    public static int segmentOf(long node) {
+        return (int) (node >>> 32);
+    }
+
+    private static int indexOf(long node) {
+        return (int) node;
+    }
+
+    private static long node(int segment, int index) {
+        return ((long) segment << 32) | index;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int segments() {
+        return nodes.length;
+    }
+
+    /**
+     * @return the leaf whose key-hash range holds this key hash.
+     */
+    public long leafOf(int segment, long keyHash) {
+        return node(segment, (1 << depth) + (depth == 0 ? 0 : (int) (keyHash >>> (64 - depth))));
+    }
+
+    /**
+     * Replaces the hash of an entry, where a hash of 0 means no entry.
+     */
+    public void update(int segment, long keyHash, long oldEntryHash, long newEntryHash) {
+        final long delta = oldEntryHash ^ newEntryHash;
+        if (delta == 0)
+            return;
+        final long[] tree = nodes[segment];
+        synchronized (tree) {
+            for (int i = indexOf(leafOf(segment, keyHash)); i > 0; i >>>= 1)
+                tree[i] ^= delta;
+        }
+    }
+
+    public long hash(long node) {
+        final long[] tree = nodes[segmentOf(node)];
+        synchronized (tree) {
+            return tree[indexOf(node)];
+        }
+    }
+
+    public boolean isLeaf(long node) {
+        return indexOf(node) >= 1 << depth;
+    }
+
+    /**
+     * @return the root of every segment.
+     */
+    @NotNull
+    public long[] roots() {
+        final long[] roots = new long[nodes.length];
+        for (int s = 0; s < roots.length; s++)
+            roots[s] = node(s, 1);
+        return roots;
+    }
+
+    /**
+     * @return true if the other peer's tree has the same shape, so their nodes can be compared.
+     */
+    public boolean isCompatible(@NotNull MerkleLevel level) {
+        return level.depth() == depth && level.segments() == nodes.length &&
+                level.hashes().length == level.nodes().length;
+    }
+
+    /**
+     * Compares the hashes of the other peer's nodes with this tree.
+     *
+     * @param levels      how many levels to descend below a node which differs.
+     * @param descendants is passed the descendants to compare next, of the nodes which differ.
+     * @param leaves      is passed the leaves which differ.
+     */
+    public void diff(@NotNull MerkleLevel level, int levels,
+                     @NotNull LongConsumer descendants, @NotNull LongConsumer leaves) {
+        final long[] remoteNodes = level.nodes();
+        final long[] remoteHashes = level.hashes();
+        for (int i = 0; i < remoteNodes.length; i++) {
+            final long node = remoteNodes[i];
+            if (hash(node) == remoteHashes[i])
+                continue;
+            if (isLeaf(node)) {
+                leaves.accept(node);
+                continue;
+            }
+            final int index = indexOf(node);
+            final int nodeDepth = 31 - Integer.numberOfLeadingZeros(index);
+            final int shift = Math.min(levels, depth - nodeDepth);
+            final int first = index << shift;
+            for (int d = first; d < first + (1 << shift); d++)
+                descendants.accept(node(segmentOf(node), d));
+        }
+    }
+}
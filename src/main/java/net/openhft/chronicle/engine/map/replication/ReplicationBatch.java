@@ -0,0 +1,234 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.replication;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
+import net.openhft.chronicle.wire.ValueIn;
+import net.openhft.chronicle.wire.ValueOut;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Packs many replication entries into one {@code replicationEvents} document. Each entry is
+ * written in a fixed binary layout, without field names or a type alias: the key length and key
+ * bytes, the value length (-1 for none) and value bytes, the timestamp, the identifier, the
+ * deleted flag and the bootstrap timestamp. <p> A batch should be flushed when {@link #add}
+ * returns true, or when {@link #isDue} does, so an entry waits at most the linger time.
+ */
+public class ReplicationBatch {
+
+    private static final int MAX_BYTES = Integer.getInteger("ReplicationBatch.maxBytes", 64 << 10);
+    private static final long LINGER_MICROS = Long.getLong("ReplicationBatch.lingerMicros", 50);
+    private static final ThreadLocal<Bytes<ByteBuffer>> IN = ThreadLocal.withInitial(Bytes::elasticByteBuffer);
+
+    // the buffers taken for writing which have been released, reused before allocating another.
+    private final Queue<Bytes<ByteBuffer>> released = new ConcurrentLinkedQueue<>();
+    private Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer();
+    private final int maxBytes;
+    private final long lingerNanos;
+    private long firstAdded;
+
+    public ReplicationBatch() {
+        this(MAX_BYTES, LINGER_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param maxBytes the size at which a batch should be flushed.
+     * @param linger   the longest an entry should wait for more entries to be added.
+     */
+    public ReplicationBatch(int maxBytes, long linger, @NotNull TimeUnit unit) {
+        this.maxBytes = maxBytes;
+        this.lingerNanos = unit.toNanos(linger);
+    }
+
+    /**
+     * Reads the entries of a {@code replicationEvents} value. Each entry has its own copy of the
+     * key and value, so it may be kept after the consumer returns.
+     */
+    public static void readFrom(@NotNull ValueIn valueIn, @NotNull Consumer<ReplicationEntry> consumer) {
+        final Bytes<ByteBuffer> in = IN.get();
+        in.clear();
+        valueIn.bytes(in);
+        while (in.readRemaining() > 0) {
+            final BytesStore key = read(in, in.readInt());
+            final BytesStore value = read(in, in.readInt());
+            final long timestamp = in.readLong();
+            final byte identifier = in.readByte();
+            final boolean isDeleted = in.readByte() != 0;
+            final long bootStrapTimeStamp = in.readLong();
+            assert key != null;
+            consumer.accept(new Entry(key, value, timestamp, identifier, isDeleted, bootStrapTimeStamp));
+        }
+    }
+
+    @Nullable
+    private static BytesStore read(@NotNull Bytes<?> in, int length) {
+        if (length < 0)
+            return null;
+        final NativeBytesStore<Void> store = NativeBytesStore.nativeStoreWithFixedCapacity(length);
+        store.write(0, in, in.readPosition(), length);
+        in.readSkip(length);
+        return store.bytesForRead();
+    }
+
+    private static void write(@NotNull Bytes<?> out, @Nullable BytesStore from) {
+        if (from == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final long length = from.readRemaining();
+        out.writeInt((int) length);
+        out.write(from, from.readPosition(), length);
+    }
+
+    /**
+     * Appends an entry, copying its key and value, so the entry need only be valid for the duration
+     * of this call.
+     *
+     * @return true if the batch is full and should be flushed.
+     */
+    public boolean add(@NotNull ReplicationEntry entry) {
+        if (isEmpty())
+            firstAdded = System.nanoTime();
+        write(bytes, entry.key());
+        write(bytes, entry.isDeleted() ? null : entry.value());
+        bytes.writeLong(entry.timestamp());
+        bytes.writeByte(entry.identifier());
+        bytes.writeByte((byte) (entry.isDeleted() ? 1 : 0));
+        bytes.writeLong(entry.bootStrapTimeStamp());
+        return bytes.readRemaining() >= maxBytes;
+    }
+
+    public boolean isEmpty() {
+        return bytes.readRemaining() == 0;
+    }
+
+    /**
+     * @return true if the batch has entries which have waited for the linger time or longer.
+     */
+    public boolean isDue(long nowNanos) {
+        return !isEmpty() && (bytes.readRemaining() >= maxBytes || nowNanos - firstAdded >= lingerNanos);
+    }
+
+    /**
+     * Writes the entries as the value of a {@code replicationEvents} event, and empties the batch.
+     */
+    public void writeTo(@NotNull ValueOut valueOut) {
+        valueOut.bytes(bytes);
+        bytes.clear();
+    }
+
+    /**
+     * Hands over the entries, for a document written later by another thread, and empties the
+     * batch. The bytes should be given back with {@link #release} once written.
+     */
+    @NotNull
+    public Bytes<ByteBuffer> take() {
+        final Bytes<ByteBuffer> taken = bytes;
+        final Bytes<ByteBuffer> next = released.poll();
+        bytes = next == null ? Bytes.elasticByteBuffer() : next;
+        return taken;
+    }
+
+    /**
+     * Gives back bytes returned by {@link #take} which have been written, may be called by any
+     * thread.
+     */
+    public void release(@NotNull Bytes<ByteBuffer> taken) {
+        taken.clear();
+        released.add(taken);
+    }
+
+    static class Entry implements ReplicationEntry {
+        private final BytesStore key;
+        @Nullable
+        private final BytesStore value;
+        private final long timestamp;
+        private final byte identifier;
+        private final boolean isDeleted;
+        private final long bootStrapTimeStamp;
+
+        Entry(@NotNull BytesStore key, @Nullable BytesStore value, long timestamp, byte identifier,
+              boolean isDeleted, long bootStrapTimeStamp) {
+            this.key = key;
+            this.value = value;
+            this.timestamp = timestamp;
+            this.identifier = identifier;
+            this.isDeleted = isDeleted;
+            this.bootStrapTimeStamp = bootStrapTimeStamp;
+        }
+
+        @Override
+        public BytesStore key() {
+            return key;
+        }
+
+        @Nullable
+        @Override
+        public BytesStore value() {
+            return value;
+        }
+
+        @Override
+        public long timestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public byte identifier() {
+            return identifier;
+        }
+
+        @Override
+        public byte remoteIdentifier() {
+            return 0;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return isDeleted;
+        }
+
+        @Override
+        public long bootStrapTimeStamp() {
+            return bootStrapTimeStamp;
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return "ReplicationBatch.Entry{" +
+                    "key=" + key +
+                    ", value=" + value +
+                    ", timestamp=" + timestamp +
+                    ", identifier=" + identifier +
+                    ", isDeleted=" + isDeleted +
+                    ", bootStrapTimeStamp=" + bootStrapTimeStamp +
+                    '}';
+        }
+    }
+}
@@ -9,6 +9,7 @@ import net.openhft.chronicle.wire.Marshallable;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -101,6 +102,32 @@ public class Filter<E> implements Marshallable, Iterable<Operation> {
         add(new Operation(Operation.OperationType.PROJECT, rClass));
     }
 
+    public void addKeyEquals(Object key) {
+        addFilter(KeyPredicate.keyEquals(key));
+    }
+
+    public void addKeyPrefix(CharSequence prefix) {
+        addFilter(KeyPredicate.keyStartsWith(prefix));
+    }
+
+    /**
+     * @return the KeyPredicate applied before any mapping of the element, or null if there isn't
+     * one.
+     */
+    @Nullable
+    public KeyPredicate<E> keyPredicate() {
+        if (pipeline == null)
+            return null;
+        for (Operation o : pipeline) {
+            if (o.op() != Operation.OperationType.FILTER)
+                return null;
+            Object predicate = o.wrapped();
+            if (predicate instanceof KeyPredicate)
+                return (KeyPredicate<E>) predicate;
+        }
+        return null;
+    }
+
     public <R> void addFlatMap(SerializableFunction<? super E, ? extends Query<? extends R>> mapper) {
         add(new Operation(Operation.OperationType.FLAT_MAP, mapper));
     }
@@ -179,6 +206,16 @@ public class Filter<E> implements Marshallable, Iterable<Operation> {
             subscriber.onMessage(message);
         }
 
+        @Override
+        public void onMessages(@NotNull List<E> messages) throws InvalidSubscriberException {
+            final List<E> filtered = new ArrayList<>(messages.size());
+            final Subscriber<E> addFiltered = new FilteredSubscriber<>(filter, filtered::add);
+            for (E message : messages)
+                addFiltered.onMessage(message);
+            if (!filtered.isEmpty())
+                subscriber.onMessages(filtered);
+        }
+
         @Override
         public void onEndOfSubscription() {
             subscriber.onEndOfSubscription();
@@ -0,0 +1,137 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.query;
+
+import net.openhft.chronicle.core.util.SerializablePredicate;
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A predicate on the key of an entry, or on the key itself for key subscriptions.
+ *
+ * Unlike an arbitrary lambda, a subscription can see what a KeyPredicate matches, so subscribers
+ * filtering on a key or key prefix are indexed by it rather than tested on every event.
+ */
+public class KeyPredicate<E> implements SerializablePredicate<E>, Marshallable {
+
+    private KeyPredicateType type;
+    private Object key;
+
+    public KeyPredicate() {
+    }
+
+    KeyPredicate(@NotNull KeyPredicateType type, @NotNull Object key) {
+        this.type = type;
+        this.key = key;
+    }
+
+    /**
+     * @return a predicate matching only this key.
+     */
+    @NotNull
+    public static <E> KeyPredicate<E> keyEquals(@NotNull Object key) {
+        return new KeyPredicate<>(KeyPredicateType.EQUALS, key);
+    }
+
+    /**
+     * @return a predicate matching the CharSequence keys which start with this prefix.
+     */
+    @NotNull
+    public static <E> KeyPredicate<E> keyStartsWith(@NotNull CharSequence prefix) {
+        return new KeyPredicate<>(KeyPredicateType.PREFIX, prefix.toString());
+    }
+
+    @Nullable
+    static Object keyOf(Object e) {
+        return e instanceof Map.Entry ? ((Map.Entry) e).getKey() : e;
+    }
+
+    static boolean startsWith(@NotNull CharSequence cs, @NotNull String prefix) {
+        if (cs.length() < prefix.length())
+            return false;
+        for (int i = 0; i < prefix.length(); i++)
+            if (cs.charAt(i) != prefix.charAt(i))
+                return false;
+        return true;
+    }
+
+    public KeyPredicateType type() {
+        return type;
+    }
+
+    public Object key() {
+        return key;
+    }
+
+    @Override
+    public boolean test(E e) {
+        Object k = keyOf(e);
+        switch (type) {
+            case EQUALS:
+                return Objects.equals(key, k);
+            case PREFIX:
+                return k instanceof CharSequence && startsWith((CharSequence) k, (String) key);
+            default:
+                throw new AssertionError(type);
+        }
+    }
+
+    @Override
+    public void readMarshallable(@NotNull WireIn wireIn) throws IllegalStateException {
+        this.type = KeyPredicateType.valueOf(wireIn.read(() -> "type").text());
+        this.key = wireIn.read(() -> "key").object(Object.class);
+    }
+
+    @Override
+    public void writeMarshallable(@NotNull WireOut wireOut) {
+        wireOut.write(() -> "type").text(type.toString());
+        wireOut.write(() -> "key").object(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KeyPredicate)) return false;
+
+        KeyPredicate<?> that = (KeyPredicate<?>) o;
+        return type == that.type && Objects.equals(key, that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, key);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "KeyPredicate{" +
+                "type=" + type +
+                ", key=" + key +
+                '}';
+    }
+
+    public enum KeyPredicateType {
+        EQUALS, PREFIX
+    }
+}
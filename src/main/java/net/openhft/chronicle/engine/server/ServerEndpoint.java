@@ -17,8 +17,12 @@ package net.openhft.chronicle.engine.server;
 
 import net.openhft.chronicle.core.io.Closeable;
 import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.api.tree.RequestContextInterner;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
+import net.openhft.chronicle.engine.cfg.ThrottleCfg;
 import net.openhft.chronicle.engine.map.ChronicleMapKeyValueStore;
 import net.openhft.chronicle.engine.server.internal.EngineWireHandler;
+import net.openhft.chronicle.engine.server.internal.RequestWorkers;
 import net.openhft.chronicle.engine.server.internal.Throttler;
 import net.openhft.chronicle.network.AcceptorEventHandler;
 import net.openhft.chronicle.network.VanillaSessionDetails;
@@ -31,6 +35,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static net.openhft.chronicle.core.io.Closeable.closeQuietly;
@@ -48,8 +54,19 @@ public class ServerEndpoint implements Closeable {
     private final EventLoop eg;
     @NotNull
     private final AtomicBoolean isClosed = new AtomicBoolean();
+    // the threads map requests are run on by default, 0 to run them on the network threads.
+    public static final int WORKERS = Integer.getInteger("ServerEndpoint.workers", 0);
+    private static final int REQUEST_CONTEXTS = Integer.getInteger("ServerEndpoint.requestContexts", 64 << 10);
     // set Throttler.maxEventsPreSecond == 0 if you dont want to use the throttler
-    private final int maxEventsPreSecond = Integer.getInteger("Throttler.maxEventsPreSecond", 0);
+    private static final int MAX_EVENTS_PER_SECOND = Integer.getInteger("Throttler.maxEventsPreSecond", 0);
+    private final Map<String, ThrottleCfg> throttles;
+    @Nullable
+    private final CompressionCfg compression;
+    // parses each csp once for all the connections.
+    private final RequestContextInterner requestContextInterner = new RequestContextInterner(REQUEST_CONTEXTS);
+    // runs the map requests of all the connections, null to run them on the network thread.
+    @Nullable
+    private final RequestWorkers workers;
     private final int heartbeatIntervalTicks;
     private final int heartbeatIntervalTimeout;
     @Nullable
@@ -60,6 +77,47 @@ public class ServerEndpoint implements Closeable {
     }
 
     public ServerEndpoint(String hostPortDescription, @NotNull AssetTree assetTree, @NotNull WireType wire, int heartbeatIntervalTicks, int heartbeatIntervalTimeout) throws IOException {
+        this(hostPortDescription, assetTree, wire, heartbeatIntervalTicks, heartbeatIntervalTimeout,
+                defaultThrottles());
+    }
+
+    /**
+     * @return the throttle of every subscription set by Throttler.maxEventsPreSecond, if any.
+     */
+    @NotNull
+    public static Map<String, ThrottleCfg> defaultThrottles() {
+        return MAX_EVENTS_PER_SECOND > 0
+                ? Collections.singletonMap("", new ThrottleCfg(MAX_EVENTS_PER_SECOND, MAX_EVENTS_PER_SECOND))
+                : Collections.<String, ThrottleCfg>emptyMap();
+    }
+
+    /**
+     * @param throttles the rate events are sent to each subscription, by asset path.
+     */
+    public ServerEndpoint(String hostPortDescription, @NotNull AssetTree assetTree, @NotNull WireType wire, int heartbeatIntervalTicks, int heartbeatIntervalTimeout,
+                          @NotNull Map<String, ThrottleCfg> throttles) throws IOException {
+        this(hostPortDescription, assetTree, wire, heartbeatIntervalTicks, heartbeatIntervalTimeout, throttles, null);
+    }
+
+    /**
+     * @param throttles   the rate events are sent to each subscription, by asset path.
+     * @param compression compresses large events for the clients which accept its codec, or null
+     *                    to send every event uncompressed.
+     */
+    public ServerEndpoint(String hostPortDescription, @NotNull AssetTree assetTree, @NotNull WireType wire, int heartbeatIntervalTicks, int heartbeatIntervalTimeout,
+                          @NotNull Map<String, ThrottleCfg> throttles, @Nullable CompressionCfg compression) throws IOException {
+        this(hostPortDescription, assetTree, wire, heartbeatIntervalTicks, heartbeatIntervalTimeout, throttles, compression, WORKERS);
+    }
+
+    /**
+     * @param workers the number of threads to run map requests on, sharded by asset, or 0 to run
+     *                them on the network thread of each connection.
+     */
+    public ServerEndpoint(String hostPortDescription, @NotNull AssetTree assetTree, @NotNull WireType wire, int heartbeatIntervalTicks, int heartbeatIntervalTimeout,
+                          @NotNull Map<String, ThrottleCfg> throttles, @Nullable CompressionCfg compression, int workers) throws IOException {
+        this.workers = workers > 0 ? new RequestWorkers(workers) : null;
+        this.throttles = throttles;
+        this.compression = compression;
         this.heartbeatIntervalTicks = heartbeatIntervalTicks;
         this.heartbeatIntervalTimeout = heartbeatIntervalTimeout;
         eg = assetTree.root().acquireView(EventLoop.class);
@@ -84,8 +142,8 @@ public class ServerEndpoint implements Closeable {
 
         final AcceptorEventHandler eah = new AcceptorEventHandler(hostPortDescription,
                 () -> {
-                    final Throttler throttler = new Throttler(eventLoop, maxEventsPreSecond);
-                    return new EngineWireHandler(wireType, asset, throttler);
+                    final Throttler throttler = new Throttler(eventLoop, throttles);
+                    return new EngineWireHandler(wireType, asset, throttler, compression, requestContextInterner, workers);
                 },
                 VanillaSessionDetails::new,
                 heartbeatIntervalTicks,
@@ -108,6 +166,7 @@ public class ServerEndpoint implements Closeable {
 
         closeQuietly(eah);
         eah = null;
+        closeQuietly(workers);
 
     }
 }
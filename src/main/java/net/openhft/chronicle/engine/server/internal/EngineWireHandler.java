@@ -18,15 +18,18 @@ package net.openhft.chronicle.engine.server.internal;
 
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.util.StringUtils;
 import net.openhft.chronicle.engine.api.collection.ValuesCollection;
 import net.openhft.chronicle.engine.api.map.MapView;
 import net.openhft.chronicle.engine.api.pubsub.*;
 import net.openhft.chronicle.engine.api.session.Heartbeat;
 import net.openhft.chronicle.engine.api.set.EntrySetView;
 import net.openhft.chronicle.engine.api.set.KeySetView;
+import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.AssetTree;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
 import net.openhft.chronicle.engine.api.tree.RequestContextInterner;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
 import net.openhft.chronicle.engine.collection.CollectionWireHandler;
 import net.openhft.chronicle.engine.map.ObjectKVSSubscription;
 import net.openhft.chronicle.engine.tree.HostIdentifier;
@@ -46,6 +49,8 @@ import org.slf4j.LoggerFactory;
 import java.io.StreamCorruptedException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.RejectedExecutionException;
 
 import static net.openhft.chronicle.core.Jvm.rethrow;
@@ -59,6 +64,7 @@ import static net.openhft.chronicle.network.connection.CoreFields.csp;
 public class EngineWireHandler extends WireTcpHandler implements ClientClosedProvider {
 
     private static final Logger LOG = LoggerFactory.getLogger(EngineWireHandler.class);
+    private static final int CHANNELS = Integer.getInteger("EngineWireHandler.channels", 1024);
 
     private final StringBuilder cspText = new StringBuilder();
     @NotNull
@@ -92,7 +98,6 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
     private final AssetTree assetTree;
     @NotNull
     private final ReadMarshallable metaDataConsumer;
-    private final StringBuilder lastCsp = new StringBuilder();
     private final StringBuilder eventName = new StringBuilder();
     @NotNull
     private final SystemHandler systemHandler;
@@ -102,7 +107,26 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
     private final HostIdentifier hostIdentifier;
     @Nullable
     private final EventLoop eventLoop;
-    private final RequestContextInterner requestContextInterner = new RequestContextInterner(128);
+    @NotNull
+    private final Throttler throttler;
+    @NotNull
+    private final RequestContextInterner requestContextInterner;
+    // the channels most recently used by this connection, by csp.
+    private final Map<String, Channel> channels = lruMap();
+    // the csp of the cids most recently used by this connection, the channel is looked up by csp.
+    private final Map<Long, String> cidToCsp = lruMap();
+    @Nullable
+    private Channel channel;
+    @NotNull
+    private final WireType byteToWire;
+    // runs the requests of maps and their views off the network thread, null to run them inline.
+    @Nullable
+    private final RequestWorkers workers;
+    // the handlers of this connection for the requests run by each worker, created when first used.
+    @Nullable
+    private final MapWorker[] mapWorkers;
+    @Nullable
+    private final CompressionCfg compression;
     private WireAdapter wireAdapter;
     private Object view;
     private boolean isSystemMessage = true;
@@ -114,7 +138,48 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
     public EngineWireHandler(@NotNull final WireType byteToWire,
                              @NotNull final AssetTree assetTree,
                              @NotNull final Throttler throttler) {
+        this(byteToWire, assetTree, throttler, null);
+    }
+
+    /**
+     * @param compression compresses large events for the subscribers which accept its codec, or
+     *                    null to send every event uncompressed.
+     */
+    public EngineWireHandler(@NotNull final WireType byteToWire,
+                             @NotNull final AssetTree assetTree,
+                             @NotNull final Throttler throttler,
+                             @Nullable final CompressionCfg compression) {
+        this(byteToWire, assetTree, throttler, compression, new RequestContextInterner(128));
+    }
+
+    /**
+     * @param requestContextInterner parses each csp once, shared by the connections of a server.
+     */
+    public EngineWireHandler(@NotNull final WireType byteToWire,
+                             @NotNull final AssetTree assetTree,
+                             @NotNull final Throttler throttler,
+                             @Nullable final CompressionCfg compression,
+                             @NotNull final RequestContextInterner requestContextInterner) {
+        this(byteToWire, assetTree, throttler, compression, requestContextInterner, null);
+    }
+
+    /**
+     * @param workers the workers to run the requests of maps, their key sets, entry sets, values
+     *                and subscriptions on, shared by the connections of a server, or null to run
+     *                them on the network thread.
+     */
+    public EngineWireHandler(@NotNull final WireType byteToWire,
+                             @NotNull final AssetTree assetTree,
+                             @NotNull final Throttler throttler,
+                             @Nullable final CompressionCfg compression,
+                             @NotNull final RequestContextInterner requestContextInterner,
+                             @Nullable final RequestWorkers workers) {
         super(byteToWire);
+        this.byteToWire = byteToWire;
+        this.workers = workers;
+        this.mapWorkers = workers == null ? null : new MapWorker[workers.count()];
+        this.compression = compression;
+        this.requestContextInterner = requestContextInterner;
         this.sessionProvider = assetTree.root().getView(SessionProvider.class);
         this.eventLoop = assetTree.root().findOrCreateView(EventLoop.class);
         assert eventLoop != null;
@@ -130,12 +195,13 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
         this.keySetHandler = new CollectionWireHandler();
         this.entrySetHandler = new CollectionWireHandler();
         this.valuesHandler = new CollectionWireHandler();
-        this.subscriptionHandler = new ObjectKVSubscriptionHandler(throttler);
-        this.topologySubscriptionHandler = new TopologySubscriptionHandler(throttler);
+        this.throttler = throttler;
+        this.subscriptionHandler = new ObjectKVSubscriptionHandler(throttler, compression);
+        this.topologySubscriptionHandler = new TopologySubscriptionHandler(throttler, compression);
         this.topicPublisherHandler = new TopicPublisherHandler();
         this.publisherHandler = new PublisherHandler();
         this.referenceHandler = new ReferenceHandler();
-        this.replicationHandler = new ReplicationHandler();
+        this.replicationHandler = new ReplicationHandler(compression);
         this.systemHandler = new SystemHandler();
     }
 
@@ -146,6 +212,18 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
                 publisherHandler, replicationHandler}) {
             abstractHandler.onEndOfConnection(heartbeatTimeOut);
         }
+        keySetHandler.onEndOfConnection();
+        entrySetHandler.onEndOfConnection();
+        valuesHandler.onEndOfConnection();
+        if (workers != null) {
+            assert mapWorkers != null;
+            for (int i = 0; i < mapWorkers.length; i++) {
+                final MapWorker mapWorker = mapWorkers[i];
+                if (mapWorker != null && !workers.execute(i, () -> mapWorker.onEndOfConnection(heartbeatTimeOut)))
+                    mapWorker.onEndOfConnection(heartbeatTimeOut);
+            }
+        }
+        throttler.close();
     }
 
     @NotNull
@@ -160,46 +238,28 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
             }
 
             try {
-                readCsp(wire);
+                Channel channel = readChannel(wire);
+                if (channel != null && channel.isRemoved()) {
+                    // the asset was removed, and possibly added again, since its view was cached.
+                    channels.remove(channel.csp);
+                    channel = channelFor(channel.csp);
+                }
                 readTid(wire);
-                if (hasCspChanged(cspText)) {
-
+                if (channel == null || channel.viewType == null) {
+                    if (LOG.isDebugEnabled()) LOG.debug("received system-meta-data");
+                    this.channel = channel;
+                    isSystemMessage = true;
+                    return;
+                }
+                if (channel != this.channel) {
                     if (LOG.isDebugEnabled())
                         LOG.debug("received meta-data:\n" + wire.bytes().toHexString());
 
-                    requestContext = requestContextInterner.intern(cspText);
-                    viewType = requestContext.viewType();
-                    if (viewType == null) {
-                        if (LOG.isDebugEnabled()) LOG.debug("received system-meta-data");
-                        isSystemMessage = true;
-                        return;
-                    }
-
-                    view = this.assetTree.acquireView(requestContext);
-
-                    if (viewType == MapView.class ||
-                            viewType == EntrySetView.class ||
-                            viewType == ValuesCollection.class ||
-                            viewType == KeySetView.class ||
-                            viewType == ObjectKVSSubscription.class ||
-                            viewType == TopicPublisher.class ||
-                            viewType == Publisher.class ||
-                            viewType == Reference.class ||
-                            viewType == TopologySubscription.class ||
-                            viewType == Replication.class ||
-                            viewType == Heartbeat.class) {
-
-                        // default to string type if not provided
-                        final Class type = requestContext.keyType() == null ? String.class
-                                : requestContext.keyType();
-
-                        final Class type2 = requestContext.valueType() == null ? String.class
-                                : requestContext.valueType();
-
-                        wireAdapter = new GenericWireAdapter(type, type2);
-                    } else
-                        throw new UnsupportedOperationException("unsupported view type");
-
+                    this.channel = channel;
+                    requestContext = channel.requestContext;
+                    viewType = channel.viewType;
+                    view = channel.view;
+                    wireAdapter = channel.wireAdapter;
                 }
             } catch (Exception e) {
                 LOG.error("", e);
@@ -208,18 +268,6 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
         };
     }
 
-    private boolean hasCspChanged(@NotNull final StringBuilder cspText) {
-        boolean result = !cspText.equals(lastCsp);
-
-        // if it has changed remember what it changed to, for next time this method is called.
-        if (result) {
-            lastCsp.setLength(0);
-            lastCsp.append(cspText);
-        }
-
-        return result;
-    }
-
     private void readTid(@NotNull WireIn metaDataWire) {
         ValueIn valueIn = metaDataWire.readEventName(eventName);
         if (CoreFields.tid.contentEquals(eventName)) {
@@ -254,6 +302,14 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
 
                 if (wireAdapter != null) {
 
+                    if (workers != null) {
+                        final WorkerRequest request = workerRequest();
+                        if (request != null) {
+                            processOnWorker(in, request, sessionDetails);
+                            return;
+                        }
+                    }
+
                     if (viewType == MapView.class) {
                         mapWireHandler.process(in, out, (MapView) view, tid, wireAdapter,
                                 requestContext);
@@ -337,6 +393,63 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
         });
     }
 
+    /**
+     * @return the request for the current view to run on the worker of its asset, or null if
+     * the view's requests are run on the network thread. The views of a map run on the same
+     * worker as the map, so they see the map requests sent before them.
+     */
+    @Nullable
+    private WorkerRequest workerRequest() {
+        final Object view = this.view;
+        final long tid = this.tid;
+        final WireAdapter wireAdapter = this.wireAdapter;
+        final RequestContext requestContext = this.requestContext;
+
+        if (viewType == MapView.class)
+            return (w, in, out) -> w.mapWireHandler.process(in, out, (MapView) view, tid,
+                    wireAdapter, requestContext);
+
+        if (viewType == EntrySetView.class)
+            return (w, in, out) -> w.entrySetHandler.process(in, out, (EntrySetView) view,
+                    wireAdapter.entryToWire(), wireAdapter.wireToEntry(), HashSet::new, tid);
+
+        if (viewType == KeySetView.class)
+            return (w, in, out) -> w.keySetHandler.process(in, out, (KeySetView) view,
+                    wireAdapter.keyToWire(), wireAdapter.wireToKey(), HashSet::new, tid);
+
+        if (viewType == ValuesCollection.class)
+            return (w, in, out) -> w.valuesHandler.process(in, out, (ValuesCollection) view,
+                    wireAdapter.keyToWire(), wireAdapter.wireToKey(), ArrayList::new, tid);
+
+        if (viewType == ObjectKVSSubscription.class)
+            return (w, in, out) -> w.subscriptionHandler.process(in, requestContext, publisher,
+                    assetTree, tid, out, (Subscription) view);
+
+        return null;
+    }
+
+    /**
+     * Copies a request and runs it on the worker for its asset, the reply is sent through the
+     * publisher.
+     */
+    private void processOnWorker(@NotNull final WireIn in,
+                                 @NotNull final WorkerRequest request,
+                                 @NotNull final SessionDetailsProvider sessionDetails) {
+        assert workers != null && mapWorkers != null;
+        final int worker = workers.workerFor(requestContext.fullName());
+        MapWorker mapWorker = mapWorkers[worker];
+        if (mapWorker == null)
+            mapWorkers[worker] = mapWorker = new MapWorker();
+
+        final Bytes<?> bytes = in.bytes();
+        final byte[] copy = new byte[(int) bytes.readRemaining()];
+        bytes.read(copy);
+
+        final MapWorker w = mapWorker;
+        if (!workers.execute(worker, () -> w.process(copy, request, sessionDetails)))
+            LOG.warn("Request workers closed, dropped request for " + requestContext.fullName());
+    }
+
     private void logYamlToStandardOut(@NotNull WireIn in) {
         if (Jvm.isDebug() && YamlLogging.showServerReads) {
             try {
@@ -350,25 +463,186 @@ public class EngineWireHandler extends WireTcpHandler implements ClientClosedPro
     }
 
     /**
-     * peeks the csp or if it has a cid converts the cid into a Csp and returns that
+     * reads the csp, or the cid of a csp, and returns its channel, or null if there is neither.
      */
-    private void readCsp(@NotNull final WireIn wireIn) {
+    @Nullable
+    private Channel readChannel(@NotNull final WireIn wireIn) {
         final StringBuilder keyName = Wires.acquireStringBuilder();
 
-        cspText.setLength(0);
         final ValueIn read = wireIn.readEventName(keyName);
         if (csp.contentEquals(keyName)) {
+            cspText.setLength(0);
             read.textTo(cspText);
+            if (channel != null && StringUtils.isEqual(channel.csp, cspText))
+                return channel;
+            return channelFor(cspText.toString());
 
         } else if (cid.contentEquals(keyName)) {
             final long cid = read.int64();
-            final CharSequence s = mapWireHandler.getCspForCid(cid);
-            cspText.append(s);
+            String csp = cidToCsp.get(cid);
+            if (csp == null) {
+                final CharSequence s = mapWireHandler.getCspForCid(cid);
+                if (s == null)
+                    return null;
+                csp = s.toString();
+                cidToCsp.put(cid, csp);
+            }
+            cspText.setLength(0);
+            cspText.append(csp);
+            if (channel != null && channel.csp.equals(csp))
+                return channel;
+            return channelFor(csp);
+        }
+        cspText.setLength(0);
+        return null;
+    }
+
+    @NotNull
+    private static <K, V> Map<K, V> lruMap() {
+        return new LinkedHashMap<K, V>(CHANNELS * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > CHANNELS;
+            }
+        };
+    }
+
+    @NotNull
+    private Channel channelFor(@NotNull String csp) {
+        Channel channel = channels.get(csp);
+        if (channel == null) {
+            channel = new Channel(csp, requestContextInterner.intern(csp), assetTree);
+            channels.put(csp, channel);
         }
+        return channel;
     }
 
     @Override
     public boolean hasClientClosed() {
         return systemHandler.hasClientClosed();
     }
-}
\ No newline at end of file
+
+    /**
+     * A csp with its request context, view and wire adapter, looked up once per connection.
+     */
+    static final class Channel {
+        @NotNull
+        final String csp;
+        @NotNull
+        final RequestContext requestContext;
+        @Nullable
+        final Class viewType;
+        @Nullable
+        final Object view;
+        @Nullable
+        final WireAdapter wireAdapter;
+        // the asset of the view, null if there is no view.
+        @Nullable
+        final Asset asset;
+
+        Channel(@NotNull String csp, @NotNull RequestContext requestContext, @NotNull AssetTree assetTree) {
+            this.csp = csp;
+            this.requestContext = requestContext;
+            this.viewType = requestContext.viewType();
+            if (viewType == null) {
+                this.view = null;
+                this.wireAdapter = null;
+                this.asset = null;
+                return;
+            }
+
+            this.view = assetTree.acquireView(requestContext);
+            this.asset = assetTree.getAsset(requestContext.fullName());
+
+            if (viewType == MapView.class ||
+                    viewType == EntrySetView.class ||
+                    viewType == ValuesCollection.class ||
+                    viewType == KeySetView.class ||
+                    viewType == ObjectKVSSubscription.class ||
+                    viewType == TopicPublisher.class ||
+                    viewType == Publisher.class ||
+                    viewType == Reference.class ||
+                    viewType == TopologySubscription.class ||
+                    viewType == Replication.class ||
+                    viewType == Heartbeat.class) {
+
+                // default to string type if not provided
+                final Class type = requestContext.keyType() == null ? String.class
+                        : requestContext.keyType();
+
+                final Class type2 = requestContext.valueType() == null ? String.class
+                        : requestContext.valueType();
+
+                this.wireAdapter = new GenericWireAdapter(type, type2);
+            } else
+                throw new UnsupportedOperationException("unsupported view type");
+        }
+
+        /**
+         * @return true if the asset of the view, or one of its parents, has been removed from
+         * the tree, so the view is no longer the one for this csp.
+         */
+        boolean isRemoved() {
+            for (Asset a = asset; a != null && a.parent() != null; a = a.parent()) {
+                if (a.parent().getChild(a.name()) != a)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A request read from the in wire, with its reply written to the out wire.
+     */
+    @FunctionalInterface
+    interface WorkerRequest {
+        void process(@NotNull MapWorker worker, @NotNull WireIn in, @NotNull Wire out);
+    }
+
+    /**
+     * Runs the requests of this connection for one worker, only used by that worker.
+     */
+    final class MapWorker {
+        private final MapWireHandler mapWireHandler = new MapWireHandler<>(EngineWireHandler.this.mapWireHandler);
+        private final CollectionWireHandler keySetHandler = new CollectionWireHandler();
+        private final CollectionWireHandler entrySetHandler = new CollectionWireHandler();
+        private final CollectionWireHandler valuesHandler = new CollectionWireHandler();
+        private final ObjectKVSubscriptionHandler subscriptionHandler = new ObjectKVSubscriptionHandler(throttler, compression);
+        private final Wire in = byteToWire.apply(Bytes.elasticByteBuffer());
+        private final Wire out = byteToWire.apply(Bytes.elasticByteBuffer());
+
+        void process(@NotNull byte[] request,
+                     @NotNull WorkerRequest handler,
+                     @NotNull SessionDetailsProvider sessionDetails) {
+            if (publisher.isClosed())
+                return;
+            if (sessionProvider != null)
+                sessionProvider.set(sessionDetails);
+            try {
+                in.bytes().clear();
+                in.bytes().write(request);
+                out.bytes().clear();
+                handler.process(this, in, out);
+
+                if (out.bytes().readRemaining() > 0) {
+                    final byte[] reply = new byte[(int) out.bytes().readRemaining()];
+                    out.bytes().read(reply);
+                    publisher.add(wire -> wire.bytes().write(reply));
+                }
+            } catch (Exception e) {
+                LOG.error("", e);
+            } finally {
+                if (sessionProvider != null)
+                    sessionProvider.remove();
+            }
+        }
+
+        void onEndOfConnection(boolean heartbeatTimeOut) {
+            mapWireHandler.onEndOfConnection(heartbeatTimeOut);
+            subscriptionHandler.onEndOfConnection(heartbeatTimeOut);
+            keySetHandler.onEndOfConnection();
+            entrySetHandler.onEndOfConnection();
+            valuesHandler.onEndOfConnection();
+        }
+    }
+}
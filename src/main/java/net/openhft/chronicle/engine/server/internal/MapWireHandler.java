@@ -24,6 +24,7 @@ import net.openhft.chronicle.core.pool.StringBuilderPool;
 import net.openhft.chronicle.core.util.SerializableBiFunction;
 import net.openhft.chronicle.core.util.SerializableUpdaterWithArg;
 import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.map.RawValueWriter;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
 import net.openhft.chronicle.engine.map.remote.RemoteKeyValueStore;
 import net.openhft.chronicle.map.ChronicleMap;
@@ -35,8 +36,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.StreamCorruptedException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -52,14 +56,17 @@ public class MapWireHandler<K, V> extends AbstractHandler {
 
     private static final StringBuilderPool SBP = new StringBuilderPool();
     private static final Logger LOG = LoggerFactory.getLogger(MapWireHandler.class);
+    private static final WireKeyLookup<EventId> EVENT_IDS = new WireKeyLookup<>(EventId.class);
     private final StringBuilder eventName = new StringBuilder();
     private final StringBuilder cpsBuff = new StringBuilder();
 
+    // shared by the handlers of a connection which run on request workers.
     @NotNull
-    private final Map<Long, String> cidToCsp = new HashMap<>();
+    private final Map<Long, String> cidToCsp;
     @NotNull
-    private final Map<String, Long> cspToCid = new HashMap<>();
-    private final AtomicLong cid = new AtomicLong();
+    private final Map<String, Long> cspToCid;
+    @NotNull
+    private final AtomicLong cid;
 
     private BiConsumer<ValueOut, V> vToWire;
     @Nullable
@@ -73,6 +80,9 @@ public class MapWireHandler<K, V> extends AbstractHandler {
     @Nullable
     private MapView<K, V> map;
     private boolean charSequenceValue;
+    // copies stored values to the wire, null if they have to be written as objects.
+    @Nullable
+    private RawValueWriter<K> rawValueWriter;
     private long tid;
     private final BiConsumer<WireIn, Long> dataConsumer = new BiConsumer<WireIn, Long>() {
 
@@ -83,8 +93,9 @@ public class MapWireHandler<K, V> extends AbstractHandler {
             try {
                 eventName.setLength(0);
                 final ValueIn valueIn = inWire.readEventName(eventName);
+                final EventId eventId = EVENT_IDS.lookup(eventName);
 
-                if (put.contentEquals(eventName)) {
+                if (eventId == put) {
                     valueIn.marshallable(wire -> {
                         final Params[] params = put.params();
                         final K key = wireToK.apply(wire.read(params[0]));
@@ -96,14 +107,35 @@ public class MapWireHandler<K, V> extends AbstractHandler {
                     return;
                 }
 
-                if (remove.contentEquals(eventName)) {
+                if (eventId == remove) {
                     final K key = wireToK.apply(valueIn);
                     nullCheck(key);
                     map.remove(key);
                     return;
                 }
 
-                if (update2.contentEquals(eventName)) {
+                if (eventId == putAll) {
+                    final Map<K, V> entries = new LinkedHashMap<>();
+                    valueIn.sequence(v -> {
+                        while (v.hasNextSequenceItem()) {
+                            final K key = wireToK.apply(v);
+                            final V value = wireToV.apply(v);
+                            nullCheck(key);
+                            nullCheck(value);
+                            entries.put(key, value);
+                        }
+                    });
+                    map.putAll(entries);
+                    return;
+                }
+
+                if (eventId == removeAll) {
+                    final List<K> keys = readKeys(valueIn);
+                    map.removeAll(keys);
+                    return;
+                }
+
+                if (eventId == update2) {
                     valueIn.marshallable(wire -> {
                         final Params[] params = update2.params();
                         final SerializableUpdaterWithArg updater = (SerializableUpdaterWithArg) wire.read(params[0]).object(Object.class);
@@ -116,187 +148,172 @@ public class MapWireHandler<K, V> extends AbstractHandler {
                 outWire.writeDocument(true, wire -> outWire.writeEventName(CoreFields.tid).int64(tid));
 
                 writeData(inWire.bytes(), out -> {
-
-                    if (clear.contentEquals(eventName)) {
-                        map.clear();
-                        return;
-                    }
-
-                    if (putAll.contentEquals(eventName)) {
-                        valueIn.sequence(v -> {
-                            while (v.hasNextSequenceItem()) {
-                                valueIn.marshallable(wire -> map.put(
-                                        wireToK.apply(wire.read(put.params()[0])),
-                                        wireToV.apply(wire.read(put.params()[1]))));
+                    if (eventId == null)
+                        throw new IllegalStateException("unsupported event=" + eventName);
+
+                    switch (eventId) {
+                        case clear:
+                            map.clear();
+                            return;
+
+                        case getAll: {
+                            if (rawValueWriter != null) {
+                                final List<K> keys = readKeys(valueIn);
+                                outWire.writeEventName(reply).sequence(v -> {
+                                    for (K key : keys)
+                                        rawValueWriter.writeValue(key, v);
+                                });
+                                return;
                             }
-                        });
-                        return;
-                    }
-
-                    if (EventId.putIfAbsent.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = putIfAbsent.params();
-                            final K key = wireToK.apply(wire.read(params[0]));
-                            final V newValue = wireToV.apply(wire.read(params[1]));
-                            final V result = map.putIfAbsent(key, newValue);
-
+                            final List<V> values = map.getAll(readKeys(valueIn));
+                            outWire.writeEventName(reply).sequence(v -> {
+                                for (V value : values)
+                                    vToWire.accept(v, value);
+                            });
+                            return;
+                        }
+
+                        case putIfAbsent:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = putIfAbsent.params();
+                                final K key = wireToK.apply(wire.read(params[0]));
+                                final V newValue = wireToV.apply(wire.read(params[1]));
+                                nullCheck(key);
+                                nullCheck(newValue);
+                                vToWire.accept(outWire.writeEventName(reply), map.putIfAbsent(key, newValue));
+                            });
+                            return;
+
+                        case size:
+                            outWire.writeEventName(reply).int64(map.longSize());
+                            return;
+
+                        case keySet:
+                        case values:
+                        case entrySet:
+                            createProxy(eventId.name());
+                            return;
+
+                        case containsKey: {
+                            final K key = wireToK.apply(valueIn);
                             nullCheck(key);
-                            nullCheck(newValue);
-
-                            vToWire.accept(outWire.writeEventName(reply), result);
-                        });
-                        return;
-                    }
-
-                    if (size.contentEquals(eventName)) {
-                        outWire.writeEventName(reply).int64(map.longSize());
-                        return;
-                    }
-
-                    if (keySet.contentEquals(eventName) ||
-                            values.contentEquals(eventName) ||
-                            entrySet.contentEquals(eventName)) {
-                        createProxy(eventName.toString());
-                        return;
-                    }
-
-                    if (containsKey.contentEquals(eventName)) {
-                        final K key = wireToK.apply(valueIn);
-                        nullCheck(key);
-                        outWire.writeEventName(reply)
-                                .bool(map.containsKey(key));
-                        return;
-                    }
-
-                    if (containsValue.contentEquals(eventName)) {
-                        final V value = wireToV.apply(valueIn);
-                        nullCheck(value);
-                        final boolean aBoolean = map.containsValue(value);
-                        outWire.writeEventName(reply).bool(
-                                aBoolean);
-                        return;
-                    }
-
-                    if (get.contentEquals(eventName)) {
-                        final K key = wireToK.apply(valueIn);
-                        nullCheck(key);
-
-                        if (charSequenceValue) {
-                            StringBuilder sb = SBP.acquireStringBuilder();
-                            vToWire.accept(outWire.writeEventName(reply), (V) ((ChronicleMap) map).getUsing(key, sb));
-
-                        } else
-                            vToWire.accept(outWire.writeEventName(reply), map.get(key));
-
-                        return;
-                    }
+                            outWire.writeEventName(reply)
+                                    .bool(map.containsKey(key));
+                            return;
+                        }
 
-                    if (getAndPut.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-
-                            final Params[] params = getAndPut.params();
-                            final K key = wireToK.apply(wire.read(params[0]));
-                            final V value = wireToV.apply(wire.read(params[1]));
-
-                            nullCheck(key);
+                        case containsValue: {
+                            final V value = wireToV.apply(valueIn);
                             nullCheck(value);
+                            outWire.writeEventName(reply).bool(map.containsValue(value));
+                            return;
+                        }
 
-                            vToWire.accept(outWire.writeEventName(reply),
-                                    map.getAndPut(key, value));
-                        });
-                        return;
-                    }
-
-                    if (getAndRemove.contentEquals(eventName)) {
-                        final K key = wireToK.apply(valueIn);
-                        nullCheck(key);
-                        vToWire.accept(outWire.writeEventName(reply), map.getAndRemove(key));
-                        return;
-                    }
-
-                    if (replace.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = replace.params();
-                            final K key = wireToK.apply(wire.read(params[0]));
-                            final V value = wireToV.apply(wire.read(params[1]));
+                        case get: {
+                            final K key = wireToK.apply(valueIn);
                             nullCheck(key);
-                            nullCheck(value);
-                            vToWire.accept(outWire.writeEventName(reply),
-                                    map.replace(key, value));
-                        });
-                        return;
-                    }
 
-                    if (replaceForOld.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = replaceForOld.params();
-                            final K key = wireToK.apply(wire.read(params[0]));
-                            V oldValue = wireToV.apply(wire.read(params[1]));
-                            if (charSequenceValue)
-                                oldValue = (V) oldValue.toString();
-                            final V newValue = wireToV.apply(wire.read(params[2]));
-                            nullCheck(key);
-                            nullCheck(oldValue);
-                            nullCheck(newValue);
-                            outWire.writeEventName(reply).bool(map.replace(key, oldValue, newValue));
-                        });
-                        return;
-                    }
+                            if (rawValueWriter != null) {
+                                rawValueWriter.writeValue(key, outWire.writeEventName(reply));
+                                return;
+                            }
 
-                    if (putIfAbsent.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = putIfAbsent.params();
-                            final K key = wireToK.apply(wire.read(params[0]));
-                            final V value = wireToV.apply(wire.read(params[1]));
-                            nullCheck(key);
-                            nullCheck(value);
-                            vToWire.accept(outWire.writeEventName(reply),
-                                    map.putIfAbsent(key, value));
-                        });
+                            if (charSequenceValue) {
+                                StringBuilder sb = SBP.acquireStringBuilder();
+                                vToWire.accept(outWire.writeEventName(reply), (V) ((ChronicleMap) map).getUsing(key, sb));
 
-                        return;
-                    }
+                            } else
+                                vToWire.accept(outWire.writeEventName(reply), map.get(key));
+                            return;
+                        }
 
-                    if (removeWithValue.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = removeWithValue.params();
-                            final K key = wireToK.apply(wire.read(params[0]));
-                            final V value = wireToV.apply(wire.read(params[1]));
-                            nullCheck(key);
-                            nullCheck(value);
-                            outWire.writeEventName(reply).bool(map.remove(key, value));
-                        });
-                    }
+                        case getAndPut:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = getAndPut.params();
+                                final K key = wireToK.apply(wire.read(params[0]));
+                                final V value = wireToV.apply(wire.read(params[1]));
 
-                    if (hashCode.contentEquals(eventName)) {
-                        outWire.writeEventName(reply).int32(map.hashCode());
-                        return;
-                    }
+                                nullCheck(key);
+                                nullCheck(value);
 
-                    if (applyTo2.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = applyTo2.params();
-                            final SerializableBiFunction function = (SerializableBiFunction) wire.read(params[0]).object(Object.class);
-                            final Object arg = wire.read(params[1]).object(Object.class);
-                            //call typed object
-                            outWire.writeEventName(reply).object(map.applyTo(function, arg));
-                        });
-                        return;
-                    }
+                                vToWire.accept(outWire.writeEventName(reply),
+                                        map.getAndPut(key, value));
+                            });
+                            return;
 
-                    if (update4.contentEquals(eventName)) {
-                        valueIn.marshallable(wire -> {
-                            final Params[] params = update4.params();
-                            final SerializableUpdaterWithArg updater = (SerializableUpdaterWithArg) wire.read(params[0]).object(Object.class);
-                            final Object updateArg = wire.read(params[1]).object(Object.class);
-                            final SerializableBiFunction returnFunction = (SerializableBiFunction) wire.read(params[2]).object(Object.class);
-                            final Object returnArg = wire.read(params[3]).object(Object.class);
-                            outWire.writeEventName(reply).object(map.syncUpdate(updater, updateArg, returnFunction, returnArg));
-                        });
-                        return;
+                        case getAndRemove: {
+                            final K key = wireToK.apply(valueIn);
+                            nullCheck(key);
+                            vToWire.accept(outWire.writeEventName(reply), map.getAndRemove(key));
+                            return;
+                        }
+
+                        case replace:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = replace.params();
+                                final K key = wireToK.apply(wire.read(params[0]));
+                                final V value = wireToV.apply(wire.read(params[1]));
+                                nullCheck(key);
+                                nullCheck(value);
+                                vToWire.accept(outWire.writeEventName(reply),
+                                        map.replace(key, value));
+                            });
+                            return;
+
+                        case replaceForOld:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = replaceForOld.params();
+                                final K key = wireToK.apply(wire.read(params[0]));
+                                V oldValue = wireToV.apply(wire.read(params[1]));
+                                if (charSequenceValue)
+                                    oldValue = (V) oldValue.toString();
+                                final V newValue = wireToV.apply(wire.read(params[2]));
+                                nullCheck(key);
+                                nullCheck(oldValue);
+                                nullCheck(newValue);
+                                outWire.writeEventName(reply).bool(map.replace(key, oldValue, newValue));
+                            });
+                            return;
+
+                        case removeWithValue:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = removeWithValue.params();
+                                final K key = wireToK.apply(wire.read(params[0]));
+                                final V value = wireToV.apply(wire.read(params[1]));
+                                nullCheck(key);
+                                nullCheck(value);
+                                outWire.writeEventName(reply).bool(map.remove(key, value));
+                            });
+                            return;
+
+                        case hashCode:
+                            outWire.writeEventName(reply).int32(map.hashCode());
+                            return;
+
+                        case applyTo2:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = applyTo2.params();
+                                final SerializableBiFunction function = (SerializableBiFunction) wire.read(params[0]).object(Object.class);
+                                final Object arg = wire.read(params[1]).object(Object.class);
+                                //call typed object
+                                outWire.writeEventName(reply).object(map.applyTo(function, arg));
+                            });
+                            return;
+
+                        case update4:
+                            valueIn.marshallable(wire -> {
+                                final Params[] params = update4.params();
+                                final SerializableUpdaterWithArg updater = (SerializableUpdaterWithArg) wire.read(params[0]).object(Object.class);
+                                final Object updateArg = wire.read(params[1]).object(Object.class);
+                                final SerializableBiFunction returnFunction = (SerializableBiFunction) wire.read(params[2]).object(Object.class);
+                                final Object returnArg = wire.read(params[3]).object(Object.class);
+                                outWire.writeEventName(reply).object(map.syncUpdate(updater, updateArg, returnFunction, returnArg));
+                            });
+                            return;
+
+                        default:
+                            throw new IllegalStateException("unsupported event=" + eventName);
                     }
-
-                    throw new IllegalStateException("unsupported event=" + eventName);
                 });
             } catch (Exception e) {
                 LOG.error("", e);
@@ -304,6 +321,38 @@ public class MapWireHandler<K, V> extends AbstractHandler {
         }
     };
 
+    public MapWireHandler() {
+        this.cidToCsp = new ConcurrentHashMap<>();
+        this.cspToCid = new ConcurrentHashMap<>();
+        this.cid = new AtomicLong();
+    }
+
+    /**
+     * @param connection the handler of the connection, this handler creates its cids from the
+     *                   same sequence so the connection can find their csps.
+     */
+    public MapWireHandler(@NotNull MapWireHandler<?, ?> connection) {
+        this.cidToCsp = connection.cidToCsp;
+        this.cspToCid = connection.cspToCid;
+        this.cid = connection.cid;
+    }
+
+    /**
+     * @return the keys of a getAll or removeAll, written as a single sequence.
+     */
+    @NotNull
+    private List<K> readKeys(@NotNull ValueIn valueIn) {
+        final List<K> keys = new ArrayList<>();
+        valueIn.sequence(v -> {
+            while (v.hasNextSequenceItem()) {
+                final K key = wireToK.apply(v);
+                nullCheck(key);
+                keys.add(key);
+            }
+        });
+        return keys;
+    }
+
     /**
      * @param in             the data the has come in from network
      * @param out            the data that is going out to network
@@ -333,6 +382,8 @@ public class MapWireHandler<K, V> extends AbstractHandler {
             this.map = map;
             charSequenceValue = map instanceof ChronicleMap &&
                     CharSequence.class == ((ChronicleMap) map).valueClass();
+            final RawValueWriter<K> writer = map.asset().getView(RawValueWriter.class);
+            rawValueWriter = writer != null && writer.canWriteTo(out) ? writer : null;
             assert !(map instanceof RemoteKeyValueStore) : "the server should not be a " +
                     "remove " +
                     "map";
@@ -420,6 +471,8 @@ public class MapWireHandler<K, V> extends AbstractHandler {
         removeWithValue(key, value),
         toString,
         putAll,
+        getAll,
+        removeAll,
         hashCode,
         createChannel,
         entrySetRestricted,
@@ -5,6 +5,7 @@ import net.openhft.chronicle.engine.api.pubsub.Subscription;
 import net.openhft.chronicle.engine.api.pubsub.TopicSubscriber;
 import net.openhft.chronicle.engine.api.tree.AssetTree;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
 import net.openhft.chronicle.engine.map.ObjectKVSSubscription;
 import net.openhft.chronicle.network.connection.WireOutPublisher;
 import net.openhft.chronicle.wire.*;
@@ -106,8 +107,9 @@ public class ObjectKVSubscriptionHandler extends SubscriptionHandler<Subscriptio
 
     };
 
-    public ObjectKVSubscriptionHandler(final Throttler throttler) {
-        super(throttler);
+    public ObjectKVSubscriptionHandler(final Throttler throttler,
+                                       @Nullable final CompressionCfg compression) {
+        super(throttler, compression);
     }
 
     void process(@NotNull final WireIn inWire,
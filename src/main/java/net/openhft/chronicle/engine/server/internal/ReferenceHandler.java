@@ -26,6 +26,7 @@ import static net.openhft.chronicle.network.connection.CoreFields.tid;
  */
 public class ReferenceHandler<E,T> extends AbstractHandler {
     private static final Logger LOG = LoggerFactory.getLogger(ReferenceHandler.class);
+    private static final WireKeyLookup<EventId> EVENT_IDS = new WireKeyLookup<>(EventId.class);
     private final StringBuilder eventName = new StringBuilder();
 
     private WireOutPublisher publisher;
@@ -43,18 +44,19 @@ public class ReferenceHandler<E,T> extends AbstractHandler {
 
             eventName.setLength(0);
             final ValueIn valueIn = inWire.readEventName(eventName);
+            final EventId eventId = EVENT_IDS.lookup(eventName);
 
-            if (set.contentEquals(eventName)) {
+            if (eventId == set) {
                 view.set((E) valueIn.object(view.getType()));
                 return;
             }
 
-            if (remove.contentEquals(eventName)) {
+            if (eventId == remove) {
                 view.remove();
                 return;
             }
 
-            if (update2.contentEquals(eventName)) {
+            if (eventId == update2) {
                 valueIn.marshallable(wire -> {
                     final Params[] params = update2.params();
                     final SerializableBiFunction<E, T, E> updater = (SerializableBiFunction) wire.read(params[0]).object(Object.class);
@@ -64,7 +66,7 @@ public class ReferenceHandler<E,T> extends AbstractHandler {
                 return;
             }
 
-            if (registerSubscriber.contentEquals(eventName)) {
+            if (eventId == registerSubscriber) {
 
                 final Subscriber listener = new Subscriber() {
                     @Override
@@ -102,7 +104,7 @@ public class ReferenceHandler<E,T> extends AbstractHandler {
             }
 
 
-            if (unregisterSubscriber.contentEquals(eventName)) {
+            if (eventId == unregisterSubscriber) {
                 long subscriberTid = valueIn.int64();
                 Subscriber<E> listener = (Subscriber) tidToListener.remove(subscriberTid);
                 if (listener == null) {
@@ -117,27 +119,27 @@ public class ReferenceHandler<E,T> extends AbstractHandler {
 
             writeData(inWire.bytes(), out -> {
 
-                if (get.contentEquals(eventName)) {
+                if (eventId == get) {
                     vToWire.accept(outWire.writeEventName(reply), view.get());
                     return;
                 }
 
-                if (getAndSet.contentEquals(eventName)) {
+                if (eventId == getAndSet) {
                     vToWire.accept(outWire.writeEventName(reply), view.getAndSet((E) valueIn.object(view.getType())));
                     return;
                 }
 
-                if (getAndRemove.contentEquals(eventName)) {
+                if (eventId == getAndRemove) {
                     vToWire.accept(outWire.writeEventName(reply), view.getAndRemove());
                     return;
                 }
 
-                if (countSubscribers.contentEquals(eventName)) {
+                if (eventId == countSubscribers) {
                     outWire.writeEventName(reply).int64(view.subscriberCount());
                     return;
                 }
 
-                if (update4.contentEquals(eventName)) {
+                if (eventId == update4) {
                     valueIn.marshallable(wire -> {
                         final Params[] params = update4.params();
                         final SerializableBiFunction updater = (SerializableBiFunction) wire.read(params[0]).object(Object.class);
@@ -1,9 +1,15 @@
 package net.openhft.chronicle.engine.server.internal;
 
+import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.engine.api.EngineReplication.ModificationIterator;
 import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
 import net.openhft.chronicle.engine.api.pubsub.Replication;
+import net.openhft.chronicle.engine.cfg.Compression;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
 import net.openhft.chronicle.engine.map.replication.Bootstrap;
+import net.openhft.chronicle.engine.map.replication.MerkleLevel;
+import net.openhft.chronicle.engine.map.replication.MerkleTree;
+import net.openhft.chronicle.engine.map.replication.ReplicationBatch;
 import net.openhft.chronicle.engine.tree.HostIdentifier;
 import net.openhft.chronicle.network.connection.CoreFields;
 import net.openhft.chronicle.network.connection.WireOutPublisher;
@@ -13,9 +19,11 @@ import net.openhft.chronicle.threads.api.EventLoop;
 import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 
@@ -26,6 +34,7 @@ import static net.openhft.chronicle.engine.server.internal.ReplicationHandler.Ev
  */
 public class ReplicationHandler<E> extends AbstractHandler {
     private final StringBuilder eventName = new StringBuilder();
+    private final StringBuilder optionName = new StringBuilder();
     private Replication replication;
     private WireOutPublisher publisher;
     private static final Logger LOG = LoggerFactory.getLogger(ReplicationHandler.class);
@@ -33,6 +42,13 @@ public class ReplicationHandler<E> extends AbstractHandler {
     private long tid;
 
     private EventLoop eventLoop;
+    // whether the client of the current replication subscription reads replicationEvents batches.
+    private boolean batched;
+    // whether the client of the current replication subscription compares hash trees with us.
+    private boolean antiEntropy;
+    // compresses large replication events for the clients which accept its codec.
+    @Nullable
+    private final CompressionCfg compression;
 
     @NotNull
     private final BiConsumer<WireIn, Long> dataConsumer = new BiConsumer<WireIn, Long>() {
@@ -47,6 +63,16 @@ public class ReplicationHandler<E> extends AbstractHandler {
 
                 // receive bootstrap
                 final byte id = valueIn.int8();
+                final CompressionCfg compression = readOptions(inWire);
+                final boolean batched = ReplicationHandler.this.batched;
+                if (batched) {
+                    // tells the client it can send batches to this server too.
+                    publisher.add(publish1 -> {
+                        publish1.writeDocument(true,
+                                wire -> wire.writeEventName(CoreFields.tid).int64(inputTid));
+                        publish1.writeNotReadyDocument(false, wire -> wire.writeEventName(() -> "batched").bool(true));
+                    });
+                }
                 final ModificationIterator mi = replication.acquireModificationIterator(id);
                 if (mi == null)
                     return;
@@ -54,6 +80,7 @@ public class ReplicationHandler<E> extends AbstractHandler {
                 mi.setModificationNotifier(eventLoop::unpause);
 
                 eventLoop.addHandler(new EventHandler() {
+                    private final ReplicationBatch batch = new ReplicationBatch();
 
                     @Override
                     public boolean action() throws InvalidEventHandlerException {
@@ -61,6 +88,18 @@ public class ReplicationHandler<E> extends AbstractHandler {
                         if (connectionClosed)
                             throw new InvalidEventHandlerException();
 
+                        if (batched) {
+                            final byte localId = hostId.hostId();
+                            mi.forEachInPlace(e -> {
+                                if (e.identifier() == localId && batch.add(e))
+                                    publish(batch.take(), compression);
+                            });
+                            if (batch.isDue(System.nanoTime()))
+                                publish(batch.take(), compression);
+                            // keep being called until the lingering entries are sent.
+                            return !batch.isEmpty();
+                        }
+
                         final AtomicBoolean hadNext = new AtomicBoolean();
 
                         mi.forEach(e -> {
@@ -79,8 +118,10 @@ public class ReplicationHandler<E> extends AbstractHandler {
                                 publish1.writeDocument(true,
                                         wire -> wire.writeEventName(CoreFields.tid).int64(inputTid));
 
-                                publish1.writeNotReadyDocument(false,
-                                        wire -> wire.write(replicationEvent).typedMarshallable(e));
+                                final WriteMarshallable content = wire -> wire.write(replicationEvent).typedMarshallable(e);
+                                publish1.writeNotReadyDocument(false, compression == null
+                                        ? content
+                                        : wire -> compression.write(wire, content));
 
                             });
                         });
@@ -89,6 +130,20 @@ public class ReplicationHandler<E> extends AbstractHandler {
 
                     }
 
+                    // the events are written from the batch's bytes, which are then reused.
+                    private void publish(@NotNull Bytes<ByteBuffer> events, @Nullable CompressionCfg compression) {
+                        publisher.add(publish1 -> {
+                            publish1.writeDocument(true,
+                                    wire -> wire.writeEventName(CoreFields.tid).int64(inputTid));
+
+                            final WriteMarshallable content = wire -> wire.write(replicationEvents).bytes(events);
+                            publish1.writeNotReadyDocument(false, compression == null
+                                    ? content
+                                    : wire -> compression.write(wire, content));
+                            batch.release(events);
+                        });
+                    }
+
                     @NotNull
                     @Override
                     public HandlerPriority priority() {
@@ -96,10 +151,13 @@ public class ReplicationHandler<E> extends AbstractHandler {
                     }
                 });
 
-                try {
-                    mi.dirtyEntries(0);
-                } catch (InterruptedException e) {
-                    LOG.error("", e);
+                // otherwise the client compares hash trees, then asks for the ranges which differ
+                if (!antiEntropy) {
+                    try {
+                        mi.dirtyEntries(0);
+                    } catch (InterruptedException e) {
+                        LOG.error("", e);
+                    }
                 }
                 return;
             }
@@ -112,6 +170,27 @@ public class ReplicationHandler<E> extends AbstractHandler {
                 return;
             }
 
+            if (replicationEvents.contentEquals(eventName)) {
+                ReplicationBatch.readFrom(valueIn, replication::applyReplication);
+                return;
+            }
+
+            // re-sends the entries in the ranges of the hash tree which differ from the client's
+            if (merkleDirty.contentEquals(eventName)) {
+                final MerkleLevel leaves = valueIn.typedMarshallable();
+                if (leaves == null)
+                    return;
+                final ModificationIterator mi = replication.acquireModificationIterator(leaves.identifier());
+                final MerkleTree tree = replication.merkleTree();
+                try {
+                    if (mi != null && tree != null)
+                        mi.dirtyEntries(tree, leaves.nodes());
+                } catch (InterruptedException e) {
+                    LOG.error("", e);
+                }
+                return;
+            }
+
             assert outWire != null;
             outWire.writeDocument(true, wire -> outWire.writeEventName(CoreFields.tid).int64(tid));
 
@@ -143,12 +222,75 @@ public class ReplicationHandler<E> extends AbstractHandler {
                     outBootstrap.identifier(hostId.hostId());
                     outBootstrap.lastUpdatedTime(replication.lastModificationTime(id));
                     outWire.write(bootstrap).typedMarshallable(outBootstrap);
+                    return;
+                }
+
+                if (merkleLevel.contentEquals(eventName)) {
+                    final MerkleLevel request = valueIn.typedMarshallable();
+                    if (request == null)
+                        return;
+                    final MerkleLevel reply = request.reply(hostId.hostId(), replication.merkleTree());
+                    // the client can't compare trees with us, so re-send everything
+                    if (reply.hashes().length != request.nodes().length)
+                        dirtyAll(request.identifier());
+                    outWire.write(merkleLevel).typedMarshallable(reply);
                 }
             });
         }
 
     };
 
+    public ReplicationHandler() {
+        this(null);
+    }
+
+    /**
+     * @param compression compresses large replication events for the clients which accept its
+     *                    codec, or null to send them uncompressed.
+     */
+    public ReplicationHandler(@Nullable CompressionCfg compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Reads the optional fields of a replication subscription, setting {@link #batched} if the
+     * client reads batches of replication events, and {@link #antiEntropy} if the client and this
+     * server both keep hash trees.
+     *
+     * @return the compression to use for the subscription, if the client accepts the codec this
+     * server compresses with.
+     */
+    @Nullable
+    private CompressionCfg readOptions(@NotNull WireIn inWire) {
+        CompressionCfg accepted = null;
+        batched = false;
+        antiEntropy = false;
+        while (inWire.hasMore()) {
+            final ValueIn valueIn = inWire.readEventName(optionName);
+            if ("compression".contentEquals(optionName)) {
+                final Compression codec = Compression.forName(valueIn.text());
+                if (compression != null && compression.codec() == codec)
+                    accepted = compression;
+            } else if ("batched".contentEquals(optionName)) {
+                batched = valueIn.bool();
+            } else if ("merkle".contentEquals(optionName)) {
+                antiEntropy = valueIn.bool() && replication.merkleTree() != null;
+            } else {
+                ValueIn.DISCARD.accept(valueIn);
+            }
+        }
+        return accepted;
+    }
+
+    private void dirtyAll(byte remoteIdentifier) {
+        final ModificationIterator mi = replication.acquireModificationIterator(remoteIdentifier);
+        try {
+            if (mi != null)
+                mi.dirtyEntries(0);
+        } catch (InterruptedException e) {
+            LOG.error("", e);
+        }
+    }
 
     void process(@NotNull final WireIn inWire,
                  final WireOutPublisher publisher,
@@ -175,7 +317,10 @@ public class ReplicationHandler<E> extends AbstractHandler {
         onEndOfSubscription,
         apply,
         replicationEvent,
+        replicationEvents,
         replicationSubscribe,
+        merkleLevel,
+        merkleDirty,
         bootstrap,
         identifierReply,
         identifier;
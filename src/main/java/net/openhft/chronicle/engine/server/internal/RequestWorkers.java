@@ -0,0 +1,58 @@
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.threads.NamedThreadFactory;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The worker threads a server runs map requests on, instead of the connection's network thread.
+ * Each asset is handled by one worker, so the requests of a connection to an asset are run in the
+ * order they arrive, while the requests to different assets can use many cores.
+ */
+public class RequestWorkers implements Closeable {
+    @NotNull
+    private final ExecutorService[] workers;
+
+    public RequestWorkers(int count) {
+        if (count < 1)
+            throw new IllegalArgumentException("count=" + count);
+        workers = new ExecutorService[count];
+        for (int i = 0; i < count; i++)
+            workers[i] = Executors.newSingleThreadExecutor(new NamedThreadFactory("request-worker-" + i, true));
+    }
+
+    public int count() {
+        return workers.length;
+    }
+
+    /**
+     * @return the worker for an asset, from 0 to count() - 1.
+     */
+    public int workerFor(@NotNull String assetName) {
+        return (assetName.hashCode() & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Runs a request on a worker, after the requests already given to that worker.
+     *
+     * @return false if the workers have been closed.
+     */
+    public boolean execute(int worker, @NotNull Runnable request) {
+        try {
+            workers[worker].execute(request);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService worker : workers)
+            worker.shutdownNow();
+    }
+}
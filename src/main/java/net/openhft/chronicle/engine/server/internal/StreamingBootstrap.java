@@ -0,0 +1,167 @@
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.map.ConflatingSubscriber;
+import net.openhft.chronicle.engine.map.InsertedEvent;
+import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.network.connection.WireOutPublisher;
+import net.openhft.chronicle.threads.HandlerPriority;
+import net.openhft.chronicle.threads.api.EventHandler;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import net.openhft.chronicle.wire.WireOut;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Streams the entries of a map to a remote subscriber a chunk at a time. The next chunk is only
+ * read once the earlier ones have been written out by the publisher, so the map is never
+ * copied into the publisher's queue as a whole.
+ *
+ * This is registered as the subscriber before the map is read, the events received while
+ * streaming are conflated per key and passed on after the last chunk. A key removed before the
+ * iterator reached it is reported as removed although it was never sent, rather than remembering
+ * every key sent. When the subscription ends after the bootstrap, the events received while
+ * streaming are dropped, the subscriber only sees the entries read from the map.
+ */
+class StreamingBootstrap implements Subscriber<Object>, EventHandler {
+    static final int CHUNK_SIZE = Integer.getInteger("SubscriptionHandler.bootstrapChunkSize", 256);
+    static final int MAX_CHUNKS_IN_FLIGHT = Integer.getInteger("SubscriptionHandler.bootstrapChunksInFlight", 2);
+
+    private final WireOutPublisher publisher;
+    private final BiConsumer<WireOut, List<Object>> writeEvents;
+    private final Subscriber<Object> subscriber;
+    private final Subscriber<Object> chunkSubscriber;
+    private final Iterator<Map.Entry> iterator;
+    private final String assetName;
+    private final Subscription subscription;
+    private final boolean endAfterBootstrap;
+    private final AtomicInteger chunksInFlight = new AtomicInteger();
+    private final ConflatingSubscriber<Object, Object> live = new ConflatingSubscriber<Object, Object>() {
+        @Override
+        protected void onPending() {
+            // delivered once the bootstrap has finished.
+        }
+    };
+    private List<Object> chunk = new ArrayList<>();
+    private volatile boolean bootstrapping = true;
+    private volatile boolean ended = false;
+
+    /**
+     * @param subscriber        notified of the live events once the bootstrap has been written.
+     * @param endAfterBootstrap whether to unregister from the subscription after the last chunk.
+     */
+    StreamingBootstrap(@NotNull WireOutPublisher publisher,
+                       @NotNull BiConsumer<WireOut, List<Object>> writeEvents,
+                       @NotNull Subscriber<Object> subscriber,
+                       @NotNull Filter filter,
+                       @NotNull String assetName,
+                       @NotNull Iterator<Map.Entry> iterator,
+                       @NotNull Subscription subscription,
+                       boolean endAfterBootstrap) {
+        this.publisher = publisher;
+        this.writeEvents = writeEvents;
+        this.subscriber = filter.isEmpty() ? subscriber : new Filter.FilteredSubscriber<>(filter, subscriber);
+        final Subscriber<Object> addToChunk = e -> chunk.add(e);
+        this.chunkSubscriber = filter.isEmpty() ? addToChunk : new Filter.FilteredSubscriber<>(filter, addToChunk);
+        this.assetName = assetName;
+        this.iterator = iterator;
+        this.subscription = subscription;
+        this.endAfterBootstrap = endAfterBootstrap;
+    }
+
+    @Override
+    public void onMessage(Object e) throws InvalidSubscriberException {
+        if (ended)
+            throw new InvalidSubscriberException();
+        if (bootstrapping) {
+            synchronized (this) {
+                if (bootstrapping) {
+                    live.onMessage((MapEvent) e);
+                    return;
+                }
+            }
+        }
+        subscriber.onMessage(e);
+    }
+
+    @Override
+    public void onEndOfSubscription() {
+        ended = true;
+        subscriber.onEndOfSubscription();
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException {
+        if (ended || publisher.isClosed())
+            throw new InvalidEventHandlerException();
+
+        // wait for the publisher to write out the chunks already added.
+        if (chunksInFlight.get() >= MAX_CHUNKS_IN_FLIGHT)
+            return false;
+
+        try {
+            while (chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+                Map.Entry e = iterator.next();
+                chunkSubscriber.onMessage(InsertedEvent.of(assetName, e.getKey(), e.getValue()));
+            }
+        } catch (InvalidSubscriberException e) {
+            throw new InvalidEventHandlerException();
+        }
+
+        if (!chunk.isEmpty()) {
+            final List<Object> events = chunk;
+            chunk = new ArrayList<>(CHUNK_SIZE);
+            chunksInFlight.incrementAndGet();
+            publisher.add(p -> {
+                writeEvents.accept(p, events);
+                chunksInFlight.decrementAndGet();
+            });
+        }
+
+        if (iterator.hasNext())
+            return true;
+
+        if (endAfterBootstrap) {
+            // the events still arriving are conflated and dropped until unregistered.
+            subscription.unregisterSubscriber(this);
+            throw new InvalidEventHandlerException();
+        }
+
+        synchronized (this) {
+            final List<Object> events = new ArrayList<>(live.drainPending());
+            bootstrapping = false;
+            try {
+                if (!events.isEmpty())
+                    subscriber.onMessages(events);
+            } catch (InvalidSubscriberException e) {
+                ended = true;
+            }
+        }
+        throw new InvalidEventHandlerException();
+    }
+
+    @NotNull
+    @Override
+    public HandlerPriority priority() {
+        return HandlerPriority.MEDIUM;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "StreamingBootstrap{" +
+                "subscriber=" + subscriber +
+                ", bootstrapping=" + bootstrapping +
+                ", chunksInFlight=" + chunksInFlight +
+                '}';
+    }
+}
@@ -2,23 +2,38 @@ package net.openhft.chronicle.engine.server.internal;
 
 import net.openhft.chronicle.engine.api.map.KeyValueStore;
 import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
 import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.SequencedSubscriber;
 import net.openhft.chronicle.engine.api.pubsub.Subscriber;
 import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.AssetNotFoundException;
 import net.openhft.chronicle.engine.api.tree.AssetTree;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
+import net.openhft.chronicle.engine.map.ConflatingSubscriber;
+import net.openhft.chronicle.engine.map.KVSSubscription;
+import net.openhft.chronicle.engine.map.UpdatedFieldsEvent;
 import net.openhft.chronicle.engine.query.Filter;
 import net.openhft.chronicle.network.connection.CoreFields;
 import net.openhft.chronicle.network.connection.WireOutPublisher;
+import net.openhft.chronicle.threads.api.EventLoop;
 import net.openhft.chronicle.wire.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static java.lang.Boolean.TRUE;
 import static net.openhft.chronicle.engine.server.internal.SubscriptionHandler.SubscriptionEventID.*;
 import static net.openhft.chronicle.network.connection.CoreFields.reply;
 
@@ -30,16 +45,23 @@ public class SubscriptionHandler<T extends Subscription> extends AbstractHandler
 
     final StringBuilder eventName = new StringBuilder();
     final Map<Long, Object> tidToListener = new ConcurrentHashMap<>();
+    // the bucket of each throttled subscriber, released when it is unregistered.
+    final Map<Long, Throttler.Bucket> tidToBucket = new ConcurrentHashMap<>();
 
     private final Throttler throttler;
+    // compresses large events for the subscribers which accept its codec, null to never compress.
+    @Nullable
+    private final CompressionCfg compression;
     Wire outWire;
     T subscription;
     RequestContext requestContext;
     WireOutPublisher publisher;
     AssetTree assetTree;
 
-    public SubscriptionHandler(@NotNull final Throttler throttler) {
+    public SubscriptionHandler(@NotNull final Throttler throttler,
+                               @Nullable final CompressionCfg compression) {
         this.throttler = throttler;
+        this.compression = compression;
     }
 
     /**
@@ -79,21 +101,50 @@ public class SubscriptionHandler<T extends Subscription> extends AbstractHandler
             final Class subscriptionType = valueIn.typeLiteral();
 
             final StringBuilder sb = Wires.acquireStringBuilder();
-            final ValueIn valueIn1 = valueIn.wireIn().readEventName(sb);
+            ValueIn valueIn1 = valueIn.wireIn().readEventName(sb);
 
-            final Filter filter = "filter".contentEquals(sb) ?
-                    valueIn1.object(Filter.class) :
-                    Filter.empty();
+            Filter filter = Filter.empty();
+            if ("filter".contentEquals(sb)) {
+                filter = valueIn1.object(Filter.class);
+                valueIn1 = valueIn.wireIn().readEventName(sb);
+            }
+            final long resumeFrom = "resumeFrom".contentEquals(sb) ? valueIn1.int64() : 0;
 
             if (tidToListener.containsKey(tid)) {
                 LOG.info("Duplicate registration for tid " + tid);
                 return true;
             }
-            Subscriber<Object> listener = new LocalSubscriber(tid);
-            tidToListener.put(tid, listener);
+            final LocalSubscriber localSubscriber = new LocalSubscriber(tid);
+            Subscriber listener = localSubscriber;
             RequestContext rc = requestContext.clone().type(subscriptionType);
+            if (TRUE.equals(rc.resumable()) && subscriptionType == MapEvent.class) {
+                // sequenced events aren't conflated or streamed.
+                final Subscription subscription = assetTree.acquireSubscription(rc);
+                if (subscription instanceof KVSSubscription) {
+                    tidToListener.put(tid, localSubscriber);
+                    ((KVSSubscription) subscription).registerSequencedSubscriber(rc, localSubscriber, filter, resumeFrom);
+                    return true;
+                }
+            }
+            if (TRUE.equals(rc.conflate()) && subscriptionType == MapEvent.class) {
+                // conflate while the events are waiting to be written rather than on the event loop
+                listener = localSubscriber.conflating();
+                rc.conflate(null);
+            } else if (TRUE.equals(rc.deltas()) && subscriptionType == MapEvent.class && filter.isEmpty()) {
+                // the client patches its copy of each value, so it must be sent every event.
+                localSubscriber.deltas = new UpdatedFieldsEvent.Encoder();
+            }
             final Subscription subscription = assetTree.acquireSubscription(rc);
-            subscription.registerSubscriber(rc, listener, filter);
+            final StreamingBootstrap streaming = streamingBootstrap(rc, subscription, localSubscriber, listener, filter);
+            if (streaming == null) {
+                tidToListener.put(tid, listener);
+                subscription.registerSubscriber(rc, listener, filter);
+            } else {
+                tidToListener.put(tid, streaming);
+                rc.bootstrap(false);
+                subscription.registerSubscriber(rc, streaming, Filter.empty());
+                assetTree.root().findOrCreateView(EventLoop.class).addHandler(streaming);
+            }
             return true;
         }
         if (unregisterSubscriber.contentEquals(eventName)) {
@@ -103,12 +154,42 @@ public class SubscriptionHandler<T extends Subscription> extends AbstractHandler
                 return true;
             }
             assetTree.unregisterSubscriber(requestContext.name(), listener);
+            // not every subscription ends its subscribers when they are removed.
+            final Throttler.Bucket bucket = tidToBucket.remove(tid);
+            if (bucket != null)
+                bucket.close(() -> {
+                });
 
             return true;
         }
         return false;
     }
 
+    /**
+     * @return a subscriber which streams the map to the client in chunks, or null if the
+     * subscription bootstraps itself.
+     */
+    @Nullable
+    private StreamingBootstrap streamingBootstrap(@NotNull RequestContext rc,
+                                                  @NotNull Subscription subscription,
+                                                  @NotNull LocalSubscriber localSubscriber,
+                                                  @NotNull Subscriber listener,
+                                                  @NotNull Filter filter) {
+        if (rc.bootstrap() == Boolean.FALSE || rc.type() != MapEvent.class)
+            return null;
+        // subscribers filtered by key are indexed by the subscription, which bootstraps them too.
+        if (filter.keyPredicate() != null)
+            return null;
+        final Asset asset = assetTree.getAsset(rc.fullName());
+        final MapView mapView = asset == null ? null : asset.getView(MapView.class);
+        if (mapView == null)
+            return null;
+
+        return new StreamingBootstrap(publisher, localSubscriber::writeEvents, listener, filter,
+                asset.fullName(), ((KeyValueStore) mapView.underlying()).entrySetIterator(),
+                subscription, TRUE.equals(rc.endSubscriptionAfterBootstrap()));
+    }
+
     public enum SubscriptionEventID implements ParameterizeWireKey {
 
         registerSubscriber,
@@ -129,40 +210,200 @@ public class SubscriptionHandler<T extends Subscription> extends AbstractHandler
         }
     }
 
-    class LocalSubscriber implements Subscriber<Object> {
+    /**
+     * An event, or a sequence, waiting to be written for a subscriber.
+     */
+    static class Pending {
+        @Nullable
+        final Object event;
+        // 0 if the event has no sequence.
+        final long sequence;
+
+        Pending(@Nullable Object event, long sequence) {
+            this.event = event;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Unless throttled, the events waiting for the publisher are written together as one
+     * document for the tid, however they were received.
+     */
+    class LocalSubscriber implements SequencedSubscriber<Object> {
         private final Long tid;
+        // the events waiting to be written, in the order received.
+        private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        // only set when the events are throttled.
+        @Nullable
+        private final Throttler.Bucket bucket;
+        // only set when the subscriber accepts the codec the server compresses with.
+        @Nullable
+        private final CompressionCfg compression;
+        // only set when updates are sent as the fields which changed, used by the publisher.
+        @Nullable
+        UpdatedFieldsEvent.Encoder deltas;
         volatile boolean subscriptionEnded;
+
         LocalSubscriber(Long tid) {
             this.tid = tid;
+            this.bucket = throttler.bucketFor(requestContext.fullName());
+            if (bucket != null)
+                tidToBucket.put(tid, bucket);
+            final CompressionCfg cfg = SubscriptionHandler.this.compression;
+            this.compression = cfg != null && cfg.codec() == requestContext.compression() ? cfg : null;
         }
 
         @Override
         public void onMessage(Object e) throws InvalidSubscriberException {
             assert !subscriptionEnded : "we received this message after the " +
                     "subscription has ended " + e;
-            final Runnable r = () -> publisher.add(p -> {
-                p.writeDocument(true, wire -> wire.writeEventName(CoreFields.tid).int64(tid));
-                p.writeNotReadyDocument(false, wire -> wire.write(reply).object(e));
-            });
+            if (e instanceof MapEvent)
+                e = ((MapEvent) e).copy();
+            offer(new Pending(e, 0));
+        }
 
+        @Override
+        public void onMessage(Object e, long sequence) {
+            final Object event = e instanceof MapEvent ? ((MapEvent) e).copy() : e;
+            offer(new Pending(event, sequence));
+        }
 
-            final Class eClass = e.getClass();
+        @Override
+        public void onSequence(long sequence) {
+            // after the throttled events it follows.
+            offer(new Pending(null, sequence));
+        }
 
-            if (eClass == KeyValueStore.Entry.class || eClass == MapEvent.class)
-                r.run();
+        /**
+         * Queue the event to be written, once the throttle allows it if there is one.
+         */
+        private void offer(@NotNull Pending next) {
+            if (bucket != null)
+                bucket.add(() -> enqueue(next));
             else
-                // key subscription
-                if (throttler.useThrottler())
-                    throttler.add(r);
-                else
-                    r.run();
+                enqueue(next);
+        }
 
+        @Override
+        public void onMessages(@NotNull List<Object> events) throws InvalidSubscriberException {
+            if (bucket != null) {
+                SequencedSubscriber.super.onMessages(events);
+                return;
+            }
+            assert !subscriptionEnded : "we received these messages after the " +
+                    "subscription has ended " + events;
+            for (Object event : events)
+                pending.add(new Pending(event, 0));
+            scheduleWrite();
+        }
+
+        private void enqueue(@NotNull Pending next) {
+            pending.add(next);
+            scheduleWrite();
+        }
+
+        private void scheduleWrite() {
+            if (writeScheduled.compareAndSet(false, true))
+                publisher.add(this::writePending);
+        }
+
+        /**
+         * Write all the events received since the last write as one document, with the sequence
+         * of the last of them, if any.
+         */
+        private void writePending(@NotNull WireOut p) {
+            // an event added after this schedules another write.
+            writeScheduled.set(false);
+            final List<Object> events = new ArrayList<>();
+            long last = 0;
+            for (Pending next; (next = pending.poll()) != null; ) {
+                if (next.event != null)
+                    events.add(next.event);
+                if (next.sequence > 0)
+                    last = next.sequence;
+            }
+            if (last == 0) {
+                writeEvents(p, events);
+                return;
+            }
+            final long sequence = last;
+            p.writeDocument(true, wire -> wire.writeEventName(CoreFields.tid).int64(tid));
+            p.writeNotReadyDocument(false, wire -> writeContent(wire, w -> {
+                w.write(() -> "sequence").int64(sequence);
+                if (!events.isEmpty())
+                    writeReplies(w, events);
+            }));
+        }
+
+        @Nullable
+        private Object encode(@Nullable Object e) {
+            return deltas == null ? e : deltas.encode(e);
+        }
+
+        private void writeContent(@NotNull WireOut wire, @NotNull WriteMarshallable content) {
+            if (compression == null)
+                content.writeMarshallable(wire);
+            else
+                compression.write(wire, content);
+        }
+
+        /**
+         * Write a batch of events as a single document for this tid.
+         */
+        void writeEvents(@NotNull WireOut p, @NotNull List<?> events) {
+            if (events.isEmpty())
+                return;
+            p.writeDocument(true, wire -> wire.writeEventName(CoreFields.tid).int64(tid));
+            p.writeNotReadyDocument(false, wire -> writeContent(wire, w -> writeReplies(w, events)));
+        }
+
+        private void writeReplies(@NotNull WireOut w, @NotNull List<?> events) {
+            if (events.size() == 1)
+                w.write(reply).object(encode(events.get(0)));
+            else
+                w.write(() -> "replies").sequence(v -> events.forEach(e -> v.object(encode(e))));
+        }
+
+        /**
+         * @return a subscriber which only keeps the latest event per key while the events
+         * already published for this subscriber are waiting to be written.
+         */
+        @NotNull
+        ConflatingSubscriber<Object, Object> conflating() {
+            return new ConflatingSubscriber<Object, Object>() {
+                @Override
+                protected void onPending() {
+                    publisher.add(p -> writeEvents(p, drainPending()));
+                }
+
+                @Override
+                public void onEndOfSubscription() {
+                    if (!publisher.isClosed())
+                        publisher.add(p -> writeEvents(p, drainPending()));
+                    LocalSubscriber.this.onEndOfSubscription();
+                }
+
+                @NotNull
+                @Override
+                public String toString() {
+                    return "ConflatingSubscriber{" +
+                            "tid=" + tid +
+                            ", pendingEvents=" + pendingEvents() +
+                            '}';
+                }
+            };
         }
 
         @Override
         public void onEndOfSubscription() {
             subscriptionEnded = true;
-            if (!publisher.isClosed()) {
+            if (bucket != null)
+                tidToBucket.remove(tid);
+            if (publisher.isClosed()) {
+                if (bucket != null)
+                    throttler.remove(bucket);
+            } else {
                 // no more data.
                 WriteMarshallable toPublish = publish -> {
                     publish.writeDocument(true, wire -> wire.writeEventName(CoreFields.tid).int64(tid));
@@ -170,7 +411,10 @@ public class SubscriptionHandler<T extends Subscription> extends AbstractHandler
                             wire.writeEventName(ObjectKVSubscriptionHandler.EventId.onEndOfSubscription).text(""));
                 };
 
-                publisher.add(toPublish);
+                if (bucket != null)
+                    bucket.close(() -> publisher.add(toPublish));
+                else
+                    publisher.add(toPublish);
             }
         }
 
@@ -18,6 +18,7 @@ import static net.openhft.chronicle.engine.server.internal.SystemHandler.EventId
  * @author Rob Austin.
  */
 public class SystemHandler extends AbstractHandler implements ClientClosedProvider {
+    private static final WireKeyLookup<EventId> EVENT_IDS = new WireKeyLookup<>(EventId.class);
     private final StringBuilder eventName = new StringBuilder();
     private SessionDetailsProvider sessionDetails;
     private volatile boolean hasClientClosed;
@@ -35,13 +36,14 @@ public class SystemHandler extends AbstractHandler implements ClientClosedProvid
 
         eventName.setLength(0);
         final ValueIn valueIn = inWire.readEventName(eventName);
+        final EventId eventId = EVENT_IDS.lookup(eventName);
 
-        if (EventId.userid.contentEquals(eventName)) {
+        if (eventId == EventId.userid) {
             this.sessionDetails.setUserId(valueIn.text());
             return;
         }
 
-        if (!heartbeat.contentEquals(eventName) && !onClientClosing.contentEquals(eventName))
+        if (eventId != heartbeat && eventId != onClientClosing)
             return;
 
 
@@ -50,10 +52,10 @@ public class SystemHandler extends AbstractHandler implements ClientClosedProvid
 
         writeData(inWire.bytes(), out -> {
 
-            if (heartbeat.contentEquals(eventName))
+            if (eventId == heartbeat)
                 outWire.write(EventId.heartbeatReply).int64(valueIn.int64());
 
-            else if (onClientClosing.contentEquals(eventName)) {
+            else {
                 hasClientClosed = true;
                 outWire.write(EventId.onClosingReply).text("");
             }
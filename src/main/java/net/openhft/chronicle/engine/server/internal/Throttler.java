@@ -1,138 +1,180 @@
 package net.openhft.chronicle.engine.server.internal;
 
+import net.openhft.chronicle.engine.cfg.ThrottleCfg;
 import net.openhft.chronicle.threads.HandlerPriority;
 import net.openhft.chronicle.threads.api.EventHandler;
 import net.openhft.chronicle.threads.api.EventLoop;
 import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Throttles the number of messages sent to each subscription of a connection, this code does not
+ * consolidate the updates, all updates will eventually be sent in order.
  *
- * Throttles and limits the number of messages send in any second, this code does not consolidate
- * the updates, all updates will eventually be sent.
-
- * This code is focusing mainly on message order, It attempts not to exceed the {@code
- * maxEventsPreSecond}, in other words in rare cases, a few more messages, maybe send in any second than
- * the {@code maxEventsPreSecond } this is due to the use of lazySet() amongst other things.
+ * Each subscription has a token bucket, refilled at the rate configured for its asset. Events are
+ * only queued by the writer's thread, the event loop sends them taking one event from each
+ * subscription in turn, so a busy subscription can't hold back the others on the connection.
  *
  * @author Rob Austin.
  */
-public class Throttler<K> implements EventHandler {
-    private final int maxEventsPreSecond;
-    private final AtomicLong numberOfMessageSent = new AtomicLong(0);
-    private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<>();
-    private long lastKnownSeconds = System.currentTimeMillis();
-    private final ReentrantLock lock = new ReentrantLock();
-
-    public Throttler(@NotNull final EventLoop eventLoop, int maxEventsPreSecond) {
-        this.maxEventsPreSecond = maxEventsPreSecond;
-        eventLoop.addHandler(this);
-    }
-
-
-    public boolean useThrottler() {
-        return maxEventsPreSecond > 0;
-    }
-
+public class Throttler implements EventHandler {
+    private final Map<String, ThrottleCfg> throttles;
+    private final List<Bucket> buckets = new CopyOnWriteArrayList<>();
+    // only accessed by the event loop.
+    private long lastNanos = System.nanoTime();
+    private int next = 0;
+    private volatile boolean closed = false;
 
-    public void add(Runnable r) {
-        events.add(r);
-        sendEvents();
+    /**
+     * @param throttles the throttle for each asset, by path. A subscription uses the throttle of
+     *                  its asset or its nearest parent, "" or "/" applies to all assets.
+     */
+    public Throttler(@NotNull final EventLoop eventLoop, @NotNull Map<String, ThrottleCfg> throttles) {
+        this.throttles = throttles;
+        if (!throttles.isEmpty())
+            eventLoop.addHandler(this);
     }
 
     /**
-     * sends all the events in the queue up to the maxEventsPreSecond
+     * @return the bucket for a subscription to this asset, or null if it isn't throttled.
      */
-    private void sendEvents() {
-
-        if (this.numberOfMessageSent.get() < maxEventsPreSecond) {
-
-            // using the lock ensures that the messages are sent in order
-            lock.lock();
-            try {
-                send();
-            } finally {
-                lock.unlock();
-            }
-        }
-
+    @Nullable
+    public Bucket bucketFor(@NotNull String assetName) {
+        final ThrottleCfg cfg = throttleFor(assetName);
+        if (cfg == null || cfg.eventsPerSecond() <= 0)
+            return null;
+        final Bucket bucket = new Bucket(cfg.eventsPerSecond(), cfg.burst());
+        buckets.add(bucket);
+        return bucket;
     }
 
-
     /**
-     * tries to sends all the events in the queue up to the maxEventsPreSecond, unless the lock is
-     * already held, then on action is taken
+     * Drop a bucket along with the events still waiting in it, e.g. once they can't be written.
      */
-    private void trySendEvents() {
-        if (this.numberOfMessageSent.get() < maxEventsPreSecond) {
-
-            // using the lock ensures that the messages are sent in order
-            if (lock.tryLock()) {
-                try {
-                    send();
-                } finally {
-                    lock.unlock();
-                }
-            }
-
-        }
+    public void remove(@NotNull Bucket bucket) {
+        bucket.closed = true;
+        bucket.events.clear();
+        buckets.remove(bucket);
     }
 
-    private void send() {
-        long value = this.numberOfMessageSent.get();
-        while (value < maxEventsPreSecond) {
-
-            final Runnable r = events.poll();
-
-            if (r == null)
-                break;
-
-            r.run();
-            value = lazyIncrement();
+    @Nullable
+    private ThrottleCfg throttleFor(@NotNull String assetName) {
+        for (String path = assetName; ; ) {
+            final ThrottleCfg cfg = throttles.get(path);
+            if (cfg != null)
+                return cfg;
+            if (path.isEmpty())
+                return throttles.get("/");
+            path = path.substring(0, Math.max(0, path.lastIndexOf('/')));
         }
     }
 
-    /**
-     * because this is lazy, this is a approximation ( non atomic ), but its good enough for
-     * throttling
-     *
-     * @return the numberOfMessageSent after its has been incremented
-     */
-    private long lazyIncrement() {
-        final long value = this.numberOfMessageSent.get() + 1;
-        this.numberOfMessageSent.lazySet(value);
-        return value;
+    public void close() {
+        closed = true;
     }
 
     @NotNull
     @Override
     public HandlerPriority priority() {
-        return HandlerPriority.MONITOR;
+        return HandlerPriority.MEDIUM;
     }
 
     @Override
     public boolean action() throws InvalidEventHandlerException {
+        if (closed)
+            throw new InvalidEventHandlerException();
+
+        final long now = System.nanoTime();
+        final long elapsed = now - lastNanos;
+        lastNanos = now;
+
+        final Object[] buckets = this.buckets.toArray();
+        if (buckets.length == 0)
+            return false;
+        for (Object bucket : buckets)
+            ((Bucket) bucket).refill(elapsed);
+
+        // one event from each bucket in turn, starting from a different bucket each time.
+        boolean busy = false;
+        for (boolean sent = true; sent; ) {
+            sent = false;
+            for (int i = 0; i < buckets.length; i++) {
+                final Bucket bucket = (Bucket) buckets[(next + i) % buckets.length];
+                if (bucket.sendOne())
+                    sent = true;
+            }
+            busy |= sent;
+        }
+        next = (next + 1) % buckets.length;
 
-        final long currentSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        for (Object bucket : buckets) {
+            if (((Bucket) bucket).isDrained())
+                this.buckets.remove(bucket);
+        }
+        return busy;
+    }
+
+    /**
+     * The events waiting to be sent to one subscription.
+     */
+    public static class Bucket {
+        private final ConcurrentLinkedQueue<Runnable> events = new ConcurrentLinkedQueue<>();
+        private final double eventsPerNano;
+        private final double burst;
+        // only accessed by the event loop.
+        private double tokens;
+        private volatile boolean closed = false;
+
+        Bucket(int eventsPerSecond, int burst) {
+            this.eventsPerNano = eventsPerSecond / 1e9;
+            this.burst = burst;
+            this.tokens = burst;
+        }
 
-        if (currentSeconds != lastKnownSeconds) {
+        public void add(@NotNull Runnable r) {
+            events.add(r);
+        }
 
-            final int secondsPassed = (int) (currentSeconds - lastKnownSeconds);
-            final long v = this.numberOfMessageSent.get() - (secondsPassed * maxEventsPreSecond);
+        /**
+         * Run this once the events already added have been sent, and release the bucket.
+         */
+        public void close(@NotNull Runnable last) {
+            events.add(last);
+            closed = true;
+        }
 
-            lastKnownSeconds = currentSeconds;
-            this.numberOfMessageSent.lazySet(v <= 0 ? 0 : v);
+        void refill(long elapsedNanos) {
+            tokens = Math.min(burst, tokens + elapsedNanos * eventsPerNano);
+        }
 
-            // this may not successes if the lock is already held
-            trySendEvents();
+        boolean sendOne() {
+            if (tokens < 1)
+                return false;
+            final Runnable r = events.poll();
+            if (r == null)
+                return false;
+            tokens--;
+            r.run();
+            return true;
         }
 
-        return true;
+        boolean isDrained() {
+            return closed && events.isEmpty();
+        }
 
+        @NotNull
+        @Override
+        public String toString() {
+            return "Bucket{" +
+                    "pending=" + events.size() +
+                    ", tokens=" + tokens +
+                    '}';
+        }
     }
 }
@@ -3,6 +3,7 @@ package net.openhft.chronicle.engine.server.internal;
 import net.openhft.chronicle.engine.api.tree.AssetNotFoundException;
 import net.openhft.chronicle.engine.api.tree.AssetTree;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
 import net.openhft.chronicle.engine.tree.TopologySubscription;
 import net.openhft.chronicle.network.connection.WireOutPublisher;
 import net.openhft.chronicle.wire.*;
@@ -45,8 +46,9 @@ public class TopologySubscriptionHandler extends SubscriptionHandler<TopologySub
         });
     };
 
-    public TopologySubscriptionHandler(@NotNull final Throttler throttler) {
-        super(throttler);
+    public TopologySubscriptionHandler(@NotNull final Throttler throttler,
+                                       @Nullable final CompressionCfg compression) {
+        super(throttler, compression);
     }
 
     void process(@NotNull final WireIn inWire,
@@ -0,0 +1,65 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.wire.WireKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Finds the event id for an event name read from the wire, without creating a String.
+ *
+ * The ids are placed by the hash of their names in an open addressed table, sized so the
+ * lookup of a name is usually one hash and one comparison rather than a comparison with every id.
+ */
+public final class WireKeyLookup<E extends Enum<E> & WireKey> {
+    private final E[] table;
+    private final int mask;
+
+    public WireKeyLookup(@NotNull Class<E> type) {
+        final E[] ids = type.getEnumConstants();
+        final int size = Integer.highestOneBit(Math.max(4, ids.length * 4) - 1) << 1;
+        this.table = (E[]) new Enum[size];
+        this.mask = size - 1;
+        for (E id : ids) {
+            int i = hash(id.name()) & mask;
+            while (table[i] != null)
+                i = (i + 1) & mask;
+            table[i] = id;
+        }
+    }
+
+    static int hash(@NotNull CharSequence cs) {
+        int h = 0;
+        for (int i = 0; i < cs.length(); i++)
+            h = 31 * h + cs.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the id with this name, or null if there isn't one.
+     */
+    @Nullable
+    public E lookup(@NotNull CharSequence eventName) {
+        for (int i = hash(eventName) & mask; ; i = (i + 1) & mask) {
+            final E id = table[i];
+            if (id == null || id.contentEquals(eventName))
+                return id;
+        }
+    }
+}
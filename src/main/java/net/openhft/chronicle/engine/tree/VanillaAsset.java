@@ -20,7 +20,9 @@ import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.core.annotation.ForceInline;
 import net.openhft.chronicle.core.io.Closeable;
 import net.openhft.chronicle.core.util.ThrowingAcceptor;
+import net.openhft.chronicle.engine.api.EngineReplication;
 import net.openhft.chronicle.engine.api.collection.ValuesCollection;
+import net.openhft.chronicle.engine.api.map.AsyncMapView;
 import net.openhft.chronicle.engine.api.map.KeyValueStore;
 import net.openhft.chronicle.engine.api.map.MapView;
 import net.openhft.chronicle.engine.api.map.SubscriptionKeyValueStore;
@@ -31,6 +33,7 @@ import net.openhft.chronicle.engine.api.set.KeySetView;
 import net.openhft.chronicle.engine.api.tree.*;
 import net.openhft.chronicle.engine.collection.VanillaValuesCollection;
 import net.openhft.chronicle.engine.map.*;
+import net.openhft.chronicle.engine.map.remote.RemoteAsyncMapView;
 import net.openhft.chronicle.engine.map.remote.RemoteKVSSubscription;
 import net.openhft.chronicle.engine.map.remote.RemoteKeyValueStore;
 import net.openhft.chronicle.engine.map.remote.RemoteMapView;
@@ -110,6 +113,7 @@ public class VanillaAsset implements Asset, Closeable {
         addWrappingRule(ValuesCollection.class, LAST + " values", VanillaValuesCollection::new, MapView.class);
 
         addWrappingRule(MapView.class, LAST + " string key maps", VanillaMapView::new, ObjectKeyValueStore.class);
+        addWrappingRule(AsyncMapView.class, LAST + " async maps", VanillaAsyncMapView::new, MapView.class);
 
         String fullName = fullName();
         HostIdentifier hostIdentifier = findView(HostIdentifier.class);
@@ -162,9 +166,14 @@ public class VanillaAsset implements Asset, Closeable {
         addWrappingRule(EntrySetView.class, LAST + " entrySet", RemoteEntrySetView::new, MapView.class);
 
         addWrappingRule(MapView.class, LAST + " remote key maps", RemoteMapView::new, ObjectKeyValueStore.class);
+        addWrappingRule(MapView.class, LAST + " near cache maps", (rc, asset) -> rc.nearCache() > 0,
+                (rc, asset, kvStore) -> new RemoteMapView<>(rc, asset,
+                        new NearCacheKeyValueStore<>(rc, asset, kvStore)),
+                ObjectKeyValueStore.class);
 
         addWrappingRule(KeySetView.class, LAST + " remote key maps", RemoteKeySetView::new,
                 MapView.class);
+        addWrappingRule(AsyncMapView.class, LAST + " async maps", RemoteAsyncMapView::new, MapView.class);
 
 
         addLeafRule(ObjectKVSSubscription.class, LAST + " Remote", RemoteKVSSubscription::new);
@@ -210,6 +219,22 @@ public class VanillaAsset implements Asset, Closeable {
                 VanillaKVSSubscription::new);
     }
 
+    /**
+     * Replicates the in-memory and file-per-key maps of a tree with a HostIdentifier with the other
+     * hosts in its cluster. The replication is created with the map so the changes made before the
+     * other hosts connect are replicated too.
+     */
+    public void enableVanillaReplication() {
+        addLeafRule(EngineReplication.class, LAST + " vanilla replication",
+                VanillaEngineReplication::forAsset);
+        addWrappingRule(MapView.class, "replicated maps",
+                (rc, asset) -> asset.findView(HostIdentifier.class) != null,
+                (rc, asset, kvStore) -> {
+                    asset.acquireView(EngineReplication.class, rc.clone().viewType(EngineReplication.class));
+                    return new VanillaMapView(rc, asset, kvStore);
+                }, ObjectKeyValueStore.class);
+    }
+
     @Override
     public <W, U> void addWrappingRule(Class<W> viewType, String description, BiPredicate<RequestContext, Asset> predicate, WrappingViewFactory<W, U> factory, Class<U> underlyingType) {
         SortedMap<String, WrappingViewRecord> smap = wrappingViewFactoryMap.computeIfAbsent(viewType, k -> new ConcurrentSkipListMap<>());
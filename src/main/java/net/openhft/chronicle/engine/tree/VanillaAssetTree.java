@@ -24,7 +24,9 @@ import net.openhft.chronicle.engine.fs.ConfigurationFS;
 import net.openhft.chronicle.engine.map.InsertedEvent;
 import net.openhft.chronicle.engine.map.RemovedEvent;
 import net.openhft.chronicle.engine.map.UpdatedEvent;
+import net.openhft.chronicle.engine.map.UpdatedFieldsEvent;
 import net.openhft.chronicle.engine.map.remote.*;
+import net.openhft.chronicle.engine.map.replication.MerkleLevel;
 import net.openhft.chronicle.network.VanillaSessionDetails;
 import net.openhft.chronicle.threads.Threads;
 import net.openhft.chronicle.threads.api.EventLoop;
@@ -47,7 +49,10 @@ public class VanillaAssetTree implements AssetTree {
                 RemovedAssetEvent.class,
                 InsertedEvent.class,
                 UpdatedEvent.class,
+                UpdatedFieldsEvent.class,
                 MapFunction.class,
+                MapBatch.class,
+                MerkleLevel.class,
                 MapUpdate.class,
                 RemovedEvent.class,
                 KeyFunctionPair.class,
@@ -8,6 +8,7 @@ import net.openhft.chronicle.engine.api.map.MapView;
 import net.openhft.chronicle.engine.api.pubsub.Replication;
 import net.openhft.chronicle.engine.api.tree.Asset;
 import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.map.replication.MerkleTree;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -18,12 +19,26 @@ import java.util.function.Supplier;
  */
 public class VanillaReplication implements Replication {
 
+    private final Asset asset;
     private final MapView mapView;
 
     public VanillaReplication(final RequestContext requestContext, final Asset asset, final MapView mapView) {
+        this.asset = asset;
         this.mapView = mapView;
     }
 
+    /**
+     * @return the replication of a store which provides its own e.g. a ChronicleMap, otherwise the
+     * EngineReplication of the asset.
+     */
+    @NotNull
+    private EngineReplication engineReplication() {
+        final Object underlying = mapView.underlying();
+        return underlying instanceof Supplier
+                ? ((Supplier<EngineReplication>) underlying).get()
+                : asset.acquireView(EngineReplication.class);
+    }
+
     @Override
     public void applyReplication(@NotNull final ReplicationEntry replicatedEntry) {
         ((KeyValueStore) mapView.underlying()).accept(replicatedEntry);
@@ -32,13 +47,20 @@ public class VanillaReplication implements Replication {
     @Nullable
     @Override
     public ModificationIterator acquireModificationIterator(final byte id) {
-        EngineReplication engineReplication = ((Supplier<EngineReplication>) mapView.underlying()).get();
+        EngineReplication engineReplication = engineReplication();
         return engineReplication.acquireModificationIterator(id);
     }
 
     @Override
     public long lastModificationTime(final byte id) {
-        EngineReplication engineReplication = ((Supplier<EngineReplication>) mapView.underlying()).get();
+        EngineReplication engineReplication = engineReplication();
         return engineReplication.lastModificationTime(id);
     }
+
+    @Nullable
+    @Override
+    public MerkleTree merkleTree() {
+        EngineReplication engineReplication = engineReplication();
+        return engineReplication.merkleTree();
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine;
+
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.api.tree.RequestContextInterner;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class RequestContextInternerTest {
+
+    @Test
+    public void testSameCspReturnsSameContext() {
+        RequestContextInterner interner = new RequestContextInterner(128);
+        RequestContext rc = interner.intern(new StringBuilder("/test/map?view=map&valueType=java.lang.Integer"));
+        assertSame(rc, interner.intern("/test/map?view=map&valueType=java.lang.Integer"));
+        assertEquals(MapView.class, rc.viewType());
+        assertEquals(Integer.class, rc.valueType());
+        try {
+            rc.viewType(null);
+            fail("an interned request context is shared so it must be sealed");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAreEvicted() {
+        RequestContextInterner interner = new RequestContextInterner(1024);
+        RequestContext first = interner.intern("/test/map0?view=map");
+        for (int i = 1; i < 100_000; i++) {
+            interner.intern("/test/map" + i + "?view=map");
+            // keep the first one in use.
+            assertSame(first, interner.intern("/test/map0?view=map"));
+        }
+        assertTrue(interner.size() <= 1024);
+    }
+
+    @Test
+    public void testConcurrentConnections() {
+        RequestContextInterner interner = new RequestContextInterner(1 << 16);
+        IntStream.range(0, 8).parallel().forEach(t -> {
+            for (int i = 0; i < 10_000; i++) {
+                String csp = "/test/map" + i + "?view=map";
+                assertEquals("map" + i, interner.intern(csp).name());
+            }
+        });
+        assertSame(interner.intern("/test/map1?view=map"), interner.intern("/test/map1?view=map"));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.threads.api.EventHandler;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Subscribers of a map with asyncDispatch=true are notified on the event loop.
+ */
+public class AsyncDispatchTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/async";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testEventsDeliveredInOrderOffTheWritersThread() throws InterruptedException {
+        MapView<String, String> map = assetTree.acquireMap(NAME + "?asyncDispatch=true",
+                String.class, String.class);
+
+        int events = 5000;
+        CountDownLatch latch = new CountDownLatch(events);
+        List<String> values = new CopyOnWriteArrayList<>();
+        Thread writer = Thread.currentThread();
+        List<Thread> subscriberThreads = new CopyOnWriteArrayList<>();
+
+        Subscriber<MapEvent> subscriber = e -> {
+            subscriberThreads.add(Thread.currentThread());
+            values.add((String) e.getValue());
+            latch.countDown();
+        };
+        assetTree.registerSubscriber(NAME, MapEvent.class, subscriber);
+
+        for (int i = 0; i < events; i++)
+            map.put("key", "value-" + i);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < events; i++)
+            assertEquals("value-" + i, values.get(i));
+        // the writer may help drain a full buffer, but the event loop must have done some of it.
+        assertTrue(subscriberThreads.stream().anyMatch(t -> t != writer));
+
+        KVSSubscription subscription = (KVSSubscription) assetTree.getAsset(NAME).subscription(false);
+        assertEquals(1, subscription.entrySubscriberCount());
+        assetTree.unregisterSubscriber(NAME, subscriber);
+        assertEquals(0, subscription.entrySubscriberCount());
+    }
+
+    @Test
+    public void testHandlerEndsWhenSubscriberIsDropped() throws InvalidSubscriberException, InvalidEventHandlerException {
+        List<EventHandler> handlers = new CopyOnWriteArrayList<>();
+        EventLoop eventLoop = (EventLoop) Proxy.newProxyInstance(EventLoop.class.getClassLoader(),
+                new Class[]{EventLoop.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("addHandler"))
+                        handlers.add((EventHandler) args[0]);
+                    return null;
+                });
+
+        AsyncSubscriber<String> invalid = new AsyncSubscriber<>(eventLoop, e -> {
+            throw new InvalidSubscriberException();
+        });
+        invalid.onMessage("event");
+        assertTrue(handlers.get(0).action());
+        try {
+            handlers.get(0).action();
+            fail();
+        } catch (InvalidEventHandlerException expected) {
+            // the handler is removed from the event loop.
+        }
+
+        List<String> ended = new CopyOnWriteArrayList<>();
+        AsyncSubscriber<String> removed = new AsyncSubscriber<>(eventLoop, new Subscriber<String>() {
+            @Override
+            public void onMessage(String s) {
+            }
+
+            @Override
+            public void onEndOfSubscription() {
+                ended.add("ended");
+            }
+        });
+        removed.onEndOfSubscription();
+        try {
+            handlers.get(1).action();
+            fail();
+        } catch (InvalidEventHandlerException expected) {
+            assertEquals(1, ended.size());
+        }
+    }
+}
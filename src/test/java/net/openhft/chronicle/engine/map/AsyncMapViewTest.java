@@ -0,0 +1,111 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.core.util.SerializableBiFunction;
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.AsyncMapView;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.map.remote.MapFunction;
+import net.openhft.chronicle.engine.map.remote.RemoteAsyncMapView;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.WireType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.*;
+
+public class AsyncMapViewTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/asyncMap";
+    private static final String CONNECTION = "AsyncMapViewTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT);
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testManyRequestsInFlight() throws Exception {
+        AsyncMapView<String, String> map = clientAssetTree.acquireView(
+                requestContext(NAME + "?view=asyncMap").type(String.class).type2(String.class));
+        assertTrue(map instanceof RemoteAsyncMapView);
+
+        List<CompletableFuture<String>> puts = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            puts.add(map.putIfAbsent("key-" + i, "value-" + i));
+        for (CompletableFuture<String> put : puts)
+            assertNull(put.get(10, SECONDS));
+
+        List<CompletableFuture<String>> gets = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            gets.add(map.get("key-" + i));
+        for (int i = 0; i < 100; i++)
+            assertEquals("value-" + i, gets.get(i).get(10, SECONDS));
+
+        assertEquals("value-1", map.getAndPut("key-1", "one").get(10, SECONDS));
+        assertEquals("one", map.replace("key-1", "uno").get(10, SECONDS));
+        assertEquals(true, map.applyTo((SerializableBiFunction) MapFunction.CONTAINS_VALUE, "uno").get(10, SECONDS));
+
+        MapView<String, String> serverMap = serverAssetTree.acquireMap(NAME, String.class, String.class);
+        assertEquals("uno", serverMap.get("key-1"));
+    }
+
+    @Test
+    public void testFailsWhenTheConnectionIsLost() throws Exception {
+        AsyncMapView<String, String> map = clientAssetTree.acquireView(
+                requestContext(NAME + "?view=asyncMap").type(String.class).type2(String.class));
+        assertNull(map.get("key").get(10, SECONDS));
+
+        serverEndpoint.close();
+        CompletableFuture<String> getAndPut = map.getAndPut("key", "value");
+        try {
+            getAndPut.get(10, SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            // not sent again on reconnect.
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchOperationsTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/batch";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testGetPutRemoveAll() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++)
+            entries.put("key-" + i, "value-" + i);
+        map.putAll(entries);
+        assertEquals(100, map.size());
+
+        assertEquals(Arrays.asList("value-1", null, "value-99"),
+                map.getAll(Arrays.asList("key-1", "key-100", "key-99")));
+
+        map.removeAll(Arrays.asList("key-1", "key-2", "key-100"));
+        assertEquals(98, map.size());
+        assertEquals(Arrays.asList(null, "value-3"), map.getAll(Arrays.asList("key-2", "key-3")));
+    }
+
+    @Test
+    public void testSubscribersNotifiedOfEachEntry() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        List<MapEvent> events = new ArrayList<>();
+        assetTree.registerSubscriber(NAME, MapEvent.class, (Subscriber<MapEvent>) events::add);
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("a", "1");
+        entries.put("b", "2");
+        map.putAll(entries);
+        map.removeAll(Arrays.asList("a", "b"));
+
+        assertEquals(4, events.size());
+        assertEquals(InsertedEvent.of(NAME, "a", "1"), events.get(0));
+        assertEquals(RemovedEvent.of(NAME, "b", "2"), events.get(3));
+    }
+}
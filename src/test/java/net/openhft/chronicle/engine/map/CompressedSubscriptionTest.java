@@ -0,0 +1,126 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.cfg.Compression;
+import net.openhft.chronicle.engine.cfg.CompressionCfg;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CompressedSubscriptionTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/compressed";
+    private static final String CONNECTION = "CompressedSubscriptionTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @NotNull
+    private static String largeValue() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            sb.append("value-").append(i % 10).append(' ');
+        return sb.toString();
+    }
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT,
+                ServerEndpoint.HEARTBEAT_INTERVAL_TICKS, ServerEndpoint.HEARTBEAT_TIME_OUT_TICKS,
+                Collections.emptyMap(), new CompressionCfg(Compression.DEFLATE, 256));
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testLargeDocumentsAreCompressed() {
+        CompressionCfg cfg = new CompressionCfg(Compression.DEFLATE, 256);
+        for (WireType wireType : new WireType[]{WireType.TEXT, WireType.BINARY}) {
+            Wire wire = wireType.apply(Bytes.elasticByteBuffer());
+            String value = largeValue();
+            cfg.write(wire, w -> w.write(() -> "reply").text(value));
+            assertTrue(wire.bytes().readRemaining() < value.length());
+
+            StringBuilder eventName = new StringBuilder();
+            ValueIn valueIn = wire.readEventName(eventName);
+            assertEquals("compressed", eventName.toString());
+            WireIn uncompressed = Compression.uncompress(wire, valueIn);
+            assertEquals(value, uncompressed.read(() -> "reply").text());
+        }
+    }
+
+    @Test
+    public void testSmallDocumentsAreNotCompressed() {
+        CompressionCfg cfg = new CompressionCfg(Compression.DEFLATE, 256);
+        Wire wire = new TextWire(Bytes.elasticByteBuffer());
+        cfg.write(wire, w -> w.write(() -> "reply").text("small"));
+        assertEquals("small", wire.read(() -> "reply").text());
+    }
+
+    @Test
+    public void testSubscriberReceivesCompressedEvents() throws InterruptedException {
+        MapView<String, String> serverMap = serverAssetTree.acquireMap(NAME, String.class, String.class);
+        BlockingQueue<MapEvent> events = new ArrayBlockingQueue<>(10);
+        clientAssetTree.registerSubscriber(NAME + "?bootstrap=false", MapEvent.class, events::add);
+
+        String value = largeValue();
+        // wait for the subscription to be registered on the server.
+        Subscription subscription = serverMap.asset().subscription(false);
+        for (int i = 0; i < 100 && subscription.entrySubscriberCount() < 1; i++)
+            Thread.sleep(20);
+        serverMap.put("large", value);
+        serverMap.put("small", "value");
+
+        MapEvent large = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(large);
+        assertEquals(value, large.value());
+        MapEvent small = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(small);
+        assertEquals("value", small.value());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConflatingSubscriberTest {
+    private static final String NAME = "/test";
+
+    private int pendingCalls = 0;
+
+    private final ConflatingSubscriber<String, String> conflating = new ConflatingSubscriber<String, String>() {
+        @Override
+        protected void onPending() {
+            pendingCalls++;
+        }
+    };
+
+    private List<MapEvent<String, String>> deliver() {
+        List<MapEvent<String, String>> events = new ArrayList<>();
+        conflating.deliverPending(events::add);
+        return events;
+    }
+
+    @Test
+    public void testLatestValuePerKey() throws InvalidSubscriberException {
+        conflating.onMessage(InsertedEvent.of(NAME, "a", "1"));
+        conflating.onMessage(UpdatedEvent.of(NAME, "a", "1", "2"));
+        conflating.onMessage(InsertedEvent.of(NAME, "b", "1"));
+        conflating.onMessage(UpdatedEvent.of(NAME, "a", "2", "3"));
+        assertEquals(1, pendingCalls);
+        assertEquals(2, conflating.pendingEvents());
+
+        List<MapEvent<String, String>> events = deliver();
+        assertEquals(2, events.size());
+        assertEquals(InsertedEvent.of(NAME, "a", "3"), events.get(0));
+        assertEquals(InsertedEvent.of(NAME, "b", "1"), events.get(1));
+
+        conflating.onMessage(UpdatedEvent.of(NAME, "a", "3", "4"));
+        conflating.onMessage(UpdatedEvent.of(NAME, "a", "4", "5"));
+        assertEquals(2, pendingCalls);
+        assertEquals(UpdatedEvent.of(NAME, "a", "3", "5"), deliver().get(0));
+    }
+
+    @Test
+    public void testRemoveAndInsert() throws InvalidSubscriberException {
+        conflating.onMessage(InsertedEvent.of(NAME, "a", "1"));
+        conflating.onMessage(RemovedEvent.of(NAME, "a", "1"));
+        assertEquals(0, deliver().size());
+
+        conflating.onMessage(UpdatedEvent.of(NAME, "b", "1", "2"));
+        conflating.onMessage(RemovedEvent.of(NAME, "b", "2"));
+        assertEquals(RemovedEvent.of(NAME, "b", "1"), deliver().get(0));
+
+        conflating.onMessage(RemovedEvent.of(NAME, "c", "1"));
+        conflating.onMessage(InsertedEvent.of(NAME, "c", "2"));
+        assertEquals(UpdatedEvent.of(NAME, "c", "1", "2"), deliver().get(0));
+    }
+
+    @Test
+    public void testChurnKeepsOneEventPerKey() throws InvalidSubscriberException {
+        for (int i = 0; i < 1000; i++) {
+            conflating.onMessage(InsertedEvent.of(NAME, "a", "1"));
+            conflating.onMessage(RemovedEvent.of(NAME, "a", "1"));
+        }
+        conflating.onMessage(InsertedEvent.of(NAME, "b", "1"));
+        conflating.onMessage(InsertedEvent.of(NAME, "a", "2"));
+        assertEquals(2, conflating.pendingEvents());
+
+        List<MapEvent<String, String>> events = deliver();
+        assertEquals(2, events.size());
+        assertEquals(InsertedEvent.of(NAME, "b", "1"), events.get(0));
+        assertEquals(InsertedEvent.of(NAME, "a", "2"), events.get(1));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
+import net.openhft.chronicle.engine.map.VanillaEngineReplication.ReplicationData;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DirectValueStoreTest {
+
+    private final DirectValueStore<BytesStore, ReplicationData> store =
+            DirectValueStore.forReplicationData();
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private static BytesStore key(String key) {
+        return BytesStore.wrap(key.getBytes(UTF_8));
+    }
+
+    @Test
+    public void testLookupByContents() {
+        ReplicationData data = store.getUsing(key("hello"), null);
+        Assert.assertNull(data);
+
+        ReplicationEntry entry = mock(ReplicationEntry.class);
+        when(entry.key()).thenReturn(key("hello"));
+        when(entry.timestamp()).thenReturn(123L);
+        when(entry.identifier()).thenReturn((byte) 2);
+        store.accept(entry);
+
+        // another key with the same contents finds the same record
+        data = store.getUsing(key("hello"), null);
+        Assert.assertNotNull(data);
+        Assert.assertEquals(123L, data.getTimestamp());
+        Assert.assertEquals(2, data.getIdentifier());
+        Assert.assertFalse(data.getDeleted());
+        Assert.assertNull(store.getUsing(key("hello2"), null));
+
+        when(entry.timestamp()).thenReturn(124L);
+        when(entry.isDeleted()).thenReturn(true);
+        store.accept(entry);
+
+        Assert.assertEquals(1, store.longSize());
+        data = store.getUsing(key("hello"), data);
+        Assert.assertEquals(124L, data.getTimestamp());
+        Assert.assertTrue(data.getDeleted());
+        Assert.assertEquals("hello", new String(DirectValueStore.toByteArray(store.keySetIterator().next()), UTF_8));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAcceptNeedsAnEntryKey() {
+        DirectValueStore.withBytesStoreKeys(ReplicationData.class).accept(mock(ReplicationEntry.class));
+    }
+}
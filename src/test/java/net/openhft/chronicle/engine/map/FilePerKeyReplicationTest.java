@@ -0,0 +1,98 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.engine.api.EngineReplication.ModificationIterator;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.map.StringBytesStoreKeyValueStore;
+import net.openhft.chronicle.engine.tree.VanillaAsset;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replicates between two file per key stores by hand, through their VanillaEngineReplication.
+ * The stores notify their changes on the thread watching their directory.
+ */
+public class FilePerKeyReplicationTest {
+    private static final String NAME = "/test/filePerKeyReplication";
+
+    private VanillaAssetTree tree;
+    private MapView<String, String> map1;
+    private MapView<String, String> map2;
+    private VanillaEngineReplication replication1;
+    private VanillaEngineReplication replication2;
+
+    @Before
+    public void before() {
+        String basePath = OS.TARGET + "/filePerKeyReplication" + System.nanoTime();
+        tree = new VanillaAssetTree().forTesting();
+        ((VanillaAsset) tree.root()).enableTranslatingValuesToBytesStore();
+        tree.root().addLeafRule(AuthenticatedKeyValueStore.class, "FilePer Key",
+                (context, asset) -> new FilePerKeyValueStore(context.basePath(basePath), asset));
+
+        map1 = tree.acquireMap(NAME + 1, String.class, String.class);
+        map2 = tree.acquireMap(NAME + 2, String.class, String.class);
+        replication1 = VanillaEngineReplication.forFilePerKey((byte) 1,
+                (FilePerKeyValueStore) map1.asset().getView(StringBytesStoreKeyValueStore.class));
+        replication2 = VanillaEngineReplication.forFilePerKey((byte) 2,
+                (FilePerKeyValueStore) map2.asset().getView(StringBytesStoreKeyValueStore.class));
+    }
+
+    @After
+    public void after() throws Exception {
+        replication1.close();
+        replication2.close();
+        tree.close();
+    }
+
+    @Test
+    public void testPutIsReplicatedOnce() throws InterruptedException {
+        ModificationIterator iterator1for2 = replication1.acquireModificationIterator((byte) 2);
+        ModificationIterator iterator2for1 = replication2.acquireModificationIterator((byte) 1);
+        BlockingQueue<MapEvent> events2 = new LinkedBlockingQueue<>();
+        tree.registerSubscriber(NAME + 2 + "?bootstrap=false", MapEvent.class, events2::add);
+
+        map1.put("hello", "world");
+        for (int i = 0; i < 100 && !iterator1for2.hasNext(); i++)
+            Thread.sleep(50);
+        assertTrue(iterator1for2.hasNext());
+
+        iterator1for2.forEach(replication2::applyReplication);
+        assertFalse(iterator1for2.hasNext());
+        assertEquals("world", map2.get("hello"));
+
+        // the change the entry made is notified later, and isn't sent back.
+        assertNotNull(events2.poll(5, TimeUnit.SECONDS));
+        assertFalse(iterator2for1.hasNext());
+
+        map2.put("hello", "world2");
+        for (int i = 0; i < 100 && !iterator2for1.hasNext(); i++)
+            Thread.sleep(50);
+        iterator2for1.forEach(replication1::applyReplication);
+        assertEquals("world2", map1.get("hello"));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.engine.query.KeyPredicate;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Subscribers filtering on a key or key prefix are indexed by the key.
+ */
+public class KeyedSubscriptionTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/keyed";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testKeyEqualsAndPrefix() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        map.put("price.EURUSD", "1.1");
+
+        List<MapEvent> eurusd = new ArrayList<>();
+        List<MapEvent> prices = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+
+        Filter<MapEvent> eurusdFilter = new Filter<>();
+        eurusdFilter.addKeyEquals("price.EURUSD");
+        Filter<MapEvent> pricesFilter = new Filter<>();
+        pricesFilter.addKeyPrefix("price.");
+        Filter<String> keysFilter = new Filter<>();
+        keysFilter.addKeyPrefix("volume.");
+
+        RequestContext rc = requestContext(NAME).type(MapEvent.class);
+        KVSSubscription subscription = (KVSSubscription) assetTree.acquireSubscription(rc);
+        Subscriber<MapEvent> eurusdSubscriber = eurusd::add;
+        subscription.registerSubscriber(rc, eurusdSubscriber, eurusdFilter);
+        subscription.registerSubscriber(rc, (Subscriber<MapEvent>) prices::add, pricesFilter);
+        subscription.registerKeySubscriber(requestContext(NAME).type(String.class),
+                (Subscriber<String>) keys::add, keysFilter);
+
+        // bootstrap
+        assertEquals(1, eurusd.size());
+        assertEquals(1, prices.size());
+        assertEquals(0, keys.size());
+        assertEquals(2, subscription.entrySubscriberCount());
+        assertEquals(1, subscription.keySubscriberCount());
+
+        map.put("price.EURUSD", "1.2");
+        map.put("price.GBPUSD", "1.5");
+        map.put("volume.GBPUSD", "100");
+        map.put("pric", "0");
+
+        assertEquals(2, eurusd.size());
+        assertEquals(3, prices.size());
+        assertEquals("price.GBPUSD", prices.get(2).getKey());
+        assertEquals(1, keys.size());
+        assertEquals("volume.GBPUSD", keys.get(0));
+
+        subscription.unregisterSubscriber(eurusdSubscriber);
+        assertEquals(1, subscription.entrySubscriberCount());
+        map.put("price.EURUSD", "1.3");
+        assertEquals(2, eurusd.size());
+        assertEquals(4, prices.size());
+    }
+
+    @Test
+    public void testRemovingPrefixSubscribersPrunesTheTrie() {
+        KeyedSubscribers<Subscriber<String>> keyed = new KeyedSubscribers<>();
+        Subscriber<String> price = s -> {
+        };
+        Subscriber<String> priceEur = s -> {
+        };
+        keyed.add(KeyPredicate.keyStartsWith("price."), price);
+        keyed.add(KeyPredicate.keyStartsWith("price.EUR"), priceEur);
+
+        keyed.remove(priceEur);
+        List<String> notified = new ArrayList<>();
+        keyed.notifyEachSubscriber("price.EURUSD", s -> notified.add("price."));
+        assertEquals(1, notified.size());
+
+        keyed.remove(price);
+        assertTrue(keyed.isEmpty());
+        assertTrue(keyed.prefixes.isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapPipeline;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.WireType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+
+public class MapPipelineTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/pipeline";
+    private static final String CONNECTION = "MapPipelineTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT);
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testPipelinedOperations() throws Exception {
+        testPipeline(new MapPipeline());
+    }
+
+    @Test
+    public void testAtomicOperations() throws Exception {
+        testPipeline(new MapPipeline(true));
+    }
+
+    @Test
+    public void testResultsHaveTheValueType() throws Exception {
+        MapView<String, Integer> map = clientAssetTree.acquireMap(NAME, String.class, Integer.class);
+
+        List<Object> results = new MapPipeline()
+                .put(map, "a", 1)
+                .getAndPut(map, "a", 2)
+                .get(map, "a")
+                .containsKey(map, "a")
+                .execute(10, SECONDS);
+        assertEquals(Arrays.asList(null, 1, 2, true), results);
+        assertEquals(Integer.class, results.get(1).getClass());
+    }
+
+    private void testPipeline(MapPipeline pipeline) throws Exception {
+        MapView<String, String> map1 = clientAssetTree.acquireMap(NAME + 1, String.class, String.class);
+        MapView<String, String> map2 = clientAssetTree.acquireMap(NAME + 2, String.class, String.class);
+
+        pipeline.put(map1, "a", "1")
+                .put(map2, "a", "2")
+                .getAndPut(map1, "a", "one")
+                .get(map2, "a")
+                .putIfAbsent(map1, "b", "b1")
+                .containsKey(map2, "b")
+                .getAndRemove(map2, "a")
+                .get(map1, "a");
+        assertEquals(8, pipeline.size());
+
+        List<Object> results = pipeline.execute(10, SECONDS);
+        assertEquals(Arrays.asList(null, null, "1", "2", null, false, "2", "one"), results);
+        assertEquals(0, pipeline.size());
+
+        assertEquals("one", serverAssetTree.acquireMap(NAME + 1, String.class, String.class).get("a"));
+        assertEquals("b1", serverAssetTree.acquireMap(NAME + 1, String.class, String.class).get("b"));
+        assertEquals(0, serverAssetTree.acquireMap(NAME + 2, String.class, String.class).size());
+    }
+}
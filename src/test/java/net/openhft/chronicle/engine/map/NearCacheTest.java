@@ -0,0 +1,120 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.KeyValueStore;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.ReconnectAwareSubscriber;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.WireType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class NearCacheTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/nearCache";
+    private static final String CONNECTION = "NearCacheTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT);
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testReadsAreCachedAndKeptCoherent() {
+        MapView<String, String> serverMap = serverAssetTree.acquireMap(NAME, String.class, String.class);
+        serverMap.put("hello", "world");
+
+        MapView<String, String> map = clientAssetTree.acquireMap(NAME + "?nearCache=100", String.class, String.class);
+        NearCacheKeyValueStore<String, String> nearCache =
+                (NearCacheKeyValueStore<String, String>) map.underlying();
+
+        assertEquals("world", map.get("hello"));
+        assertEquals("world", map.get("hello"));
+        assertEquals(1, nearCache.misses());
+        assertEquals(1, nearCache.hits());
+
+        serverMap.put("hello", "there");
+        for (int i = 0; i < 100 && nearCache.invalidations() < 1; i++)
+            Jvm.pause(20);
+        assertEquals("there", map.get("hello"));
+        assertEquals(1, nearCache.misses());
+
+        serverMap.remove("hello");
+        for (int i = 0; i < 100 && nearCache.invalidations() < 2; i++)
+            Jvm.pause(20);
+        assertNull(map.get("hello"));
+        assertEquals(0, nearCache.cachedSize());
+    }
+
+    @Test
+    public void testClearedOnReconnect() {
+        Asset asset = mock(Asset.class);
+        Subscription subscription = mock(Subscription.class);
+        when(asset.subscription(true)).thenReturn(subscription);
+        KeyValueStore<String, String> remote = mock(KeyValueStore.class);
+        when(remote.getUsing("hello", null)).thenReturn("world");
+
+        NearCacheKeyValueStore<String, String> nearCache = new NearCacheKeyValueStore<>(
+                requestContext(NAME).nearCache(100), asset, remote);
+        ArgumentCaptor<Subscriber> invalidator = ArgumentCaptor.forClass(Subscriber.class);
+        verify(subscription).registerSubscriber(any(RequestContext.class), invalidator.capture(), any(Filter.class));
+
+        assertEquals("world", nearCache.getUsing("hello", null));
+        assertEquals(1, nearCache.cachedSize());
+
+        // the events sent while disconnected were missed.
+        ((ReconnectAwareSubscriber) invalidator.getValue()).onReconnect();
+        assertEquals(0, nearCache.cachedSize());
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.*;
+
+/**
+ * The old value is only fetched on a write when a subscriber needs it.
+ */
+public class OldValuesTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/oldValues";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testNeedsPrevious() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        map.put("key", "value-1");
+
+        KVSSubscription subscription = (KVSSubscription) assetTree.getAsset(NAME).subscription(false);
+        assertFalse(subscription.needsPrevious());
+
+        List<MapEvent> events = new ArrayList<>();
+        Subscriber<MapEvent> noOldValues = events::add;
+        subscription.registerSubscriber(requestContext(NAME).type(MapEvent.class).oldValues(false),
+                noOldValues, Filter.empty());
+        assertFalse(subscription.needsPrevious());
+
+        map.put("key", "value-2");
+        assertEquals(2, events.size());
+        assertTrue(events.get(1) instanceof UpdatedEvent);
+        assertEquals("value-2", events.get(1).getValue());
+
+        RequestContext rc = requestContext(NAME).type(MapEvent.class);
+        Subscriber<MapEvent> oldValues = e -> {
+        };
+        subscription.registerSubscriber(rc, oldValues, Filter.empty());
+        assertTrue(subscription.needsPrevious());
+
+        subscription.unregisterSubscriber(oldValues);
+        assertFalse(subscription.needsPrevious());
+        subscription.unregisterSubscriber(noOldValues);
+    }
+
+    @Test
+    public void testInvalidSubscriberNoLongerNeedsPrevious() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        KVSSubscription subscription = (KVSSubscription) assetTree.getAsset(NAME).subscription(false);
+
+        Subscriber<MapEvent> invalid = e -> {
+            throw new InvalidSubscriberException();
+        };
+        subscription.registerSubscriber(requestContext(NAME).type(MapEvent.class), invalid, Filter.empty());
+        Subscriber<MapEvent> keyed = e -> {
+            throw new InvalidSubscriberException();
+        };
+        Filter<MapEvent> keyFilter = new Filter<>();
+        keyFilter.addKeyEquals("key");
+        subscription.registerSubscriber(requestContext(NAME).type(MapEvent.class), keyed, keyFilter);
+        assertTrue(subscription.needsPrevious());
+
+        // both are dropped when notified.
+        map.put("key", "value-1");
+        assertFalse(subscription.needsPrevious());
+    }
+}
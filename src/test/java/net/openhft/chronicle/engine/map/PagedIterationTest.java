@@ -0,0 +1,102 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.collection.ClientWiredStatelessChronicleCollection;
+import net.openhft.chronicle.engine.map.remote.RemoteKeyValueStore;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.WireType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PagedIterationTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/paged";
+    private static final String CONNECTION = "PagedIterationTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT);
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testIterateManyPages() {
+        MapView<String, String> serverMap = serverAssetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < 2500; i++)
+            serverMap.put("key-" + i, "value-" + i);
+
+        MapView<String, String> map = clientAssetTree.acquireMap(NAME, String.class, String.class);
+        Set<String> keys = new HashSet<>();
+        for (String key : map.keySet())
+            keys.add(key);
+        assertEquals(serverMap.keySet(), keys);
+
+        int count = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            assertEquals(serverMap.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        assertEquals(2500, count);
+    }
+
+    @Test
+    public void testCloseBeforeTheEnd() {
+        MapView<String, String> serverMap = serverAssetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < 2500; i++)
+            serverMap.put("key-" + i, "value-" + i);
+
+        MapView<String, String> map = clientAssetTree.acquireMap(NAME, String.class, String.class);
+        RemoteKeyValueStore<String, String> kvStore = (RemoteKeyValueStore<String, String>) map.underlying();
+        ClientWiredStatelessChronicleCollection<String, ?>.PagedIterator it =
+                ((ClientWiredStatelessChronicleCollection<String, ?>) kvStore.keySet()).iterator();
+        for (int i = 0; i < 10; i++)
+            it.next();
+        it.close();
+        assertFalse(it.hasNext());
+        assertEquals(2500, map.size());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.map.RawValueWriter;
+import net.openhft.chronicle.engine.tree.VanillaAsset;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.wire.BinaryWire;
+import net.openhft.chronicle.wire.Wire;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RawValueWriterTest {
+    private static final String NAME = "rawValueWriterTest";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+        ((VanillaAsset) assetTree.root()).enableTranslatingValuesToBytesStore();
+        assetTree.root().addLeafRule(AuthenticatedKeyValueStore.class, "FilePer Key",
+                (context, asset) -> new FilePerKeyValueStore(context.basePath(OS.TARGET), asset));
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testStoredValuesCopiedToTheWire() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        map.clear();
+        map.put("hello", "world");
+
+        RawValueWriter<String> writer = map.asset().getView(RawValueWriter.class);
+        assertNotNull(writer);
+
+        Wire wire = new BinaryWire(Bytes.elasticByteBuffer());
+        assertTrue(writer.canWriteTo(wire));
+        writer.writeValue("hello", wire.write(() -> "value"));
+        writer.writeValue("missing", wire.write(() -> "missing"));
+
+        assertEquals("world", wire.read(() -> "value").text());
+        assertNull(wire.read(() -> "missing").object(String.class));
+        map.clear();
+    }
+}
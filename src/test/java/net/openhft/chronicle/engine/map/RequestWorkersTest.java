@@ -0,0 +1,136 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.server.internal.RequestWorkers;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.WireType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestWorkersTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/workers";
+    private static final String CONNECTION = "RequestWorkersTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT,
+                ServerEndpoint.HEARTBEAT_INTERVAL_TICKS, ServerEndpoint.HEARTBEAT_TIME_OUT_TICKS,
+                Collections.emptyMap(), null, 4);
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testRequestsToEachAssetAreInOrder() {
+        List<MapView<String, String>> maps = new ArrayList<>();
+        for (int m = 0; m < 8; m++)
+            maps.add(clientAssetTree.acquireMap(NAME + m, String.class, String.class));
+
+        for (int i = 0; i < 100; i++)
+            for (MapView<String, String> map : maps)
+                map.put("key", "value" + i);
+
+        for (int m = 0; m < maps.size(); m++) {
+            MapView<String, String> map = maps.get(m);
+            assertEquals("value99", map.get("key"));
+            assertEquals(1, map.size());
+            assertEquals("value99", serverAssetTree.acquireMap(NAME + m, String.class, String.class).get("key"));
+        }
+    }
+
+    @Test
+    public void testKeySetSeesEarlierPuts() {
+        MapView<String, String> map = clientAssetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < 100; i++) {
+            map.put("key" + i, "value" + i);
+            // the put is asynchronous, the key set is run after it on the map's worker.
+            assertTrue(map.keySet().contains("key" + i));
+        }
+    }
+
+    @Test
+    public void testSubscriptionSeesEarlierPuts() throws InterruptedException {
+        MapView<String, String> map = clientAssetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < 100; i++)
+            map.put("key" + i, "value" + i);
+
+        BlockingQueue<MapEvent> events = new LinkedBlockingQueue<>();
+        clientAssetTree.registerSubscriber(NAME, MapEvent.class, events::add);
+        for (int i = 0; i < 100; i++)
+            assertNotNull(events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testEachAssetHasOneWorker() throws InterruptedException {
+        RequestWorkers workers = new RequestWorkers(4);
+        try {
+            int worker = workers.workerFor(NAME);
+            assertEquals(worker, workers.workerFor(NAME));
+            assertTrue(worker >= 0 && worker < workers.count());
+
+            StringBuilder order = new StringBuilder();
+            CountDownLatch done = new CountDownLatch(10);
+            for (int i = 0; i < 10; i++) {
+                int n = i;
+                assertTrue(workers.execute(worker, () -> {
+                    order.append(n);
+                    done.countDown();
+                }));
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals("0123456789", order.toString());
+        } finally {
+            workers.close();
+        }
+        assertFalse(workers.execute(0, () -> {
+        }));
+    }
+}
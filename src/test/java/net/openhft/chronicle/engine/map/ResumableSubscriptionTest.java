@@ -0,0 +1,151 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.SequencedSubscriber;
+import net.openhft.chronicle.engine.api.tree.RequestContext;
+import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResumableSubscriptionTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/resumable";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testResumeFromLastSequence() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        map.put("a", "1");
+
+        RequestContext rc = requestContext(NAME).type(MapEvent.class);
+        KVSSubscription subscription = (KVSSubscription) assetTree.acquireSubscription(rc);
+
+        Recorder first = new Recorder();
+        subscription.registerSequencedSubscriber(rc, first, Filter.empty(), 0);
+        // bootstrapped
+        assertEquals(1, first.events.size());
+        assertTrue(first.lastSequence > 0);
+
+        map.put("a", "2");
+        map.put("b", "1");
+        assertEquals(3, first.events.size());
+        subscription.unregisterSubscriber(first);
+        assertEquals(0, subscription.entrySubscriberCount());
+
+        // missed while disconnected.
+        map.put("a", "3");
+        map.remove("b");
+
+        Recorder second = new Recorder();
+        subscription.registerSequencedSubscriber(rc, second, Filter.empty(), first.lastSequence);
+        assertEquals(2, second.events.size());
+        assertEquals(UpdatedEvent.of(NAME, "a", "2", "3"), second.events.get(0));
+        assertEquals(RemovedEvent.of(NAME, "b", "1"), second.events.get(1));
+        assertEquals(first.lastSequence + 2, second.lastSequence);
+        assertEquals(2, second.eventsBeforeSequence);
+
+        // an unknown sequence falls back to a bootstrap.
+        Recorder third = new Recorder();
+        subscription.registerSequencedSubscriber(rc, third, Filter.empty(), 1);
+        assertEquals(1, third.events.size());
+        assertEquals(InsertedEvent.of(NAME, "a", "3"), third.events.get(0));
+        assertEquals(second.lastSequence, third.lastSequence);
+    }
+
+    @Test
+    public void testSequenceIsSentAfterTheBootstrap() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        map.put("a", "1");
+        map.put("b", "1");
+
+        RequestContext rc = requestContext(NAME).type(MapEvent.class);
+        KVSSubscription subscription = (KVSSubscription) assetTree.acquireSubscription(rc);
+
+        Recorder recorder = new Recorder();
+        subscription.registerSequencedSubscriber(rc, recorder, Filter.empty(), 0);
+        assertEquals(2, recorder.events.size());
+        // the sequence is only known once the whole bootstrap has been received.
+        assertEquals(2, recorder.eventsBeforeSequence);
+    }
+
+    @Test
+    public void testSequenceOfAnotherJournalBootstraps() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        map.put("a", "1");
+
+        RequestContext rc = requestContext(NAME).type(MapEvent.class);
+        KVSSubscription subscription = (KVSSubscription) assetTree.acquireSubscription(rc);
+
+        Recorder first = new Recorder();
+        subscription.registerSequencedSubscriber(rc, first, Filter.empty(), 0);
+        map.put("a", "2");
+
+        // the same count of events in a journal with another id, e.g. from before a restart.
+        long stale = first.lastSequence - 1 + (1L << EventJournal.SEQUENCE_BITS);
+        Recorder second = new Recorder();
+        subscription.registerSequencedSubscriber(rc, second, Filter.empty(), stale);
+        assertEquals(1, second.events.size());
+        assertEquals(InsertedEvent.of(NAME, "a", "2"), second.events.get(0));
+        assertEquals(first.lastSequence, second.lastSequence);
+    }
+
+    static class Recorder implements SequencedSubscriber<MapEvent<String, String>> {
+        final List<MapEvent<String, String>> events = new ArrayList<>();
+        long lastSequence;
+        int eventsBeforeSequence = -1;
+
+        @Override
+        public void onMessage(MapEvent<String, String> e, long sequence) {
+            events.add(e);
+            lastSequence = sequence;
+        }
+
+        @Override
+        public void onSequence(long sequence) {
+            if (eventsBeforeSequence < 0)
+                eventsBeforeSequence = events.size();
+            lastSequence = sequence;
+        }
+
+        @Override
+        public void onMessage(MapEvent<String, String> e) {
+            events.add(e);
+        }
+    }
+}
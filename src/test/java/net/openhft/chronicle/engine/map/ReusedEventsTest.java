@@ -0,0 +1,100 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.wire.TextWire;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Subscribers of a map with reuseEvents=true are passed the same mutable event each time.
+ */
+public class ReusedEventsTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/reused";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testEventsReusedAndCopied() {
+        MapView<String, String> map = assetTree.acquireMap(NAME + "?reuseEvents=true",
+                String.class, String.class);
+
+        List<MapEvent> seen = new ArrayList<>();
+        List<MapEvent> copies = new ArrayList<>();
+        Subscriber<MapEvent> subscriber = e -> {
+            seen.add(e);
+            copies.add(e.copy());
+        };
+        assetTree.registerSubscriber(NAME, MapEvent.class, subscriber);
+
+        map.put("key", "value-1");
+        map.put("key", "value-2");
+        map.remove("key");
+
+        assertEquals(3, seen.size());
+        assertTrue(seen.get(0) instanceof MutableMapEvent);
+        assertSame(seen.get(0), seen.get(2));
+        // released once the subscribers have been notified.
+        assertNull(seen.get(0).getKey());
+
+        assertEquals(InsertedEvent.of(NAME, "key", "value-1"), copies.get(0));
+        assertEquals(UpdatedEvent.of(NAME, "key", "value-1", "value-2"), copies.get(1));
+        assertTrue(copies.get(2) instanceof RemovedEvent);
+        assertEquals("key", copies.get(2).getKey());
+    }
+
+    @Test
+    public void testEqualsAndMarshallable() {
+        MutableMapEvent<String, String> event = new MutableMapEvent<String, String>()
+                .updated(NAME, "key", "value-1", "value-2");
+        MapEvent<String, String> copy = event.copy();
+        assertEquals(UpdatedEvent.of(NAME, "key", "value-1", "value-2"), copy);
+        assertEquals(copy.hashCode(), event.hashCode());
+        // symmetric, so the two kinds can be mixed in a HashSet.
+        assertEquals(copy.equals(event), event.equals(copy));
+        assertEquals(new MutableMapEvent<String, String>().updated(NAME, "key", "value-1", "value-2"), event);
+        assertNotEquals(new MutableMapEvent<String, String>().inserted(NAME, "key", "value-2"), event);
+
+        TextWire wire = new TextWire(Bytes.elasticByteBuffer());
+        event.writeMarshallable(wire);
+        MutableMapEvent<String, String> read = new MutableMapEvent<>();
+        read.readMarshallable(wire);
+        assertEquals(copy, read.copy());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.KeyValueStore;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.InvalidSubscriberException;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedBootstrapTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/segmented";
+    private static final int ENTRIES = 1000;
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testEntriesForEachSegment() throws InvalidSubscriberException {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < ENTRIES; i++)
+            map.put("key-" + i, "value-" + i);
+
+        KeyValueStore<String, String> kvStore = map.underlying();
+        assertEquals(VanillaKeyValueStore.SEGMENTS, kvStore.segments());
+
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < kvStore.segments(); i++) {
+            int segment = i;
+            kvStore.entriesFor(segment, e -> {
+                assertEquals(segment, kvStore.segmentFor(e.getKey()));
+                assertTrue(keys.add(e.getKey()));
+            });
+        }
+        assertEquals(ENTRIES, keys.size());
+    }
+
+    @Test
+    public void testBootstrapAllSegments() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < ENTRIES; i++)
+            map.put("key-" + i, "value-" + i);
+
+        Set<String> keys = new HashSet<>();
+        assetTree.registerSubscriber(NAME, MapEvent.class,
+                (Subscriber<MapEvent>) e -> assertTrue(keys.add((String) e.getKey())));
+        assertEquals(ENTRIES, keys.size());
+    }
+
+    @Test
+    public void testBootstrapInBatches() {
+        MapView<String, String> map = assetTree.acquireMap(NAME, String.class, String.class);
+        for (int i = 0; i < ENTRIES; i++)
+            map.put("key-" + i, "value-" + i);
+
+        List<List<MapEvent>> batches = new ArrayList<>();
+        assetTree.registerSubscriber(NAME, MapEvent.class, new Subscriber<MapEvent>() {
+            @Override
+            public void onMessage(MapEvent mapEvent) {
+                batches.add(Collections.singletonList(mapEvent));
+            }
+
+            @Override
+            public void onMessages(List<MapEvent> events) {
+                batches.add(events);
+            }
+        });
+        assertEquals(ENTRIES, batches.stream().mapToInt(List::size).sum());
+        assertTrue(batches.size() < ENTRIES);
+
+        map.put("key-0", "value-0a");
+        assertEquals(1, batches.get(batches.size() - 1).size());
+    }
+}
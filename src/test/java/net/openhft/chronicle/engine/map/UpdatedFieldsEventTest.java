@@ -0,0 +1,161 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.eg.Price;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.Marshallable;
+import net.openhft.chronicle.wire.WireIn;
+import net.openhft.chronicle.wire.WireOut;
+import net.openhft.chronicle.wire.WireType;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class UpdatedFieldsEventTest extends ThreadMonitoringTest {
+    private static final String NAME = "/test/deltas";
+    private static final String CONNECTION = "UpdatedFieldsEventTest.host.port";
+    private AssetTree clientAssetTree;
+    private VanillaAssetTree serverAssetTree;
+    private ServerEndpoint serverEndpoint;
+
+    @Before
+    public void before() throws IOException {
+        serverAssetTree = new VanillaAssetTree().forTesting();
+        TCPRegistry.createServerSocketChannelFor(CONNECTION);
+        serverEndpoint = new ServerEndpoint(CONNECTION, serverAssetTree, WireType.TEXT);
+        clientAssetTree = new VanillaAssetTree().forRemoteAccess(CONNECTION, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        clientAssetTree.close();
+        serverEndpoint.close();
+        serverAssetTree.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testOnlyChangedFieldsAreEncoded() {
+        Price before = new Price("EURUSD", 1.1, 1e6, 1.2, 2e6);
+        Price after = new Price("EURUSD", 1.15, 1e6, 1.2, 2e6);
+
+        UpdatedFieldsEvent.Encoder encoder = new UpdatedFieldsEvent.Encoder();
+        UpdatedFieldsEvent.Decoder decoder = new UpdatedFieldsEvent.Decoder();
+
+        MapEvent<String, Price> inserted = InsertedEvent.of(NAME, "EURUSD", before);
+        assertSame(inserted, encoder.encode(inserted));
+        assertSame(inserted, decoder.decode(inserted));
+
+        Object encoded = encoder.encode(UpdatedEvent.of(NAME, "EURUSD", before, after));
+        assertTrue(encoded instanceof UpdatedFieldsEvent);
+        assertEquals(Collections.singletonMap("bidPrice", 1.15), ((UpdatedFieldsEvent) encoded).fields());
+
+        MapEvent<String, Price> decoded = (MapEvent<String, Price>) decoder.decode(encoded);
+        assertNotNull(decoded);
+        assertEquals(before.toString(), decoded.oldValue().toString());
+        assertEquals(after.toString(), decoded.getValue().toString());
+
+        // a key which was removed is sent in full again.
+        encoder.encode(RemovedEvent.of(NAME, "EURUSD", after));
+        MapEvent<String, Price> updated = UpdatedEvent.of(NAME, "EURUSD", before, after);
+        assertSame(updated, encoder.encode(updated));
+    }
+
+    @Test
+    public void testOnlyMarshalledFieldsAreCompared() {
+        Quote before = new Quote("EURUSD", 1.1);
+        before.lastRead = 1;
+        Quote after = new Quote("EURUSD", 1.1);
+        after.lastRead = 2;
+        assertEquals(Collections.emptyMap(), FieldLayout.of(Quote.class).diff(before, after));
+
+        Quote patched = FieldLayout.of(Quote.class).patch(before, Collections.singletonMap("price", 1.2));
+        assertNotSame(before, patched);
+        assertEquals("EURUSD", patched.symbol);
+        assertEquals(1.2, patched.price, 0.0);
+        assertEquals(1.1, before.price, 0.0);
+    }
+
+    @Test
+    public void testSubscriberPatchesItsCopy() throws InterruptedException {
+        MapView<String, Price> serverMap = serverAssetTree.acquireMap(NAME, String.class, Price.class);
+        BlockingQueue<MapEvent> events = new ArrayBlockingQueue<>(10);
+        clientAssetTree.registerSubscriber(NAME + "?bootstrap=false&deltas=true", MapEvent.class, events::add);
+
+        Subscription subscription = serverMap.asset().subscription(false);
+        for (int i = 0; i < 100 && subscription.entrySubscriberCount() < 1; i++)
+            Thread.sleep(20);
+
+        Price before = new Price("EURUSD", 1.1, 1e6, 1.2, 2e6);
+        Price after = new Price("EURUSD", 1.1, 1e6, 1.25, 3e6);
+        serverMap.put("EURUSD", before);
+        serverMap.put("EURUSD", after);
+
+        MapEvent inserted = events.poll(5, TimeUnit.SECONDS);
+        assertTrue(inserted instanceof InsertedEvent);
+        assertEquals(before.toString(), inserted.getValue().toString());
+
+        MapEvent updated = events.poll(5, TimeUnit.SECONDS);
+        assertTrue(updated instanceof UpdatedEvent);
+        assertEquals(before.toString(), updated.oldValue().toString());
+        assertEquals(after.toString(), updated.getValue().toString());
+    }
+
+    static class Quote implements Marshallable {
+        String symbol;
+        double price;
+        // not marshalled
+        long lastRead;
+
+        Quote(String symbol, double price) {
+            this.symbol = symbol;
+            this.price = price;
+        }
+
+        @Override
+        public void readMarshallable(@NotNull WireIn wire) throws IllegalStateException {
+            symbol = wire.read(() -> "symbol").text();
+            price = wire.read(() -> "price").float64();
+        }
+
+        @Override
+        public void writeMarshallable(@NotNull WireOut wire) {
+            wire.write(() -> "symbol").text(symbol);
+            wire.write(() -> "price").float64(price);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.engine.api.EngineReplication;
+import net.openhft.chronicle.engine.api.EngineReplication.ModificationIterator;
+import net.openhft.chronicle.engine.api.pubsub.Replication;
+import net.openhft.chronicle.engine.api.tree.Asset;
+import net.openhft.chronicle.engine.tree.VanillaAsset;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Replicates between two in-memory maps by hand, through their VanillaEngineReplication.
+ */
+public class VanillaEngineReplicationTest {
+
+    private static final String NAME = "/test/vanillaReplication";
+
+    private VanillaAssetTree tree1;
+    private VanillaAssetTree tree2;
+    private Map<String, String> map1;
+    private Map<String, String> map2;
+    private ModificationIterator iterator1for2;
+    private ModificationIterator iterator2for1;
+    private Replication replication1;
+    private Replication replication2;
+
+    private static VanillaAssetTree newTree(int hostId) {
+        VanillaAssetTree tree = new VanillaAssetTree(hostId).forTesting();
+        ((VanillaAsset) tree.root()).enableVanillaReplication();
+        return tree;
+    }
+
+    @Before
+    public void setUp() {
+        tree1 = newTree(1);
+        tree2 = newTree(2);
+        map1 = tree1.acquireMap(NAME, String.class, String.class);
+        map2 = tree2.acquireMap(NAME, String.class, String.class);
+
+        Asset asset1 = tree1.getAsset(NAME);
+        Asset asset2 = tree2.getAsset(NAME);
+        iterator1for2 = asset1.acquireView(EngineReplication.class).acquireModificationIterator((byte) 2);
+        iterator2for1 = asset2.acquireView(EngineReplication.class).acquireModificationIterator((byte) 1);
+        replication1 = asset1.acquireView(Replication.class);
+        replication2 = asset2.acquireView(Replication.class);
+    }
+
+    @After
+    public void tearDown() {
+        tree1.close();
+        tree2.close();
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        map1.put("hello1", "world1");
+        map2.put("hello2", "world2");
+
+        iterator1for2.forEach(replication2::applyReplication);
+        iterator2for1.forEach(replication1::applyReplication);
+
+        for (Map<String, String> map : new Map[]{map1, map2}) {
+            Assert.assertEquals("world1", map.get("hello1"));
+            Assert.assertEquals("world2", map.get("hello2"));
+            Assert.assertEquals(2, map.size());
+        }
+
+        // the entries applied from the other host are not sent back to it.
+        Assert.assertFalse(iterator1for2.hasNext());
+        Assert.assertFalse(iterator2for1.hasNext());
+
+        map1.remove("hello2");
+        iterator1for2.forEach(replication2::applyReplication);
+
+        Assert.assertNull(map2.get("hello2"));
+        Assert.assertEquals(1, map2.size());
+    }
+
+    @Test
+    public void testLatestChangeWins() {
+        map1.put("hello", "world1");
+        map2.put("hello", "world2");
+
+        iterator1for2.forEach(replication2::applyReplication);
+        iterator2for1.forEach(replication1::applyReplication);
+
+        // an older change is ignored by the host which already has a newer one.
+        Assert.assertEquals(map1.get("hello"), map2.get("hello"));
+    }
+
+    @Test
+    public void testLocalChangeAfterApplyIsReplicated() {
+        map1.put("hello", "world1");
+        iterator1for2.forEach(replication2::applyReplication);
+        Assert.assertFalse(iterator2for1.hasNext());
+
+        // only the change made while applying the entry is suppressed.
+        map2.put("hello", "world2");
+        Assert.assertTrue(iterator2for1.hasNext());
+        iterator2for1.forEach(replication1::applyReplication);
+        Assert.assertEquals("world2", map1.get("hello"));
+    }
+}
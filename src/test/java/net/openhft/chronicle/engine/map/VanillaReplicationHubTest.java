@@ -0,0 +1,107 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.engine.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.pool.ClassAliasPool;
+import net.openhft.chronicle.engine.ReplicationTest2Way;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.api.tree.AssetTree;
+import net.openhft.chronicle.engine.fs.ChronicleMapGroupFS;
+import net.openhft.chronicle.engine.fs.FilePerKeyGroupFS;
+import net.openhft.chronicle.engine.server.ServerEndpoint;
+import net.openhft.chronicle.engine.tree.VanillaAsset;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import net.openhft.chronicle.network.TCPRegistry;
+import net.openhft.chronicle.network.connection.TcpChannelHub;
+import net.openhft.chronicle.wire.WireType;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Replicates in-memory maps between two servers with VanillaEngineReplication, host 1 connecting
+ * to host 2 through a ReplicationHub.
+ */
+public class VanillaReplicationHubTest {
+    private static final String NAME = "/test/vanillaReplicationHub";
+    private static final String URI = NAME + "?cluster=clusterTwo";
+
+    private AssetTree tree1;
+    private AssetTree tree2;
+    private ServerEndpoint serverEndpoint1;
+    private ServerEndpoint serverEndpoint2;
+
+    @NotNull
+    private static AssetTree create(int hostId) {
+        VanillaAssetTree tree = new VanillaAssetTree(hostId).forTesting();
+        ((VanillaAsset) tree.root()).enableVanillaReplication();
+        return tree.withConfig(ReplicationTest2Way.resourcesDir() + "/cmkvst", OS.TARGET + "/" + hostId);
+    }
+
+    @Before
+    public void before() throws IOException {
+        ClassAliasPool.CLASS_ALIASES.addAlias(ChronicleMapGroupFS.class);
+        ClassAliasPool.CLASS_ALIASES.addAlias(FilePerKeyGroupFS.class);
+        TCPRegistry.createServerSocketChannelFor("host.port1", "host.port2");
+
+        tree1 = create(1);
+        tree2 = create(2);
+        serverEndpoint1 = new ServerEndpoint("host.port1", tree1, WireType.TEXT);
+        serverEndpoint2 = new ServerEndpoint("host.port2", tree2, WireType.TEXT);
+    }
+
+    @After
+    public void after() throws IOException {
+        serverEndpoint1.close();
+        serverEndpoint2.close();
+        tree1.close();
+        tree2.close();
+        TcpChannelHub.closeAllHubs();
+        TCPRegistry.reset();
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        MapView<String, String> map2 = tree2.acquireMap(URI, String.class, String.class);
+        MapView<String, String> map1 = tree1.acquireMap(URI, String.class, String.class);
+
+        map1.put("hello1", "world1");
+        map2.put("hello2", "world2");
+        for (int i = 0; i < 100 && (map1.size() < 2 || map2.size() < 2); i++)
+            Jvm.pause(100);
+
+        for (MapView<String, String> map : new MapView[]{map1, map2}) {
+            assertEquals("world1", map.get("hello1"));
+            assertEquals("world2", map.get("hello2"));
+            assertEquals(2, map.size());
+        }
+
+        map2.remove("hello1");
+        for (int i = 0; i < 100 && map1.size() > 1; i++)
+            Jvm.pause(100);
+        assertNull(map1.get("hello1"));
+        assertEquals(1, map1.size());
+    }
+}
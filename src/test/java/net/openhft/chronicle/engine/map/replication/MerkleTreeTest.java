@@ -0,0 +1,105 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.replication;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MerkleTreeTest {
+
+    private static final int SEGMENTS = 4;
+
+    private static long keyHash(String key) {
+        return MerkleTree.hashKey(BytesStore.wrap(key.getBytes()));
+    }
+
+    private static int segment(String key) {
+        return Math.abs(key.hashCode() % SEGMENTS);
+    }
+
+    private static void put(MerkleTree tree, String key, long oldTimestamp, long timestamp) {
+        long keyHash = keyHash(key);
+        long oldHash = oldTimestamp == 0 ? 0 : MerkleTree.hashEntry(keyHash, oldTimestamp, (byte) 1, false);
+        tree.update(segment(key), keyHash, oldHash, MerkleTree.hashEntry(keyHash, timestamp, (byte) 1, false));
+    }
+
+    /**
+     * compares the trees a few levels at a time, as two replicating hosts would.
+     */
+    private static List<Long> differentLeaves(MerkleTree local, MerkleTree remote) {
+        List<Long> leaves = new ArrayList<>();
+        long[] nodes = local.roots();
+        while (nodes.length > 0) {
+            MerkleLevel reply = new MerkleLevel((byte) 1, local, nodes).reply((byte) 2, remote);
+            assertTrue(local.isCompatible(reply));
+            List<Long> next = new ArrayList<>();
+            local.diff(reply, 3, next::add, leaves::add);
+            nodes = next.stream().mapToLong(Long::longValue).toArray();
+        }
+        return leaves;
+    }
+
+    @Test
+    public void testSameEntriesInAnyOrderHaveTheSameHashes() {
+        MerkleTree tree1 = new MerkleTree(SEGMENTS, 8);
+        MerkleTree tree2 = new MerkleTree(SEGMENTS, 8);
+        for (int i = 0; i < 1000; i++)
+            put(tree1, "key" + i, 0, 100 + i);
+        for (int i = 999; i >= 0; i--)
+            put(tree2, "key" + i, 0, 100 + i);
+        for (long root : tree1.roots())
+            assertEquals(tree1.hash(root), tree2.hash(root));
+        assertTrue(differentLeaves(tree1, tree2).isEmpty());
+    }
+
+    @Test
+    public void testOnlyTheChangedRangeDiffers() {
+        MerkleTree tree1 = new MerkleTree(SEGMENTS, 8);
+        MerkleTree tree2 = new MerkleTree(SEGMENTS, 8);
+        for (int i = 0; i < 1000; i++) {
+            put(tree1, "key" + i, 0, 100 + i);
+            put(tree2, "key" + i, 0, 100 + i);
+        }
+        put(tree2, "key500", 600, 2000);
+
+        List<Long> leaves = differentLeaves(tree1, tree2);
+        assertEquals(1, leaves.size());
+        long leaf = leaves.get(0);
+        assertTrue(tree1.isLeaf(leaf));
+        assertEquals(tree1.leafOf(segment("key500"), keyHash("key500")), leaf);
+        assertEquals(segment("key500"), MerkleTree.segmentOf(leaf));
+
+        // replicating the change makes the trees equal again
+        put(tree1, "key500", 600, 2000);
+        assertTrue(differentLeaves(tree1, tree2).isEmpty());
+    }
+
+    @Test
+    public void testDifferentShapesAreNotCompatible() {
+        MerkleTree tree1 = new MerkleTree(SEGMENTS, 8);
+        MerkleTree tree2 = new MerkleTree(SEGMENTS, 10);
+        MerkleLevel reply = new MerkleLevel((byte) 1, tree1, tree1.roots()).reply((byte) 2, tree2);
+        assertFalse(tree1.isCompatible(reply));
+        assertFalse(tree1.isCompatible(new MerkleLevel((byte) 1, tree1, tree1.roots()).reply((byte) 2, null)));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.map.replication;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.engine.api.EngineReplication.ReplicationEntry;
+import net.openhft.chronicle.wire.BinaryWire;
+import net.openhft.chronicle.wire.TextWire;
+import net.openhft.chronicle.wire.Wire;
+import net.openhft.chronicle.wire.WireKey;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplicationBatchTest {
+
+    private static final WireKey EVENTS = () -> "replicationEvents";
+
+    private static ReplicationEntry entry(String key, String value, long timestamp, boolean isDeleted) {
+        return new ReplicationBatch.Entry(BytesStore.wrap(key.getBytes()),
+                value == null ? null : BytesStore.wrap(value.getBytes()),
+                timestamp, (byte) 1, isDeleted, timestamp - 1);
+    }
+
+    private static String text(BytesStore bytes) {
+        return new TextWire(bytes.bytesForRead()).getValueIn().text();
+    }
+
+    private static List<ReplicationEntry> roundTrip(Wire wire, ReplicationBatch batch) {
+        Bytes<ByteBuffer> events = batch.take();
+        wire.write(EVENTS).bytes(events);
+        assertTrue(batch.isEmpty());
+        batch.release(events);
+        List<ReplicationEntry> entries = new ArrayList<>();
+        ReplicationBatch.readFrom(wire.read(EVENTS), entries::add);
+        return entries;
+    }
+
+    private static void assertEntries(List<ReplicationEntry> entries) {
+        assertEquals(2, entries.size());
+        assertEquals("key1", text(entries.get(0).key()));
+        assertEquals("value1", text(entries.get(0).value()));
+        assertEquals(100, entries.get(0).timestamp());
+        assertEquals(1, entries.get(0).identifier());
+        assertFalse(entries.get(0).isDeleted());
+        assertEquals(99, entries.get(0).bootStrapTimeStamp());
+
+        assertEquals("key2", text(entries.get(1).key()));
+        assertNull(entries.get(1).value());
+        assertTrue(entries.get(1).isDeleted());
+    }
+
+    private static ReplicationBatch twoEntries() {
+        ReplicationBatch batch = new ReplicationBatch();
+        assertFalse(batch.add(entry("key1", "value1", 100, false)));
+        assertFalse(batch.add(entry("key2", "value2", 200, true)));
+        return batch;
+    }
+
+    @Test
+    public void testBinaryWire() {
+        Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer();
+        assertEntries(roundTrip(new BinaryWire(bytes), twoEntries()));
+    }
+
+    @Test
+    public void testTextWire() {
+        Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer();
+        assertEntries(roundTrip(new TextWire(bytes), twoEntries()));
+    }
+
+    @Test
+    public void testReleasedBytesAreReused() {
+        ReplicationBatch batch = new ReplicationBatch();
+        batch.add(entry("key1", "value1", 100, false));
+        Bytes<ByteBuffer> first = batch.take();
+        assertTrue(batch.isEmpty());
+        batch.release(first);
+        assertEquals(0, first.readRemaining());
+
+        batch.add(entry("key2", "value2", 200, false));
+        Bytes<ByteBuffer> second = batch.take();
+        assertNotSame(first, second);
+        assertSame(first, batch.take());
+    }
+
+    @Test
+    public void testFlushedBySize() {
+        ReplicationBatch batch = new ReplicationBatch(64, 1, TimeUnit.HOURS);
+        assertFalse(batch.isDue(System.nanoTime()));
+        assertFalse(batch.add(entry("key1", "value1", 100, false)));
+        assertFalse(batch.isDue(System.nanoTime()));
+        assertTrue(batch.add(entry("key2", "value2", 200, false)));
+        assertTrue(batch.isDue(System.nanoTime()));
+    }
+
+    @Test
+    public void testFlushedByLinger() {
+        ReplicationBatch batch = new ReplicationBatch(64 << 10, 50, TimeUnit.MICROSECONDS);
+        assertFalse(batch.add(entry("key1", "value1", 100, false)));
+        assertFalse(batch.isDue(System.nanoTime() - TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(batch.isDue(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+}
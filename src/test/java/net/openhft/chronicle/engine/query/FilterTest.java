@@ -81,4 +81,25 @@ public class FilterTest extends ThreadMonitoringTest {
         Assert.assertEquals(Operation.OperationType.FILTER, actual.getPipeline(0).op());
     }
 
+    @Test
+    public void testKeyPredicate() throws Exception {
+
+        final Bytes b = Bytes.elasticByteBuffer();
+        final Wire wire = wireType.apply(b);
+
+        Filter<String> expected = new Filter<>();
+        expected.addKeyPrefix("price.");
+
+        wire.write(() -> "filter").object(expected);
+
+        final Filter<String> actual = wire.read(() -> "filter").object(Filter.class);
+
+        assert actual != null;
+        Assert.assertEquals(expected, actual);
+        final KeyPredicate<String> keyPredicate = actual.keyPredicate();
+        Assert.assertEquals(KeyPredicate.KeyPredicateType.PREFIX, keyPredicate.type());
+        Assert.assertTrue(keyPredicate.test("price.EURUSD"));
+        Assert.assertFalse(keyPredicate.test("volume.EURUSD"));
+    }
+
 }
\ No newline at end of file
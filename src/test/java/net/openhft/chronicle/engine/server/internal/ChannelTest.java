@@ -0,0 +1,60 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapView;
+import net.openhft.chronicle.engine.tree.VanillaAssetTree;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.*;
+
+/**
+ * A channel cached by a connection notices when its asset has been removed.
+ */
+public class ChannelTest extends ThreadMonitoringTest {
+    private static final String CSP = "/test/channel?view=map&keyType=java.lang.String&valueType=java.lang.String";
+    private VanillaAssetTree assetTree;
+
+    @Before
+    public void before() {
+        assetTree = new VanillaAssetTree().forTesting();
+    }
+
+    @After
+    public void after() {
+        assetTree.close();
+    }
+
+    @Test
+    public void testRemovedAsset() {
+        EngineWireHandler.Channel channel = new EngineWireHandler.Channel(CSP, requestContext(CSP), assetTree);
+        assertTrue(channel.view instanceof MapView);
+        assertFalse(channel.isRemoved());
+
+        assetTree.getAsset("/test").removeChild("channel");
+        assertTrue(channel.isRemoved());
+
+        EngineWireHandler.Channel recreated = new EngineWireHandler.Channel(CSP, requestContext(CSP), assetTree);
+        assertNotSame(channel.view, recreated.view);
+        assertFalse(recreated.isRemoved());
+    }
+}
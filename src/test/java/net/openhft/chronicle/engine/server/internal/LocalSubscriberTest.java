@@ -0,0 +1,116 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.cfg.ThrottleCfg;
+import net.openhft.chronicle.engine.map.InsertedEvent;
+import net.openhft.chronicle.network.connection.WireOutPublisher;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.wire.TextWire;
+import net.openhft.chronicle.wire.WriteMarshallable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static net.openhft.chronicle.engine.api.tree.RequestContext.requestContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The events waiting for the publisher are written as one document per tid.
+ */
+public class LocalSubscriberTest extends ThreadMonitoringTest {
+    // the messages added to the publisher, not yet written.
+    private final List<WriteMarshallable> queued = new ArrayList<>();
+    private SubscriptionHandler<?> handler;
+
+    @Before
+    public void setUp() {
+        WireOutPublisher publisher = mock(WireOutPublisher.class);
+        doAnswer(invocation -> queued.add((WriteMarshallable) invocation.getArguments()[0]))
+                .when(publisher).add(any(WriteMarshallable.class));
+        handler = new SubscriptionHandler<>(new Throttler(mock(EventLoop.class), Collections.emptyMap()), null);
+        handler.publisher = publisher;
+        handler.requestContext = requestContext("/test").type(MapEvent.class);
+    }
+
+    private String writeQueued() {
+        TextWire wire = new TextWire(Bytes.elasticByteBuffer());
+        queued.forEach(w -> w.writeMarshallable(wire));
+        queued.clear();
+        return wire.bytes().toString();
+    }
+
+    @Test
+    public void testLiveEventsAreCoalesced() throws Exception {
+        SubscriptionHandler.LocalSubscriber subscriber = handler.new LocalSubscriber(1L);
+        for (int i = 0; i < 3; i++)
+            subscriber.onMessage(InsertedEvent.of("/test", "key-" + i, "value-" + i));
+        assertEquals(1, queued.size());
+
+        String written = writeQueued();
+        assertTrue(written, written.contains("replies"));
+        assertTrue(written, written.contains("key-2"));
+
+        // once written, the next event is published again.
+        subscriber.onMessage(InsertedEvent.of("/test", "key-3", "value-3"));
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    public void testSequenceOfTheLastEventIsWritten() throws Exception {
+        SubscriptionHandler.LocalSubscriber subscriber = handler.new LocalSubscriber(1L);
+        subscriber.onMessage(InsertedEvent.of("/test", "a", "1"), 11);
+        subscriber.onMessage(InsertedEvent.of("/test", "b", "1"), 12);
+        assertEquals(1, queued.size());
+
+        String written = writeQueued();
+        assertTrue(written, written.contains("12"));
+        assertTrue(written, written.contains("replies"));
+    }
+
+    @Test
+    public void testSequencedEventsAreThrottled() throws Exception {
+        Throttler throttler = new Throttler(mock(EventLoop.class),
+                Collections.singletonMap("/test", new ThrottleCfg(1, 1)));
+        SubscriptionHandler<?> throttled = new SubscriptionHandler<>(throttler, null);
+        throttled.publisher = handler.publisher;
+        throttled.requestContext = handler.requestContext;
+
+        SubscriptionHandler.LocalSubscriber subscriber = throttled.new LocalSubscriber(1L);
+        subscriber.onMessage(InsertedEvent.of("/test", "a", "1"), 11);
+        subscriber.onMessage(InsertedEvent.of("/test", "b", "1"), 12);
+        assertTrue(queued.isEmpty());
+
+        // a burst of one event.
+        throttler.action();
+        assertEquals(1, queued.size());
+        String written = writeQueued();
+        assertTrue(written, written.contains("11"));
+        assertTrue(written, !written.contains("12"));
+    }
+}
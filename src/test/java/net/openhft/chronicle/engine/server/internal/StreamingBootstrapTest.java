@@ -0,0 +1,157 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.api.map.MapEvent;
+import net.openhft.chronicle.engine.api.pubsub.Subscriber;
+import net.openhft.chronicle.engine.api.pubsub.Subscription;
+import net.openhft.chronicle.engine.map.RemovedEvent;
+import net.openhft.chronicle.engine.map.UpdatedEvent;
+import net.openhft.chronicle.engine.query.Filter;
+import net.openhft.chronicle.network.connection.WireOutPublisher;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import net.openhft.chronicle.wire.WriteMarshallable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * A bootstrap is streamed a chunk at a time, and the events racing it are passed on afterwards.
+ */
+public class StreamingBootstrapTest extends ThreadMonitoringTest {
+    private static final int ENTRIES = StreamingBootstrap.CHUNK_SIZE * 3 + 10;
+
+    private final ConcurrentSkipListMap<String, String> map = new ConcurrentSkipListMap<>();
+    // the messages added to the publisher, not yet written.
+    private final List<WriteMarshallable> queued = new ArrayList<>();
+    private final List<List<Object>> chunks = new ArrayList<>();
+    private final List<Object> live = new ArrayList<>();
+    private WireOutPublisher publisher;
+    private Subscription subscription;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < ENTRIES; i++)
+            map.put(String.format("key-%04d", i), "value-" + i);
+        publisher = mock(WireOutPublisher.class);
+        doAnswer(invocation -> queued.add((WriteMarshallable) invocation.getArguments()[0]))
+                .when(publisher).add(any(WriteMarshallable.class));
+        subscription = mock(Subscription.class);
+    }
+
+    private StreamingBootstrap bootstrap(boolean endAfterBootstrap) {
+        Iterator<Map.Entry> iterator = (Iterator) map.entrySet().iterator();
+        return new StreamingBootstrap(publisher, (wire, events) -> chunks.add(events),
+                (Subscriber<Object>) live::add, new Filter(), "/test", iterator, subscription,
+                endAfterBootstrap);
+    }
+
+    private void writeQueued() {
+        queued.forEach(w -> w.writeMarshallable(null));
+        queued.clear();
+    }
+
+    private static boolean finished(StreamingBootstrap bootstrap) {
+        try {
+            bootstrap.action();
+            return false;
+        } catch (InvalidEventHandlerException e) {
+            return true;
+        }
+    }
+
+    @Test
+    public void testChunksAreSentWithBackPressure() throws InvalidEventHandlerException {
+        StreamingBootstrap bootstrap = bootstrap(false);
+
+        for (int i = 0; i < StreamingBootstrap.MAX_CHUNKS_IN_FLIGHT; i++)
+            assertTrue(bootstrap.action());
+        // nothing more is read until the publisher has written a chunk.
+        assertFalse(bootstrap.action());
+        assertEquals(StreamingBootstrap.MAX_CHUNKS_IN_FLIGHT, queued.size());
+
+        int sent = 0;
+        while (!finished(bootstrap))
+            writeQueued();
+        writeQueued();
+
+        for (List<Object> chunk : chunks) {
+            assertTrue(chunk.size() <= StreamingBootstrap.CHUNK_SIZE);
+            sent += chunk.size();
+        }
+        assertEquals(ENTRIES, sent);
+        assertTrue(live.isEmpty());
+    }
+
+    @Test
+    public void testEventsRacingTheIterator() throws Exception {
+        StreamingBootstrap bootstrap = bootstrap(false);
+        assertTrue(bootstrap.action());
+        writeQueued();
+
+        // already sent
+        map.put("key-0000", "updated");
+        bootstrap.onMessage(UpdatedEvent.of("/test", "key-0000", "value-0", "updated"));
+        String first = "key-0001";
+        map.remove(first);
+        bootstrap.onMessage(RemovedEvent.of("/test", first, "value-1"));
+        // removed before the iterator reached it, never sent but still reported as removed.
+        String last = String.format("key-%04d", ENTRIES - 1);
+        map.remove(last);
+        bootstrap.onMessage(RemovedEvent.of("/test", last, "value-" + (ENTRIES - 1)));
+        // not delivered until the bootstrap has finished.
+        assertTrue(live.isEmpty());
+
+        while (!finished(bootstrap))
+            writeQueued();
+
+        assertEquals(3, live.size());
+        assertEquals("key-0000", ((MapEvent) live.get(0)).getKey());
+        assertTrue(live.get(1) instanceof RemovedEvent);
+        assertEquals(first, ((MapEvent) live.get(1)).getKey());
+        assertTrue(live.get(2) instanceof RemovedEvent);
+        assertEquals(last, ((MapEvent) live.get(2)).getKey());
+
+        // later events are passed straight on.
+        bootstrap.onMessage(RemovedEvent.of("/test", "key-0002", "value-2"));
+        assertEquals(4, live.size());
+    }
+
+    @Test
+    public void testEndAfterBootstrapDropsTheEventsWhileStreaming() throws Exception {
+        StreamingBootstrap bootstrap = bootstrap(true);
+        assertTrue(bootstrap.action());
+        bootstrap.onMessage(UpdatedEvent.of("/test", "key-0000", "value-0", "updated"));
+
+        while (!finished(bootstrap))
+            writeQueued();
+
+        assertTrue(live.isEmpty());
+        verify(subscription).unregisterSubscriber(bootstrap);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.server.internal;
+
+import net.openhft.chronicle.engine.ThreadMonitoringTest;
+import net.openhft.chronicle.engine.cfg.ThrottleCfg;
+import net.openhft.chronicle.threads.api.EventLoop;
+import net.openhft.chronicle.threads.api.InvalidEventHandlerException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Each subscription is throttled by its own bucket, and the buckets are drained in turn.
+ */
+public class ThrottlerTest extends ThreadMonitoringTest {
+
+    @Test
+    public void testBucketsDrainedRoundRobin() throws InvalidEventHandlerException {
+        Map<String, ThrottleCfg> throttles = new HashMap<>();
+        throttles.put("/prices", new ThrottleCfg(1, 3));
+        Throttler throttler = new Throttler(mock(EventLoop.class), throttles);
+
+        assertNull(throttler.bucketFor("/volumes/GBPUSD"));
+        Throttler.Bucket chatty = throttler.bucketFor("/prices/EURUSD");
+        Throttler.Bucket quiet = throttler.bucketFor("/prices/GBPUSD");
+        assertNotNull(chatty);
+        assertNotNull(quiet);
+
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            chatty.add(() -> sent.add("chatty-" + n));
+        }
+        quiet.add(() -> sent.add("quiet-0"));
+
+        // nothing is sent on the writer's thread.
+        assertTrue(sent.isEmpty());
+
+        assertTrue(throttler.action());
+        assertEquals(4, sent.size());
+        assertTrue(sent.indexOf("quiet-0") <= 1);
+        assertEquals("chatty-2", sent.get(3));
+
+        // the chatty bucket has used its burst.
+        assertFalse(throttler.action());
+        assertEquals(4, sent.size());
+
+        throttler.close();
+        try {
+            throttler.action();
+            fail();
+        } catch (InvalidEventHandlerException expected) {
+            // removed from the event loop.
+        }
+    }
+
+    @Test
+    public void testRemovedBucketIsDropped() throws InvalidEventHandlerException {
+        Throttler throttler = new Throttler(mock(EventLoop.class),
+                Collections.singletonMap("/prices", new ThrottleCfg(1, 3)));
+        Throttler.Bucket bucket = throttler.bucketFor("/prices/EURUSD");
+        assertNotNull(bucket);
+
+        List<String> sent = new ArrayList<>();
+        bucket.add(() -> sent.add("dropped"));
+        throttler.remove(bucket);
+
+        assertFalse(throttler.action());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void testNotThrottled() {
+        Throttler throttler = new Throttler(mock(EventLoop.class), Collections.emptyMap());
+        assertNull(throttler.bucketFor("/prices"));
+    }
+}
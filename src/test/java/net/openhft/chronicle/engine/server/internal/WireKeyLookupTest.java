@@ -0,0 +1,39 @@
+/*
+ *     Copyright (C) 2015  higherfrequencytrading.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.openhft.chronicle.engine.server.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class WireKeyLookupTest {
+
+    @Test
+    public void testLookupEachEventId() {
+        WireKeyLookup<MapWireHandler.EventId> lookup = new WireKeyLookup<>(MapWireHandler.EventId.class);
+        StringBuilder sb = new StringBuilder();
+        for (MapWireHandler.EventId id : MapWireHandler.EventId.values()) {
+            sb.setLength(0);
+            sb.append(id.name());
+            assertSame(id, lookup.lookup(sb));
+        }
+        assertNull(lookup.lookup("getAndPutAll"));
+        assertNull(lookup.lookup(""));
+    }
+}